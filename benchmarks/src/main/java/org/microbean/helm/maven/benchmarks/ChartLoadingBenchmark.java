@@ -0,0 +1,138 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.concurrent.TimeUnit;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.microbean.helm.maven.MavenRepositoryChartResolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of {@linkplain
+ * MavenRepositoryChartResolver#loadChart(File, String) loading}
+ * charts of various shapes and packagings from the local
+ * filesystem.
+ *
+ * <p>The {@code parallel} parameter compares the serial loading
+ * path with the one enabled by {@link
+ * MavenRepositoryChartResolver#setParallelLoadingEnabled(boolean)};
+ * the difference is most pronounced for the {@code LARGE} and {@code
+ * DEEP} shapes on machines with several processors.</p>
+ *
+ * <p>The {@code packaging} parameter compares the {@linkplain
+ * org.microbean.helm.maven.ChartArchiveFormats built-in archive
+ * formats}; {@code tar} and {@code tar.zst} trade archive size for
+ * decompression speed.</p>
+ *
+ * <p>Run with {@code -prof gc} to see allocation rates; the {@link
+ * Mode#SampleTime} mode reports percentile latencies, including the
+ * 99th percentile.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class ChartLoadingBenchmark {
+
+  @Param({ "SMALL", "LARGE", "DEEP" })
+  public SyntheticCharts.Shape shape;
+
+  @Param({ "tgz", "tar", "tar.zst", "zip" })
+  public String packaging;
+
+  @Param({ "false", "true" })
+  public boolean parallel;
+
+  private Path directory;
+
+  private File chartFile;
+
+  private LoadingChartResolver resolver;
+
+  public ChartLoadingBenchmark() {
+    super();
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.directory = Files.createTempDirectory("chart-loading-benchmark");
+    final Path chartPath = this.directory.resolve("synthetic." + this.packaging);
+    SyntheticCharts.write(chartPath, "synthetic", this.shape, this.packaging);
+    this.chartFile = chartPath.toFile();
+    final RepositorySystem repositorySystem = Repositories.newRepositorySystem();
+    this.resolver = new LoadingChartResolver(repositorySystem, Repositories.newSession(repositorySystem, this.directory.resolve("repository")));
+    this.resolver.setParallelLoadingEnabled(this.parallel);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    SyntheticCharts.deleteRecursively(this.directory);
+  }
+
+  @Benchmark
+  public Chart.Builder loadChart() throws ChartResolverException {
+    return this.resolver.load(this.chartFile, this.packaging);
+  }
+
+  /**
+   * A {@link MavenRepositoryChartResolver} that exposes its {@link
+   * #loadChart(File, String)} method.
+   */
+  private static final class LoadingChartResolver extends MavenRepositoryChartResolver {
+
+    private LoadingChartResolver(final RepositorySystem repositorySystem, final RepositorySystemSession session) {
+      super(repositorySystem, session, null, null);
+    }
+
+    private final Chart.Builder load(final File chartFile, final String packaging) throws ChartResolverException {
+      return this.loadChart(chartFile, packaging);
+    }
+
+  }
+
+}
@@ -0,0 +1,133 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven.benchmarks;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.microbean.helm.maven.ChartCache;
+import org.microbean.helm.maven.MavenRepositoryChartResolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of {@linkplain
+ * MavenRepositoryChartResolver#resolve(Artifact) resolving} a chart
+ * that is already present in a local repository that was populated
+ * from a {@code file:} remote repository.
+ *
+ * <p>The {@code localFastPath} parameter compares resolution through
+ * the full {@link RepositorySystem} with the {@linkplain
+ * MavenRepositoryChartResolver#setLocalFastPathEnabled(boolean) local
+ * fast path}; run with {@code -p cached=false} to see the difference
+ * undiluted by the {@link ChartCache}.</p>
+ *
+ * <p>Run with {@code -prof gc} to see allocation rates; the {@link
+ * Mode#SampleTime} mode reports percentile latencies, including the
+ * 99th percentile.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class ChartResolutionBenchmark {
+
+  @Param({ "SMALL", "LARGE" })
+  public SyntheticCharts.Shape shape;
+
+  @Param({ "false", "true" })
+  public boolean cached;
+
+  @Param({ "false", "true" })
+  public boolean localFastPath;
+
+  private Path directory;
+
+  private Artifact chart;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public ChartResolutionBenchmark() {
+    super();
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, ChartResolverException {
+    this.directory = Files.createTempDirectory("chart-resolution-benchmark");
+    final Path remoteRepositoryPath = this.directory.resolve("remote");
+    this.chart = new DefaultArtifact("com.example.charts", "synthetic", "tgz", "1.0.0");
+    Repositories.publish(remoteRepositoryPath, this.chart, this.shape);
+
+    final RepositorySystem repositorySystem = Repositories.newRepositorySystem();
+    final RepositorySystemSession session = Repositories.newSession(repositorySystem, this.directory.resolve("local"));
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder("synthetic", "default", remoteRepositoryPath.toUri().toString()).build();
+    final List<RemoteRepository> remoteRepositories = repositorySystem.newResolutionRepositories(session, Collections.singletonList(remoteRepository));
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, remoteRepositories, this.cached ? new ChartCache() : null);
+    this.resolver.setLocalFastPathEnabled(this.localFastPath);
+
+    // Populate the local repository so that the benchmark measures
+    // warm resolution.
+    this.resolver.resolve(this.chart);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    SyntheticCharts.deleteRecursively(this.directory);
+  }
+
+  @Benchmark
+  public Chart.Builder resolveArtifact() throws ChartResolverException {
+    return this.resolver.resolve(this.chart);
+  }
+
+}
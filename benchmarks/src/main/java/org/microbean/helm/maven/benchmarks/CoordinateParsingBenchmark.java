@@ -0,0 +1,94 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven.benchmarks;
+
+import java.nio.file.Paths;
+
+import java.util.concurrent.TimeUnit;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.microbean.helm.maven.MavenRepositoryChartResolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead that {@link
+ * MavenRepositoryChartResolver#resolve(String, String)} adds on top
+ * of {@link MavenRepositoryChartResolver#resolve(Artifact)}: parsing
+ * coordinates, building an {@link Artifact} and any diagnostics.
+ *
+ * <p>Run with {@code -prof gc} to see allocation rates; the {@link
+ * Mode#SampleTime} mode reports percentile latencies, including the
+ * 99th percentile.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class CoordinateParsingBenchmark {
+
+  @Param({ "io.fabric8.platform.packages:ingress", "io.fabric8.platform.packages:ingress:tar.gz:helm" })
+  public String coordinatesWithoutVersion;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public CoordinateParsingBenchmark() {
+    super();
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final RepositorySystem repositorySystem = Repositories.newRepositorySystem();
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, Repositories.newSession(repositorySystem, Paths.get(System.getProperty("java.io.tmpdir"))), null, null) {
+        private final Chart.Builder chart = Chart.newBuilder();
+
+        @Override
+        public final Chart.Builder resolve(final Artifact chart) {
+          return this.chart;
+        }
+      };
+  }
+
+  @Benchmark
+  public Chart.Builder resolveCoordinates() throws ChartResolverException {
+    return this.resolver.resolve(this.coordinatesWithoutVersion, "4.0.208");
+  }
+
+}
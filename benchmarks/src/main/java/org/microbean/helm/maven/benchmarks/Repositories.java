@@ -0,0 +1,127 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven.benchmarks;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Objects;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+
+import org.eclipse.aether.impl.DefaultServiceLocator;
+
+import org.eclipse.aether.repository.LocalRepository;
+
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+
+/**
+ * Utility methods for setting up Maven Resolver machinery in
+ * benchmarks.
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+final class Repositories {
+
+  private Repositories() {
+    super();
+  }
+
+  /**
+   * Returns a new {@link RepositorySystem} capable of resolving
+   * artifacts from {@code file:} repositories.
+   *
+   * @return a new {@link RepositorySystem}; never {@code null}
+   */
+  static final RepositorySystem newRepositorySystem() {
+    final DefaultServiceLocator serviceLocator = MavenRepositorySystemUtils.newServiceLocator();
+    serviceLocator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+    serviceLocator.addService(TransporterFactory.class, FileTransporterFactory.class);
+    final RepositorySystem returnValue = serviceLocator.getService(RepositorySystem.class);
+    if (returnValue == null) {
+      throw new IllegalStateException("Could not create a RepositorySystem");
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a new {@link DefaultRepositorySystemSession} whose local
+   * repository is rooted at the supplied {@link Path}.
+   *
+   * @param repositorySystem the {@link RepositorySystem} to use; must
+   * not be {@code null}
+   *
+   * @param localRepository the root of the local repository; must
+   * not be {@code null}
+   *
+   * @return a new {@link DefaultRepositorySystemSession}; never
+   * {@code null}
+   */
+  static final DefaultRepositorySystemSession newSession(final RepositorySystem repositorySystem, final Path localRepository) {
+    Objects.requireNonNull(repositorySystem);
+    final DefaultRepositorySystemSession returnValue = MavenRepositorySystemUtils.newSession();
+    returnValue.setLocalRepositoryManager(repositorySystem.newLocalRepositoryManager(returnValue, new LocalRepository(localRepository.toFile())));
+    return returnValue;
+  }
+
+  /**
+   * Writes a synthetic chart for the supplied {@link Artifact} into
+   * the {@code default}-layout repository rooted at the supplied
+   * {@link Path}.
+   *
+   * @param repository the root of the repository; must not be {@code
+   * null}
+   *
+   * @param chart the {@link Artifact} to publish; must not be {@code
+   * null}
+   *
+   * @param shape the {@link SyntheticCharts.Shape} of the chart; must
+   * not be {@code null}
+   *
+   * @return the {@link Path} of the published archive; never {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  static final Path publish(final Path repository, final Artifact chart, final SyntheticCharts.Shape shape) throws IOException {
+    final Path directory = repository.resolve(chart.getGroupId().replace('.', '/')).resolve(chart.getArtifactId()).resolve(chart.getVersion());
+    Files.createDirectories(directory);
+    final String classifier = chart.getClassifier();
+    final String fileName =
+      chart.getArtifactId() + "-" + chart.getVersion() +
+      (classifier == null || classifier.isEmpty() ? "" : "-" + classifier) +
+      "." + chart.getExtension();
+    final Path returnValue = directory.resolve(fileName);
+    SyntheticCharts.write(returnValue, chart.getArtifactId(), shape, chart.getExtension());
+    return returnValue;
+  }
+
+}
@@ -0,0 +1,291 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarHeader;
+import org.kamranzafar.jtar.TarOutputStream;
+
+/**
+ * Generates synthetic Helm chart archives of various shapes for use
+ * by benchmarks.
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+public final class SyntheticCharts {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * A template body of realistic size.
+   */
+  private static final String TEMPLATE =
+    "apiVersion: extensions/v1beta1\n" +
+    "kind: Deployment\n" +
+    "metadata:\n" +
+    "  name: {{ template \"fullname\" . }}-%d\n" +
+    "  labels:\n" +
+    "    app: {{ template \"name\" . }}\n" +
+    "    chart: {{ .Chart.Name }}-{{ .Chart.Version | replace \"+\" \"_\" }}\n" +
+    "    release: {{ .Release.Name }}\n" +
+    "    heritage: {{ .Release.Service }}\n" +
+    "spec:\n" +
+    "  replicas: {{ .Values.replicaCount }}\n" +
+    "  template:\n" +
+    "    metadata:\n" +
+    "      labels:\n" +
+    "        app: {{ template \"name\" . }}\n" +
+    "        release: {{ .Release.Name }}\n" +
+    "    spec:\n" +
+    "      containers:\n" +
+    "        - name: {{ .Chart.Name }}\n" +
+    "          image: \"{{ .Values.image.repository }}:{{ .Values.image.tag }}\"\n" +
+    "          imagePullPolicy: {{ .Values.image.pullPolicy }}\n" +
+    "          ports:\n" +
+    "            - containerPort: {{ .Values.service.internalPort }}\n" +
+    "          livenessProbe:\n" +
+    "            httpGet:\n" +
+    "              path: /\n" +
+    "              port: {{ .Values.service.internalPort }}\n" +
+    "          readinessProbe:\n" +
+    "            httpGet:\n" +
+    "              path: /\n" +
+    "              port: {{ .Values.service.internalPort }}\n" +
+    "          resources:\n" +
+    "{{ toYaml .Values.resources | indent 12 }}\n";
+
+  /**
+   * A {@code values.yaml} body.
+   */
+  private static final String VALUES =
+    "replicaCount: 1\n" +
+    "image:\n" +
+    "  repository: nginx\n" +
+    "  tag: stable\n" +
+    "  pullPolicy: IfNotPresent\n" +
+    "service:\n" +
+    "  name: nginx\n" +
+    "  type: ClusterIP\n" +
+    "  externalPort: 80\n" +
+    "  internalPort: 80\n" +
+    "resources: {}\n";
+
+
+  /*
+   * Constructors.
+   */
+
+
+  private SyntheticCharts() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Writes a synthetic chart of the supplied {@link Shape} to the
+   * supplied {@link Path} in an archive format appropriate for the
+   * supplied packaging.
+   *
+   * @param path the {@link Path} to write; must not be {@code null}
+   *
+   * @param name the name of the chart; must not be {@code null}
+   *
+   * @param shape the {@link Shape} of the chart; must not be {@code
+   * null}
+   *
+   * @param packaging one of {@code tgz}, {@code tar}, {@code
+   * tar.zst} or {@code zip}; must not be {@code null}
+   *
+   * @exception NullPointerException if any parameter is {@code null}
+   *
+   * @exception IllegalArgumentException if {@code packaging} is not
+   * supported
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  public static final void write(final Path path, final String name, final Shape shape, final String packaging) throws IOException {
+    Objects.requireNonNull(path);
+    Objects.requireNonNull(shape);
+    final Map<String, byte[]> entries = entries(name, "1.0.0", shape.templates, shape.depth, shape.fanout);
+    try (final OutputStream outputStream = Files.newOutputStream(path)) {
+      if ("tgz".equals(packaging)) {
+        writeTgz(entries, outputStream);
+      } else if ("tar".equals(packaging)) {
+        writeTar(entries, outputStream);
+      } else if ("tar.zst".equals(packaging)) {
+        writeTar(entries, new ZstdOutputStream(outputStream));
+      } else if ("zip".equals(packaging)) {
+        writeZip(entries, outputStream);
+      } else {
+        throw new IllegalArgumentException("packaging: " + packaging);
+      }
+    }
+  }
+
+  /**
+   * Deletes the supplied directory and everything beneath it.
+   *
+   * @param directory the directory to delete; may be {@code null} in
+   * which case no action is taken
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  public static final void deleteRecursively(final Path directory) throws IOException {
+    if (directory != null && Files.exists(directory)) {
+      Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+          @Override
+          public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public final FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+            if (exception != null) {
+              throw exception;
+            }
+            Files.delete(directory);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    }
+  }
+
+  private static final Map<String, byte[]> entries(final String name, final String version, final int templates, final int depth, final int fanout) throws IOException {
+    Objects.requireNonNull(name);
+    final Map<String, byte[]> returnValue = new LinkedHashMap<>();
+    returnValue.put(name + "/Chart.yaml", ("name: " + name + "\nversion: " + version + "\ndescription: A synthetic chart\n").getBytes(StandardCharsets.UTF_8));
+    returnValue.put(name + "/values.yaml", VALUES.getBytes(StandardCharsets.UTF_8));
+    returnValue.put(name + "/README.md", ("# " + name + "\n").getBytes(StandardCharsets.UTF_8));
+    for (int i = 0; i < templates; i++) {
+      returnValue.put(name + "/templates/deployment-" + i + ".yaml", String.format(TEMPLATE, i).getBytes(StandardCharsets.UTF_8));
+    }
+    if (depth > 0) {
+      for (int i = 0; i < fanout; i++) {
+        final String subchartName = name + "-sub" + i;
+        final ByteArrayOutputStream subchart = new ByteArrayOutputStream();
+        writeTgz(entries(subchartName, version, templates, depth - 1, fanout), subchart);
+        returnValue.put(name + "/charts/" + subchartName + "-" + version + ".tgz", subchart.toByteArray());
+      }
+    }
+    return returnValue;
+  }
+
+  private static final void writeTgz(final Map<String, byte[]> entries, final OutputStream outputStream) throws IOException {
+    writeTar(entries, new GZIPOutputStream(outputStream));
+  }
+
+  private static final void writeTar(final Map<String, byte[]> entries, final OutputStream outputStream) throws IOException {
+    final long modTime = System.currentTimeMillis() / 1000L;
+    final TarOutputStream tarOutputStream = new TarOutputStream(outputStream);
+    for (final Entry<String, byte[]> entry : entries.entrySet()) {
+      final byte[] bytes = entry.getValue();
+      tarOutputStream.putNextEntry(new TarEntry(TarHeader.createHeader(entry.getKey(), bytes.length, modTime, false, 0644)));
+      tarOutputStream.write(bytes, 0, bytes.length);
+    }
+    tarOutputStream.close();
+  }
+
+  private static final void writeZip(final Map<String, byte[]> entries, final OutputStream outputStream) throws IOException {
+    final ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+    for (final Entry<String, byte[]> entry : entries.entrySet()) {
+      zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+      zipOutputStream.write(entry.getValue());
+      zipOutputStream.closeEntry();
+    }
+    zipOutputStream.finish();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The shape of a synthetic chart.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static enum Shape {
+
+    /**
+     * A small chart with a handful of templates and no subcharts.
+     */
+    SMALL(8, 0, 0),
+
+    /**
+     * A chart with hundreds of templates and no subcharts.
+     */
+    LARGE(400, 0, 0),
+
+    /**
+     * A chart with a few templates per chart and a subchart tree
+     * three levels deep with a fan-out of three.
+     */
+    DEEP(8, 3, 3);
+
+    private final int templates;
+
+    private final int depth;
+
+    private final int fanout;
+
+    private Shape(final int templates, final int depth, final int fanout) {
+      this.templates = templates;
+      this.depth = depth;
+      this.fanout = fanout;
+    }
+
+  }
+
+}
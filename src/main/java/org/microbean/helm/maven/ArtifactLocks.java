@@ -0,0 +1,253 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * A set of locks, one for each artifact being downloaded, that keeps
+ * two threads in the same Java virtual machine from downloading the
+ * same artifact into a local repository at the same time.
+ *
+ * <p>Without such a lock, two {@link MavenRepositoryChartResolver}s
+ * in the same virtual machine that download the same artifact at
+ * once, as the resolvers handed out by a {@link ChartResolverPool}
+ * may well do, either both download it or, when downloads are
+ * resumable, one of them polls the other's partially downloaded
+ * file until it is complete.  With it, the second resolution waits
+ * for the first and then finds the artifact in the local
+ * repository.</p>
+ *
+ * <p>A lock guards exactly one artifact, identified by its
+ * coordinates, and exists only while it is held or awaited.  A
+ * thread that needs the locks of several artifacts at once, so that
+ * they may be downloaded together, {@linkplain #lock(Collection)
+ * acquires them all} in the order of their coordinates, and a thread
+ * that holds any lock acquires no other lock outside such a call, so
+ * holders cannot deadlock one another.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver
+ */
+final class ArtifactLocks {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The locks, indexed by artifact coordinates.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<String, Entry> locks;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ArtifactLocks}.
+   */
+  ArtifactLocks() {
+    super();
+    this.locks = new ConcurrentHashMap<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Acquires the lock guarding the supplied {@link Artifact}, waiting
+   * if necessary, and returns a {@link Hold} that {@linkplain
+   * Hold#release() releases} it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param artifact the {@link Artifact} to guard; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Hold}
+   *
+   * @exception NullPointerException if {@code artifact} is {@code
+   * null}
+   */
+  final Hold lock(final Artifact artifact) {
+    return this.lock(key(artifact));
+  }
+
+  /**
+   * Acquires the locks guarding each of the supplied {@link
+   * Artifact}s, in the order of their coordinates, waiting if
+   * necessary, and returns a {@link List} of {@link Hold}s, one for
+   * each distinct set of coordinates, each of which must be
+   * {@linkplain Hold#release() released}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param artifacts the {@link Artifact}s to guard; must not be
+   * {@code null} and must not contain {@code null} elements
+   *
+   * @return a non-{@code null} {@link List} of {@link Hold}s
+   *
+   * @exception NullPointerException if {@code artifacts} is {@code
+   * null} or contains {@code null} elements
+   */
+  final List<Hold> lock(final Collection<? extends Artifact> artifacts) {
+    final SortedSet<String> keys = new TreeSet<>();
+    for (final Artifact artifact : artifacts) {
+      keys.add(key(artifact));
+    }
+    final List<Hold> returnValue = new ArrayList<>(keys.size());
+    for (final String key : keys) {
+      returnValue.add(this.lock(key));
+    }
+    return returnValue;
+  }
+
+  private final Hold lock(final String key) {
+    assert key != null;
+    final Entry entry = this.locks.compute(key, (k, existingEntry) -> {
+        final Entry returnValue = existingEntry == null ? new Entry() : existingEntry;
+        returnValue.users++;
+        return returnValue;
+      });
+    assert entry != null;
+    entry.lock.lock();
+    return new Hold(key, entry);
+  }
+
+  /**
+   * Releases each of the supplied {@link Hold}s, in the reverse of
+   * the order in which they were acquired.
+   *
+   * @param holds the {@link Hold}s to release, as returned by the
+   * {@link #lock(Collection)} method; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code holds} is {@code null}
+   */
+  static final void release(final List<? extends Hold> holds) {
+    for (int i = holds.size() - 1; i >= 0; i--) {
+      holds.get(i).release();
+    }
+  }
+
+  /**
+   * Returns the number of artifacts whose locks are currently held or
+   * awaited.
+   *
+   * @return the number of artifacts whose locks are in use
+   */
+  final int size() {
+    return this.locks.size();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final String key(final Artifact artifact) {
+    Objects.requireNonNull(artifact);
+    return artifact.getGroupId() + ':' + artifact.getArtifactId() + ':' + artifact.getExtension() + ':' + artifact.getClassifier() + ':' + artifact.getBaseVersion();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A lock together with the number of threads holding or awaiting
+   * it.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Entry {
+
+    private final ReentrantLock lock;
+
+    // Guarded by the mapping function of ConcurrentMap#compute().
+    private int users;
+
+    private Entry() {
+      super();
+      this.lock = new ReentrantLock();
+    }
+
+  }
+
+  /**
+   * An acquired lock.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  final class Hold {
+
+    private final String key;
+
+    private final Entry entry;
+
+    private Hold(final String key, final Entry entry) {
+      super();
+      this.key = key;
+      this.entry = entry;
+    }
+
+    /**
+     * Releases the lock, discarding it if no other thread holds or
+     * awaits it.
+     *
+     * <p>This method must be called by the thread that acquired the
+     * lock, exactly once.</p>
+     */
+    final void release() {
+      this.entry.lock.unlock();
+      ArtifactLocks.this.locks.computeIfPresent(this.key, (k, entry) -> --entry.users == 0 ? null : entry);
+    }
+
+  }
+
+}
@@ -0,0 +1,141 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.channels.ReadableByteChannel;
+
+import java.util.Set;
+
+import java.util.concurrent.Executor;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A decoder of Helm chart archives of a particular kind, such as
+ * GZIP-compressed tape archives or ZIP archives.
+ *
+ * <p>Implementations are registered with a {@link
+ * ChartArchiveFormats} registry, which selects one by the packaging
+ * of the chart being loaded.  Implementations may also be made
+ * available to every such registry by naming them in a {@code
+ * META-INF/services/org.microbean.helm.maven.ChartArchiveFormat}
+ * resource as described by the {@link java.util.ServiceLoader}
+ * class, in which case they must be {@code public} and have a {@code
+ * public} zero-argument constructor.</p>
+ *
+ * <p>Implementations must be safe for use by multiple threads.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChartArchiveFormats
+ *
+ * @see MavenRepositoryChartResolver#setChartArchiveFormats(ChartArchiveFormats)
+ */
+public interface ChartArchiveFormat {
+
+  /**
+   * Returns the packagings, such as {@code tgz} or {@code zip}, of
+   * the chart archives this {@link ChartArchiveFormat} can decode.
+   *
+   * <p>Implementations of this method must not return {@code null},
+   * and must return the same packagings every time they are
+   * called.  Packagings are compared without regard to case.</p>
+   *
+   * @return a non-{@code null}, non-{@linkplain Set#isEmpty() empty}
+   * {@link Set} of packagings
+   */
+  Set<String> getPackagings();
+
+  /**
+   * Returns a {@link hapi.chart.ChartOuterClass.Chart.Builder}
+   * representing the Helm chart whose archive is supplied by the
+   * supplied {@link ReadableByteChannel}.
+   *
+   * <p>Implementations of this method must not return {@code null}
+   * and must not close the supplied {@link ReadableByteChannel}.</p>
+   *
+   * @param channel the {@link ReadableByteChannel} supplying a Helm
+   * chart archive; must not be {@code null}
+   *
+   * @param executor an {@link Executor} across which the work of
+   * loading the chart may be spread; may be {@code null} in which
+   * case the chart must be loaded on the calling thread
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}
+   *
+   * @exception NullPointerException if {@code channel} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded for any other reason
+   *
+   * @see MavenRepositoryChartResolver#isParallelLoadingEnabled()
+   */
+  Chart.Builder load(final ReadableByteChannel channel, final Executor executor) throws IOException, ChartResolverException;
+
+  /**
+   * Returns a {@link hapi.chart.ChartOuterClass.Chart.Builder}
+   * bearing only the {@linkplain
+   * hapi.chart.ChartOuterClass.Chart.Builder#getMetadata() metadata}
+   * and {@linkplain
+   * hapi.chart.ChartOuterClass.Chart.Builder#getValues() values} of
+   * the Helm chart whose archive is supplied by the supplied {@link
+   * ReadableByteChannel}.
+   *
+   * <p>Implementations of this method must not return {@code null}
+   * and must not close the supplied {@link ReadableByteChannel}.
+   * They should read no more of the archive than they must.</p>
+   *
+   * <p>The default implementation {@linkplain
+   * #load(ReadableByteChannel, Executor) loads} the whole chart
+   * serially and then discards its templates, files and
+   * dependencies.</p>
+   *
+   * @param channel the {@link ReadableByteChannel} supplying a Helm
+   * chart archive; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} without templates,
+   * files or dependencies
+   *
+   * @exception NullPointerException if {@code channel} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded for any other reason
+   *
+   * @see MavenRepositoryChartResolver#resolveMetadata(org.eclipse.aether.artifact.Artifact)
+   */
+  default Chart.Builder loadMetadata(final ReadableByteChannel channel) throws IOException, ChartResolverException {
+    final Chart.Builder returnValue = this.load(channel, null);
+    if (returnValue == null) {
+      throw new ChartResolverException("load() == null; format: " + this);
+    }
+    return returnValue.clearTemplates().clearFiles().clearDependencies();
+  }
+
+}
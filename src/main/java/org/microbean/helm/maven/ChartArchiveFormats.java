@@ -0,0 +1,757 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.kamranzafar.jtar.TarInputStream;
+
+import org.microbean.helm.chart.TapeArchiveChartLoader;
+import org.microbean.helm.chart.ZipInputStreamChartLoader;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A registry of {@link ChartArchiveFormat}s indexed by the
+ * packagings they can decode.
+ *
+ * <p>A new {@link ChartArchiveFormats} created by the {@link
+ * #ChartArchiveFormats()} or {@link #ChartArchiveFormats(ClassLoader)}
+ * constructors holds decoders for the following packagings:</p>
+ *
+ * <ul>
+ *
+ * <li>{@code tgz}, {@code tar.gz} and {@code helm.tar.gz}: GZIP-compressed
+ * tape archives</li>
+ *
+ * <li>{@code tar}: uncompressed tape archives</li>
+ *
+ * <li>{@code tar.zst} and {@code tzst}: Zstandard-compressed tape
+ * archives, provided that the optional {@code
+ * com.github.luben:zstd-jni} library is present</li>
+ *
+ * <li>{@code zip} and {@code jar}: ZIP archives</li>
+ *
+ * </ul>
+ *
+ * <p>It also holds every {@link ChartArchiveFormat} found by a {@link
+ * ServiceLoader}; these replace any built-in decoder for the same
+ * packaging.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChartArchiveFormat
+ *
+ * @see MavenRepositoryChartResolver#setChartArchiveFormats(ChartArchiveFormats)
+ */
+public final class ChartArchiveFormats {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  private static final Logger logger = Logger.getLogger(ChartArchiveFormats.class.getName());
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link ChartArchiveFormat}s held by this registry, indexed by
+   * lowercase packaging.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<String, ChartArchiveFormat> formats;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartArchiveFormats} holding the built-in
+   * {@link ChartArchiveFormat}s and those found by a {@link
+   * ServiceLoader} using the {@linkplain
+   * Thread#getContextClassLoader() context classloader}.
+   *
+   * @see #ChartArchiveFormats(ClassLoader)
+   */
+  public ChartArchiveFormats() {
+    this(Thread.currentThread().getContextClassLoader());
+  }
+
+  /**
+   * Creates a new {@link ChartArchiveFormats} holding the built-in
+   * {@link ChartArchiveFormat}s and those found by a {@link
+   * ServiceLoader} using the supplied {@link ClassLoader}.
+   *
+   * <p>A {@link ChartArchiveFormat} that cannot be instantiated by the
+   * {@link ServiceLoader} is logged and otherwise ignored.</p>
+   *
+   * @param classLoader the {@link ClassLoader} to use; may be {@code
+   * null} in which case the {@link ClassLoader} that loaded this
+   * class will be used instead
+   */
+  public ChartArchiveFormats(final ClassLoader classLoader) {
+    this(false);
+    this.register(new GzipTapeArchiveFormat());
+    this.register(new TapeArchiveFormat("tar"));
+    this.register(new ZipArchiveFormat());
+    if (isZstdAvailable()) {
+      this.register(new ZstdTapeArchiveFormat());
+    }
+    final Iterator<ChartArchiveFormat> iterator = ServiceLoader.load(ChartArchiveFormat.class, classLoader == null ? ChartArchiveFormats.class.getClassLoader() : classLoader).iterator();
+    assert iterator != null;
+    while (true) {
+      try {
+        if (!iterator.hasNext()) {
+          break;
+        }
+        final ChartArchiveFormat format = iterator.next();
+        if (format != null) {
+          this.register(format);
+        }
+      } catch (final ServiceConfigurationError serviceConfigurationError) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.logp(Level.WARNING, ChartArchiveFormats.class.getName(), "<init>", serviceConfigurationError.getMessage(), serviceConfigurationError);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a new {@link ChartArchiveFormats} holding no {@link
+   * ChartArchiveFormat}s at all.
+   *
+   * @param ignored ignored; present only to distinguish this
+   * constructor
+   *
+   * @see #empty()
+   */
+  private ChartArchiveFormats(final boolean ignored) {
+    super();
+    this.formats = new ConcurrentHashMap<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Registers the supplied {@link ChartArchiveFormat} with this
+   * registry under each of its {@linkplain
+   * ChartArchiveFormat#getPackagings() packagings}, replacing any
+   * {@link ChartArchiveFormat} already registered under the same
+   * packaging.
+   *
+   * @param format the {@link ChartArchiveFormat} to register; must
+   * not be {@code null}
+   *
+   * @exception NullPointerException if {@code format} is {@code
+   * null}, or if its {@link ChartArchiveFormat#getPackagings()}
+   * method returns {@code null} or a {@link Set} containing {@code
+   * null}
+   */
+  public void register(final ChartArchiveFormat format) {
+    Objects.requireNonNull(format);
+    final Set<String> packagings = format.getPackagings();
+    Objects.requireNonNull(packagings);
+    for (final String packaging : packagings) {
+      this.formats.put(packaging.toLowerCase(Locale.ROOT), format);
+    }
+  }
+
+  /**
+   * Returns the {@link ChartArchiveFormat} registered under the
+   * supplied packaging, or {@code null} if there is no such {@link
+   * ChartArchiveFormat}.
+   *
+   * @param packaging the packaging, such as {@code tgz}; must not be
+   * {@code null}; compared without regard to case
+   *
+   * @return the {@link ChartArchiveFormat} registered under the
+   * supplied packaging, or {@code null}
+   *
+   * @exception NullPointerException if {@code packaging} is {@code
+   * null}
+   */
+  public ChartArchiveFormat get(final String packaging) {
+    Objects.requireNonNull(packaging);
+    ChartArchiveFormat returnValue = this.formats.get(packaging);
+    if (returnValue == null) {
+      final String lowercasePackaging = packaging.toLowerCase(Locale.ROOT);
+      if (!lowercasePackaging.equals(packaging)) {
+        returnValue = this.formats.get(lowercasePackaging);
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the packagings for which a {@link ChartArchiveFormat} is
+   * registered.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link Set} of lowercase
+   * packagings
+   */
+  public Set<String> getPackagings() {
+    return Collections.unmodifiableSet(this.formats.keySet());
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns a new {@link ChartArchiveFormats} holding no {@link
+   * ChartArchiveFormat}s at all.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new, empty {@link ChartArchiveFormats}
+   */
+  public static ChartArchiveFormats empty() {
+    return new ChartArchiveFormats(false);
+  }
+
+  /**
+   * Returns {@code true} if the optional {@code
+   * com.github.luben:zstd-jni} library is present.
+   *
+   * @return {@code true} if Zstandard-compressed archives can be
+   * decoded; {@code false} otherwise
+   */
+  private static final boolean isZstdAvailable() {
+    try {
+      Class.forName("com.github.luben.zstd.ZstdInputStream", false, ChartArchiveFormats.class.getClassLoader());
+      return true;
+    } catch (final ClassNotFoundException | LinkageError notAvailable) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns a {@link ReadableByteChannel} that reads from the supplied
+   * {@link InputStream} and does not close it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Passing the returned {@link ReadableByteChannel} to the {@link
+   * #newInputStream(ReadableByteChannel)} method returns the supplied
+   * {@link InputStream} without any further wrapping.  If the supplied
+   * {@link InputStream} was returned by the {@link
+   * #newInputStream(FileChannel)} method and has not yet been read
+   * from, its {@link FileChannel} is returned instead, so that {@link
+   * ChartArchiveFormat}s can take advantage of it.</p>
+   *
+   * @param inputStream the {@link InputStream} to read from; must not
+   * be {@code null}
+   *
+   * @return a non-{@code null} {@link ReadableByteChannel}
+   *
+   * @exception NullPointerException if {@code inputStream} is {@code
+   * null}
+   */
+  static final ReadableByteChannel newChannel(final InputStream inputStream) {
+    if (inputStream instanceof FileChannelInputStream) {
+      final FileChannelInputStream fileChannelInputStream = (FileChannelInputStream)inputStream;
+      if (!fileChannelInputStream.consumed) {
+        return fileChannelInputStream.channel;
+      }
+    }
+    return new InputStreamChannel(inputStream);
+  }
+
+  /**
+   * Returns a buffered {@link InputStream} that reads from the
+   * supplied {@link FileChannel} and closes it when it is closed.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param channel the {@link FileChannel} to read from; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception NullPointerException if {@code channel} is {@code
+   * null}
+   *
+   * @see #newChannel(InputStream)
+   */
+  static final InputStream newInputStream(final FileChannel channel) {
+    return new FileChannelInputStream(channel);
+  }
+
+  /**
+   * Returns an {@link InputStream} that reads from the supplied
+   * {@link ReadableByteChannel} and does not close it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param channel the {@link ReadableByteChannel} to read from; must
+   * not be {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception NullPointerException if {@code channel} is {@code
+   * null}
+   *
+   * @see #newChannel(InputStream)
+   */
+  static final InputStream newInputStream(final ReadableByteChannel channel) {
+    Objects.requireNonNull(channel);
+    final InputStream returnValue;
+    if (channel instanceof InputStreamChannel) {
+      returnValue = ((InputStreamChannel)channel).inputStream;
+    } else {
+      returnValue = new BufferedInputStream(Channels.newInputStream(channel)) {
+          @Override
+          public final void close() {
+
+          }
+        };
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a {@link TarInputStream} reading the tape archive whose
+   * possibly compressed bytes are supplied by the supplied {@link
+   * InputStream}, if the supplied {@link ChartArchiveFormat} is one
+   * of the built-in tape archive formats, or {@code null} otherwise.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param format the {@link ChartArchiveFormat} that would load the
+   * archive; must not be {@code null}
+   *
+   * @param inputStream the {@link InputStream} supplying the archive;
+   * must not be {@code null}
+   *
+   * @return a {@link TarInputStream}, or {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @see ChartLineage
+   */
+  static final TarInputStream newTarInputStream(final ChartArchiveFormat format, final InputStream inputStream) throws IOException {
+    Objects.requireNonNull(format);
+    Objects.requireNonNull(inputStream);
+    final TarInputStream returnValue;
+    if (format instanceof TapeArchiveFormat) {
+      returnValue = new TarInputStream(((TapeArchiveFormat)format).decompress(inputStream));
+    } else {
+      returnValue = null;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Loads the chart whose archive is supplied by the supplied {@link
+   * InputStream} within the supplied {@link ChartLoadLimits}, if the
+   * supplied {@link ChartArchiveFormat} is one of the built-in tape
+   * archive or ZIP formats, or returns {@code null} without reading
+   * from the supplied {@link InputStream} otherwise.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * <p>The load is {@linkplain ChartLoadLimits#begin() admitted} by
+   * the supplied {@link ChartLoadLimits}, which may block the
+   * calling thread, and every entry is then read in sequence on the
+   * calling thread, so ZIP archives are not memory-mapped.  Once
+   * admitted, a load never waits for another thread, so it always
+   * finishes and releases its share of the memory budget.</p>
+   *
+   * @param format the {@link ChartArchiveFormat} that would load the
+   * archive; must not be {@code null}
+   *
+   * @param inputStream the {@link InputStream} supplying the archive;
+   * must not be {@code null}; will not be closed
+   *
+   * @param chartLoadLimits the {@link ChartLoadLimits} to enforce;
+   * must not be {@code null}
+   *
+   * @return a {@link Chart.Builder}, or {@code null}
+   *
+   * @exception NullPointerException if {@code format}, {@code
+   * inputStream} or {@code chartLoadLimits} is {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if a limit is exceeded or the
+   * chart could not be loaded for any other reason
+   *
+   * @see MavenRepositoryChartResolver#setChartLoadLimits(ChartLoadLimits)
+   */
+  static final Chart.Builder load(final ChartArchiveFormat format, final InputStream inputStream, final ChartLoadLimits chartLoadLimits) throws IOException, ChartResolverException {
+    Objects.requireNonNull(format);
+    Objects.requireNonNull(inputStream);
+    Objects.requireNonNull(chartLoadLimits);
+    if (!(format instanceof TapeArchiveFormat || format instanceof ZipArchiveFormat)) {
+      return null;
+    }
+    try (final ChartLoadLimits.Load load = chartLoadLimits.begin()) {
+      final ParallelChartLoader loader = new ParallelChartLoader(Runnable::run, load);
+      if (format instanceof TapeArchiveFormat) {
+        return loader.load(new TarInputStream(((TapeArchiveFormat)format).decompress(inputStream)));
+      }
+      return loader.load(new ZipInputStream(inputStream));
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A {@link BufferedInputStream} reading from a {@link FileChannel}
+   * that remembers whether it has been read from.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class FileChannelInputStream extends BufferedInputStream {
+
+    private final FileChannel channel;
+
+    private volatile boolean consumed;
+
+    private FileChannelInputStream(final FileChannel channel) {
+      super(Channels.newInputStream(Objects.requireNonNull(channel)));
+      this.channel = channel;
+    }
+
+    @Override
+    public final int read() throws IOException {
+      this.consumed = true;
+      return super.read();
+    }
+
+    @Override
+    public final int read(final byte[] bytes, final int offset, final int length) throws IOException {
+      this.consumed = true;
+      return super.read(bytes, offset, length);
+    }
+
+    @Override
+    public final long skip(final long n) throws IOException {
+      this.consumed = true;
+      return super.skip(n);
+    }
+
+  }
+
+  /**
+   * A {@link ReadableByteChannel} reading from an {@link InputStream}
+   * that it never closes.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class InputStreamChannel implements ReadableByteChannel {
+
+    private final InputStream inputStream;
+
+    private volatile boolean open;
+
+    private InputStreamChannel(final InputStream inputStream) {
+      super();
+      Objects.requireNonNull(inputStream);
+      this.inputStream = new FilterInputStream(inputStream) {
+          @Override
+          public final void close() {
+
+          }
+        };
+      this.open = true;
+    }
+
+    @Override
+    public final int read(final ByteBuffer target) throws IOException {
+      if (!this.open) {
+        throw new ClosedChannelException();
+      }
+      final int length = target.remaining();
+      if (length == 0) {
+        return 0;
+      }
+      final int returnValue;
+      if (target.hasArray()) {
+        returnValue = this.inputStream.read(target.array(), target.arrayOffset() + target.position(), length);
+        if (returnValue > 0) {
+          target.position(target.position() + returnValue);
+        }
+      } else {
+        final byte[] bytes = new byte[Math.min(length, 8192)];
+        returnValue = this.inputStream.read(bytes, 0, bytes.length);
+        if (returnValue > 0) {
+          target.put(bytes, 0, returnValue);
+        }
+      }
+      return returnValue;
+    }
+
+    @Override
+    public final boolean isOpen() {
+      return this.open;
+    }
+
+    @Override
+    public final void close() {
+      this.open = false;
+    }
+
+  }
+
+  /**
+   * A {@link ChartArchiveFormat} for tape archives, uncompressed
+   * unless a subclass {@linkplain #decompress(InputStream)
+   * decompresses} them.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static class TapeArchiveFormat implements ChartArchiveFormat {
+
+    private final Set<String> packagings;
+
+    private TapeArchiveFormat(final String... packagings) {
+      super();
+      this.packagings = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(packagings)));
+    }
+
+    @Override
+    public final Set<String> getPackagings() {
+      return this.packagings;
+    }
+
+    /**
+     * Returns an {@link InputStream} supplying the uncompressed bytes
+     * of the tape archive whose possibly compressed bytes are supplied
+     * by the supplied {@link InputStream}.
+     *
+     * <p>This implementation returns the supplied {@link
+     * InputStream}.</p>
+     *
+     * @param inputStream the {@link InputStream} supplying the
+     * archive; must not be {@code null}
+     *
+     * @return a non-{@code null} {@link InputStream}
+     *
+     * @exception IOException if an input or output error occurs
+     */
+    InputStream decompress(final InputStream inputStream) throws IOException {
+      return inputStream;
+    }
+
+    @Override
+    public final Chart.Builder load(final ReadableByteChannel channel, final Executor executor) throws IOException, ChartResolverException {
+      final TarInputStream tarInputStream = new TarInputStream(this.decompress(newInputStream(channel)));
+      final Chart.Builder returnValue;
+      if (executor == null) {
+        try (final TapeArchiveChartLoader loader = new TapeArchiveChartLoader()) {
+          returnValue = loader.load(tarInputStream);
+        }
+      } else {
+        returnValue = new ParallelChartLoader(executor).load(tarInputStream);
+      }
+      return returnValue;
+    }
+
+    @Override
+    public final Chart.Builder loadMetadata(final ReadableByteChannel channel) throws IOException {
+      return ParallelChartLoader.loadMetadata(new TarInputStream(this.decompress(newInputStream(channel))));
+    }
+
+  }
+
+  /**
+   * A {@link ChartArchiveFormat} for GZIP-compressed tape archives.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class GzipTapeArchiveFormat extends TapeArchiveFormat {
+
+    private GzipTapeArchiveFormat() {
+      super("tgz", "tar.gz", "helm.tar.gz");
+    }
+
+    @Override
+    final InputStream decompress(final InputStream inputStream) throws IOException {
+      return new GZIPInputStream(inputStream);
+    }
+
+  }
+
+  /**
+   * A {@link ChartArchiveFormat} for Zstandard-compressed tape
+   * archives.
+   *
+   * <p>This class refers to classes in the optional {@code
+   * com.github.luben:zstd-jni} library and so must not be loaded
+   * unless the {@link ChartArchiveFormats#isZstdAvailable()} method
+   * returns {@code true}.</p>
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ZstdTapeArchiveFormat extends TapeArchiveFormat {
+
+    private ZstdTapeArchiveFormat() {
+      super("tar.zst", "tzst");
+    }
+
+    @Override
+    final InputStream decompress(final InputStream inputStream) throws IOException {
+      try {
+        return new ZstdInputStream(inputStream);
+      } catch (final LinkageError linkageError) {
+        // The native library could not be loaded on this platform.
+        throw new IOException(linkageError.getMessage(), linkageError);
+      }
+    }
+
+  }
+
+  /**
+   * A {@link ChartArchiveFormat} for ZIP archives.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ZipArchiveFormat implements ChartArchiveFormat {
+
+    private static final Set<String> PACKAGINGS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList("zip", "jar")));
+
+    private ZipArchiveFormat() {
+      super();
+    }
+
+    @Override
+    public final Set<String> getPackagings() {
+      return PACKAGINGS;
+    }
+
+    /**
+     * Loads the chart contained by the ZIP archive supplied by the
+     * supplied {@link ReadableByteChannel}.
+     *
+     * <p>If the supplied {@link ReadableByteChannel} is a {@link
+     * FileChannel}, the archive is {@linkplain MappedZipChartLoader
+     * memory-mapped} and its entries are located using its central
+     * directory; otherwise its entries are read in sequence.</p>
+     */
+    @Override
+    public final Chart.Builder load(final ReadableByteChannel channel, final Executor executor) throws IOException, ChartResolverException {
+      if (channel instanceof FileChannel) {
+        final Chart.Builder returnValue = MappedZipChartLoader.load((FileChannel)channel, executor == null ? Runnable::run : executor);
+        if (returnValue != null) {
+          return returnValue;
+        }
+      }
+      final ZipInputStream zipInputStream = new ZipInputStream(newInputStream(channel));
+      final Chart.Builder returnValue;
+      if (executor == null) {
+        try (final ZipInputStreamChartLoader loader = new ZipInputStreamChartLoader()) {
+          returnValue = loader.load(zipInputStream);
+        }
+      } else {
+        returnValue = new ParallelChartLoader(executor).load(zipInputStream);
+      }
+      return returnValue;
+    }
+
+    /**
+     * Loads the metadata and values of the chart contained by the ZIP
+     * archive supplied by the supplied {@link ReadableByteChannel}.
+     *
+     * <p>If the supplied {@link ReadableByteChannel} is a {@link
+     * FileChannel}, only the entries bearing the metadata and values
+     * are {@linkplain MappedZipChartLoader#loadMetadata(FileChannel)
+     * read}; otherwise entries are read in sequence until both have
+     * been found.</p>
+     */
+    @Override
+    public final Chart.Builder loadMetadata(final ReadableByteChannel channel) throws IOException {
+      if (channel instanceof FileChannel) {
+        final Chart.Builder returnValue = MappedZipChartLoader.loadMetadata((FileChannel)channel);
+        if (returnValue != null) {
+          return returnValue;
+        }
+      }
+      return ParallelChartLoader.loadMetadata(new ZipInputStream(newInputStream(channel)));
+    }
+
+  }
+
+}
@@ -0,0 +1,617 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * A bounded, thread-safe, in-memory cache of parsed {@link Chart}
+ * messages indexed by the coordinates of the resolved {@link
+ * Artifact} whose {@linkplain Artifact#getFile() file} they were
+ * loaded from.
+ *
+ * <p>Entries are keyed by the resolved artifact's {@code groupId},
+ * {@code artifactId}, {@code extension}, {@code classifier} and
+ * {@code version}, together with the {@linkplain File#length()
+ * length} and {@linkplain File#lastModified() last modification
+ * time} of its file, so a chart whose file is replaced in the local
+ * repository is never served stale.  When the cache is full the
+ * least recently used entry is evicted.</p>
+ *
+ * <p>Because {@link Chart} messages are immutable, each successful
+ * {@linkplain #get(Artifact) lookup} returns a fresh {@link
+ * Chart.Builder} that the caller is free to mutate.</p>
+ *
+ * <p>An entry may also record the {@link ChartVerifier} that
+ * {@linkplain #put(Artifact, Chart, ChartVerifier, byte[]) verified}
+ * its chart's archive, and the SHA-256 digest of that archive, so
+ * that a chart need not be verified again on every {@linkplain
+ * #get(Artifact, ChartVerifier) lookup}.  Since a file's length and
+ * last modification time do not prove that its contents are
+ * unchanged, such a lookup digests the file again and serves the
+ * entry only if the digest still matches.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#getChartCache()
+ */
+public class ChartCache {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default maximum number of entries a {@link ChartCache} will
+   * hold.
+   *
+   * @see #ChartCache()
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 64;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The maximum number of entries this {@link ChartCache} will hold.
+   *
+   * <p>This field is always greater than zero.</p>
+   *
+   * @see #getMaximumSize()
+   */
+  private final int maximumSize;
+
+  /**
+   * The access-ordered {@link Map} holding cached {@link Chart}s.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * <p>All access to this field must be synchronized on it.</p>
+   */
+  private final Map<Key, CachedChart> charts;
+
+  /**
+   * The number of lookups that found a cached {@link Chart}.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getHitCount()
+   */
+  private final AtomicLong hitCount;
+
+  /**
+   * The number of lookups that did not find a cached {@link Chart}.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getMissCount()
+   */
+  private final AtomicLong missCount;
+
+  /**
+   * The number of {@link Chart}s that have been evicted to make room
+   * for others.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getEvictionCount()
+   */
+  private final AtomicLong evictionCount;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartCache} that will hold at most {@link
+   * #DEFAULT_MAXIMUM_SIZE} entries.
+   *
+   * @see #ChartCache(int)
+   */
+  public ChartCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * Creates a new {@link ChartCache}.
+   *
+   * @param maximumSize the maximum number of entries this {@link
+   * ChartCache} will hold; must be greater than zero
+   *
+   * @exception IllegalArgumentException if {@code maximumSize} is
+   * less than or equal to zero
+   *
+   * @see #getMaximumSize()
+   */
+  public ChartCache(final int maximumSize) {
+    super();
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize <= 0: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.hitCount = new AtomicLong();
+    this.missCount = new AtomicLong();
+    this.evictionCount = new AtomicLong();
+    this.charts = new LinkedHashMap<Key, CachedChart>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected final boolean removeEldestEntry(final Map.Entry<Key, CachedChart> eldest) {
+          final boolean returnValue = this.size() > ChartCache.this.maximumSize;
+          if (returnValue) {
+            ChartCache.this.evictionCount.incrementAndGet();
+          }
+          return returnValue;
+        }
+      };
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the maximum number of entries this {@link ChartCache}
+   * will hold.
+   *
+   * @return the maximum number of entries this {@link ChartCache}
+   * will hold; always greater than zero
+   *
+   * @see #ChartCache(int)
+   */
+  public final int getMaximumSize() {
+    return this.maximumSize;
+  }
+
+  /**
+   * Returns a new {@link Chart.Builder} initialized from the {@link
+   * Chart} cached for the supplied resolved {@link Artifact}, or
+   * {@code null} if there is no such {@link Chart}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param resolvedChart a resolved {@link Artifact} whose {@link
+   * Artifact#getFile()} method does not return {@code null}; must not
+   * be {@code null}
+   *
+   * @return a new {@link Chart.Builder}, or {@code null}
+   *
+   * @exception NullPointerException if {@code resolvedChart} is
+   * {@code null}
+   *
+   * @exception IllegalArgumentException if {@code resolvedChart} has
+   * not been resolved
+   *
+   * @see #put(Artifact, Chart)
+   */
+  public Chart.Builder get(final Artifact resolvedChart) {
+    final Key key = new Key(resolvedChart);
+    final CachedChart cachedChart;
+    synchronized (this.charts) {
+      cachedChart = this.charts.get(key);
+    }
+    final Chart.Builder returnValue;
+    if (cachedChart == null) {
+      this.missCount.incrementAndGet();
+      returnValue = null;
+    } else {
+      this.hitCount.incrementAndGet();
+      returnValue = cachedChart.chart.toBuilder();
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a new {@link Chart.Builder} initialized from the {@link
+   * Chart} cached for the supplied resolved {@link Artifact}, or
+   * {@code null} if there is no such {@link Chart} or if it was not
+   * {@linkplain #put(Artifact, Chart, ChartVerifier, byte[])
+   * verified}
+   * by the supplied {@link ChartVerifier}.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * <p>A {@link Chart} that is present but was not verified by the
+   * supplied {@link ChartVerifier} counts as a miss.  So does one
+   * whose archive, when digested again, no longer has the SHA-256
+   * digest recorded when it was verified, or cannot be read; such an
+   * entry is removed.</p>
+   *
+   * @param resolvedChart a resolved {@link Artifact} whose {@link
+   * Artifact#getFile()} method does not return {@code null}; must not
+   * be {@code null}
+   *
+   * @param chartVerifier the {@link ChartVerifier} that must have
+   * verified the cached {@link Chart}; must not be {@code null}
+   *
+   * @return a new {@link Chart.Builder}, or {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code resolvedChart} has
+   * not been resolved
+   *
+   * @see #put(Artifact, Chart, ChartVerifier, byte[])
+   */
+  public Chart.Builder get(final Artifact resolvedChart, final ChartVerifier chartVerifier) {
+    Objects.requireNonNull(chartVerifier);
+    final Key key = new Key(resolvedChart);
+    final CachedChart cachedChart;
+    synchronized (this.charts) {
+      cachedChart = this.charts.get(key);
+    }
+    final Chart.Builder returnValue;
+    if (cachedChart == null || cachedChart.chartVerifier != chartVerifier) {
+      this.missCount.incrementAndGet();
+      returnValue = null;
+    } else if (!matches(resolvedChart.getFile(), cachedChart.sha256)) {
+      synchronized (this.charts) {
+        this.charts.remove(key, cachedChart);
+      }
+      this.missCount.incrementAndGet();
+      returnValue = null;
+    } else {
+      this.hitCount.incrementAndGet();
+      returnValue = cachedChart.chart.toBuilder();
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a copy of the SHA-256 digest of the archive of the {@link
+   * Chart} cached for the supplied resolved {@link Artifact}, as
+   * recorded when it was {@linkplain #put(Artifact, Chart,
+   * ChartVerifier, byte[]) verified}, or {@code null} if there is no
+   * such {@link Chart} or it was not verified.
+   *
+   * <p>This method may return {@code null}.  It does not count as a
+   * hit or a miss.</p>
+   *
+   * @param resolvedChart a resolved {@link Artifact} whose {@link
+   * Artifact#getFile()} method does not return {@code null}; must not
+   * be {@code null}
+   *
+   * @return a SHA-256 digest, or {@code null}
+   *
+   * @exception NullPointerException if {@code resolvedChart} is
+   * {@code null}
+   *
+   * @exception IllegalArgumentException if {@code resolvedChart} has
+   * not been resolved
+   */
+  public byte[] getSha256(final Artifact resolvedChart) {
+    final Key key = new Key(resolvedChart);
+    final CachedChart cachedChart;
+    synchronized (this.charts) {
+      cachedChart = this.charts.get(key);
+    }
+    return cachedChart == null || cachedChart.sha256 == null ? null : cachedChart.sha256.clone();
+  }
+
+  /**
+   * Caches the supplied {@link Chart} under a key derived from the
+   * supplied resolved {@link Artifact}, evicting the least recently
+   * used entry if necessary.
+   *
+   * @param resolvedChart a resolved {@link Artifact} whose {@link
+   * Artifact#getFile()} method does not return {@code null}; must not
+   * be {@code null}
+   *
+   * @param chart the {@link Chart} to cache; must not be {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code resolvedChart} has
+   * not been resolved
+   *
+   * @see #get(Artifact)
+   */
+  public void put(final Artifact resolvedChart, final Chart chart) {
+    Objects.requireNonNull(chart);
+    final Key key = new Key(resolvedChart);
+    synchronized (this.charts) {
+      this.charts.put(key, new CachedChart(chart, null, null));
+    }
+  }
+
+  /**
+   * Caches the supplied {@link Chart}, which was loaded from an
+   * archive that the supplied {@link ChartVerifier} verified and
+   * whose SHA-256 digest is supplied, under a key derived from the
+   * supplied resolved {@link Artifact}, evicting the least recently
+   * used entry if necessary.
+   *
+   * @param resolvedChart a resolved {@link Artifact} whose {@link
+   * Artifact#getFile()} method does not return {@code null}; must not
+   * be {@code null}
+   *
+   * @param chart the {@link Chart} to cache; must not be {@code null}
+   *
+   * @param chartVerifier the {@link ChartVerifier} that verified the
+   * archive of {@code chart}; must not be {@code null}
+   *
+   * @param sha256 the SHA-256 digest of the archive of {@code chart};
+   * must not be {@code null}; will be copied
+   *
+   * @exception NullPointerException if any parameter is {@code null}
+   *
+   * @exception IllegalArgumentException if {@code resolvedChart} has
+   * not been resolved
+   *
+   * @see #get(Artifact, ChartVerifier)
+   *
+   * @see #getSha256(Artifact)
+   */
+  public void put(final Artifact resolvedChart, final Chart chart, final ChartVerifier chartVerifier, final byte[] sha256) {
+    Objects.requireNonNull(chart);
+    Objects.requireNonNull(chartVerifier);
+    Objects.requireNonNull(sha256);
+    final Key key = new Key(resolvedChart);
+    synchronized (this.charts) {
+      this.charts.put(key, new CachedChart(chart, chartVerifier, sha256.clone()));
+    }
+  }
+
+  /**
+   * Removes all entries from this {@link ChartCache}.
+   *
+   * <p>The hit, miss and eviction counts are not reset.</p>
+   */
+  public void clear() {
+    synchronized (this.charts) {
+      this.charts.clear();
+    }
+  }
+
+  /**
+   * Returns the number of entries currently held by this {@link
+   * ChartCache}.
+   *
+   * @return the number of entries currently held by this {@link
+   * ChartCache}; never less than zero
+   */
+  public int size() {
+    synchronized (this.charts) {
+      return this.charts.size();
+    }
+  }
+
+  /**
+   * Returns the number of {@linkplain #get(Artifact) lookups} that
+   * found a cached {@link Chart}.
+   *
+   * @return the number of cache hits; never less than zero
+   */
+  public final long getHitCount() {
+    return this.hitCount.get();
+  }
+
+  /**
+   * Returns the number of {@linkplain #get(Artifact) lookups} that
+   * did not find a cached {@link Chart}.
+   *
+   * @return the number of cache misses; never less than zero
+   */
+  public final long getMissCount() {
+    return this.missCount.get();
+  }
+
+  /**
+   * Returns the number of entries that have been evicted from this
+   * {@link ChartCache} to make room for others.
+   *
+   * @return the number of evictions; never less than zero
+   */
+  public final long getEvictionCount() {
+    return this.evictionCount.get();
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * ChartCache}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String} representation of this
+   * {@link ChartCache}
+   */
+  @Override
+  public String toString() {
+    return this.getClass().getSimpleName() +
+      "[size=" + this.size() +
+      ", maximumSize=" + this.getMaximumSize() +
+      ", hits=" + this.getHitCount() +
+      ", misses=" + this.getMissCount() +
+      ", evictions=" + this.getEvictionCount() + "]";
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns {@code true} if the contents of the supplied {@link File}
+   * have the supplied SHA-256 digest.
+   *
+   * @param file the {@link File} to digest; must not be {@code null}
+   *
+   * @param sha256 the expected SHA-256 digest; may be {@code null} in
+   * which case {@code false} will be returned
+   *
+   * @return {@code true} if the digests match; {@code false} if they
+   * do not or if {@code file} could not be read
+   *
+   * @exception NullPointerException if {@code file} is {@code null}
+   */
+  private static final boolean matches(final File file, final byte[] sha256) {
+    Objects.requireNonNull(file);
+    if (sha256 == null) {
+      return false;
+    }
+    final MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException noSuchAlgorithmException) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(noSuchAlgorithmException.getMessage(), noSuchAlgorithmException);
+    }
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final ByteBuffer buffer = ByteBuffer.allocate(8192);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        messageDigest.update(buffer);
+        buffer.clear();
+      }
+    } catch (final IOException ioException) {
+      return false;
+    }
+    return MessageDigest.isEqual(sha256, messageDigest.digest());
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * An immutable cached {@link Chart}, together with the {@link
+   * ChartVerifier} that verified its archive, if any, and the
+   * SHA-256 digest of that archive.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class CachedChart {
+
+    private final Chart chart;
+
+    private final ChartVerifier chartVerifier;
+
+    private final byte[] sha256;
+
+    private CachedChart(final Chart chart, final ChartVerifier chartVerifier, final byte[] sha256) {
+      super();
+      this.chart = chart;
+      this.chartVerifier = chartVerifier;
+      this.sha256 = sha256;
+    }
+
+  }
+
+  /**
+   * An immutable key identifying a particular resolved chart file.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Key {
+
+    private final String groupId;
+
+    private final String artifactId;
+
+    private final String extension;
+
+    private final String classifier;
+
+    private final String version;
+
+    private final long length;
+
+    private final long lastModified;
+
+    private final int hashCode;
+
+    private Key(final Artifact resolvedChart) {
+      super();
+      Objects.requireNonNull(resolvedChart);
+      final File file = resolvedChart.getFile();
+      if (file == null) {
+        throw new IllegalArgumentException("resolvedChart.getFile() == null: " + resolvedChart);
+      }
+      this.groupId = resolvedChart.getGroupId();
+      this.artifactId = resolvedChart.getArtifactId();
+      this.extension = resolvedChart.getExtension();
+      this.classifier = resolvedChart.getClassifier();
+      this.version = resolvedChart.getVersion();
+      this.length = file.length();
+      this.lastModified = file.lastModified();
+      this.hashCode = Objects.hash(this.groupId, this.artifactId, this.extension, this.classifier, this.version, this.length, this.lastModified);
+    }
+
+    @Override
+    public final int hashCode() {
+      return this.hashCode;
+    }
+
+    @Override
+    public final boolean equals(final Object other) {
+      if (other == this) {
+        return true;
+      } else if (other instanceof Key) {
+        final Key her = (Key)other;
+        return
+          this.length == her.length &&
+          this.lastModified == her.lastModified &&
+          Objects.equals(this.groupId, her.groupId) &&
+          Objects.equals(this.artifactId, her.artifactId) &&
+          Objects.equals(this.extension, her.extension) &&
+          Objects.equals(this.classifier, her.classifier) &&
+          Objects.equals(this.version, her.version);
+      } else {
+        return false;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,345 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.lang.ref.WeakReference;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import hapi.chart.TemplateOuterClass.Template;
+
+/**
+ * A thread-safe, in-memory pool of canonical {@link ByteString}s
+ * that lets the templates and files of many loaded charts share
+ * storage when their contents are identical.
+ *
+ * <p>Different versions of the same chart, and different subcharts
+ * of one chart, often contain byte-for-byte identical templates and
+ * files.  {@linkplain #intern(Chart.Builder) Interning} a {@link
+ * Chart.Builder} replaces each template's {@linkplain
+ * Template#getData() data} and each file's {@linkplain
+ * Any#getValue() value}, in it and in all of its dependencies, with
+ * the first {@link ByteString} of equal content this {@link
+ * ChartContentInterner} saw, so that only one copy of each distinct
+ * content is retained.</p>
+ *
+ * <p>{@link ByteString}s are keyed by their content: a {@link
+ * ByteString}'s {@linkplain ByteString#hashCode() hash code} is
+ * computed from, and its {@linkplain ByteString#equals(Object)
+ * equality} is decided by, the bytes it holds.  Canonical {@link
+ * ByteString}s are only weakly referenced, so this {@link
+ * ChartContentInterner} never keeps content alive that no chart
+ * refers to any more.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setChartContentInterner(ChartContentInterner)
+ */
+public class ChartContentInterner {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default size, in bytes, below which {@link ByteString}s are
+   * not interned.
+   *
+   * @see #ChartContentInterner()
+   */
+  public static final int DEFAULT_MINIMUM_SIZE = 64;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The size, in bytes, below which {@link ByteString}s are not
+   * interned, because an entry in {@link #pool} would cost more than
+   * sharing them saves.
+   *
+   * <p>This field is never less than zero.</p>
+   *
+   * @see #getMinimumSize()
+   */
+  private final int minimumSize;
+
+  /**
+   * A {@link WeakHashMap} whose keys are canonical {@link
+   * ByteString}s and whose values are {@link WeakReference}s to those
+   * same keys.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * <p>All access to this field must be synchronized on it.</p>
+   */
+  private final Map<ByteString, WeakReference<ByteString>> pool;
+
+  /**
+   * The number of {@link ByteString}s that were replaced by a
+   * canonical {@link ByteString} of equal content.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getHitCount()
+   */
+  private final AtomicLong hitCount;
+
+  /**
+   * The total size, in bytes, of the {@link ByteString}s that were
+   * replaced by a canonical {@link ByteString} of equal content.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getBytesShared()
+   */
+  private final AtomicLong bytesShared;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartContentInterner} that does not intern
+   * {@link ByteString}s smaller than {@link #DEFAULT_MINIMUM_SIZE}
+   * bytes.
+   *
+   * @see #ChartContentInterner(int)
+   */
+  public ChartContentInterner() {
+    this(DEFAULT_MINIMUM_SIZE);
+  }
+
+  /**
+   * Creates a new {@link ChartContentInterner}.
+   *
+   * @param minimumSize the size, in bytes, below which {@link
+   * ByteString}s are not interned; must not be less than zero
+   *
+   * @exception IllegalArgumentException if {@code minimumSize} is
+   * less than zero
+   *
+   * @see #getMinimumSize()
+   */
+  public ChartContentInterner(final int minimumSize) {
+    super();
+    if (minimumSize < 0) {
+      throw new IllegalArgumentException("minimumSize < 0: " + minimumSize);
+    }
+    this.minimumSize = minimumSize;
+    this.pool = new WeakHashMap<>();
+    this.hitCount = new AtomicLong();
+    this.bytesShared = new AtomicLong();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the size, in bytes, below which {@link ByteString}s are
+   * not interned.
+   *
+   * @return the minimum size of interned {@link ByteString}s; never
+   * less than zero
+   *
+   * @see #ChartContentInterner(int)
+   */
+  public final int getMinimumSize() {
+    return this.minimumSize;
+  }
+
+  /**
+   * Replaces the data of every template and the value of every file
+   * of the supplied {@link Chart.Builder}, and of all of its
+   * dependencies, with {@linkplain #intern(ByteString) canonical}
+   * {@link ByteString}s, and returns the supplied {@link
+   * Chart.Builder}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param chart the {@link Chart.Builder} to intern; must not be
+   * {@code null}
+   *
+   * @return {@code chart}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   */
+  public Chart.Builder intern(final Chart.Builder chart) {
+    Objects.requireNonNull(chart);
+    final int templatesCount = chart.getTemplatesCount();
+    for (int i = 0; i < templatesCount; i++) {
+      final Template template = chart.getTemplates(i);
+      assert template != null;
+      final ByteString data = template.getData();
+      final ByteString canonicalData = this.intern(data);
+      if (canonicalData != data) {
+        chart.setTemplates(i, template.toBuilder().setData(canonicalData).build());
+      }
+    }
+    final int filesCount = chart.getFilesCount();
+    for (int i = 0; i < filesCount; i++) {
+      final Any file = chart.getFiles(i);
+      assert file != null;
+      final ByteString value = file.getValue();
+      final ByteString canonicalValue = this.intern(value);
+      if (canonicalValue != value) {
+        chart.setFiles(i, file.toBuilder().setValue(canonicalValue).build());
+      }
+    }
+    final List<Chart.Builder> dependencies = chart.getDependenciesBuilderList();
+    if (dependencies != null) {
+      for (final Chart.Builder dependency : dependencies) {
+        if (dependency != null) {
+          this.intern(dependency);
+        }
+      }
+    }
+    return chart;
+  }
+
+  /**
+   * Returns the canonical {@link ByteString} whose content is equal
+   * to that of the supplied {@link ByteString}, making the supplied
+   * {@link ByteString} canonical if there is none yet.
+   *
+   * <p>This method returns {@code null} only if {@code bytes} is
+   * {@code null}.  {@link ByteString}s smaller than the {@linkplain
+   * #getMinimumSize() minimum size} are returned as is.</p>
+   *
+   * @param bytes the {@link ByteString} to intern; may be {@code
+   * null}
+   *
+   * @return a {@link ByteString} equal to {@code bytes}, or {@code
+   * null}
+   */
+  public ByteString intern(final ByteString bytes) {
+    final ByteString returnValue;
+    if (bytes == null || bytes.size() < this.minimumSize) {
+      returnValue = bytes;
+    } else {
+      ByteString canonical = null;
+      synchronized (this.pool) {
+        final WeakReference<ByteString> reference = this.pool.get(bytes);
+        if (reference != null) {
+          canonical = reference.get();
+        }
+        if (canonical == null) {
+          this.pool.put(bytes, new WeakReference<>(bytes));
+        }
+      }
+      if (canonical == null) {
+        returnValue = bytes;
+      } else {
+        if (canonical != bytes) {
+          this.hitCount.incrementAndGet();
+          this.bytesShared.addAndGet(bytes.size());
+        }
+        returnValue = canonical;
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Forgets all canonical {@link ByteString}s.
+   *
+   * <p>{@link ByteString}s already shared by loaded charts stay
+   * shared.  The hit count and the number of bytes shared are not
+   * reset.</p>
+   */
+  public void clear() {
+    synchronized (this.pool) {
+      this.pool.clear();
+    }
+  }
+
+  /**
+   * Returns the number of canonical {@link ByteString}s currently
+   * held by this {@link ChartContentInterner}.
+   *
+   * @return the number of canonical {@link ByteString}s; never less
+   * than zero
+   */
+  public int size() {
+    synchronized (this.pool) {
+      return this.pool.size();
+    }
+  }
+
+  /**
+   * Returns the number of {@link ByteString}s that were replaced by
+   * a canonical {@link ByteString} of equal content.
+   *
+   * @return the number of hits; never less than zero
+   */
+  public final long getHitCount() {
+    return this.hitCount.get();
+  }
+
+  /**
+   * Returns the total size, in bytes, of the {@link ByteString}s that
+   * were replaced by a canonical {@link ByteString} of equal content.
+   *
+   * <p>This is the amount of memory that interning has made
+   * available for reclamation, not counting the overhead of the
+   * replaced {@link ByteString} objects themselves.</p>
+   *
+   * @return the number of bytes shared; never less than zero
+   */
+  public final long getBytesShared() {
+    return this.bytesShared.get();
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * ChartContentInterner}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String} representation of this
+   * {@link ChartContentInterner}
+   */
+  @Override
+  public String toString() {
+    return this.getClass().getSimpleName() +
+      "[size=" + this.size() +
+      ", minimumSize=" + this.getMinimumSize() +
+      ", hits=" + this.getHitCount() +
+      ", bytesShared=" + this.getBytesShared() + "]";
+  }
+
+}
@@ -0,0 +1,546 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarInputStream;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A bounded, thread-safe, in-memory record of the most recently
+ * loaded version of each chart, used to load the next version of the
+ * same chart incrementally.
+ *
+ * <p>Charts belong to the same lineage when their {@code groupId},
+ * {@code artifactId}, {@code classifier} and {@code extension} are
+ * equal.  When a tape archive is loaded through a {@link
+ * ChartLineage}, each of its entries is compared with the entry of
+ * the same name in the previously loaded version of the chart in the
+ * same lineage: entries whose {@linkplain TarEntry#getSize() sizes}
+ * in their tape archive headers differ are read afresh, and the
+ * contents of the rest are compared with the previous contents as
+ * they are decompressed.  An entry whose contents are unchanged
+ * reuses the previous version's {@link ByteString} instead of
+ * allocating a new one, and an unchanged packed subchart reuses the
+ * previous version's parsed subchart instead of being decompressed
+ * and parsed again.  Only changed entries are rebuilt.  The archive
+ * itself must still be decompressed in full, because compressed tape
+ * archives cannot be read out of order.</p>
+ *
+ * <p>Each lineage retains the previously loaded version's entries,
+ * which it mostly shares with the {@link Chart}s built from them, and
+ * the compressed bytes of its packed subcharts.  When the record is
+ * full the least recently used lineage is forgotten.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setChartLineage(ChartLineage)
+ */
+public class ChartLineage {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default maximum number of lineages a {@link ChartLineage}
+   * will remember.
+   *
+   * @see #ChartLineage()
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 64;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The maximum number of lineages this {@link ChartLineage} will
+   * remember.
+   *
+   * <p>This field is always greater than zero.</p>
+   *
+   * @see #getMaximumSize()
+   */
+  private final int maximumSize;
+
+  /**
+   * The access-ordered {@link Map} holding the most recently loaded
+   * {@link Generation} of each lineage.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * <p>All access to this field must be synchronized on it.</p>
+   */
+  private final Map<Key, Generation> generations;
+
+  /**
+   * The number of archive entries whose previous contents were
+   * reused.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getReusedEntryCount()
+   */
+  private final AtomicLong reusedEntryCount;
+
+  /**
+   * The number of packed subcharts whose previously parsed form was
+   * reused.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getReusedSubchartCount()
+   */
+  private final AtomicLong reusedSubchartCount;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartLineage} that will remember at most
+   * {@link #DEFAULT_MAXIMUM_SIZE} lineages.
+   *
+   * @see #ChartLineage(int)
+   */
+  public ChartLineage() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * Creates a new {@link ChartLineage}.
+   *
+   * @param maximumSize the maximum number of lineages this {@link
+   * ChartLineage} will remember; must be greater than zero
+   *
+   * @exception IllegalArgumentException if {@code maximumSize} is
+   * less than or equal to zero
+   *
+   * @see #getMaximumSize()
+   */
+  public ChartLineage(final int maximumSize) {
+    super();
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize <= 0: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.reusedEntryCount = new AtomicLong();
+    this.reusedSubchartCount = new AtomicLong();
+    this.generations = new LinkedHashMap<Key, Generation>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected final boolean removeEldestEntry(final Map.Entry<Key, Generation> eldest) {
+          return this.size() > ChartLineage.this.maximumSize;
+        }
+      };
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the maximum number of lineages this {@link ChartLineage}
+   * will remember.
+   *
+   * @return the maximum number of lineages; always greater than zero
+   *
+   * @see #ChartLineage(int)
+   */
+  public final int getMaximumSize() {
+    return this.maximumSize;
+  }
+
+  /**
+   * Returns the version of the chart most recently loaded in the
+   * lineage of the supplied {@link Artifact}, or {@code null} if
+   * there is none.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param chart an {@link Artifact} identifying a chart; must not be
+   * {@code null}
+   *
+   * @return the most recently loaded version, or {@code null}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   */
+  public String getVersion(final Artifact chart) {
+    final Key key = new Key(chart);
+    final Generation generation;
+    synchronized (this.generations) {
+      generation = this.generations.get(key);
+    }
+    return generation == null ? null : generation.version;
+  }
+
+  /**
+   * Loads the chart whose tape archive the supplied {@link
+   * TarInputStream} reads, reusing whatever it can from the
+   * previously loaded version of the chart in the lineage of the
+   * supplied {@link Artifact}, and then records it as the most
+   * recently loaded version of that lineage.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The resulting {@link Chart.Builder} is identical to the one a
+   * full load would produce.</p>
+   *
+   * @param chart the resolved {@link Artifact} being loaded; must not
+   * be {@code null}
+   *
+   * @param tarInputStream the {@link TarInputStream} to read; must
+   * not be {@code null}; will not be closed
+   *
+   * @param executor an {@link Executor} across which the work of
+   * building the chart may be spread; may be {@code null} in which
+   * case it will be built on the calling thread
+   *
+   * @param load the {@link ChartLoadLimits.Load} through which
+   * archive entries will be read and charged; may be {@code null} in
+   * which case entries will be read without limits
+   *
+   * @return a non-{@code null} {@link Chart.Builder}
+   *
+   * @exception NullPointerException if {@code chart} or {@code
+   * tarInputStream} is {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if a {@linkplain
+   * ChartLoadLimits limit} is exceeded or the chart could not be
+   * loaded for any other reason
+   */
+  final Chart.Builder load(final Artifact chart, final TarInputStream tarInputStream, final Executor executor, final ChartLoadLimits.Load load) throws IOException, ChartResolverException {
+    Objects.requireNonNull(tarInputStream);
+    final Key key = new Key(chart);
+    final Generation previous;
+    synchronized (this.generations) {
+      previous = this.generations.get(key);
+    }
+    final Map<String, ByteString> previousEntries = previous == null ? Collections.emptyMap() : previous.entries;
+    final Map<ByteString, Chart> previousSubcharts = previous == null ? Collections.emptyMap() : previous.subcharts;
+
+    final ParallelChartLoader loader = new ParallelChartLoader(executor == null ? Runnable::run : executor, load);
+    final List<Entry<String, ByteString>> entries = new ArrayList<>();
+    final Map<String, ByteString> nextEntries = new HashMap<>();
+    final byte[] buffer = new byte[8192];
+    TarEntry entry;
+    while ((entry = tarInputStream.getNextEntry()) != null) {
+      final String name = entry.getName();
+      final ByteString bytes;
+      if (entry.isDirectory()) {
+        bytes = ByteString.EMPTY;
+      } else {
+        final ByteString previousBytes = previousEntries.get(name);
+        if (previousBytes != null && previousBytes.size() == entry.getSize() && (load == null || !load.wouldSpill(entry.getSize()))) {
+          if (load != null) {
+            load.charge(name, entry.getSize());
+          }
+          bytes = readUnlessUnchanged(tarInputStream, previousBytes, buffer);
+          if (bytes == previousBytes) {
+            this.reusedEntryCount.incrementAndGet();
+          }
+        } else {
+          bytes = loader.readEntry(name, tarInputStream, entry.getSize());
+        }
+        nextEntries.put(name, bytes);
+      }
+      entries.add(new SimpleImmutableEntry<>(name, bytes));
+    }
+
+    final Map<ByteString, Chart> nextSubcharts = new ConcurrentHashMap<>();
+    final Chart.Builder returnValue = ParallelChartLoader.join(loader.loadAsync(entries, bytes -> {
+          final Chart previousSubchart = previousSubcharts.get(bytes);
+          if (previousSubchart != null) {
+            this.reusedSubchartCount.incrementAndGet();
+            nextSubcharts.put(bytes, previousSubchart);
+            return CompletableFuture.completedFuture(previousSubchart.toBuilder());
+          }
+          return loader.loadTapeArchiveAsync(bytes).thenApply(subchart -> {
+              final Chart builtSubchart = subchart.build();
+              nextSubcharts.put(bytes, builtSubchart);
+              return builtSubchart.toBuilder();
+            });
+        }));
+
+    synchronized (this.generations) {
+      this.generations.put(key, new Generation(chart.getVersion(), nextEntries, nextSubcharts));
+    }
+    return returnValue;
+  }
+
+  /**
+   * Forgets the lineage of every chart with the supplied {@code
+   * groupId} and {@code artifactId}.
+   *
+   * @param groupId the {@code groupId}; must not be {@code null}
+   *
+   * @param artifactId the {@code artifactId}; must not be {@code
+   * null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   */
+  public void invalidate(final String groupId, final String artifactId) {
+    Objects.requireNonNull(groupId);
+    Objects.requireNonNull(artifactId);
+    synchronized (this.generations) {
+      final Iterator<Key> iterator = this.generations.keySet().iterator();
+      while (iterator.hasNext()) {
+        final Key key = iterator.next();
+        if (groupId.equals(key.groupId) && artifactId.equals(key.artifactId)) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Forgets every lineage.
+   *
+   * <p>The reuse counts are not reset.</p>
+   */
+  public void clear() {
+    synchronized (this.generations) {
+      this.generations.clear();
+    }
+  }
+
+  /**
+   * Returns the number of lineages currently remembered by this
+   * {@link ChartLineage}.
+   *
+   * @return the number of lineages; never less than zero
+   */
+  public int size() {
+    synchronized (this.generations) {
+      return this.generations.size();
+    }
+  }
+
+  /**
+   * Returns the number of archive entries whose contents were found
+   * to be unchanged from the previous version of their chart and
+   * were therefore reused.
+   *
+   * @return the number of reused entries; never less than zero
+   */
+  public final long getReusedEntryCount() {
+    return this.reusedEntryCount.get();
+  }
+
+  /**
+   * Returns the number of packed subcharts that were found to be
+   * unchanged from the previous version of their chart and were
+   * therefore not decompressed or parsed again.
+   *
+   * @return the number of reused subcharts; never less than zero
+   */
+  public final long getReusedSubchartCount() {
+    return this.reusedSubchartCount.get();
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * ChartLineage}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String} representation of this
+   * {@link ChartLineage}
+   */
+  @Override
+  public String toString() {
+    return this.getClass().getSimpleName() +
+      "[size=" + this.size() +
+      ", maximumSize=" + this.getMaximumSize() +
+      ", reusedEntries=" + this.getReusedEntryCount() +
+      ", reusedSubcharts=" + this.getReusedSubchartCount() + "]";
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Reads the current entry of the supplied {@link InputStream},
+   * comparing it with the supplied {@link ByteString} of equal size
+   * as it goes, and returns the supplied {@link ByteString} if they
+   * are equal, or a new {@link ByteString} holding the entry's
+   * contents if they are not.
+   *
+   * @param inputStream the {@link InputStream} positioned at the
+   * start of the entry; must not be {@code null}
+   *
+   * @param previousBytes the previous contents of the entry; must not
+   * be {@code null}
+   *
+   * @param buffer a buffer to read into; must not be {@code null}
+   *
+   * @return {@code previousBytes}, or a new {@link ByteString}; never
+   * {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  private static final ByteString readUnlessUnchanged(final InputStream inputStream, final ByteString previousBytes, final byte[] buffer) throws IOException {
+    assert inputStream != null;
+    assert previousBytes != null;
+    assert buffer != null;
+    final int size = previousBytes.size();
+    int offset = 0;
+    int bytesRead;
+    while ((bytesRead = inputStream.read(buffer, 0, buffer.length)) >= 0) {
+      if (offset + bytesRead > size || !previousBytes.substring(offset, offset + bytesRead).equals(UnsafeByteOperations.unsafeWrap(buffer, 0, bytesRead))) {
+        // The contents differ from here on; keep what matched and
+        // read the rest.
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(size, offset + bytesRead));
+        previousBytes.substring(0, offset).writeTo(outputStream);
+        outputStream.write(buffer, 0, bytesRead);
+        while ((bytesRead = inputStream.read(buffer, 0, buffer.length)) >= 0) {
+          outputStream.write(buffer, 0, bytesRead);
+        }
+        return UnsafeByteOperations.unsafeWrap(outputStream.toByteArray());
+      }
+      offset += bytesRead;
+    }
+    return offset == size ? previousBytes : previousBytes.substring(0, offset);
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The record of one loaded version of a chart.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Generation {
+
+    private final String version;
+
+    private final Map<String, ByteString> entries;
+
+    private final Map<ByteString, Chart> subcharts;
+
+    private Generation(final String version, final Map<String, ByteString> entries, final Map<ByteString, Chart> subcharts) {
+      super();
+      this.version = version;
+      this.entries = entries;
+      this.subcharts = subcharts;
+    }
+
+  }
+
+  /**
+   * An immutable key identifying a lineage of charts.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Key {
+
+    private final String groupId;
+
+    private final String artifactId;
+
+    private final String classifier;
+
+    private final String extension;
+
+    private final int hashCode;
+
+    private Key(final Artifact chart) {
+      super();
+      Objects.requireNonNull(chart);
+      this.groupId = chart.getGroupId();
+      this.artifactId = chart.getArtifactId();
+      this.classifier = chart.getClassifier();
+      this.extension = chart.getExtension();
+      this.hashCode = Objects.hash(this.groupId, this.artifactId, this.classifier, this.extension);
+    }
+
+    @Override
+    public final int hashCode() {
+      return this.hashCode;
+    }
+
+    @Override
+    public final boolean equals(final Object other) {
+      if (other == this) {
+        return true;
+      } else if (other instanceof Key) {
+        final Key her = (Key)other;
+        return
+          Objects.equals(this.groupId, her.groupId) &&
+          Objects.equals(this.artifactId, her.artifactId) &&
+          Objects.equals(this.classifier, her.classifier) &&
+          Objects.equals(this.extension, her.extension);
+      } else {
+        return false;
+      }
+    }
+
+  }
+
+}
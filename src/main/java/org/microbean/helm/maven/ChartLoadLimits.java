@@ -0,0 +1,678 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.ForkJoinPool;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A set of limits on the decompressed size of the chart archives
+ * loaded by a {@link MavenRepositoryChartResolver}, together with a
+ * memory budget shared by all of the loads that use it.
+ *
+ * <p>Each archive entry may be no larger than the {@linkplain
+ * #getMaximumEntrySize() maximum entry size}, and the entries of one
+ * chart, including those of its packed subcharts, may together be no
+ * larger than the {@linkplain #getMaximumChartSize() maximum chart
+ * size}; a load that exceeds either limit fails with a {@link
+ * ChartResolverException} as soon as the excess is read, so a
+ * malicious or accidentally huge archive is never decompressed in
+ * full.</p>
+ *
+ * <p>Entries larger than the {@linkplain #getSpillThreshold() spill
+ * threshold} are written to temporary files instead of being held on
+ * the heap, and are then memory-mapped, so the loaded chart refers to
+ * their contents without copying them.  Each temporary file is
+ * deleted as soon as it is mapped; the operating system reclaims its
+ * space once the mapping is no longer reachable.</p>
+ *
+ * <p>Entries held on the heap are charged against the {@linkplain
+ * #getMemoryBudget() memory budget} until the load that read them
+ * finishes.  A new load is not admitted while the budget is
+ * exhausted; it waits until enough earlier loads have finished.
+ * Admitted loads never wait, neither for the budget nor for other
+ * threads (they read their entries on the thread that was admitted),
+ * so loads cannot deadlock one another, even when every thread of a
+ * bounded executor is waiting to be admitted; this means the budget
+ * may be exceeded by at most the maximum chart size for each load in
+ * progress.  Waiting threads of a {@link ForkJoinPool} are
+ * {@linkplain ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)
+ * compensated for}.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple threads,
+ * and may be shared by several {@link
+ * MavenRepositoryChartResolver}s so that they share one memory
+ * budget.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setChartLoadLimits(ChartLoadLimits)
+ */
+public class ChartLoadLimits {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default maximum size, in bytes, of a single decompressed
+   * archive entry.
+   *
+   * @see #ChartLoadLimits()
+   */
+  public static final long DEFAULT_MAXIMUM_ENTRY_SIZE = 64L * 1024L * 1024L;
+
+  /**
+   * The default maximum total size, in bytes, of the decompressed
+   * archive entries of a single chart.
+   *
+   * @see #ChartLoadLimits()
+   */
+  public static final long DEFAULT_MAXIMUM_CHART_SIZE = 256L * 1024L * 1024L;
+
+  /**
+   * The default size, in bytes, of the memory budget shared by
+   * concurrent loads.
+   *
+   * @see #ChartLoadLimits()
+   */
+  public static final long DEFAULT_MEMORY_BUDGET = 128L * 1024L * 1024L;
+
+  /**
+   * The default size, in bytes, above which archive entries are
+   * spilled to temporary files.
+   *
+   * @see #ChartLoadLimits()
+   */
+  public static final long DEFAULT_SPILL_THRESHOLD = 1024L * 1024L;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The maximum size, in bytes, of a single decompressed archive
+   * entry.
+   *
+   * <p>This field is always greater than zero.</p>
+   *
+   * @see #getMaximumEntrySize()
+   */
+  private final long maximumEntrySize;
+
+  /**
+   * The maximum total size, in bytes, of the decompressed archive
+   * entries of a single chart.
+   *
+   * <p>This field is always greater than zero.</p>
+   *
+   * @see #getMaximumChartSize()
+   */
+  private final long maximumChartSize;
+
+  /**
+   * The size, in bytes, of the memory budget shared by concurrent
+   * loads.
+   *
+   * <p>This field is always greater than zero.</p>
+   *
+   * @see #getMemoryBudget()
+   */
+  private final long memoryBudget;
+
+  /**
+   * The size, in bytes, above which archive entries are spilled to
+   * temporary files.
+   *
+   * <p>This field is never less than zero.</p>
+   *
+   * @see #getSpillThreshold()
+   */
+  private final long spillThreshold;
+
+  /**
+   * The directory in which temporary files are created.
+   *
+   * <p>This field may be {@code null}, in which case the default
+   * temporary-file directory is used.</p>
+   *
+   * @see #getSpillDirectory()
+   */
+  private final Path spillDirectory;
+
+  /**
+   * The number of bytes currently charged against the memory budget.
+   *
+   * <p>All access to this field must be synchronized on {@code
+   * this}.</p>
+   *
+   * @see #getMemoryInUse()
+   */
+  private long memoryInUse;
+
+  /**
+   * The number of loads that had to wait to be admitted.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getWaitCount()
+   */
+  private final AtomicLong waitCount;
+
+  /**
+   * The number of archive entries that were spilled to temporary
+   * files.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getSpillCount()
+   */
+  private final AtomicLong spillCount;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartLoadLimits} with the default limits,
+   * budget and spill threshold, spilling to the default
+   * temporary-file directory.
+   *
+   * @see #DEFAULT_MAXIMUM_ENTRY_SIZE
+   *
+   * @see #DEFAULT_MAXIMUM_CHART_SIZE
+   *
+   * @see #DEFAULT_MEMORY_BUDGET
+   *
+   * @see #DEFAULT_SPILL_THRESHOLD
+   */
+  public ChartLoadLimits() {
+    this(DEFAULT_MAXIMUM_ENTRY_SIZE, DEFAULT_MAXIMUM_CHART_SIZE, DEFAULT_MEMORY_BUDGET, DEFAULT_SPILL_THRESHOLD, null);
+  }
+
+  /**
+   * Creates a new {@link ChartLoadLimits} that spills to the default
+   * temporary-file directory.
+   *
+   * @param maximumEntrySize the maximum size, in bytes, of a single
+   * decompressed archive entry; must be greater than zero
+   *
+   * @param maximumChartSize the maximum total size, in bytes, of the
+   * decompressed archive entries of a single chart; must be greater
+   * than zero
+   *
+   * @param memoryBudget the size, in bytes, of the memory budget
+   * shared by concurrent loads; must be greater than zero
+   *
+   * @param spillThreshold the size, in bytes, above which archive
+   * entries are spilled to temporary files; must not be less than
+   * zero; {@link Long#MAX_VALUE} means that no entry is spilled
+   *
+   * @exception IllegalArgumentException if any parameter is out of
+   * range
+   *
+   * @see #ChartLoadLimits(long, long, long, long, Path)
+   */
+  public ChartLoadLimits(final long maximumEntrySize, final long maximumChartSize, final long memoryBudget, final long spillThreshold) {
+    this(maximumEntrySize, maximumChartSize, memoryBudget, spillThreshold, null);
+  }
+
+  /**
+   * Creates a new {@link ChartLoadLimits}.
+   *
+   * @param maximumEntrySize the maximum size, in bytes, of a single
+   * decompressed archive entry; must be greater than zero
+   *
+   * @param maximumChartSize the maximum total size, in bytes, of the
+   * decompressed archive entries of a single chart; must be greater
+   * than zero
+   *
+   * @param memoryBudget the size, in bytes, of the memory budget
+   * shared by concurrent loads; must be greater than zero
+   *
+   * @param spillThreshold the size, in bytes, above which archive
+   * entries are spilled to temporary files; must not be less than
+   * zero; {@link Long#MAX_VALUE} means that no entry is spilled
+   *
+   * @param spillDirectory the directory in which temporary files will
+   * be created; may be {@code null} in which case the default
+   * temporary-file directory will be used
+   *
+   * @exception IllegalArgumentException if any parameter is out of
+   * range
+   */
+  public ChartLoadLimits(final long maximumEntrySize, final long maximumChartSize, final long memoryBudget, final long spillThreshold, final Path spillDirectory) {
+    super();
+    if (maximumEntrySize <= 0L) {
+      throw new IllegalArgumentException("maximumEntrySize <= 0: " + maximumEntrySize);
+    }
+    if (maximumChartSize <= 0L) {
+      throw new IllegalArgumentException("maximumChartSize <= 0: " + maximumChartSize);
+    }
+    if (memoryBudget <= 0L) {
+      throw new IllegalArgumentException("memoryBudget <= 0: " + memoryBudget);
+    }
+    if (spillThreshold < 0L) {
+      throw new IllegalArgumentException("spillThreshold < 0: " + spillThreshold);
+    }
+    this.maximumEntrySize = maximumEntrySize;
+    this.maximumChartSize = maximumChartSize;
+    this.memoryBudget = memoryBudget;
+    this.spillThreshold = spillThreshold;
+    this.spillDirectory = spillDirectory;
+    this.waitCount = new AtomicLong();
+    this.spillCount = new AtomicLong();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the maximum size, in bytes, of a single decompressed
+   * archive entry.
+   *
+   * @return the maximum entry size; always greater than zero
+   */
+  public final long getMaximumEntrySize() {
+    return this.maximumEntrySize;
+  }
+
+  /**
+   * Returns the maximum total size, in bytes, of the decompressed
+   * archive entries of a single chart, including those of its packed
+   * subcharts.
+   *
+   * @return the maximum chart size; always greater than zero
+   */
+  public final long getMaximumChartSize() {
+    return this.maximumChartSize;
+  }
+
+  /**
+   * Returns the size, in bytes, of the memory budget shared by
+   * concurrent loads.
+   *
+   * @return the memory budget; always greater than zero
+   */
+  public final long getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  /**
+   * Returns the size, in bytes, above which archive entries are
+   * spilled to temporary files.
+   *
+   * @return the spill threshold; never less than zero
+   */
+  public final long getSpillThreshold() {
+    return this.spillThreshold;
+  }
+
+  /**
+   * Returns the directory in which temporary files are created.
+   *
+   * <p>This method may return {@code null}, in which case the default
+   * temporary-file directory is used.</p>
+   *
+   * @return the spill directory, or {@code null}
+   */
+  public final Path getSpillDirectory() {
+    return this.spillDirectory;
+  }
+
+  /**
+   * Returns the number of bytes currently charged against the memory
+   * budget by loads in progress.
+   *
+   * @return the memory in use; never less than zero
+   */
+  public final long getMemoryInUse() {
+    synchronized (this) {
+      return this.memoryInUse;
+    }
+  }
+
+  /**
+   * Returns the number of loads that had to wait to be admitted
+   * because the memory budget was exhausted.
+   *
+   * @return the number of waits; never less than zero
+   */
+  public final long getWaitCount() {
+    return this.waitCount.get();
+  }
+
+  /**
+   * Returns the number of archive entries that were spilled to
+   * temporary files.
+   *
+   * @return the number of spilled entries; never less than zero
+   */
+  public final long getSpillCount() {
+    return this.spillCount.get();
+  }
+
+  /**
+   * Admits a new load, waiting while the memory budget is exhausted,
+   * and returns a {@link Load} through which it must read its archive
+   * entries.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The returned {@link Load} must be {@linkplain Load#close()
+   * closed} when the load finishes, successfully or not.</p>
+   *
+   * @return a new, non-{@code null} {@link Load}
+   *
+   * @exception ChartResolverException if the calling thread was
+   * interrupted while waiting
+   */
+  final Load begin() throws ChartResolverException {
+    final ForkJoinPool.ManagedBlocker admission = new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public final boolean block() throws InterruptedException {
+          synchronized (ChartLoadLimits.this) {
+            while (ChartLoadLimits.this.memoryInUse >= ChartLoadLimits.this.memoryBudget) {
+              ChartLoadLimits.this.wait();
+            }
+          }
+          return true;
+        }
+
+        @Override
+        public final boolean isReleasable() {
+          synchronized (ChartLoadLimits.this) {
+            return ChartLoadLimits.this.memoryInUse < ChartLoadLimits.this.memoryBudget;
+          }
+        }
+      };
+    if (!admission.isReleasable()) {
+      this.waitCount.incrementAndGet();
+      try {
+        ForkJoinPool.managedBlock(admission);
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        throw new ChartResolverException("Interrupted while waiting for the chart memory budget", interruptedException);
+      }
+    }
+    return new Load();
+  }
+
+  private final void reserve(final long bytes) {
+    synchronized (this) {
+      this.memoryInUse += bytes;
+    }
+  }
+
+  private final void release(final long bytes) {
+    if (bytes > 0L) {
+      synchronized (this) {
+        this.memoryInUse -= bytes;
+        this.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * ChartLoadLimits}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String} representation of this
+   * {@link ChartLoadLimits}
+   */
+  @Override
+  public String toString() {
+    return this.getClass().getSimpleName() +
+      "[maximumEntrySize=" + this.getMaximumEntrySize() +
+      ", maximumChartSize=" + this.getMaximumChartSize() +
+      ", memoryBudget=" + this.getMemoryBudget() +
+      ", memoryInUse=" + this.getMemoryInUse() +
+      ", spillThreshold=" + this.getSpillThreshold() +
+      ", waits=" + this.getWaitCount() +
+      ", spills=" + this.getSpillCount() + "]";
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The accounting of a single admitted load, which may read archive
+   * entries on several threads at once.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   *
+   * @see ChartLoadLimits#begin()
+   */
+  final class Load implements AutoCloseable {
+
+    /**
+     * The total number of decompressed bytes read by this load.
+     */
+    private final AtomicLong chartSize;
+
+    /**
+     * The number of bytes this load has charged against the memory
+     * budget.
+     */
+    private final AtomicLong reserved;
+
+    private Load() {
+      super();
+      this.chartSize = new AtomicLong();
+      this.reserved = new AtomicLong();
+    }
+
+    /**
+     * Charges an archive entry of the supplied size, whose contents
+     * are already held elsewhere and will be held on the heap by the
+     * chart being loaded, against the limits and the memory budget.
+     *
+     * @param name the name of the entry; must not be {@code null}
+     *
+     * @param size the size of the entry in bytes
+     *
+     * @exception ChartResolverException if a limit is exceeded
+     */
+    final void charge(final String name, final long size) throws ChartResolverException {
+      this.checkEntrySize(name, size);
+      this.addToChartSize(name, size);
+      this.reserve(size);
+    }
+
+    /**
+     * Returns {@code true} if an archive entry of the supplied size
+     * would be spilled to a temporary file by the {@link
+     * #read(String, InputStream, long)} method.
+     *
+     * @param size the size of the entry in bytes
+     *
+     * @return {@code true} if the entry would be spilled
+     */
+    final boolean wouldSpill(final long size) {
+      return size > ChartLoadLimits.this.spillThreshold;
+    }
+
+    /**
+     * Reads the remainder of the supplied {@link InputStream}, which
+     * supplies the contents of the named archive entry, enforcing the
+     * limits as it goes, and returns its contents, which will have
+     * been spilled to a temporary file if they are larger than the
+     * spill threshold.
+     *
+     * <p>This method never returns {@code null}.</p>
+     *
+     * @param name the name of the entry; must not be {@code null}
+     *
+     * @param inputStream the {@link InputStream} supplying the entry's
+     * contents; must not be {@code null}; will not be closed
+     *
+     * @param size the size of the entry recorded by the archive, or
+     * a negative number if it is unknown
+     *
+     * @return a non-{@code null} {@link ByteString}
+     *
+     * @exception IOException if an input or output error occurs
+     *
+     * @exception ChartResolverException if a limit is exceeded
+     */
+    final ByteString read(final String name, final InputStream inputStream, final long size) throws IOException, ChartResolverException {
+      assert name != null;
+      assert inputStream != null;
+      if (size >= 0L) {
+        // Fail before decompressing anything if the archive admits
+        // to the excess.
+        this.checkEntrySize(name, size);
+        if (this.chartSize.get() + size > ChartLoadLimits.this.maximumChartSize) {
+          throw this.chartSizeExceeded(name);
+        }
+      }
+      final byte[] buffer = new byte[8192];
+      ByteArrayOutputStream outputStream = size > ChartLoadLimits.this.spillThreshold ? null : new ByteArrayOutputStream((int)Math.min(Math.max(32L, size), Integer.MAX_VALUE - 8L));
+      Path spillFile = null;
+      FileChannel spillChannel = null;
+      long entrySize = 0L;
+      try {
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer, 0, buffer.length)) >= 0) {
+          entrySize += bytesRead;
+          this.checkEntrySize(name, entrySize);
+          this.addToChartSize(name, bytesRead);
+          if (spillChannel == null && (outputStream == null || entrySize > ChartLoadLimits.this.spillThreshold)) {
+            spillFile = ChartLoadLimits.this.spillDirectory == null ? Files.createTempFile("chart-entry-", ".spill") : Files.createTempFile(ChartLoadLimits.this.spillDirectory, "chart-entry-", ".spill");
+            spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (outputStream != null) {
+              write(spillChannel, ByteBuffer.wrap(outputStream.toByteArray()));
+              this.release(outputStream.size());
+              outputStream = null;
+            }
+          }
+          if (spillChannel == null) {
+            this.reserve(bytesRead);
+            outputStream.write(buffer, 0, bytesRead);
+          } else {
+            write(spillChannel, ByteBuffer.wrap(buffer, 0, bytesRead));
+          }
+        }
+        final ByteString returnValue;
+        if (spillChannel == null) {
+          // The array is never shared, so it is safe to wrap it
+          // without copying it again.
+          returnValue = outputStream == null ? ByteString.EMPTY : UnsafeByteOperations.unsafeWrap(outputStream.toByteArray());
+        } else {
+          returnValue = UnsafeByteOperations.unsafeWrap(spillChannel.map(FileChannel.MapMode.READ_ONLY, 0L, spillChannel.size()));
+          ChartLoadLimits.this.spillCount.incrementAndGet();
+        }
+        return returnValue;
+      } finally {
+        if (spillChannel != null) {
+          spillChannel.close();
+        }
+        if (spillFile != null) {
+          try {
+            Files.deleteIfExists(spillFile);
+          } catch (final IOException ioException) {
+            // Some platforms cannot delete a mapped file.
+            spillFile.toFile().deleteOnExit();
+          }
+        }
+      }
+    }
+
+    /**
+     * Releases everything this load has charged against the memory
+     * budget.
+     */
+    @Override
+    public final void close() {
+      ChartLoadLimits.this.release(this.reserved.getAndSet(0L));
+    }
+
+    private final void checkEntrySize(final String name, final long size) throws ChartResolverException {
+      if (size > ChartLoadLimits.this.maximumEntrySize) {
+        throw new ChartResolverException("Chart archive entry " + name + " exceeds the maximum entry size of " + ChartLoadLimits.this.maximumEntrySize + " bytes");
+      }
+    }
+
+    private final void addToChartSize(final String name, final long size) throws ChartResolverException {
+      if (this.chartSize.addAndGet(size) > ChartLoadLimits.this.maximumChartSize) {
+        throw this.chartSizeExceeded(name);
+      }
+    }
+
+    private final ChartResolverException chartSizeExceeded(final String name) {
+      return new ChartResolverException("Chart archive exceeds the maximum decompressed size of " + ChartLoadLimits.this.maximumChartSize + " bytes at entry " + name);
+    }
+
+    private final void reserve(final long bytes) {
+      this.reserved.addAndGet(bytes);
+      ChartLoadLimits.this.reserve(bytes);
+    }
+
+    private final void release(final long bytes) {
+      this.reserved.addAndGet(-bytes);
+      ChartLoadLimits.this.release(bytes);
+    }
+
+  }
+
+}
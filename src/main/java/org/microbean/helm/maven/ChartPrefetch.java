@@ -0,0 +1,248 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A single run of {@linkplain
+ * MavenRepositoryChartResolver#prefetch(Collection, int,
+ * PrefetchListener) prefetching}: the {@linkplain
+ * MavenRepositoryChartResolver#resolveAsync(org.eclipse.aether.artifact.Artifact)
+ * asynchronous resolution} of a fixed set of charts, no more than a
+ * fixed number at a time.
+ *
+ * <p>No thread ever waits on another: each of a fixed number of
+ * chains of work takes the next chart from a shared queue when the
+ * resolution of its previous chart completes.  A chain whose
+ * resolution has already completed by the time it is returned takes
+ * its next chart in the same loop rather than from a completion
+ * callback, so that long runs of such resolutions, such as those
+ * found in a chart cache, do not deepen the stack.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#prefetch(Collection, int,
+ * PrefetchListener)
+ */
+final class ChartPrefetch {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  private static final Logger logger = Logger.getLogger(ChartPrefetch.class.getName());
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  private final MavenRepositoryChartResolver resolver;
+
+  private final Queue<String> pending;
+
+  private final int total;
+
+  private final int maximumConcurrency;
+
+  private final PrefetchListener listener;
+
+  private final AtomicInteger completed;
+
+  private final AtomicInteger activeChains;
+
+  private final Queue<Exception> failures;
+
+  private final CompletableFuture<Void> result;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartPrefetch}.
+   *
+   * @param resolver the {@link MavenRepositoryChartResolver} that
+   * will resolve the charts; must not be {@code null}
+   *
+   * @param coordinates the coordinates of the charts to resolve, each
+   * of a form accepted by the {@link
+   * MavenRepositoryChartResolver#resolveAllCoordinates(Collection)}
+   * method; must not be {@code null}
+   *
+   * @param maximumConcurrency the maximum number of charts to resolve
+   * at once; must be greater than zero
+   *
+   * @param listener a {@link PrefetchListener}; may be {@code null}
+   *
+   * @exception NullPointerException if {@code resolver} or {@code
+   * coordinates} is {@code null}
+   *
+   * @exception IllegalArgumentException if {@code
+   * maximumConcurrency} is less than {@code 1}
+   */
+  ChartPrefetch(final MavenRepositoryChartResolver resolver,
+                final Collection<? extends String> coordinates,
+                final int maximumConcurrency,
+                final PrefetchListener listener) {
+    super();
+    this.resolver = Objects.requireNonNull(resolver);
+    if (maximumConcurrency < 1) {
+      throw new IllegalArgumentException("maximumConcurrency < 1: " + maximumConcurrency);
+    }
+    this.pending = new ConcurrentLinkedQueue<>();
+    for (final String coordinate : coordinates) {
+      this.pending.add(Objects.requireNonNull(coordinate));
+    }
+    this.total = this.pending.size();
+    this.maximumConcurrency = maximumConcurrency;
+    this.listener = listener;
+    this.completed = new AtomicInteger();
+    this.activeChains = new AtomicInteger();
+    this.failures = new ConcurrentLinkedQueue<>();
+    this.result = new CompletableFuture<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Starts this {@link ChartPrefetch} and returns a {@link
+   * CompletableFuture} that will be completed when every chart has
+   * been resolved, successfully or not.
+   *
+   * <p>This method never returns {@code null} and must be called only
+   * once.</p>
+   *
+   * @return a non-{@code null} {@link CompletableFuture} that will be
+   * completed normally if every chart was resolved, or exceptionally
+   * with a {@link ChartResolverException} otherwise
+   */
+  final CompletableFuture<Void> start() {
+    final int chains = Math.min(this.maximumConcurrency, this.total);
+    if (chains == 0) {
+      this.result.complete(null);
+    } else {
+      this.activeChains.set(chains);
+      for (int i = 0; i < chains; i++) {
+        this.next();
+      }
+    }
+    return this.result;
+  }
+
+  private final void next() {
+    while (true) {
+      final String coordinates = this.pending.poll();
+      if (coordinates == null) {
+        if (this.activeChains.decrementAndGet() == 0) {
+          this.finish();
+        }
+        return;
+      }
+      CompletableFuture<Chart.Builder> resolution;
+      try {
+        resolution = this.resolver.resolveAsync(MavenRepositoryChartResolver.toArtifact(coordinates));
+      } catch (final ChartResolverException | RuntimeException exception) {
+        resolution = new CompletableFuture<>();
+        resolution.completeExceptionally(exception);
+      }
+      if (!resolution.isDone()) {
+        resolution.whenComplete((chart, throwable) -> {
+            this.completed(coordinates, throwable);
+            this.next();
+          });
+        return;
+      }
+      Throwable throwable = null;
+      try {
+        resolution.join();
+      } catch (final CancellationException | CompletionException exception) {
+        throwable = exception;
+      }
+      this.completed(coordinates, throwable);
+    }
+  }
+
+  private final void completed(final String coordinates, Throwable throwable) {
+    final int completed = this.completed.incrementAndGet();
+    if (throwable instanceof CompletionException && throwable.getCause() != null) {
+      throwable = throwable.getCause();
+    }
+    try {
+      if (throwable == null) {
+        if (this.listener != null) {
+          this.listener.chartPrefetched(coordinates, completed, this.total);
+        }
+      } else {
+        if (throwable instanceof Exception) {
+          this.failures.add((Exception)throwable);
+        } else {
+          this.failures.add(new ChartResolverException(throwable.getMessage(), throwable));
+        }
+        if (this.listener != null) {
+          this.listener.chartPrefetchFailed(coordinates, throwable, completed, this.total);
+        }
+      }
+    } catch (final RuntimeException listenerException) {
+      if (logger.isLoggable(Level.WARNING)) {
+        logger.logp(Level.WARNING, ChartPrefetch.class.getName(), "completed", "PrefetchListener failed", listenerException);
+      }
+    }
+  }
+
+  private final void finish() {
+    if (logger.isLoggable(Level.FINE)) {
+      logger.logp(Level.FINE, ChartPrefetch.class.getName(), "finish", "Prefetched {0} charts; {1} failed", new Object[] { this.total, this.failures.size() });
+    }
+    if (this.failures.isEmpty()) {
+      this.result.complete(null);
+    } else {
+      final List<Exception> failures = new ArrayList<>(this.failures);
+      this.result.completeExceptionally(MavenRepositoryChartResolver.toChartResolverException(failures));
+    }
+  }
+
+}
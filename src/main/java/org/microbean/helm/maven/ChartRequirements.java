@@ -0,0 +1,240 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.protobuf.Any;
+
+import hapi.chart.ChartOuterClass.Chart;
+import hapi.chart.ChartOuterClass.ChartOrBuilder;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.yaml.snakeyaml.Yaml;
+
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import org.yaml.snakeyaml.error.YAMLException;
+
+/**
+ * A utility class that reads the requirements declared by a Helm
+ * chart's {@code requirements.yaml} file.
+ *
+ * <p>A requirement is omitted if the chart already contains a
+ * subchart of the same name in its {@code charts} directory.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setDependencyResolutionEnabled(boolean)
+ */
+final class ChartRequirements {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The name of the file, relative to a chart's root, declaring its
+   * requirements.
+   */
+  static final String REQUIREMENTS_YAML = "requirements.yaml";
+
+
+  /*
+   * Constructors.
+   */
+
+
+  private ChartRequirements() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns a {@link List} of the {@link Requirement}s declared by the
+   * supplied chart that are not already satisfied by one of its
+   * subcharts.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param chart the chart whose requirements should be read; must
+   * not be {@code null}
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * Requirement}s
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @exception ChartResolverException if the chart's {@code
+   * requirements.yaml} file is malformed
+   */
+  static final List<Requirement> read(final ChartOrBuilder chart) throws ChartResolverException {
+    Objects.requireNonNull(chart);
+    String requirementsYaml = null;
+    final Collection<? extends Any> files = chart.getFilesList();
+    if (files != null) {
+      for (final Any file : files) {
+        if (file != null && REQUIREMENTS_YAML.equals(file.getTypeUrl())) {
+          requirementsYaml = file.getValue().toStringUtf8();
+          break;
+        }
+      }
+    }
+    if (requirementsYaml == null) {
+      return Collections.emptyList();
+    }
+
+    final Object document;
+    try {
+      document = new Yaml(new SafeConstructor()).load(requirementsYaml);
+    } catch (final YAMLException yamlException) {
+      throw new ChartResolverException(yamlException.getMessage(), yamlException);
+    }
+    if (document == null) {
+      return Collections.emptyList();
+    }
+    if (!(document instanceof Map)) {
+      throw new ChartResolverException("Malformed " + REQUIREMENTS_YAML + ": " + requirementsYaml);
+    }
+    final Object dependencies = ((Map<?, ?>)document).get("dependencies");
+    if (dependencies == null) {
+      return Collections.emptyList();
+    }
+    if (!(dependencies instanceof Collection)) {
+      throw new ChartResolverException("Malformed " + REQUIREMENTS_YAML + ": " + requirementsYaml);
+    }
+
+    final Collection<String> vendoredNames = new HashSet<>();
+    final Collection<? extends Chart> subcharts = chart.getDependenciesList();
+    if (subcharts != null) {
+      for (final Chart subchart : subcharts) {
+        if (subchart != null && subchart.hasMetadata()) {
+          vendoredNames.add(subchart.getMetadata().getName());
+        }
+      }
+    }
+
+    final List<Requirement> returnValue = new ArrayList<>();
+    for (final Object dependency : (Collection<?>)dependencies) {
+      if (!(dependency instanceof Map)) {
+        throw new ChartResolverException("Malformed " + REQUIREMENTS_YAML + ": " + requirementsYaml);
+      }
+      final Map<?, ?> map = (Map<?, ?>)dependency;
+      final String name = toString(map.get("name"));
+      if (name == null || name.isEmpty()) {
+        throw new ChartResolverException("Malformed " + REQUIREMENTS_YAML + "; dependency without a name: " + requirementsYaml);
+      }
+      // A vendored subchart keeps the name of the chart it is a copy
+      // of; an alias only renames it when the parent is rendered.
+      if (!vendoredNames.contains(name)) {
+        final String alias = toString(map.get("alias"));
+        returnValue.add(new Requirement(name, toString(map.get("version")), toString(map.get("repository")), alias));
+      }
+    }
+    return Collections.unmodifiableList(returnValue);
+  }
+
+  private static final String toString(final Object value) {
+    return value == null ? null : value.toString();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A single entry in a {@code requirements.yaml} file.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  static final class Requirement {
+
+    private final String name;
+
+    private final String version;
+
+    private final String repository;
+
+    private final String alias;
+
+    private Requirement(final String name, final String version, final String repository, final String alias) {
+      super();
+      this.name = Objects.requireNonNull(name);
+      this.version = version;
+      this.repository = repository;
+      this.alias = alias;
+    }
+
+    /**
+     * Returns the name of the required chart.
+     *
+     * @return the non-{@code null} name of the required chart
+     */
+    final String getName() {
+      return this.name;
+    }
+
+    /**
+     * Returns the version constraint of the required chart.
+     *
+     * @return the version constraint, or {@code null}
+     */
+    final String getVersion() {
+      return this.version;
+    }
+
+    /**
+     * Returns the repository from which the required chart is to be
+     * fetched.
+     *
+     * @return the repository, or {@code null}
+     */
+    final String getRepository() {
+      return this.repository;
+    }
+
+    /**
+     * Returns the name under which the required chart is to be
+     * installed instead of its own.
+     *
+     * @return the alias, or {@code null}
+     */
+    final String getAlias() {
+      return this.alias;
+    }
+
+  }
+
+}
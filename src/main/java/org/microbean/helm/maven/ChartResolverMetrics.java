@@ -0,0 +1,182 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+/**
+ * A service provider interface for recording measurements of the
+ * work done by a {@link MavenRepositoryChartResolver}.
+ *
+ * <p>Every method has a default implementation that does nothing, so
+ * implementations need only override the methods that interest them.
+ * Implementations must be safe for concurrent use by multiple threads
+ * and should return quickly, since they are called on the resolution
+ * path.</p>
+ *
+ * <p>Where a method accepts a repository identifier, it is the
+ * {@linkplain org.eclipse.aether.repository.ArtifactRepository#getId()
+ * identifier} of the repository from which the chart was resolved,
+ * which may be that of the local repository, or {@code null} if it is
+ * not known.  Where a method accepts a packaging, it is the
+ * {@linkplain org.eclipse.aether.artifact.Artifact#getExtension()
+ * extension} of the chart artifact.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setMetrics(ChartResolverMetrics)
+ *
+ * @see MicrometerChartResolverMetrics
+ */
+public interface ChartResolverMetrics {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * A {@link ChartResolverMetrics} that records nothing.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  public static final ChartResolverMetrics NOOP = new ChartResolverMetrics() {};
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Records the time taken by one phase of the resolution of a
+   * chart.
+   *
+   * @param phase the {@link Phase}; will not be {@code null}
+   *
+   * @param repositoryId the identifier of the repository from which
+   * the chart was resolved; may be {@code null}
+   *
+   * @param packaging the packaging of the chart; will not be {@code
+   * null}
+   *
+   * @param durationInNanoseconds the time taken, in nanoseconds;
+   * never negative
+   */
+  public default void recordPhase(final Phase phase, final String repositoryId, final String packaging, final long durationInNanoseconds) {
+
+  }
+
+  /**
+   * Records the number of bytes of a chart archive that were
+   * transferred from a remote repository.
+   *
+   * @param repositoryId the identifier of the repository from which
+   * the chart was transferred; may be {@code null}
+   *
+   * @param packaging the packaging of the chart; will not be {@code
+   * null}
+   *
+   * @param bytes the number of bytes transferred; never negative
+   */
+  public default void recordBytesTransferred(final String repositoryId, final String packaging, final long bytes) {
+
+  }
+
+  /**
+   * Records that a resolved chart was found in a {@link ChartCache}.
+   *
+   * @param repositoryId the identifier of the repository from which
+   * the chart was resolved; may be {@code null}
+   *
+   * @param packaging the packaging of the chart; will not be {@code
+   * null}
+   */
+  public default void recordCacheHit(final String repositoryId, final String packaging) {
+
+  }
+
+  /**
+   * Records that a resolved chart was not found in a {@link
+   * ChartCache}.
+   *
+   * @param repositoryId the identifier of the repository from which
+   * the chart was resolved; may be {@code null}
+   *
+   * @param packaging the packaging of the chart; will not be {@code
+   * null}
+   */
+  public default void recordCacheMiss(final String repositoryId, final String packaging) {
+
+  }
+
+  /**
+   * Records that the resolution of a chart failed.
+   *
+   * @param repositoryId the identifier of the repository from which
+   * the chart was resolved, or {@code null} if resolution failed
+   * before any repository supplied it
+   *
+   * @param packaging the packaging of the chart; will not be {@code
+   * null}
+   *
+   * @param failure the {@link Throwable} representing the failure;
+   * will not be {@code null}; often a {@link
+   * org.microbean.helm.chart.resolver.ChartResolverException} whose
+   * {@linkplain Throwable#getCause() cause} is more specific
+   */
+  public default void recordFailure(final String repositoryId, final String packaging, final Throwable failure) {
+
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A phase of the resolution of a chart.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static enum Phase {
+
+    /**
+     * The work done by the {@link
+     * org.eclipse.aether.RepositorySystem} to resolve a chart
+     * artifact, excluding any {@linkplain #TRANSFER transfer} of the
+     * artifact itself: version and metadata resolution, local
+     * repository bookkeeping and the like.
+     */
+    RESOLVE,
+
+    /**
+     * The transfer of a chart archive from a remote repository.
+     */
+    TRANSFER,
+
+    /**
+     * The loading of a chart from its archive, including any cache
+     * or snapshot lookups.
+     */
+    LOAD
+
+  }
+
+}
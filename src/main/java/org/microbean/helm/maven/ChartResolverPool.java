@@ -0,0 +1,460 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import org.eclipse.aether.DefaultRepositoryCache;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A thread-safe source of {@link MavenRepositoryChartResolver}s that
+ * share one {@link RepositorySystemSession}, one {@link
+ * org.eclipse.aether.RepositoryCache}, one {@link ChartCache} and one
+ * {@link Executor}.
+ *
+ * <p>Building a {@link RepositorySystemSession} from Maven settings
+ * (parsing {@code settings.xml}, configuring mirrors, proxies and
+ * authentication, creating the local repository manager) and then
+ * {@linkplain
+ * RepositorySystem#newResolutionRepositories(RepositorySystemSession,
+ * List) preparing remote repositories} against it is expensive.  A
+ * {@link ChartResolverPool} does that work once: it is given a
+ * session built by its creator, copies it, gives the copy a {@link
+ * org.eclipse.aether.RepositoryCache} if it has none, and makes the
+ * copy {@linkplain DefaultRepositorySystemSession#setReadOnly() read
+ * only} so that it can be shared safely by every resolver it hands
+ * out.  Because Maven Resolver's HTTP transport keeps its connection
+ * pools in the session's {@link org.eclipse.aether.RepositoryCache},
+ * those pools are shared as well.</p>
+ *
+ * <p>Resolvers are pooled by tenant: the {@link #getResolver(String,
+ * List)} method returns the same resolver every time it is called
+ * with the same tenant and remote repositories, so that the
+ * resolver's own caches of version metadata and its coalescing of
+ * concurrent resolutions benefit every request made on that
+ * tenant's behalf.  Resolvers are cheap to create and safe for use
+ * by multiple threads.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver
+ */
+public class ChartResolverPool {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link RepositorySystem} shared by every resolver.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final RepositorySystem repositorySystem;
+
+  /**
+   * The read-only {@link RepositorySystemSession} shared by every
+   * resolver.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final RepositorySystemSession session;
+
+  /**
+   * The prepared {@link RemoteRepository} instances used by resolvers
+   * for which no others were supplied.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final List<RemoteRepository> remoteRepositories;
+
+  /**
+   * The {@link ChartCache} shared by every resolver.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final ChartCache chartCache;
+
+  /**
+   * The {@link Executor} shared by every resolver.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final Executor executor;
+
+  /**
+   * The pooled resolvers, indexed by tenant and remote repositories.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<Key, MavenRepositoryChartResolver> resolvers;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartResolverPool} whose resolvers share a
+   * new {@link ChartCache} of {@linkplain
+   * ChartCache#DEFAULT_MAXIMUM_SIZE default size} and the default
+   * {@link Executor} of {@link MavenRepositoryChartResolver}.
+   *
+   * @param repositorySystem the {@link RepositorySystem} responsible
+   * for performing the actual resolution; must not be {@code null}
+   *
+   * @param session the {@link RepositorySystemSession}, usually
+   * built from Maven settings, on which the shared session will be
+   * based; must not be {@code null}; will not be modified
+   *
+   * @param remoteRepositories a {@link List} of {@link
+   * RemoteRepository} instances from which resolution will be
+   * attempted by default; may be {@code null}
+   *
+   * @exception NullPointerException if {@code repositorySystem} or
+   * {@code session} is {@code null}
+   *
+   * @see #ChartResolverPool(RepositorySystem, RepositorySystemSession,
+   * List, ChartCache, Executor)
+   */
+  public ChartResolverPool(final RepositorySystem repositorySystem,
+                           final RepositorySystemSession session,
+                           final List<RemoteRepository> remoteRepositories) {
+    this(repositorySystem, session, remoteRepositories, new ChartCache(), null);
+  }
+
+  /**
+   * Creates a new {@link ChartResolverPool}.
+   *
+   * @param repositorySystem the {@link RepositorySystem} responsible
+   * for performing the actual resolution; must not be {@code null}
+   *
+   * @param session the {@link RepositorySystemSession}, usually
+   * built from Maven settings, on which the shared session will be
+   * based; must not be {@code null}; will not be modified
+   *
+   * @param remoteRepositories a {@link List} of {@link
+   * RemoteRepository} instances from which resolution will be
+   * attempted by default; may be {@code null}; they will be
+   * {@linkplain
+   * RepositorySystem#newResolutionRepositories(RepositorySystemSession,
+   * List) prepared} once, here
+   *
+   * @param chartCache a {@link ChartCache} shared by every resolver;
+   * may be {@code null} in which case no resolver will cache loaded
+   * charts
+   *
+   * @param executor an {@link Executor} shared by every resolver; may
+   * be {@code null} in which case the default {@link Executor} of
+   * {@link MavenRepositoryChartResolver} will be used
+   *
+   * @exception NullPointerException if {@code repositorySystem} or
+   * {@code session} is {@code null}
+   */
+  public ChartResolverPool(final RepositorySystem repositorySystem,
+                           final RepositorySystemSession session,
+                           final List<RemoteRepository> remoteRepositories,
+                           final ChartCache chartCache,
+                           final Executor executor) {
+    super();
+    this.repositorySystem = Objects.requireNonNull(repositorySystem);
+    final DefaultRepositorySystemSession sharedSession = new DefaultRepositorySystemSession(Objects.requireNonNull(session));
+    if (sharedSession.getCache() == null) {
+      sharedSession.setCache(new DefaultRepositoryCache());
+    }
+    sharedSession.setReadOnly();
+    this.session = sharedSession;
+    this.remoteRepositories = this.prepare(remoteRepositories);
+    this.chartCache = chartCache;
+    this.executor = executor;
+    this.resolvers = new ConcurrentHashMap<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link RepositorySystem} shared by every resolver.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link RepositorySystem}
+   */
+  public final RepositorySystem getRepositorySystem() {
+    return this.repositorySystem;
+  }
+
+  /**
+   * Returns the read-only {@link RepositorySystemSession} shared by
+   * every resolver.
+   *
+   * <p>This method never returns {@code null}.  Its {@link
+   * RepositorySystemSession#getCache()} method never returns {@code
+   * null}.</p>
+   *
+   * @return a non-{@code null} {@link RepositorySystemSession}
+   */
+  public final RepositorySystemSession getSession() {
+    return this.session;
+  }
+
+  /**
+   * Returns the prepared {@link RemoteRepository} instances used by
+   * resolvers for which no others were supplied.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * RemoteRepository} instances
+   */
+  public final List<RemoteRepository> getRemoteRepositories() {
+    return this.remoteRepositories;
+  }
+
+  /**
+   * Returns the {@link ChartCache} shared by every resolver.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @return the shared {@link ChartCache}, or {@code null}
+   */
+  public final ChartCache getChartCache() {
+    return this.chartCache;
+  }
+
+  /**
+   * Returns the pooled {@link MavenRepositoryChartResolver} for the
+   * supplied tenant that resolves charts from the {@linkplain
+   * #getRemoteRepositories() default remote repositories}, creating
+   * it if necessary.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param tenant an identifier for the party on whose behalf charts
+   * will be resolved; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link MavenRepositoryChartResolver}
+   *
+   * @exception NullPointerException if {@code tenant} is {@code null}
+   *
+   * @see #getResolver(String, List)
+   */
+  public final MavenRepositoryChartResolver getResolver(final String tenant) {
+    return this.getResolver(tenant, null);
+  }
+
+  /**
+   * Returns the pooled {@link MavenRepositoryChartResolver} for the
+   * supplied tenant and remote repositories, creating it if
+   * necessary.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Calls made with the same tenant and equal remote repositories
+   * return the same resolver.  New resolvers are created by the
+   * {@link #newResolver(RepositorySystem, RepositorySystemSession,
+   * List, ChartCache, Executor)} method.</p>
+   *
+   * @param tenant an identifier for the party on whose behalf charts
+   * will be resolved; must not be {@code null}
+   *
+   * @param remoteRepositories a {@link List} of {@link
+   * RemoteRepository} instances from which the tenant's charts will
+   * be resolved; may be {@code null} in which case the {@linkplain
+   * #getRemoteRepositories() default remote repositories} will be
+   * used; they will be {@linkplain
+   * RepositorySystem#newResolutionRepositories(RepositorySystemSession,
+   * List) prepared} against the {@linkplain #getSession() shared
+   * session} when the resolver is created
+   *
+   * @return a non-{@code null} {@link MavenRepositoryChartResolver}
+   *
+   * @exception NullPointerException if {@code tenant} is {@code null}
+   *
+   * @see #release(String)
+   */
+  public final MavenRepositoryChartResolver getResolver(final String tenant, final List<RemoteRepository> remoteRepositories) {
+    Objects.requireNonNull(tenant);
+    final Key key = new Key(tenant, remoteRepositories);
+    return this.resolvers.computeIfAbsent(key, k -> {
+        final List<RemoteRepository> preparedRemoteRepositories;
+        if (k.remoteRepositories == null) {
+          preparedRemoteRepositories = this.remoteRepositories;
+        } else {
+          preparedRemoteRepositories = this.prepare(k.remoteRepositories);
+        }
+        final MavenRepositoryChartResolver returnValue =
+          this.newResolver(this.repositorySystem, this.session, preparedRemoteRepositories, this.chartCache, this.executor);
+        if (returnValue == null) {
+          throw new IllegalStateException("newResolver() == null");
+        }
+        return returnValue;
+      });
+  }
+
+  /**
+   * Removes every pooled resolver belonging to the supplied tenant
+   * from this {@link ChartResolverPool}.
+   *
+   * <p>Resolvers already handed out remain usable.</p>
+   *
+   * @param tenant the tenant whose resolvers should be removed; must
+   * not be {@code null}
+   *
+   * @exception NullPointerException if {@code tenant} is {@code null}
+   */
+  public final void release(final String tenant) {
+    Objects.requireNonNull(tenant);
+    this.resolvers.keySet().removeIf(key -> key.tenant.equals(tenant));
+  }
+
+  /**
+   * Returns the number of resolvers currently pooled by this {@link
+   * ChartResolverPool}.
+   *
+   * @return the number of pooled resolvers; never negative
+   */
+  public final int size() {
+    return this.resolvers.size();
+  }
+
+  /**
+   * Creates and returns a new {@link MavenRepositoryChartResolver}
+   * for this {@link ChartResolverPool} to pool.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.  They
+   * may, for example, return a resolver with {@linkplain
+   * MavenRepositoryChartResolver#setLocalFastPathEnabled(boolean)
+   * optional features enabled}.  They must be safe for use by
+   * multiple threads.</p>
+   *
+   * @param repositorySystem the shared {@link RepositorySystem}; will
+   * not be {@code null}
+   *
+   * @param session the shared, read-only {@link
+   * RepositorySystemSession}; will not be {@code null}
+   *
+   * @param remoteRepositories the prepared {@link RemoteRepository}
+   * instances from which the resolver should resolve charts; will not
+   * be {@code null}
+   *
+   * @param chartCache the shared {@link ChartCache}; may be {@code
+   * null}
+   *
+   * @param executor the shared {@link Executor}; may be {@code null}
+   *
+   * @return a new, non-{@code null} {@link
+   * MavenRepositoryChartResolver}
+   */
+  protected MavenRepositoryChartResolver newResolver(final RepositorySystem repositorySystem,
+                                                     final RepositorySystemSession session,
+                                                     final List<RemoteRepository> remoteRepositories,
+                                                     final ChartCache chartCache,
+                                                     final Executor executor) {
+    return new MavenRepositoryChartResolver(repositorySystem, session, remoteRepositories, chartCache, executor);
+  }
+
+  /**
+   * Returns an unmodifiable {@link List} of {@link RemoteRepository}
+   * instances {@linkplain
+   * RepositorySystem#newResolutionRepositories(RepositorySystemSession,
+   * List) prepared} against the {@linkplain #getSession() shared
+   * session}, so that its mirrors, proxies and authentication apply.
+   *
+   * @param remoteRepositories the {@link RemoteRepository} instances
+   * to prepare; may be {@code null}
+   *
+   * @return a non-{@code null}, unmodifiable {@link List}
+   */
+  private final List<RemoteRepository> prepare(final List<RemoteRepository> remoteRepositories) {
+    final List<RemoteRepository> returnValue;
+    if (remoteRepositories == null || remoteRepositories.isEmpty()) {
+      returnValue = Collections.emptyList();
+    } else {
+      returnValue = Collections.unmodifiableList(new ArrayList<>(this.repositorySystem.newResolutionRepositories(this.session, remoteRepositories)));
+    }
+    return returnValue;
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A key identifying a pooled resolver.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Key {
+
+    private final String tenant;
+
+    private final List<RemoteRepository> remoteRepositories;
+
+    private Key(final String tenant, final List<RemoteRepository> remoteRepositories) {
+      super();
+      this.tenant = tenant;
+      this.remoteRepositories = remoteRepositories == null ? null : Collections.unmodifiableList(new ArrayList<>(remoteRepositories));
+    }
+
+    @Override
+    public final int hashCode() {
+      return Objects.hash(this.tenant, this.remoteRepositories);
+    }
+
+    @Override
+    public final boolean equals(final Object other) {
+      if (other == this) {
+        return true;
+      } else if (other instanceof Key) {
+        final Key her = (Key)other;
+        return this.tenant.equals(her.tenant) && Objects.equals(this.remoteRepositories, her.remoteRepositories);
+      } else {
+        return false;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,324 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+/**
+ * A persistent store of pre-parsed {@link Chart} messages, each
+ * kept in a snapshot file that sits alongside the chart archive it
+ * was loaded from, typically in a local Maven repository.
+ *
+ * <p>A snapshot file holds the serialized {@link Chart} together
+ * with the length, last modification time and SHA-256 digest of the
+ * archive it was loaded from.  {@linkplain #read(Path) Reading} a
+ * snapshot memory-maps it and parses the {@link Chart} directly,
+ * which is considerably cheaper than decompressing and walking the
+ * archive again.  A snapshot is used without reading the archive at
+ * all if the archive's length and last modification time are those
+ * recorded; if only its last modification time differs, the archive
+ * is digested and the snapshot is used only if the digests match.
+ * A snapshot whose recorded length does not match the archive, or
+ * that is truncated or otherwise malformed, is ignored.</p>
+ *
+ * <p>Instances of this class are safe for concurrent use by multiple
+ * threads and multiple processes: snapshots are written to a
+ * temporary file first and then moved into place.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setChartSnapshotStore(ChartSnapshotStore)
+ */
+public class ChartSnapshotStore {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The suffix appended to the name of a chart archive to form the
+   * name of its snapshot file.
+   *
+   * @see #getSnapshotPath(Path)
+   */
+  public static final String SNAPSHOT_SUFFIX = ".chart-snapshot";
+
+  /**
+   * The magic number that begins every snapshot file.
+   */
+  private static final int MAGIC = 0x48434853; // "HCHS"
+
+  /**
+   * The version of the snapshot file format written by this class.
+   */
+  private static final int FORMAT_VERSION = 2;
+
+  /**
+   * The size, in bytes, of the part of a snapshot file's header that
+   * precedes the archive's digest: the magic number, the format
+   * version, the archive's length and last modification time, and
+   * the digest's length.
+   */
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+  /**
+   * The name of the {@link MessageDigest} algorithm used to
+   * fingerprint chart archives.
+   */
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  /**
+   * The size, in bytes, of the buffer used to digest chart archives.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartSnapshotStore}.
+   */
+  public ChartSnapshotStore() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link Path} of the snapshot file corresponding to
+   * the supplied chart archive.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.</p>
+   *
+   * @param chartPath the {@link Path} of a chart archive; must not be
+   * {@code null}
+   *
+   * @return the non-{@code null} {@link Path} of the corresponding
+   * snapshot file, which may not exist
+   *
+   * @exception NullPointerException if {@code chartPath} is {@code
+   * null}
+   */
+  public Path getSnapshotPath(final Path chartPath) {
+    Objects.requireNonNull(chartPath);
+    return chartPath.resolveSibling(chartPath.getFileName().toString() + SNAPSHOT_SUFFIX);
+  }
+
+  /**
+   * Returns the {@link Chart} stored in the snapshot file
+   * corresponding to the supplied chart archive, or {@code null} if
+   * there is no such snapshot file or if it does not correspond to
+   * the current contents of the chart archive.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param chartPath the {@link Path} of a chart archive; must not be
+   * {@code null}
+   *
+   * @return a {@link Chart}, or {@code null}
+   *
+   * @exception NullPointerException if {@code chartPath} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @see #write(Path, Chart)
+   */
+  public Chart read(final Path chartPath) throws IOException {
+    Objects.requireNonNull(chartPath);
+    final Path snapshotPath = this.getSnapshotPath(chartPath);
+    assert snapshotPath != null;
+    Chart returnValue = null;
+    try (final FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size <= Integer.MAX_VALUE) {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        assert buffer != null;
+        if (buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC && buffer.getInt() == FORMAT_VERSION) {
+          final long sourceLength = buffer.getLong();
+          final long sourceLastModified = buffer.getLong();
+          final int digestLength = buffer.getInt();
+          if (sourceLength == Files.size(chartPath) && digestLength >= 0 && digestLength <= buffer.remaining() - 8) {
+            final byte[] recordedDigest = new byte[digestLength];
+            buffer.get(recordedDigest);
+            final long chartLength = buffer.getLong();
+            // The archive's length and last modification time are
+            // the cheap check; only if it was touched since the
+            // snapshot was written is it digested.
+            if (chartLength == buffer.remaining() &&
+                (sourceLastModified == Files.getLastModifiedTime(chartPath).toMillis() || Arrays.equals(recordedDigest, digest(chartPath)))) {
+              try {
+                returnValue = Chart.parseFrom(buffer.slice());
+              } catch (final InvalidProtocolBufferException invalidProtocolBufferException) {
+                returnValue = null;
+              }
+            }
+          }
+        }
+      }
+    } catch (final NoSuchFileException noSuchFileException) {
+      returnValue = null;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Writes the supplied {@link Chart} to the snapshot file
+   * corresponding to the supplied chart archive, replacing any
+   * snapshot file that is already present.
+   *
+   * @param chartPath the {@link Path} of the chart archive from which
+   * the supplied {@link Chart} was loaded; must not be {@code null}
+   *
+   * @param chart the {@link Chart} to store; must not be {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @see #read(Path)
+   */
+  public void write(final Path chartPath, final Chart chart) throws IOException {
+    Objects.requireNonNull(chartPath);
+    Objects.requireNonNull(chart);
+    final Path snapshotPath = this.getSnapshotPath(chartPath);
+    assert snapshotPath != null;
+    final long sourceLength = Files.size(chartPath);
+    final long sourceLastModified = Files.getLastModifiedTime(chartPath).toMillis();
+    final byte[] digest = digest(chartPath);
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + digest.length + 8);
+    header.putInt(MAGIC);
+    header.putInt(FORMAT_VERSION);
+    header.putLong(sourceLength);
+    header.putLong(sourceLastModified);
+    header.putInt(digest.length);
+    header.put(digest);
+    header.putLong(chart.getSerializedSize());
+    final Path temporaryPath = Files.createTempFile(snapshotPath.toAbsolutePath().getParent(), snapshotPath.getFileName().toString(), ".tmp");
+    assert temporaryPath != null;
+    try {
+      try (final OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+        outputStream.write(header.array());
+        chart.writeTo(outputStream);
+      }
+      try {
+        Files.move(temporaryPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException atomicMoveNotSupportedException) {
+        Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryPath);
+    }
+  }
+
+  /**
+   * Deletes the snapshot file corresponding to the supplied chart
+   * archive, if there is one.
+   *
+   * @param chartPath the {@link Path} of a chart archive; must not be
+   * {@code null}
+   *
+   * @return {@code true} if a snapshot file was deleted; {@code
+   * false} otherwise
+   *
+   * @exception NullPointerException if {@code chartPath} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  public boolean delete(final Path chartPath) throws IOException {
+    return Files.deleteIfExists(this.getSnapshotPath(chartPath));
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the SHA-256 digest of the contents of the file
+   * identified by the supplied {@link Path}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param path the {@link Path} of the file to digest; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} array of digest bytes
+   *
+   * @exception NullPointerException if {@code path} is {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  private static final byte[] digest(final Path path) throws IOException {
+    Objects.requireNonNull(path);
+    final MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (final NoSuchAlgorithmException noSuchAlgorithmException) {
+      // Every Java platform implementation is required to support SHA-256.
+      throw new IllegalStateException(noSuchAlgorithmException.getMessage(), noSuchAlgorithmException);
+    }
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        messageDigest.update(buffer);
+        buffer.clear();
+      }
+    }
+    return messageDigest.digest();
+  }
+
+}
@@ -0,0 +1,577 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A {@link TransferListener} that feeds the bytes of a chart
+ * archive, as they arrive from a remote repository, to a chart
+ * loader running on another thread, so that the chart is loaded by
+ * the time its download finishes.
+ *
+ * <p>The download itself proceeds exactly as it otherwise would, so
+ * the archive is still persisted to the local repository.  All
+ * events are forwarded to a delegate {@link TransferListener}.</p>
+ *
+ * <p>At most a bounded number of bytes are buffered between the
+ * transfer and the loader; once that many are buffered, the
+ * transfer waits for the loader to catch up.  If anything unusual
+ * happens&mdash;the transfer is restarted or resumed partway
+ * through, fails, or waits longer than a bounded time for the
+ * loader&mdash;streaming is abandoned and {@link
+ * #getChart(Artifact)} returns {@code null}, so the caller can fall
+ * back to loading the persisted archive.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setStreamingEnabled(boolean)
+ */
+final class ChartStreamingTransferListener extends ChartTransferListener implements AutoCloseable {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default number of bytes that may be buffered between the
+   * transfer and the loader.
+   */
+  private static final int DEFAULT_CAPACITY_IN_BYTES = 4 * 1024 * 1024;
+
+  /**
+   * The default number of milliseconds the transfer will wait for
+   * the loader to make room for more bytes before streaming is
+   * abandoned.
+   */
+  private static final long DEFAULT_TIMEOUT_IN_MILLISECONDS = 10000L;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link Executor} on which the loader runs.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Executor executor;
+
+  /**
+   * The {@link StreamLoader} that turns a stream of archive bytes
+   * into a {@link Chart.Builder}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final StreamLoader loader;
+
+  /**
+   * The number of bytes that may be buffered between the transfer
+   * and the loader.
+   */
+  private final int capacityInBytes;
+
+  /**
+   * The number of nanoseconds the transfer will wait for the loader
+   * to make room for more bytes before streaming is abandoned.
+   */
+  private final long timeoutInNanoseconds;
+
+  /**
+   * The {@link Pipe} carrying bytes from the transfer to the loader.
+   *
+   * <p>This field is {@code null} until a matching transfer starts.</p>
+   *
+   * <p>This field is only accessed by the transferring thread and,
+   * via {@link #close()}, by the thread that started the
+   * resolution after the transfer has finished.</p>
+   */
+  private volatile Pipe pipe;
+
+  /**
+   * A {@link CompletableFuture} representing the work of the loader.
+   *
+   * <p>This field is {@code null} until a matching transfer starts.</p>
+   */
+  private volatile CompletableFuture<Chart.Builder> load;
+
+  /**
+   * The number of bytes fed to the loader so far.
+   */
+  private volatile long bytesStreamed;
+
+  /**
+   * Whether the transfer completed successfully and every byte was
+   * fed to the loader.
+   */
+  private volatile boolean complete;
+
+  /**
+   * Whether streaming has been abandoned.
+   */
+  private volatile boolean abandoned;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartStreamingTransferListener}.
+   *
+   * @param delegate the {@link TransferListener} to which all events
+   * will be forwarded; may be {@code null}
+   *
+   * @param chart the {@link Artifact} representing the chart being
+   * resolved; must not be {@code null}
+   *
+   * @param executor the {@link Executor} on which the loader will
+   * run; must not be {@code null}
+   *
+   * @param loader the {@link StreamLoader} that will turn a stream of
+   * archive bytes into a {@link Chart.Builder}; must not be {@code
+   * null}
+   *
+   * @exception NullPointerException if {@code chart}, {@code
+   * executor} or {@code loader} is {@code null}
+   *
+   * @see #ChartStreamingTransferListener(TransferListener, Artifact,
+   * Executor, StreamLoader, int, long, TimeUnit)
+   */
+  ChartStreamingTransferListener(final TransferListener delegate,
+                                 final Artifact chart,
+                                 final Executor executor,
+                                 final StreamLoader loader) {
+    this(delegate, chart, executor, loader, DEFAULT_CAPACITY_IN_BYTES, DEFAULT_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a new {@link ChartStreamingTransferListener}.
+   *
+   * @param delegate the {@link TransferListener} to which all events
+   * will be forwarded; may be {@code null}
+   *
+   * @param chart the {@link Artifact} representing the chart being
+   * resolved; must not be {@code null}
+   *
+   * @param executor the {@link Executor} on which the loader will
+   * run; must not be {@code null}
+   *
+   * @param loader the {@link StreamLoader} that will turn a stream of
+   * archive bytes into a {@link Chart.Builder}; must not be {@code
+   * null}
+   *
+   * @param capacityInBytes the number of bytes that may be buffered
+   * between the transfer and the loader; must be greater than zero
+   *
+   * @param timeout how long the transfer will wait for the loader to
+   * make room for more bytes before streaming is abandoned; must not
+   * be negative
+   *
+   * @param timeUnit the {@link TimeUnit} in which {@code timeout} is
+   * expressed; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code chart}, {@code
+   * executor}, {@code loader} or {@code timeUnit} is {@code null}
+   *
+   * @exception IllegalArgumentException if {@code capacityInBytes}
+   * is not greater than zero or {@code timeout} is negative
+   */
+  ChartStreamingTransferListener(final TransferListener delegate,
+                                 final Artifact chart,
+                                 final Executor executor,
+                                 final StreamLoader loader,
+                                 final int capacityInBytes,
+                                 final long timeout,
+                                 final TimeUnit timeUnit) {
+    super(delegate, chart);
+    this.executor = Objects.requireNonNull(executor);
+    this.loader = Objects.requireNonNull(loader);
+    Objects.requireNonNull(timeUnit);
+    if (capacityInBytes <= 0) {
+      throw new IllegalArgumentException("capacityInBytes <= 0: " + capacityInBytes);
+    }
+    if (timeout < 0L) {
+      throw new IllegalArgumentException("timeout < 0: " + timeout);
+    }
+    this.capacityInBytes = capacityInBytes;
+    this.timeoutInNanoseconds = timeUnit.toNanos(timeout);
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Override
+  public final void transferStarted(final TransferEvent event) throws TransferCancelledException {
+    super.transferStarted(event);
+    if (this.isChartDownload(event)) {
+      if (this.pipe != null || event.getResource().getResumeOffset() > 0L) {
+        // A retry or a resumed download; we can't see the earlier
+        // bytes, so give up.
+        this.abandon(new IOException("Transfer restarted or resumed: " + event));
+      } else if (!this.abandoned) {
+        final Pipe pipe = new Pipe(this.capacityInBytes);
+        final CompletableFuture<Chart.Builder> load = new CompletableFuture<>();
+        try {
+          this.executor.execute(() -> {
+              try (final InputStream inputStream = pipe) {
+                final Chart.Builder chart = this.loader.load(inputStream);
+                // Loaders stop at the end of the archive proper,
+                // leaving things like tar record padding and GZIP
+                // trailers unread; consume them so that the transfer
+                // can finish.
+                pipe.drain();
+                load.complete(chart);
+              } catch (final Throwable throwable) {
+                load.completeExceptionally(throwable);
+                if (throwable instanceof Error) {
+                  throw (Error)throwable;
+                }
+              }
+            });
+          this.pipe = pipe;
+          this.load = load;
+        } catch (final RejectedExecutionException rejectedExecutionException) {
+          this.abandoned = true;
+        }
+      }
+    }
+  }
+
+  @Override
+  public final void transferProgressed(final TransferEvent event) throws TransferCancelledException {
+    super.transferProgressed(event);
+    final Pipe pipe = this.pipe;
+    if (pipe != null && !this.abandoned && this.isChartDownload(event)) {
+      final ByteBuffer data = event.getDataBuffer();
+      if (data != null && data.hasRemaining()) {
+        final int length = data.remaining();
+        if (pipe.offer(data, this.timeoutInNanoseconds)) {
+          this.bytesStreamed += length;
+        } else {
+          this.abandon(new IOException("Chart loader did not keep up; streaming abandoned"));
+        }
+      }
+    }
+  }
+
+  @Override
+  public final void transferSucceeded(final TransferEvent event) {
+    super.transferSucceeded(event);
+    final Pipe pipe = this.pipe;
+    if (pipe != null && !this.abandoned && this.isChartDownload(event)) {
+      this.complete = pipe.finish();
+    }
+  }
+
+  @Override
+  public final void transferFailed(final TransferEvent event) {
+    super.transferFailed(event);
+    // There is no need to handle transferCorrupted(): under a lenient
+    // checksum policy a corrupted transfer still succeeds, and under
+    // a strict one it is either retried, which restarts it, or fails.
+    if (this.isChartDownload(event)) {
+      this.abandon(new IOException("Transfer failed: " + event));
+    }
+  }
+
+  /**
+   * Returns the {@link Chart.Builder} produced by streaming the
+   * download of the supplied resolved {@link Artifact}, waiting for
+   * the loader to finish if necessary, or {@code null} if no such
+   * download took place or if streaming did not succeed.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param resolvedChart the resolved {@link Artifact}; must not be
+   * {@code null}
+   *
+   * @return a {@link Chart.Builder}, or {@code null}
+   *
+   * @exception NullPointerException if {@code resolvedChart} is
+   * {@code null}
+   */
+  final Chart.Builder getChart(final Artifact resolvedChart) {
+    Objects.requireNonNull(resolvedChart);
+    Chart.Builder returnValue = null;
+    final CompletableFuture<Chart.Builder> load = this.load;
+    if (load != null && this.complete && !this.abandoned) {
+      final File file = resolvedChart.getFile();
+      if (file != null && file.length() == this.bytesStreamed) {
+        try {
+          returnValue = load.join();
+        } catch (final CompletionException completionException) {
+          returnValue = null;
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Releases the loader if it is still waiting for bytes.
+   */
+  @Override
+  public final void close() {
+    if (!this.complete) {
+      this.abandon(new IOException("Transfer did not complete"));
+    }
+  }
+
+  private final void abandon(final IOException reason) {
+    this.abandoned = true;
+    final Pipe pipe = this.pipe;
+    if (pipe != null) {
+      pipe.abort(reason);
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A function that turns a stream of chart archive bytes into a
+   * {@link Chart.Builder}.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  @FunctionalInterface
+  static interface StreamLoader {
+
+    /**
+     * Loads a chart from the supplied {@link InputStream}.
+     *
+     * @param inputStream the {@link InputStream} to read; must not be
+     * {@code null}; will not be closed by implementations
+     *
+     * @return a non-{@code null} {@link Chart.Builder}
+     *
+     * @exception IOException if an input or output error occurs
+     *
+     * @exception ChartResolverException if the chart could not be
+     * loaded
+     */
+    Chart.Builder load(final InputStream inputStream) throws IOException, ChartResolverException;
+
+  }
+
+  /**
+   * A single-producer, single-consumer {@link InputStream} fed with
+   * copies of {@link ByteBuffer}s and bounded by the number of bytes
+   * it buffers.
+   *
+   * <p>Offering waits, for a bounded time, while the {@link Pipe} is
+   * full.  A chunk larger than the capacity is accepted once the
+   * {@link Pipe} is empty.  The end of the stream can always be
+   * signaled.</p>
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Pipe extends InputStream {
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final int capacityInBytes;
+
+    private final Queue<ByteBuffer> chunks;
+
+    private long bufferedBytes;
+
+    private boolean finished;
+
+    private volatile IOException failure;
+
+    private ByteBuffer current;
+
+    private Pipe(final int capacityInBytes) {
+      super();
+      assert capacityInBytes > 0;
+      this.capacityInBytes = capacityInBytes;
+      this.chunks = new ArrayDeque<>();
+    }
+
+    private final boolean offer(final ByteBuffer data, final long timeoutInNanoseconds) {
+      final int length = data.remaining();
+      final ByteBuffer copy = ByteBuffer.allocate(length);
+      copy.put(data.duplicate());
+      copy.flip();
+      final long deadline = System.nanoTime() + timeoutInNanoseconds;
+      synchronized (this) {
+        while (this.failure == null && this.bufferedBytes > 0L && this.bufferedBytes + length > this.capacityInBytes) {
+          final long remainingNanoseconds = deadline - System.nanoTime();
+          if (remainingNanoseconds <= 0L) {
+            return false;
+          }
+          try {
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanoseconds);
+          } catch (final InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
+        }
+        if (this.failure != null) {
+          return false;
+        }
+        this.chunks.add(copy);
+        this.bufferedBytes += length;
+        this.notifyAll();
+      }
+      return true;
+    }
+
+    private final synchronized boolean finish() {
+      this.finished = true;
+      this.notifyAll();
+      return this.failure == null;
+    }
+
+    private final synchronized void abort(final IOException reason) {
+      this.failure = reason;
+      this.chunks.clear();
+      this.bufferedBytes = 0L;
+      // Make sure a blocked reader or writer wakes up.
+      this.notifyAll();
+    }
+
+    private final ByteBuffer current() throws IOException {
+      ByteBuffer current = this.current;
+      if (current != END && (current == null || !current.hasRemaining())) {
+        synchronized (this) {
+          while (current != END && (current == null || !current.hasRemaining())) {
+            if (this.failure != null) {
+              break;
+            }
+            current = this.chunks.poll();
+            if (current != null) {
+              this.bufferedBytes -= current.remaining();
+              this.notifyAll();
+            } else if (this.finished) {
+              current = END;
+            } else {
+              try {
+                this.wait();
+              } catch (final InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+              }
+            }
+          }
+        }
+      }
+      this.current = current;
+      final IOException failure = this.failure;
+      if (failure != null) {
+        throw failure;
+      }
+      return current;
+    }
+
+    /**
+     * Discards everything remaining in this {@link Pipe} up to the
+     * end of the stream.
+     *
+     * @exception IOException if the stream was aborted
+     */
+    private final void drain() throws IOException {
+      ByteBuffer current = this.current();
+      while (current != END) {
+        current.position(current.limit());
+        current = this.current();
+      }
+    }
+
+    @Override
+    public final int read() throws IOException {
+      final ByteBuffer current = this.current();
+      return current == END ? -1 : current.get() & 0xFF;
+    }
+
+    @Override
+    public final int read(final byte[] bytes, final int offset, final int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      final ByteBuffer current = this.current();
+      final int returnValue;
+      if (current == END) {
+        returnValue = -1;
+      } else {
+        returnValue = Math.min(length, current.remaining());
+        current.get(bytes, offset, returnValue);
+      }
+      return returnValue;
+    }
+
+    /**
+     * Closes this {@link Pipe}, causing any further bytes offered to
+     * it to be refused if the end of the stream has not been reached.
+     */
+    @Override
+    public final void close() {
+      if (this.current != END) {
+        this.abort(new IOException("Pipe closed before end of stream"));
+      }
+    }
+
+    @Override
+    public final int available() {
+      final ByteBuffer current = this.current;
+      return current == null || current == END ? 0 : current.remaining();
+    }
+
+  }
+
+}
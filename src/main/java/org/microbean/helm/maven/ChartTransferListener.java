@@ -0,0 +1,178 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.Objects;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+
+/**
+ * A {@link TransferListener} that forwards every event to a delegate
+ * {@link TransferListener} and that can tell which events concern
+ * the download of a particular chart archive.
+ *
+ * <p>Subclasses that override event methods must call the
+ * corresponding superclass method so that events continue to be
+ * forwarded.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+abstract class ChartTransferListener extends AbstractTransferListener {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link TransferListener} to which all events are forwarded.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private final TransferListener delegate;
+
+  /**
+   * The {@link Artifact} representing the chart being resolved.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Artifact chart;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartTransferListener}.
+   *
+   * @param delegate the {@link TransferListener} to which all events
+   * will be forwarded; may be {@code null}
+   *
+   * @param chart the {@link Artifact} representing the chart being
+   * resolved; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   */
+  ChartTransferListener(final TransferListener delegate, final Artifact chart) {
+    super();
+    this.delegate = delegate;
+    this.chart = Objects.requireNonNull(chart);
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link Artifact} representing the chart being
+   * resolved.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Artifact}
+   */
+  final Artifact getChart() {
+    return this.chart;
+  }
+
+  @Override
+  public void transferInitiated(final TransferEvent event) throws TransferCancelledException {
+    if (this.delegate != null) {
+      this.delegate.transferInitiated(event);
+    }
+  }
+
+  @Override
+  public void transferStarted(final TransferEvent event) throws TransferCancelledException {
+    if (this.delegate != null) {
+      this.delegate.transferStarted(event);
+    }
+  }
+
+  @Override
+  public void transferProgressed(final TransferEvent event) throws TransferCancelledException {
+    if (this.delegate != null) {
+      this.delegate.transferProgressed(event);
+    }
+  }
+
+  @Override
+  public void transferCorrupted(final TransferEvent event) throws TransferCancelledException {
+    if (this.delegate != null) {
+      this.delegate.transferCorrupted(event);
+    }
+  }
+
+  @Override
+  public void transferSucceeded(final TransferEvent event) {
+    if (this.delegate != null) {
+      this.delegate.transferSucceeded(event);
+    }
+  }
+
+  @Override
+  public void transferFailed(final TransferEvent event) {
+    if (this.delegate != null) {
+      this.delegate.transferFailed(event);
+    }
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link TransferEvent}
+   * concerns the download of the chart archive being resolved, as
+   * opposed to, say, its checksum or repository metadata.
+   *
+   * @param event the {@link TransferEvent} to test; may be {@code
+   * null} in which case {@code false} will be returned
+   *
+   * @return {@code true} if {@code event} concerns the download of
+   * the chart archive being resolved
+   */
+  final boolean isChartDownload(final TransferEvent event) {
+    boolean returnValue = false;
+    if (event != null && event.getRequestType() == TransferEvent.RequestType.GET) {
+      final TransferResource resource = event.getResource();
+      if (resource != null) {
+        final String resourceName = resource.getResourceName();
+        if (resourceName != null) {
+          final String classifier = this.chart.getClassifier();
+          final String suffix = (classifier == null || classifier.isEmpty() ? "" : "-" + classifier) + "." + this.chart.getExtension();
+          final String prefix = this.chart.getGroupId().replace('.', '/') + "/" + this.chart.getArtifactId() + "/";
+          final int lastSlashIndex = resourceName.lastIndexOf('/');
+          returnValue =
+            resourceName.endsWith(suffix) &&
+            resourceName.startsWith(this.chart.getArtifactId() + "-", lastSlashIndex + 1) &&
+            (resourceName.startsWith(prefix) || resourceName.contains("/" + prefix));
+        }
+      }
+    }
+    return returnValue;
+  }
+
+}
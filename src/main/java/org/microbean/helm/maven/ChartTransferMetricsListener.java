@@ -0,0 +1,158 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+
+/**
+ * A {@link ChartTransferListener} that measures how long the
+ * transfer of a chart archive takes and how many bytes it moves.
+ *
+ * <p>Measurements are accumulated across retries and read by the
+ * resolving thread once resolution is complete.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChartResolverMetrics
+ */
+final class ChartTransferMetricsListener extends ChartTransferListener {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The value of {@link System#nanoTime()} when the current transfer
+   * was initiated, or {@code 0L} if no transfer is in progress.
+   */
+  private volatile long transferStart;
+
+  /**
+   * The total time, in nanoseconds, spent transferring the chart
+   * archive.
+   */
+  private volatile long transferNanoseconds;
+
+  /**
+   * The total number of bytes of the chart archive transferred.
+   */
+  private volatile long bytesTransferred;
+
+  /**
+   * Whether any transfer of the chart archive took place.
+   */
+  private volatile boolean transferred;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartTransferMetricsListener}.
+   *
+   * @param delegate the {@link TransferListener} to which all events
+   * will be forwarded; may be {@code null}
+   *
+   * @param chart the {@link Artifact} representing the chart being
+   * resolved; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   */
+  ChartTransferMetricsListener(final TransferListener delegate, final Artifact chart) {
+    super(delegate, chart);
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  @Override
+  public final void transferInitiated(final TransferEvent event) throws TransferCancelledException {
+    super.transferInitiated(event);
+    if (this.isChartDownload(event)) {
+      this.transferred = true;
+      this.transferStart = System.nanoTime();
+    }
+  }
+
+  @Override
+  public final void transferSucceeded(final TransferEvent event) {
+    super.transferSucceeded(event);
+    if (this.isChartDownload(event)) {
+      this.finish(event);
+    }
+  }
+
+  @Override
+  public final void transferFailed(final TransferEvent event) {
+    super.transferFailed(event);
+    if (this.isChartDownload(event)) {
+      this.finish(event);
+    }
+  }
+
+  /**
+   * Returns {@code true} if any transfer of the chart archive took
+   * place.
+   *
+   * @return {@code true} if the chart archive was transferred
+   */
+  final boolean isTransferred() {
+    return this.transferred;
+  }
+
+  /**
+   * Returns the total time, in nanoseconds, spent transferring the
+   * chart archive.
+   *
+   * @return the transfer time in nanoseconds; never negative
+   */
+  final long getTransferNanoseconds() {
+    return this.transferNanoseconds;
+  }
+
+  /**
+   * Returns the total number of bytes of the chart archive
+   * transferred.
+   *
+   * @return the number of bytes transferred; never negative
+   */
+  final long getBytesTransferred() {
+    return this.bytesTransferred;
+  }
+
+  private final void finish(final TransferEvent event) {
+    final long transferStart = this.transferStart;
+    if (transferStart != 0L) {
+      this.transferNanoseconds += System.nanoTime() - transferStart;
+      this.transferStart = 0L;
+    }
+    this.bytesTransferred += Math.max(0L, event.getTransferredBytes());
+  }
+
+}
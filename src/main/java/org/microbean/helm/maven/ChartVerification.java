@@ -0,0 +1,273 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Objects;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A single pass over the bytes of a chart archive that computes
+ * their SHA-256 digest and feeds them to a {@link
+ * ChartVerifier.Verification} while they are being loaded.
+ *
+ * <p>Instances of this class are not safe for use by multiple
+ * threads.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChartVerifier
+ */
+final class ChartVerification {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link ChartVerifier.Verification} fed by this {@link
+   * ChartVerification}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ChartVerifier.Verification verification;
+
+  /**
+   * The {@link MessageDigest} computing the SHA-256 digest of the
+   * bytes read so far.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final MessageDigest sha256;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ChartVerification}.
+   *
+   * @param verification the {@link ChartVerifier.Verification} to
+   * feed; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code verification} is
+   * {@code null}
+   */
+  ChartVerification(final ChartVerifier.Verification verification) {
+    super();
+    this.verification = Objects.requireNonNull(verification);
+    try {
+      this.sha256 = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException noSuchAlgorithmException) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(noSuchAlgorithmException.getMessage(), noSuchAlgorithmException);
+    }
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns an {@link InputStream} that reads from the supplied
+   * {@link InputStream} and passes every byte it reads to this {@link
+   * ChartVerification}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Closing the returned {@link InputStream} does not close the
+   * supplied {@link InputStream}, so loaders that close their input
+   * do not prevent the rest of it from being {@linkplain
+   * #finish(InputStream) read}.</p>
+   *
+   * @param inputStream the {@link InputStream} to read from; must not
+   * be {@code null}
+   *
+   * @return a non-{@code null} {@link InputStream}
+   *
+   * @exception NullPointerException if {@code inputStream} is {@code
+   * null}
+   *
+   * @see #finish(InputStream)
+   */
+  final InputStream wrap(final InputStream inputStream) {
+    return new DigestingInputStream(Objects.requireNonNull(inputStream));
+  }
+
+  /**
+   * Reads whatever remains of the supplied {@link InputStream}, which
+   * must have been returned by the {@link #wrap(InputStream)} method,
+   * {@linkplain ChartVerifier.Verification#verify(byte[]) verifies}
+   * the bytes read and returns their SHA-256 digest.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param inputStream an {@link InputStream} returned by the {@link
+   * #wrap(InputStream)} method; must not be {@code null}
+   *
+   * @return the non-{@code null} SHA-256 digest of the bytes read
+   *
+   * @exception NullPointerException if {@code inputStream} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if the bytes could not be
+   * verified
+   */
+  final byte[] finish(final InputStream inputStream) throws IOException, ChartResolverException {
+    Objects.requireNonNull(inputStream);
+    // Loaders need not read an archive to its end (a GZIP trailer,
+    // for example), but the digest must cover all of it.
+    final byte[] buffer = new byte[8192];
+    while (inputStream.read(buffer, 0, buffer.length) != -1) {
+
+    }
+    final byte[] returnValue = this.sha256.digest();
+    this.verification.verify(returnValue.clone());
+    return returnValue;
+  }
+
+  /**
+   * Reads the supplied {@link File}, {@linkplain
+   * ChartVerifier.Verification#verify(byte[]) verifies} its bytes and
+   * returns their SHA-256 digest.
+   *
+   * <p>This method is used for charts that were not loaded from their
+   * file, such as those read from a {@linkplain ChartSnapshotStore
+   * snapshot}.</p>
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param file the {@link File} to verify; must not be {@code null}
+   *
+   * @return the non-{@code null} SHA-256 digest of the file's bytes
+   *
+   * @exception NullPointerException if {@code file} is {@code null}
+   *
+   * @exception ChartResolverException if the file could not be read
+   * or its bytes could not be verified
+   */
+  final byte[] verify(final File file) throws ChartResolverException {
+    Objects.requireNonNull(file);
+    try (final InputStream inputStream = ChartArchiveFormats.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ))) {
+      return this.finish(this.wrap(inputStream));
+    } catch (final IOException exception) {
+      throw new ChartResolverException(exception.getMessage(), exception);
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A {@link FilterInputStream} that passes every byte it reads to
+   * the {@link ChartVerification} that created it.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private final class DigestingInputStream extends FilterInputStream {
+
+    private DigestingInputStream(final InputStream inputStream) {
+      super(inputStream);
+    }
+
+    @Override
+    public final int read() throws IOException {
+      final int returnValue = super.read();
+      if (returnValue != -1) {
+        final byte[] bytes = new byte[] { (byte)returnValue };
+        ChartVerification.this.sha256.update(bytes, 0, 1);
+        ChartVerification.this.verification.update(bytes, 0, 1);
+      }
+      return returnValue;
+    }
+
+    @Override
+    public final int read(final byte[] bytes, final int offset, final int length) throws IOException {
+      final int returnValue = super.read(bytes, offset, length);
+      if (returnValue > 0) {
+        ChartVerification.this.sha256.update(bytes, offset, returnValue);
+        ChartVerification.this.verification.update(bytes, offset, returnValue);
+      }
+      return returnValue;
+    }
+
+    /**
+     * Reads and digests, rather than skips, up to the supplied
+     * number of bytes.
+     */
+    @Override
+    public final long skip(final long count) throws IOException {
+      final byte[] buffer = new byte[(int)Math.min(8192L, Math.max(0L, count))];
+      long returnValue = 0L;
+      while (returnValue < count) {
+        final int read = this.read(buffer, 0, (int)Math.min(buffer.length, count - returnValue));
+        if (read == -1) {
+          break;
+        }
+        returnValue += read;
+      }
+      return returnValue;
+    }
+
+    @Override
+    public final boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public final void mark(final int readLimit) {
+
+    }
+
+    @Override
+    public final void reset() throws IOException {
+      throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public final void close() {
+
+    }
+
+  }
+
+}
@@ -0,0 +1,154 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A verifier of the integrity, and possibly the provenance, of the
+ * bytes of resolved Helm chart archives.
+ *
+ * <p>A {@link ChartVerifier} names the {@linkplain
+ * #getCompanions(Artifact) companion artifacts}, such as provenance
+ * files or detached signatures, that it needs in order to verify a
+ * chart.  For each chart that is loaded, a {@link
+ * MavenRepositoryChartResolver} resolves those companions and asks
+ * the {@link ChartVerifier} for a {@linkplain
+ * #newVerification(Artifact, List) new <code>Verification</code>},
+ * which is {@linkplain Verification#update(byte[], int, int) fed}
+ * the chart's bytes by the same pass that loads the chart and is
+ * then asked to {@linkplain Verification#verify(byte[]) verify}
+ * them, given their SHA-256 digest.</p>
+ *
+ * <p>Implementations must be safe for use by multiple threads.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ProvenanceChartVerifier
+ *
+ * @see MavenRepositoryChartResolver#setChartVerifier(ChartVerifier)
+ */
+public interface ChartVerifier {
+
+  /**
+   * Returns the artifacts, in addition to the supplied resolved
+   * chart, that must be resolved in order to verify it.
+   *
+   * <p>Implementations of this method must not return {@code
+   * null}.</p>
+   *
+   * <p>The default implementation returns an {@linkplain
+   * Collections#emptyList() empty <code>List</code>}.</p>
+   *
+   * @param resolvedChart the resolved {@link Artifact} representing
+   * the chart to be verified; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link List} of {@link Artifact}s
+   * with concrete versions
+   *
+   * @exception NullPointerException if {@code resolvedChart} is
+   * {@code null}
+   */
+  default List<Artifact> getCompanions(final Artifact resolvedChart) {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Returns a new {@link Verification} of the supplied resolved
+   * chart.
+   *
+   * <p>Implementations of this method must not return {@code
+   * null}.</p>
+   *
+   * @param resolvedChart the resolved {@link Artifact} representing
+   * the chart to be verified; must not be {@code null}
+   *
+   * @param resolvedCompanions the resolved {@linkplain
+   * #getCompanions(Artifact) companions} of the chart, in the order
+   * in which they were returned by the {@link
+   * #getCompanions(Artifact)} method; must not be {@code null}
+   *
+   * @return a new, non-{@code null} {@link Verification}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @exception ChartResolverException if the companions are
+   * malformed or the chart cannot be verified for any other reason
+   */
+  Verification newVerification(final Artifact resolvedChart, final List<? extends Artifact> resolvedCompanions) throws ChartResolverException;
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * The verification of the bytes of a single chart archive.
+   *
+   * <p>A {@link Verification} is used by one thread at a time: it is
+   * {@linkplain #update(byte[], int, int) updated} with every byte of
+   * the archive, in order, and then {@linkplain #verify(byte[])
+   * verified} exactly once.</p>
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  public static interface Verification {
+
+    /**
+     * Accepts the next bytes of the chart archive being verified.
+     *
+     * <p>Implementations that check detached signatures should feed
+     * the bytes to the signature's digest here, so that the archive
+     * is read only once.</p>
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param bytes the array holding the bytes; never {@code null}
+     *
+     * @param offset the index of the first byte in {@code bytes}
+     *
+     * @param length the number of bytes
+     */
+    default void update(final byte[] bytes, final int offset, final int length) {
+
+    }
+
+    /**
+     * Verifies the chart archive whose bytes have been supplied to
+     * the {@link #update(byte[], int, int)} method and whose SHA-256
+     * digest is supplied.
+     *
+     * @param sha256 the SHA-256 digest of the archive; never {@code
+     * null}; must not be modified
+     *
+     * @exception ChartResolverException if the archive could not be
+     * verified
+     */
+    void verify(final byte[] sha256) throws ChartResolverException;
+
+  }
+
+}
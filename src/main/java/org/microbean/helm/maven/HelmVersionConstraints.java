@@ -0,0 +1,253 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+/**
+ * A utility class that translates the semantic version constraints
+ * found in Helm {@code requirements.yaml} files into Maven version
+ * specifications.
+ *
+ * <p>The following forms are understood:</p>
+ *
+ * <ul>
+ *
+ * <li>exact versions such as {@code 1.2.3}, which are returned as
+ * they are</li>
+ *
+ * <li>{@code *}, {@code x} or the absence of a constraint, which
+ * become {@code LATEST}</li>
+ *
+ * <li>wildcards such as {@code 1.2.x} or {@code 1.*}</li>
+ *
+ * <li>tilde ({@code ~1.2.3}) and caret ({@code ^1.2.3})
+ * constraints</li>
+ *
+ * <li>comparisons such as {@code >=1.0.0 <2.0.0}, whether separated
+ * by whitespace or commas</li>
+ *
+ * <li>hyphenated ranges such as {@code 1.0.0 - 2.0.0}</li>
+ *
+ * <li>any of the above joined by {@code ||}</li>
+ *
+ * <li>Maven version ranges such as {@code [1.0,2.0)}, which are
+ * returned as they are</li>
+ *
+ * </ul>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#toDependencyArtifact(org.eclipse.aether.artifact.Artifact,
+ * String, String, String)
+ */
+final class HelmVersionConstraints {
+
+
+  /*
+   * Constructors.
+   */
+
+
+  private HelmVersionConstraints() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns a Maven version specification equivalent to the supplied
+   * Helm version constraint.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param constraint the Helm version constraint; may be {@code
+   * null}
+   *
+   * @return a non-{@code null} Maven version, version range or
+   * {@code LATEST}
+   */
+  static final String toMavenVersion(String constraint) {
+    if (constraint == null) {
+      return "LATEST";
+    }
+    constraint = constraint.trim();
+    if (constraint.isEmpty() || isWildcard(constraint) || "latest".equalsIgnoreCase(constraint)) {
+      return "LATEST";
+    }
+    if (constraint.startsWith("[") || constraint.startsWith("(")) {
+      return constraint;
+    }
+    final String[] alternatives = constraint.split("\\|\\|");
+    try {
+      if (alternatives.length == 1) {
+        return toMavenRange(alternatives[0].trim(), false);
+      }
+      final StringBuilder sb = new StringBuilder();
+      for (final String alternative : alternatives) {
+        if (sb.length() > 0) {
+          sb.append(',');
+        }
+        final String range = toMavenRange(alternative.trim(), true);
+        if ("LATEST".equals(range)) {
+          return range;
+        }
+        sb.append(range);
+      }
+      return sb.toString();
+    } catch (final NumberFormatException notSemanticVersioning) {
+      // Leave the constraint for Maven to interpret.
+      return constraint;
+    }
+  }
+
+  /**
+   * Returns a Maven version specification equivalent to the supplied
+   * Helm version constraint, which must not contain {@code ||}.
+   *
+   * @param constraint the constraint; must not be {@code null}
+   *
+   * @param rangeRequired whether an exact version must be expressed
+   * as a range containing only itself
+   *
+   * @return a non-{@code null} Maven version specification
+   */
+  private static final String toMavenRange(final String constraint, final boolean rangeRequired) {
+    if (constraint.isEmpty() || isWildcard(constraint)) {
+      return "LATEST";
+    }
+
+    final int hyphenIndex = constraint.indexOf(" - ");
+    if (hyphenIndex > 0) {
+      return "[" + stripPrefix(constraint.substring(0, hyphenIndex).trim()) + "," + stripPrefix(constraint.substring(hyphenIndex + 3).trim()) + "]";
+    }
+
+    String lower = null;
+    boolean lowerInclusive = true;
+    String upper = null;
+    boolean upperInclusive = false;
+    for (final String comparison : constraint.split("[\\s,]+")) {
+      if (comparison.isEmpty()) {
+        continue;
+      }
+      if (comparison.startsWith(">=")) {
+        lower = stripPrefix(comparison.substring(2));
+        lowerInclusive = true;
+      } else if (comparison.startsWith(">")) {
+        lower = stripPrefix(comparison.substring(1));
+        lowerInclusive = false;
+      } else if (comparison.startsWith("<=")) {
+        upper = stripPrefix(comparison.substring(2));
+        upperInclusive = true;
+      } else if (comparison.startsWith("<")) {
+        upper = stripPrefix(comparison.substring(1));
+        upperInclusive = false;
+      } else if (comparison.startsWith("~") || comparison.startsWith("^")) {
+        final String[] parts = stripPrefix(comparison.substring(comparison.startsWith("~>") ? 2 : 1)).split("\\.");
+        lower = join(parts, parts.length);
+        lowerInclusive = true;
+        upperInclusive = false;
+        if (comparison.startsWith("^")) {
+          int significant = 0;
+          while (significant < parts.length - 1 && "0".equals(parts[significant])) {
+            significant++;
+          }
+          upper = bump(parts, significant);
+        } else {
+          upper = bump(parts, parts.length > 1 ? 1 : 0);
+        }
+      } else {
+        final String version = stripPrefix(comparison);
+        final String[] parts = version.split("\\.");
+        int wildcardIndex = -1;
+        for (int i = 0; i < parts.length; i++) {
+          if (isWildcard(parts[i])) {
+            wildcardIndex = i;
+            break;
+          }
+        }
+        if (wildcardIndex < 0) {
+          return rangeRequired ? "[" + version + "]" : version;
+        } else if (wildcardIndex == 0) {
+          return "LATEST";
+        }
+        lower = join(parts, wildcardIndex);
+        lowerInclusive = true;
+        upper = bump(parts, wildcardIndex - 1);
+        upperInclusive = false;
+      }
+    }
+    return (lowerInclusive && lower != null ? "[" : "(") + (lower == null ? "" : lower) + "," + (upper == null ? "" : upper) + (upperInclusive && upper != null ? "]" : ")");
+  }
+
+  private static final boolean isWildcard(final String s) {
+    return "*".equals(s) || "x".equalsIgnoreCase(s);
+  }
+
+  private static final String stripPrefix(final String version) {
+    String returnValue = version;
+    if (returnValue.startsWith("=")) {
+      returnValue = returnValue.substring(1);
+    }
+    if (returnValue.startsWith("v")) {
+      returnValue = returnValue.substring(1);
+    }
+    return returnValue;
+  }
+
+  private static final String join(final String[] parts, final int count) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append('.');
+      }
+      sb.append(parts[i]);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns a version consisting of the supplied parts up to but not
+   * including the part at the supplied index, followed by the part
+   * at the supplied index incremented by one.
+   *
+   * @param parts the numeric parts of a version; must not be {@code
+   * null}
+   *
+   * @param index the index of the part to increment
+   *
+   * @return the incremented version
+   *
+   * @exception NumberFormatException if the part at the supplied
+   * index is not numeric
+   */
+  private static final String bump(final String[] parts, final int index) {
+    final String[] bumped = new String[index + 1];
+    System.arraycopy(parts, 0, bumped, 0, index);
+    String part = parts[index];
+    final int hyphenIndex = part.indexOf('-');
+    if (hyphenIndex > 0) {
+      part = part.substring(0, hyphenIndex);
+    }
+    bumped[index] = String.valueOf(Long.parseLong(part) + 1L);
+    return join(bumped, bumped.length);
+  }
+
+}
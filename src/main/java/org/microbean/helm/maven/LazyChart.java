@@ -0,0 +1,315 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.List;
+import java.util.Objects;
+
+import com.google.protobuf.Any;
+
+import hapi.chart.ChartOuterClass.Chart;
+import hapi.chart.ConfigOuterClass.Config;
+import hapi.chart.MetadataOuterClass.Metadata;
+import hapi.chart.TemplateOuterClass.Template;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A Helm chart whose {@linkplain #getMetadata() metadata} and
+ * {@linkplain #getValues() values} have been loaded but whose
+ * templates, files and dependencies are loaded from its resolved
+ * archive only when first asked for.
+ *
+ * <p>Instances of this class are produced by the {@link
+ * MavenRepositoryChartResolver#resolveLazily(Artifact)} method.
+ * Tooling that only inspects a chart's {@code Chart.yaml} or {@code
+ * values.yaml} files need never pay for reading the rest of the
+ * archive.</p>
+ *
+ * <p>Instances of this class are safe for use by multiple threads.
+ * The full chart is loaded at most once unless loading fails, in
+ * which case it is attempted again on the next request.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#resolveLazily(Artifact)
+ *
+ * @see MavenRepositoryChartResolver#resolveMetadata(Artifact)
+ */
+public final class LazyChart {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The resolved {@link Artifact} representing the chart.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Artifact artifact;
+
+  /**
+   * A {@link Chart} bearing only the chart's metadata and values.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Chart metadata;
+
+  /**
+   * The {@link Loader} that loads the full chart.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Loader loader;
+
+  /**
+   * The full chart, once it has been loaded.
+   *
+   * <p>This field may be {@code null}.</p>
+   */
+  private volatile Chart chart;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link LazyChart}.
+   *
+   * @param artifact the resolved {@link Artifact} representing the
+   * chart; must not be {@code null}
+   *
+   * @param metadata a {@link Chart} bearing only the chart's metadata
+   * and values; must not be {@code null}
+   *
+   * @param loader the {@link Loader} that will load the full chart
+   * when it is first needed; must not be {@code null}
+   *
+   * @exception NullPointerException if any parameter is {@code null}
+   */
+  LazyChart(final Artifact artifact, final Chart metadata, final Loader loader) {
+    super();
+    this.artifact = Objects.requireNonNull(artifact);
+    this.metadata = Objects.requireNonNull(metadata);
+    this.loader = Objects.requireNonNull(loader);
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the resolved {@link Artifact} representing this chart.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Artifact} whose {@link
+   * Artifact#getFile()} method returns the chart's archive
+   */
+  public final Artifact getArtifact() {
+    return this.artifact;
+  }
+
+  /**
+   * Returns the {@link Metadata} of this chart, as read from its
+   * {@code Chart.yaml} file.
+   *
+   * <p>This method never returns {@code null} and never loads the
+   * rest of the chart.</p>
+   *
+   * @return a non-{@code null} {@link Metadata}
+   */
+  public final Metadata getMetadata() {
+    return this.metadata.getMetadata();
+  }
+
+  /**
+   * Returns the {@link Config} of this chart, as read from its {@code
+   * values.yaml} file.
+   *
+   * <p>This method never returns {@code null} and never loads the
+   * rest of the chart.</p>
+   *
+   * @return a non-{@code null} {@link Config}
+   */
+  public final Config getValues() {
+    return this.metadata.getValues();
+  }
+
+  /**
+   * Returns {@code true} if the full chart has been loaded.
+   *
+   * @return {@code true} if the full chart has been loaded
+   *
+   * @see #getChart()
+   */
+  public final boolean isLoaded() {
+    return this.chart != null;
+  }
+
+  /**
+   * Returns the full {@link Chart}, loading it from its archive if
+   * that has not happened yet.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link Chart}
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded
+   */
+  public final Chart getChart() throws ChartResolverException {
+    Chart returnValue = this.chart;
+    if (returnValue == null) {
+      synchronized (this) {
+        returnValue = this.chart;
+        if (returnValue == null) {
+          final Chart.Builder builder = this.loader.load();
+          if (builder == null) {
+            throw new ChartResolverException("loader.load() == null");
+          }
+          returnValue = builder.build();
+          this.chart = returnValue;
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns this chart's {@link Template}s, loading the full chart
+   * if necessary.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * Template}s
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded
+   *
+   * @see #getChart()
+   */
+  public final List<Template> getTemplates() throws ChartResolverException {
+    return this.getChart().getTemplatesList();
+  }
+
+  /**
+   * Returns this chart's files other than its metadata, values and
+   * templates, loading the full chart if necessary.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * Any}s
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded
+   *
+   * @see #getChart()
+   */
+  public final List<Any> getFiles() throws ChartResolverException {
+    return this.getChart().getFilesList();
+  }
+
+  /**
+   * Returns this chart's subcharts, loading the full chart if
+   * necessary.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null}, unmodifiable {@link List} of {@link
+   * Chart}s
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded
+   *
+   * @see #getChart()
+   */
+  public final List<Chart> getDependencies() throws ChartResolverException {
+    return this.getChart().getDependenciesList();
+  }
+
+  /**
+   * Returns a new {@link Chart.Builder} representing the full chart,
+   * loading it if necessary.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a new, non-{@code null} {@link Chart.Builder}
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded
+   *
+   * @see #getChart()
+   */
+  public final Chart.Builder toBuilder() throws ChartResolverException {
+    return this.getChart().toBuilder();
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * LazyChart}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public final String toString() {
+    return this.artifact + " (" + (this.isLoaded() ? "loaded" : "not loaded") + ")";
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A function that loads the full chart represented by a {@link
+   * LazyChart}.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  @FunctionalInterface
+  static interface Loader {
+
+    /**
+     * Loads the full chart.
+     *
+     * @return a non-{@code null} {@link Chart.Builder}
+     *
+     * @exception ChartResolverException if the chart could not be
+     * loaded
+     */
+    Chart.Builder load() throws ChartResolverException;
+
+  }
+
+}
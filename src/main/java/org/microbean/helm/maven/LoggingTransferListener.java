@@ -0,0 +1,256 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.Objects;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+
+/**
+ * A {@link TransferListener} that logs transfers to a {@link Logger},
+ * reporting the progress of any one transfer no more often than a
+ * configurable interval.
+ *
+ * <p>Transfers that are initiated, started and succeed are logged at
+ * {@link Level#FINE}; progress is logged at {@link Level#FINER};
+ * corrupted and failed transfers are logged at {@link
+ * Level#WARNING}.  Every method checks whether its level is
+ * {@linkplain Logger#isLoggable(Level) loggable} before doing
+ * anything else, so an instance of this class costs next to nothing
+ * when logging is disabled.</p>
+ *
+ * <p>Instances of this class are safe for concurrent use by multiple
+ * threads.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see org.eclipse.aether.DefaultRepositorySystemSession#setTransferListener(TransferListener)
+ */
+public class LoggingTransferListener extends AbstractTransferListener {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default minimum interval, in milliseconds, between progress
+   * reports for any one transfer.
+   */
+  public static final long DEFAULT_PROGRESS_INTERVAL_IN_MILLISECONDS = 1000L;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link Logger} to which transfers are logged.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Logger logger;
+
+  /**
+   * The minimum interval, in nanoseconds, between progress reports
+   * for any one transfer.
+   */
+  private final long progressIntervalInNanoseconds;
+
+  /**
+   * The {@link System#nanoTime()} value at which progress was last
+   * reported, indexed by the {@link TransferResource} being
+   * transferred.
+   *
+   * <p>This field is never {@code null}.  It is only populated while
+   * {@link Level#FINER} is loggable.</p>
+   */
+  private final ConcurrentMap<TransferResource, AtomicLong> lastProgressReports;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link LoggingTransferListener} that logs to a
+   * {@link Logger} named after this class and that reports the
+   * progress of any one transfer at most {@linkplain
+   * #DEFAULT_PROGRESS_INTERVAL_IN_MILLISECONDS once a second}.
+   *
+   * @see #LoggingTransferListener(Logger, long)
+   */
+  public LoggingTransferListener() {
+    this(Logger.getLogger(LoggingTransferListener.class.getName()), DEFAULT_PROGRESS_INTERVAL_IN_MILLISECONDS);
+  }
+
+  /**
+   * Creates a new {@link LoggingTransferListener}.
+   *
+   * @param logger the {@link Logger} to which transfers will be
+   * logged; must not be {@code null}
+   *
+   * @param progressIntervalInMilliseconds the minimum interval, in
+   * milliseconds, between progress reports for any one transfer;
+   * {@code 0L} or less causes every progress event to be logged
+   *
+   * @exception NullPointerException if {@code logger} is {@code null}
+   */
+  public LoggingTransferListener(final Logger logger, final long progressIntervalInMilliseconds) {
+    super();
+    this.logger = Objects.requireNonNull(logger);
+    this.progressIntervalInNanoseconds = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, progressIntervalInMilliseconds));
+    this.lastProgressReports = new ConcurrentHashMap<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link Logger} to which transfers are logged.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return the non-{@code null} {@link Logger} in use
+   */
+  public final Logger getLogger() {
+    return this.logger;
+  }
+
+  @Override
+  public void transferInitiated(final TransferEvent event) {
+    if (this.logger.isLoggable(Level.FINE)) {
+      this.logger.logp(Level.FINE, this.getClass().getName(), "transferInitiated", "{0} {1}", new Object[] { event.getRequestType(), describe(event.getResource()) });
+    }
+  }
+
+  @Override
+  public void transferStarted(final TransferEvent event) {
+    if (this.logger.isLoggable(Level.FINE)) {
+      final TransferResource resource = event.getResource();
+      this.logger.logp(Level.FINE, this.getClass().getName(), "transferStarted", "{0} {1} ({2} bytes)", new Object[] { event.getRequestType(), describe(resource), resource == null ? null : resource.getContentLength() });
+    }
+  }
+
+  @Override
+  public void transferProgressed(final TransferEvent event) {
+    if (this.logger.isLoggable(Level.FINER)) {
+      final TransferResource resource = event.getResource();
+      if (resource != null && this.shouldReportProgress(resource)) {
+        this.logger.logp(Level.FINER, this.getClass().getName(), "transferProgressed", "{0} {1}: {2}/{3} bytes", new Object[] { event.getRequestType(), describe(resource), event.getTransferredBytes(), resource.getContentLength() });
+      }
+    }
+  }
+
+  @Override
+  public void transferCorrupted(final TransferEvent event) {
+    if (this.logger.isLoggable(Level.WARNING)) {
+      this.logger.logp(Level.WARNING, this.getClass().getName(), "transferCorrupted", "Corrupted transfer: " + describe(event.getResource()), event.getException());
+    }
+  }
+
+  @Override
+  public void transferSucceeded(final TransferEvent event) {
+    final TransferResource resource = event.getResource();
+    this.forget(resource);
+    if (this.logger.isLoggable(Level.FINE)) {
+      final long elapsedMilliseconds = resource == null ? 0L : System.currentTimeMillis() - resource.getTransferStartTime();
+      this.logger.logp(Level.FINE, this.getClass().getName(), "transferSucceeded", "{0} {1}: {2} bytes in {3} ms", new Object[] { event.getRequestType(), describe(resource), event.getTransferredBytes(), elapsedMilliseconds });
+    }
+  }
+
+  @Override
+  public void transferFailed(final TransferEvent event) {
+    final TransferResource resource = event.getResource();
+    this.forget(resource);
+    if (this.logger.isLoggable(Level.WARNING)) {
+      this.logger.logp(Level.WARNING, this.getClass().getName(), "transferFailed", "Failed transfer: " + describe(resource), event.getException());
+    }
+  }
+
+  /**
+   * Stops tracking when progress of the transfer of the supplied
+   * {@link TransferResource} was last reported.
+   *
+   * @param resource the {@link TransferResource} whose transfer has
+   * ended; may be {@code null} in which case no action is taken
+   */
+  private final void forget(final TransferResource resource) {
+    if (resource != null) {
+      this.lastProgressReports.remove(resource);
+    }
+  }
+
+  /**
+   * Returns {@code true} if enough time has passed since progress of
+   * the transfer of the supplied {@link TransferResource} was last
+   * reported, and records that it is being reported now.
+   *
+   * @param resource the {@link TransferResource} being transferred;
+   * must not be {@code null}
+   *
+   * @return {@code true} if progress should be reported
+   */
+  private final boolean shouldReportProgress(final TransferResource resource) {
+    final long now = System.nanoTime();
+    final AtomicLong lastReport = this.lastProgressReports.get(resource);
+    final boolean returnValue;
+    if (lastReport == null) {
+      returnValue = this.lastProgressReports.putIfAbsent(resource, new AtomicLong(now)) == null;
+    } else {
+      final long last = lastReport.get();
+      returnValue = now - last >= this.progressIntervalInNanoseconds && lastReport.compareAndSet(last, now);
+    }
+    return returnValue;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final String describe(final TransferResource resource) {
+    final String returnValue;
+    if (resource == null) {
+      returnValue = null;
+    } else {
+      returnValue = resource.getRepositoryUrl() + resource.getResourceName();
+    }
+    return returnValue;
+  }
+
+}
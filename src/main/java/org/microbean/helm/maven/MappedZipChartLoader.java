@@ -0,0 +1,485 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A loader of charts contained by ZIP archives that memory-maps the
+ * archive and locates its entries using its central directory
+ * instead of reading it in sequence.
+ *
+ * <p>Stored (uncompressed) entries are handed to the {@link
+ * ParallelChartLoader} as {@link ByteString}s that are views of the
+ * mapped archive, without being copied.  Deflated entries are
+ * inflated in batches across an {@link Executor}, each directly into
+ * an array of the size recorded in the central directory.  Every
+ * entry's CRC-32 checksum is verified, as {@link
+ * java.util.zip.ZipInputStream} would verify it.</p>
+ *
+ * <p>Every entry is loaded, not just those whose names Helm
+ * interprets, because a chart's templates may read any of its files.
+ * The resulting {@link Chart.Builder} is identical to the one
+ * produced by reading the archive in sequence.</p>
+ *
+ * <p>ZIP64 archives, archives larger than {@link Integer#MAX_VALUE}
+ * bytes, and archives with encrypted entries or entries compressed
+ * by methods other than {@code DEFLATE} are not handled by this
+ * class; for these the {@link #load(FileChannel, Executor)} method
+ * returns {@code null} and the caller is expected to fall back to
+ * reading the archive in sequence.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see ChartArchiveFormats
+ */
+final class MappedZipChartLoader {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+  private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+
+  private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+  private static final int STORED = 0;
+
+  private static final int DEFLATED = 8;
+
+  /**
+   * The number of deflated entries inflated by a single task.
+   */
+  private static final int BATCH_SIZE = 32;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  private MappedZipChartLoader() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Loads the chart contained by the ZIP archive that the supplied
+   * {@link FileChannel} reads, or returns {@code null} if the archive
+   * is of a kind that this class does not handle.
+   *
+   * <p>The {@link ByteString}s of the returned {@link Chart.Builder}
+   * may be views of the mapped archive, which remains mapped for as
+   * long as they are reachable.  Maven Resolver replaces a file in
+   * the local repository by renaming a new one over it, which leaves
+   * a mapped archive intact.</p>
+   *
+   * @param channel the {@link FileChannel} to read; must not be
+   * {@code null}; will not be closed; its position must be {@code 0L}
+   *
+   * @param executor the {@link Executor} on which entries will be
+   * inflated and loaded; must not be {@code null}
+   *
+   * @return a {@link Chart.Builder}, or {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs, or if
+   * the archive is malformed
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded for any other reason
+   */
+  static final Chart.Builder load(final FileChannel channel, final Executor executor) throws IOException, ChartResolverException {
+    Objects.requireNonNull(executor);
+    final ByteBuffer archive = map(channel);
+    if (archive == null) {
+      return null;
+    }
+    final List<ZipEntry> zipEntries = readCentralDirectory(archive);
+    if (zipEntries == null) {
+      return null;
+    }
+
+    final List<ZipEntry> deflatedEntries = new ArrayList<>();
+    for (final ZipEntry zipEntry : zipEntries) {
+      if (zipEntry.method == DEFLATED) {
+        deflatedEntries.add(zipEntry);
+      } else {
+        zipEntry.contents = slice(archive, zipEntry);
+        verify(zipEntry);
+      }
+    }
+
+    final List<CompletableFuture<Void>> inflations = new ArrayList<>();
+    final int deflatedEntriesSize = deflatedEntries.size();
+    for (int i = 0; i < deflatedEntriesSize; i += BATCH_SIZE) {
+      final List<ZipEntry> batch = deflatedEntries.subList(i, Math.min(deflatedEntriesSize, i + BATCH_SIZE));
+      inflations.add(CompletableFuture.runAsync(() -> {
+            try {
+              inflate(archive, batch);
+            } catch (final IOException ioException) {
+              throw new UncheckedIOException(ioException);
+            }
+          }, executor));
+    }
+
+    final ParallelChartLoader loader = new ParallelChartLoader(executor);
+    return ParallelChartLoader.join(CompletableFuture.allOf(inflations.toArray(new CompletableFuture<?>[inflations.size()]))
+                                    .thenCompose(ignored -> {
+                                        final List<Entry<String, ByteString>> entries = new ArrayList<>(zipEntries.size());
+                                        for (final ZipEntry zipEntry : zipEntries) {
+                                          entries.add(new SimpleImmutableEntry<>(zipEntry.name, zipEntry.contents));
+                                        }
+                                        return loader.loadAsync(entries);
+                                      }));
+  }
+
+  /**
+   * Returns a {@link Chart.Builder} bearing only the metadata and
+   * values of the chart contained by the ZIP archive that the
+   * supplied {@link FileChannel} reads, or returns {@code null} if
+   * the archive is of a kind that this class does not handle.
+   *
+   * <p>Only the entries bearing the metadata and values are read;
+   * the rest of the archive is never touched.</p>
+   *
+   * @param channel the {@link FileChannel} to read; must not be
+   * {@code null}; will not be closed; its position must be {@code 0L}
+   *
+   * @return a {@link Chart.Builder}, or {@code null}
+   *
+   * @exception NullPointerException if {@code channel} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs, or if
+   * the archive is malformed
+   *
+   * @see ParallelChartLoader#loadMetadata(List)
+   */
+  static final Chart.Builder loadMetadata(final FileChannel channel) throws IOException {
+    final ByteBuffer archive = map(channel);
+    if (archive == null) {
+      return null;
+    }
+    final List<ZipEntry> zipEntries = readCentralDirectory(archive);
+    if (zipEntries == null) {
+      return null;
+    }
+    final List<Entry<String, ByteString>> entries = new ArrayList<>(2);
+    for (final ZipEntry zipEntry : zipEntries) {
+      if (!zipEntry.name.endsWith("/") && ParallelChartLoader.isMetadata(zipEntry.name)) {
+        if (zipEntry.method == DEFLATED) {
+          inflate(archive, Collections.singletonList(zipEntry));
+        } else {
+          zipEntry.contents = slice(archive, zipEntry);
+          verify(zipEntry);
+        }
+        entries.add(new SimpleImmutableEntry<>(zipEntry.name, zipEntry.contents));
+      }
+    }
+    return ParallelChartLoader.loadMetadata(entries);
+  }
+
+  /**
+   * Memory-maps the whole of the file that the supplied {@link
+   * FileChannel} reads and returns the little-endian mapping, or
+   * returns {@code null} if the file cannot be handled by this class.
+   *
+   * @param channel the {@link FileChannel} to map; must not be {@code
+   * null}
+   *
+   * @return a {@link ByteBuffer}, or {@code null}
+   *
+   * @exception NullPointerException if {@code channel} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  private static final ByteBuffer map(final FileChannel channel) throws IOException {
+    Objects.requireNonNull(channel);
+    if (channel.position() != 0L) {
+      return null;
+    }
+    final long size = channel.size();
+    if (size < END_OF_CENTRAL_DIRECTORY_SIZE || size > Integer.MAX_VALUE) {
+      return null;
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Returns a {@link List} of the entries described by the central
+   * directory of the supplied archive, or {@code null} if the archive
+   * is of a kind that this class does not handle.
+   *
+   * @param archive the archive; must not be {@code null}; must be
+   * little-endian
+   *
+   * @return a {@link List} of {@link ZipEntry} instances in the
+   * order in which a sequential reader would encounter them, or
+   * {@code null}
+   *
+   * @exception ZipException if the archive is malformed
+   */
+  private static final List<ZipEntry> readCentralDirectory(final ByteBuffer archive) throws ZipException {
+    final int size = archive.limit();
+    int endOfCentralDirectory = -1;
+    final int lowestCandidate = Math.max(0, size - END_OF_CENTRAL_DIRECTORY_SIZE - 0xFFFF);
+    for (int i = size - END_OF_CENTRAL_DIRECTORY_SIZE; i >= lowestCandidate; i--) {
+      if (archive.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        endOfCentralDirectory = i;
+        break;
+      }
+    }
+    if (endOfCentralDirectory < 0) {
+      throw new ZipException("No end of central directory record found");
+    }
+
+    final int entryCount = Short.toUnsignedInt(archive.getShort(endOfCentralDirectory + 10));
+    final long centralDirectoryOffset = Integer.toUnsignedLong(archive.getInt(endOfCentralDirectory + 16));
+    if (entryCount == 0xFFFF || centralDirectoryOffset == 0xFFFFFFFFL) {
+      // ZIP64.
+      return null;
+    }
+
+    final List<ZipEntry> returnValue = new ArrayList<>(entryCount);
+    int position = (int)centralDirectoryOffset;
+    for (int i = 0; i < entryCount; i++) {
+      if (position < 0 || position + CENTRAL_DIRECTORY_HEADER_SIZE > size || archive.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+        throw new ZipException("Malformed central directory");
+      }
+      final int flags = Short.toUnsignedInt(archive.getShort(position + 8));
+      final int method = Short.toUnsignedInt(archive.getShort(position + 10));
+      if ((flags & 0x1) != 0 || (method != STORED && method != DEFLATED)) {
+        // Encrypted, or compressed in a way we do not handle.
+        return null;
+      }
+      final int crc = archive.getInt(position + 16);
+      final long compressedSize = Integer.toUnsignedLong(archive.getInt(position + 20));
+      final long size32 = Integer.toUnsignedLong(archive.getInt(position + 24));
+      final int nameLength = Short.toUnsignedInt(archive.getShort(position + 28));
+      final int extraLength = Short.toUnsignedInt(archive.getShort(position + 30));
+      final int commentLength = Short.toUnsignedInt(archive.getShort(position + 32));
+      final long localHeaderOffset = Integer.toUnsignedLong(archive.getInt(position + 42));
+      if (compressedSize == 0xFFFFFFFFL || size32 == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+        // ZIP64.
+        return null;
+      }
+      if (position + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength > size) {
+        throw new ZipException("Malformed central directory");
+      }
+      final byte[] nameBytes = new byte[nameLength];
+      final ByteBuffer nameBuffer = archive.duplicate();
+      nameBuffer.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+      nameBuffer.get(nameBytes);
+      returnValue.add(new ZipEntry(new String(nameBytes, StandardCharsets.UTF_8), method, crc, compressedSize, size32, (int)localHeaderOffset));
+      position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    Collections.sort(returnValue, Comparator.comparingInt(zipEntry -> zipEntry.localHeaderOffset));
+    return returnValue;
+  }
+
+  /**
+   * Returns a little-endian view of the (possibly compressed) data of
+   * the supplied {@link ZipEntry} within the supplied archive.
+   *
+   * @param archive the archive; must not be {@code null}; must be
+   * little-endian
+   *
+   * @param zipEntry the entry; must not be {@code null}
+   *
+   * @return a {@link ByteBuffer} whose position is {@code 0} and
+   * whose limit is the size of the entry's data
+   *
+   * @exception ZipException if the archive is malformed
+   */
+  private static final ByteBuffer data(final ByteBuffer archive, final ZipEntry zipEntry) throws ZipException {
+    final int localHeaderOffset = zipEntry.localHeaderOffset;
+    if (localHeaderOffset + LOCAL_FILE_HEADER_SIZE > archive.limit() || archive.getInt(localHeaderOffset) != LOCAL_FILE_HEADER_SIGNATURE) {
+      throw new ZipException("Malformed local file header: " + zipEntry.name);
+    }
+    final int nameLength = Short.toUnsignedInt(archive.getShort(localHeaderOffset + 26));
+    final int extraLength = Short.toUnsignedInt(archive.getShort(localHeaderOffset + 28));
+    final long start = (long)localHeaderOffset + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength;
+    final long end = start + zipEntry.compressedSize;
+    if (end > archive.limit()) {
+      throw new ZipException("Truncated entry: " + zipEntry.name);
+    }
+    final ByteBuffer returnValue = archive.duplicate();
+    returnValue.limit((int)end);
+    returnValue.position((int)start);
+    return returnValue.slice();
+  }
+
+  private static final ByteString slice(final ByteBuffer archive, final ZipEntry zipEntry) throws ZipException {
+    if (zipEntry.compressedSize != zipEntry.size) {
+      throw new ZipException("Stored entry sizes differ: " + zipEntry.name);
+    }
+    if (zipEntry.size == 0L) {
+      return ByteString.EMPTY;
+    }
+    return UnsafeByteOperations.unsafeWrap(data(archive, zipEntry));
+  }
+
+  private static final void inflate(final ByteBuffer archive, final List<? extends ZipEntry> zipEntries) throws IOException {
+    final Inflater inflater = new Inflater(true);
+    try {
+      for (final ZipEntry zipEntry : zipEntries) {
+        if (zipEntry.size > Integer.MAX_VALUE) {
+          throw new ZipException("Entry too large: " + zipEntry.name);
+        }
+        final ByteBuffer data = data(archive, zipEntry);
+        final byte[] input = new byte[data.remaining()];
+        data.get(input);
+        final byte[] output = new byte[(int)zipEntry.size];
+        inflater.reset();
+        inflater.setInput(input);
+        int offset = 0;
+        boolean padded = false;
+        try {
+          while (offset < output.length) {
+            final int inflated = inflater.inflate(output, offset, output.length - offset);
+            if (inflated == 0) {
+              if (inflater.finished() || inflater.needsDictionary() || !inflater.needsInput() || padded) {
+                break;
+              }
+              // Inflater, used without a wrapper, may need one byte of
+              // padding beyond the end of the compressed data.
+              inflater.setInput(new byte[1]);
+              padded = true;
+            }
+            offset += inflated;
+          }
+        } catch (final DataFormatException dataFormatException) {
+          throw new ZipException(zipEntry.name + ": " + dataFormatException.getMessage());
+        }
+        if (offset != output.length) {
+          throw new ZipException("Truncated entry: " + zipEntry.name);
+        }
+        // The array is never shared, so it is safe to wrap it without
+        // copying it again.
+        zipEntry.contents = UnsafeByteOperations.unsafeWrap(output);
+        verify(zipEntry);
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static final void verify(final ZipEntry zipEntry) throws ZipException {
+    final CRC32 crc32 = new CRC32();
+    crc32.update(zipEntry.contents.asReadOnlyByteBuffer());
+    if ((int)crc32.getValue() != zipEntry.crc) {
+      throw new ZipException("Invalid CRC-32 checksum for entry: " + zipEntry.name);
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * An entry described by a ZIP archive's central directory.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class ZipEntry {
+
+    private final String name;
+
+    private final int method;
+
+    private final int crc;
+
+    private final long compressedSize;
+
+    private final long size;
+
+    private final int localHeaderOffset;
+
+    /**
+     * The uncompressed contents of this entry; written by the thread
+     * that inflates it and read only after that thread's task has
+     * completed.
+     */
+    private ByteString contents;
+
+    private ZipEntry(final String name, final int method, final int crc, final long compressedSize, final long size, final int localHeaderOffset) {
+      super();
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+  }
+
+}
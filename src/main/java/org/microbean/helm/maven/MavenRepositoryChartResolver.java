@@ -16,39 +16,78 @@
  */
 package org.microbean.helm.maven;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+
+import java.lang.reflect.Method;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.StandardCharsets;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipInputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import hapi.chart.ChartOuterClass.Chart;
+import hapi.chart.ChartOuterClass.ChartOrBuilder;
+import hapi.chart.MetadataOuterClass.Metadata;
 
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.eclipse.aether.repository.RemoteRepository;
 
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.VersionRangeRequest;
+import org.eclipse.aether.resolution.VersionRangeResolutionException;
+import org.eclipse.aether.resolution.VersionRangeResult;
+
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferListener;
+
+import org.eclipse.aether.version.Version;
 
 import org.kamranzafar.jtar.TarInputStream;
 
 import org.microbean.helm.chart.AbstractChartLoader; // for javadoc only
-import org.microbean.helm.chart.TapeArchiveChartLoader;
-import org.microbean.helm.chart.ZipInputStreamChartLoader;
 
 import org.microbean.helm.chart.resolver.AbstractChartResolver;
 import org.microbean.helm.chart.resolver.ChartResolverException;
@@ -65,6 +104,59 @@ import org.microbean.helm.chart.resolver.ChartResolverException;
 public class MavenRepositoryChartResolver extends AbstractChartResolver {
 
 
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The {@link Logger} used by instances of this class.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final Logger logger = Logger.getLogger(MavenRepositoryChartResolver.class.getName());
+
+  /**
+   * The default number of milliseconds for which the versions of a
+   * chart found in repository metadata are reused before the
+   * metadata is consulted again.
+   *
+   * @see #setMetadataTimeToLiveInMilliseconds(long)
+   */
+  public static final long DEFAULT_METADATA_TIME_TO_LIVE_IN_MILLISECONDS = 60000L;
+
+  /**
+   * The default maximum number of charts that a {@linkplain
+   * #prefetch(Collection) prefetch} resolves at once.
+   *
+   * @see #prefetch(Collection, int, PrefetchListener)
+   */
+  public static final int DEFAULT_PREFETCH_CONCURRENCY = 4;
+
+  /**
+   * The default number of milliseconds a {@linkplain
+   * #setHedgingEnabled(boolean) hedged} resolution waits for an
+   * answer from one remote repository before also asking the next.
+   *
+   * @see #setHedgeDelayInMilliseconds(long)
+   */
+  public static final long DEFAULT_HEDGE_DELAY_IN_MILLISECONDS = 0L;
+
+  /**
+   * The version constraint matching all versions of an artifact.
+   */
+  private static final String ALL_VERSIONS = "[0,)";
+
+  /**
+   * The {@link ArtifactLocks} held by every instance of this class
+   * while it downloads artifacts, so that no two instances download
+   * the same artifact at the same time.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final ArtifactLocks downloadLocks = new ArtifactLocks();
+
+
   /*
    * Instance fields.
    */
@@ -108,6 +200,252 @@ public class MavenRepositoryChartResolver extends AbstractChartResolver {
    */
   private final List<RemoteRepository> remoteRepositories;
 
+  /**
+   * The {@link ChartCache} holding {@link Chart}s that have already
+   * been {@linkplain #loadChart(File, String) loaded}.
+   *
+   * <p>This field may be {@code null}, in which case no caching will
+   * take place.</p>
+   *
+   * @see #MavenRepositoryChartResolver(RepositorySystem,
+   * RepositorySystemSession, List, ChartCache)
+   *
+   * @see #getChartCache()
+   */
+  private final ChartCache chartCache;
+
+  /**
+   * The {@link Executor} on which asynchronous resolution and
+   * parallel chart loading take place.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #MavenRepositoryChartResolver(RepositorySystem,
+   * RepositorySystemSession, List, ChartCache, Executor)
+   *
+   * @see #getExecutor()
+   */
+  private final Executor executor;
+
+  /**
+   * A {@link SingleFlight} ensuring that at most one resolution of
+   * any given {@link Artifact} is in progress at any time, whether
+   * {@linkplain #resolve(Artifact) synchronous} or {@linkplain
+   * #resolveAsync(Artifact) asynchronous}.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #resolve(Artifact)
+   *
+   * @see #resolveAsync(Artifact)
+   */
+  private final SingleFlight<Artifact, Chart> resolutions;
+
+  /**
+   * The {@link ChartSnapshotStore} used to persist pre-parsed charts
+   * alongside their archives.
+   *
+   * <p>This field may be {@code null}, in which case no snapshots
+   * will be read or written.</p>
+   *
+   * @see #getChartSnapshotStore()
+   *
+   * @see #setChartSnapshotStore(ChartSnapshotStore)
+   */
+  private volatile ChartSnapshotStore chartSnapshotStore;
+
+  /**
+   * The {@link NegativeResultCache} remembering charts that could
+   * not be found.
+   *
+   * <p>This field may be {@code null}, in which case every
+   * resolution of a missing chart consults the remote repositories
+   * again.</p>
+   *
+   * @see #getNegativeResultCache()
+   *
+   * @see #setNegativeResultCache(NegativeResultCache)
+   */
+  private volatile NegativeResultCache negativeResultCache;
+
+  /**
+   * The {@link ChartContentInterner} through which the templates and
+   * files of loaded charts are shared.
+   *
+   * <p>This field may be {@code null}, in which case every loaded
+   * chart holds its own copies of its templates and files.</p>
+   *
+   * @see #getChartContentInterner()
+   *
+   * @see #setChartContentInterner(ChartContentInterner)
+   */
+  private volatile ChartContentInterner chartContentInterner;
+
+  /**
+   * The {@link ChartLineage} through which tape archives are loaded
+   * incrementally from the previously loaded versions of their
+   * charts.
+   *
+   * <p>This field may be {@code null}, in which case every chart is
+   * loaded in full.</p>
+   *
+   * @see #getChartLineage()
+   *
+   * @see #setChartLineage(ChartLineage)
+   */
+  private volatile ChartLineage chartLineage;
+
+  /**
+   * The {@link ChartVerifier} that verifies the archive of every
+   * chart before it is used.
+   *
+   * <p>This field may be {@code null}, in which case charts are
+   * trusted as resolved.</p>
+   *
+   * @see #getChartVerifier()
+   *
+   * @see #setChartVerifier(ChartVerifier)
+   */
+  private volatile ChartVerifier chartVerifier;
+
+  /**
+   * The {@link ChartLoadLimits} within which charts are loaded.
+   *
+   * <p>This field may be {@code null}, in which case charts are
+   * loaded without limits.</p>
+   *
+   * @see #getChartLoadLimits()
+   *
+   * @see #setChartLoadLimits(ChartLoadLimits)
+   */
+  private volatile ChartLoadLimits chartLoadLimits;
+
+  /**
+   * Whether charts being downloaded from a remote repository are
+   * loaded while their bytes arrive.
+   *
+   * @see #isStreamingEnabled()
+   *
+   * @see #setStreamingEnabled(boolean)
+   */
+  private volatile boolean streamingEnabled;
+
+  /**
+   * Whether chart archives are loaded using the {@linkplain
+   * #getExecutor() executor} to work on several of their entries at
+   * once.
+   *
+   * @see #isParallelLoadingEnabled()
+   *
+   * @see #setParallelLoadingEnabled(boolean)
+   */
+  private volatile boolean parallelLoadingEnabled;
+
+  /**
+   * Whether the charts required by resolved charts are themselves
+   * resolved and attached as subcharts.
+   *
+   * @see #isDependencyResolutionEnabled()
+   *
+   * @see #setDependencyResolutionEnabled(boolean)
+   */
+  private volatile boolean dependencyResolutionEnabled;
+
+  /**
+   * Whether charts with release versions are looked up directly in
+   * the local repository before a full resolution is attempted.
+   *
+   * @see #isLocalFastPathEnabled()
+   *
+   * @see #setLocalFastPathEnabled(boolean)
+   */
+  private volatile boolean localFastPathEnabled;
+
+  /**
+   * Whether charts are requested from several remote repositories at
+   * once, the first valid answer being taken.
+   *
+   * @see #isHedgingEnabled()
+   *
+   * @see #setHedgingEnabled(boolean)
+   */
+  private volatile boolean hedgingEnabled;
+
+  /**
+   * The number of milliseconds a hedged resolution waits for an
+   * answer from one remote repository before also asking the next.
+   *
+   * @see #getHedgeDelayInMilliseconds()
+   *
+   * @see #setHedgeDelayInMilliseconds(long)
+   */
+  private volatile long hedgeDelayInMilliseconds;
+
+  /**
+   * The {@link RepositoryLatencies} recording how long each remote
+   * repository has recently taken to answer hedged requests.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getRepositoryLatencies()
+   */
+  private final RepositoryLatencies repositoryLatencies;
+
+  /**
+   * Whether this {@link MavenRepositoryChartResolver}'s class
+   * overrides either the {@link #loadChart(File, String)} or the
+   * {@link #loadChart(InputStream, String)} method, in which case
+   * charts are never loaded through the {@linkplain
+   * #getChartLineage() chart lineage} or {@linkplain
+   * #isStreamingEnabled() while they download}.
+   *
+   * @see #isLoadChartOverridden(Class)
+   */
+  private final boolean loadChartOverridden;
+
+  /**
+   * The {@link ChartResolverMetrics} to which measurements of
+   * resolution work are reported.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getMetrics()
+   *
+   * @see #setMetrics(ChartResolverMetrics)
+   */
+  private volatile ChartResolverMetrics metrics;
+
+  /**
+   * The {@link ChartArchiveFormats} consulted to {@linkplain
+   * #loadChart(InputStream, String) load} chart archives.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getChartArchiveFormats()
+   *
+   * @see #setChartArchiveFormats(ChartArchiveFormats)
+   */
+  private volatile ChartArchiveFormats chartArchiveFormats;
+
+  /**
+   * The {@link VersionRangeCache} holding the results of recent
+   * {@linkplain #resolveVersion(Artifact) version resolutions}.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final VersionRangeCache versionRangeCache;
+
+  /**
+   * The number of milliseconds for which the versions of a chart
+   * found in repository metadata are reused before the metadata is
+   * consulted again.
+   *
+   * @see #getMetadataTimeToLiveInMilliseconds()
+   *
+   * @see #setMetadataTimeToLiveInMilliseconds(long)
+   */
+  private volatile long metadataTimeToLiveInMilliseconds;
+
 
   /*
    * Constructors.
@@ -115,7 +453,9 @@ public class MavenRepositoryChartResolver extends AbstractChartResolver {
 
 
   /**
-   * Creates a new {@link MavenRepositoryChartResolver}.
+   * Creates a new {@link MavenRepositoryChartResolver} that caches
+   * loaded charts in a new {@link ChartCache} of {@linkplain
+   * ChartCache#DEFAULT_MAXIMUM_SIZE default size}.
    *
    * @param repositorySystem the {@link RepositorySystem} responsible
    * for performing the actual resolution; must not be {@code null}
@@ -136,14 +476,117 @@ public class MavenRepositoryChartResolver extends AbstractChartResolver {
    * @see #getSession()
    *
    * @see #getRemoteRepositories()
+   *
+   * @see #MavenRepositoryChartResolver(RepositorySystem,
+   * RepositorySystemSession, List, ChartCache)
    */
   public MavenRepositoryChartResolver(final RepositorySystem repositorySystem,
                                       final RepositorySystemSession session,
                                       final List<RemoteRepository> remoteRepositories) {
+    this(repositorySystem, session, remoteRepositories, new ChartCache());
+  }
+
+  /**
+   * Creates a new {@link MavenRepositoryChartResolver}.
+   *
+   * @param repositorySystem the {@link RepositorySystem} responsible
+   * for performing the actual resolution; must not be {@code null}
+   *
+   * @param session the {@link RepositorySystemSession} governing
+   * artifact resolution; must not be {@code null}
+   *
+   * @param remoteRepositories a {@link List} of {@link
+   * RemoteRepository} instances from which resolution will be
+   * attempted; may be {@code null}
+   *
+   * @param chartCache a {@link ChartCache} in which loaded charts
+   * will be cached; may be {@code null} in which case every
+   * resolution will {@linkplain #loadChart(File, String) load} its
+   * chart anew
+   *
+   * @exception NullPointerException if {@code repositorySystem} or
+   * {@code session} is {@code null}
+   *
+   * @see #getRepositorySystem()
+   *
+   * @see #getSession()
+   *
+   * @see #getRemoteRepositories()
+   *
+   * @see #getChartCache()
+   *
+   * @see #MavenRepositoryChartResolver(RepositorySystem,
+   * RepositorySystemSession, List, ChartCache, Executor)
+   */
+  public MavenRepositoryChartResolver(final RepositorySystem repositorySystem,
+                                      final RepositorySystemSession session,
+                                      final List<RemoteRepository> remoteRepositories,
+                                      final ChartCache chartCache) {
+    this(repositorySystem, session, remoteRepositories, chartCache, null);
+  }
+
+  /**
+   * Creates a new {@link MavenRepositoryChartResolver}.
+   *
+   * @param repositorySystem the {@link RepositorySystem} responsible
+   * for performing the actual resolution; must not be {@code null}
+   *
+   * @param session the {@link RepositorySystemSession} governing
+   * artifact resolution; must not be {@code null}
+   *
+   * @param remoteRepositories a {@link List} of {@link
+   * RemoteRepository} instances from which resolution will be
+   * attempted; may be {@code null}
+   *
+   * @param chartCache a {@link ChartCache} in which loaded charts
+   * will be cached; may be {@code null} in which case every
+   * resolution will {@linkplain #loadChart(File, String) load} its
+   * chart anew
+   *
+   * @param executor the {@link Executor} on which {@linkplain
+   * #resolveAsync(Artifact) asynchronous resolution} and parallel
+   * chart loading will take place; may be {@code null} in which case
+   * an {@link Executor} that runs each task in a new virtual thread
+   * will be used on runtimes that support virtual threads, and the
+   * {@linkplain ForkJoinPool#commonPool() common fork-join pool} will
+   * be used otherwise
+   *
+   * @exception NullPointerException if {@code repositorySystem} or
+   * {@code session} is {@code null}
+   *
+   * @see #getRepositorySystem()
+   *
+   * @see #getSession()
+   *
+   * @see #getRemoteRepositories()
+   *
+   * @see #getChartCache()
+   *
+   * @see #getExecutor()
+   */
+  public MavenRepositoryChartResolver(final RepositorySystem repositorySystem,
+                                      final RepositorySystemSession session,
+                                      final List<RemoteRepository> remoteRepositories,
+                                      final ChartCache chartCache,
+                                      final Executor executor) {
     super();
     this.repositorySystem = Objects.requireNonNull(repositorySystem);
     this.session = Objects.requireNonNull(session);
     this.remoteRepositories = remoteRepositories;
+    this.chartCache = chartCache;
+    if (executor == null) {
+      this.executor = DefaultExecutorHolder.INSTANCE;
+    } else {
+      this.executor = executor;
+    }
+    this.resolutions = new SingleFlight<>();
+    this.metrics = ChartResolverMetrics.NOOP;
+    this.chartArchiveFormats = new ChartArchiveFormats();
+    this.versionRangeCache = new VersionRangeCache();
+    this.metadataTimeToLiveInMilliseconds = DEFAULT_METADATA_TIME_TO_LIVE_IN_MILLISECONDS;
+    this.hedgeDelayInMilliseconds = DEFAULT_HEDGE_DELAY_IN_MILLISECONDS;
+    this.repositoryLatencies = new RepositoryLatencies();
+    this.loadChartOverridden = isLoadChartOverridden(this.getClass());
   }
 
 
@@ -207,44 +650,2764 @@ public class MavenRepositoryChartResolver extends AbstractChartResolver {
   }
 
   /**
-   * Creates and returns a {@link
-   * hapi.chart.ChartOuterClass.Chart.Builder} representing a Helm
-   * chart resolvable at the given Maven repository coordinates.
+   * Returns the {@link ChartCache} in which {@linkplain
+   * #loadChart(File, String) loaded} charts are cached.
    *
-   * @param coordinatesWithoutVersion a {@link String} of one of the
-   * following forms: {@code groupId:artifactId}, {@code
-   * groupId:artifactId:packaging}, or {@code
-   * groupId:artifactId:packaging:classifier}; must not be {@code
-   * null}
+   * <p>This method may return {@code null}, in which case no caching
+   * will take place.</p>
    *
-   * @param chartVersion the version of the Helm chart artifact to
-   * resolve; may be {@code null} in which case {@code LATEST} will be
-   * used instead
+   * <p>Overrides of this method are permitted to return {@code
+   * null}.</p>
    *
-   * @return a non-{@code null} {@link
-   * hapi.chart.ChartOuterClass.Chart.Builder}
+   * @return the {@link ChartCache} in which loaded charts are cached,
+   * or {@code null}
    *
-   * @exception NullPointerException if {@code coordinatesWithoutVersion} is {@code null}
+   * @see #MavenRepositoryChartResolver(RepositorySystem,
+   * RepositorySystemSession, List, ChartCache)
+   */
+  public ChartCache getChartCache() {
+    return this.chartCache;
+  }
+
+  /**
+   * Returns the {@link ChartSnapshotStore} used to persist
+   * pre-parsed charts alongside their archives in the local
+   * repository.
    *
-   * @exception ChartResolverException if {@code
-   * coordinatesWithoutVersion} is malformed, if either the {@link
-   * #getRepositorySystem()} or {@link #getSession()} method returns
-   * {@code null}, if an {@link ArtifactResolutionException} was
-   * encountered during artifact resolution, or if the {@link
-   * #loadChart(File, String)} method throws a {@link
-   * ChartResolverException}
+   * <p>This method may return {@code null}, in which case no
+   * snapshots will be read or written.</p>
    *
-   * @see #resolve(Artifact)
+   * <p>Overrides of this method are permitted to return {@code
+   * null}.</p>
    *
-   * @see #loadChart(File, String)
+   * @return the {@link ChartSnapshotStore} in use, or {@code null}
+   *
+   * @see #setChartSnapshotStore(ChartSnapshotStore)
    */
-  @Override
-  public final Chart.Builder resolve(final String coordinatesWithoutVersion, String chartVersion) throws ChartResolverException {
-    Objects.requireNonNull(coordinatesWithoutVersion);
-    if (chartVersion == null) {
-      chartVersion = "LATEST"; // TODO: not sure if this will work
-    }
-    
+  public ChartSnapshotStore getChartSnapshotStore() {
+    return this.chartSnapshotStore;
+  }
+
+  /**
+   * Sets the {@link ChartSnapshotStore} used to persist pre-parsed
+   * charts alongside their archives in the local repository.
+   *
+   * <p>When a {@link ChartSnapshotStore} is in use, a chart that is
+   * not found in the {@linkplain #getChartCache() chart cache} is
+   * read from its snapshot if a valid one exists, and is otherwise
+   * {@linkplain #loadChart(File, String) loaded} from its archive and
+   * then written to a new snapshot.  Snapshots are disabled by
+   * default.</p>
+   *
+   * @param chartSnapshotStore the {@link ChartSnapshotStore} to use;
+   * may be {@code null} in which case snapshots will be disabled
+   *
+   * @see #getChartSnapshotStore()
+   */
+  public void setChartSnapshotStore(final ChartSnapshotStore chartSnapshotStore) {
+    this.chartSnapshotStore = chartSnapshotStore;
+  }
+
+  /**
+   * Returns the {@link NegativeResultCache} remembering charts that
+   * could not be found.
+   *
+   * <p>This method may return {@code null}, in which case nothing is
+   * remembered.</p>
+   *
+   * <p>Overrides of this method are permitted to return {@code
+   * null}.</p>
+   *
+   * @return the {@link NegativeResultCache} in use, or {@code null}
+   *
+   * @see #setNegativeResultCache(NegativeResultCache)
+   */
+  public NegativeResultCache getNegativeResultCache() {
+    return this.negativeResultCache;
+  }
+
+  /**
+   * Sets the {@link NegativeResultCache} remembering charts that
+   * could not be found.
+   *
+   * <p>When a {@link NegativeResultCache} is in use, a {@linkplain
+   * #resolve(Artifact) resolution} that fails because no remote
+   * repository has the chart, or any version of it satisfying the
+   * requested version, remembers the {@link ChartResolverException}
+   * it threw.  Until the entry expires, or the chart is {@linkplain
+   * #invalidate(Artifact) invalidated}, resolving the same
+   * coordinates against the same remote repositories throws, at
+   * once, a new {@link ChartResolverException} whose {@linkplain
+   * Throwable#getCause() cause} is the remembered one, so that the
+   * remembered exception is never thrown, and its stack trace and
+   * suppressed exceptions never altered, by more than one caller.
+   * Failures of any other kind, such as
+   * unreachable repositories, are not remembered.  No negative
+   * results are remembered by default.</p>
+   *
+   * <p>The {@link #resolveAll(Collection)} method neither consults
+   * nor updates the {@link NegativeResultCache}.</p>
+   *
+   * @param negativeResultCache the {@link NegativeResultCache} to
+   * use; may be {@code null} in which case negative results will not
+   * be remembered
+   *
+   * @see #getNegativeResultCache()
+   */
+  public void setNegativeResultCache(final NegativeResultCache negativeResultCache) {
+    this.negativeResultCache = negativeResultCache;
+  }
+
+  /**
+   * Returns the {@link ChartContentInterner} through which the
+   * templates and files of loaded charts are shared.
+   *
+   * <p>This method may return {@code null}, in which case nothing is
+   * shared.</p>
+   *
+   * <p>Overrides of this method are permitted to return {@code
+   * null}.</p>
+   *
+   * @return the {@link ChartContentInterner} in use, or {@code null}
+   *
+   * @see #setChartContentInterner(ChartContentInterner)
+   */
+  public ChartContentInterner getChartContentInterner() {
+    return this.chartContentInterner;
+  }
+
+  /**
+   * Sets the {@link ChartContentInterner} through which the templates
+   * and files of loaded charts are shared.
+   *
+   * <p>When a {@link ChartContentInterner} is in use, every chart
+   * {@linkplain #loadChart(File, String) loaded} from an archive,
+   * {@linkplain #setStreamingEnabled(boolean) streamed} or read from
+   * a {@linkplain #getChartSnapshotStore() snapshot} is {@linkplain
+   * ChartContentInterner#intern(Chart.Builder) interned} before it is
+   * cached or returned, so that identical templates and files in
+   * different versions of a chart, or in different subcharts, share
+   * one {@link com.google.protobuf.ByteString}.  The same {@link
+   * ChartContentInterner} may be shared by many resolvers.  Nothing
+   * is interned by default.</p>
+   *
+   * @param chartContentInterner the {@link ChartContentInterner} to
+   * use; may be {@code null} in which case nothing will be interned
+   *
+   * @see #getChartContentInterner()
+   */
+  public void setChartContentInterner(final ChartContentInterner chartContentInterner) {
+    this.chartContentInterner = chartContentInterner;
+  }
+
+  /**
+   * Returns the {@link ChartLineage} through which tape archives are
+   * loaded incrementally from the previously loaded versions of their
+   * charts.
+   *
+   * <p>This method may return {@code null}, in which case every
+   * chart is loaded in full.</p>
+   *
+   * <p>Overrides of this method are permitted to return {@code
+   * null}.</p>
+   *
+   * @return the {@link ChartLineage} in use, or {@code null}
+   *
+   * @see #setChartLineage(ChartLineage)
+   */
+  public ChartLineage getChartLineage() {
+    return this.chartLineage;
+  }
+
+  /**
+   * Sets the {@link ChartLineage} through which tape archives are
+   * loaded incrementally from the previously loaded versions of their
+   * charts.
+   *
+   * <p>When a {@link ChartLineage} is in use, a chart whose packaging
+   * is handled by one of the built-in tape archive {@link
+   * ChartArchiveFormat}s is loaded by the {@link ChartLineage}
+   * instead of by the {@link #loadChart(File, String)} method, so
+   * that the templates, files and packed subcharts it shares with the
+   * version of the same chart loaded before it are reused rather than
+   * rebuilt.  Charts that are {@linkplain
+   * #setStreamingEnabled(boolean) streamed}, read from a {@linkplain
+   * #getChartSnapshotStore() snapshot} or found in the {@linkplain
+   * #getChartCache() chart cache} are not loaded at all, and so are
+   * not recorded in their lineage.  No lineage is kept by
+   * default.</p>
+   *
+   * <p>If a subclass overrides either the {@link #loadChart(File,
+   * String)} or the {@link #loadChart(InputStream, String)} method,
+   * the {@link ChartLineage} is not used, so that every chart is
+   * loaded by those overrides.</p>
+   *
+   * @param chartLineage the {@link ChartLineage} to use; may be
+   * {@code null} in which case every chart will be loaded in full
+   *
+   * @see #getChartLineage()
+   */
+  public void setChartLineage(final ChartLineage chartLineage) {
+    this.chartLineage = chartLineage;
+  }
+
+  /**
+   * Returns the {@link ChartVerifier} that verifies the archive of
+   * every chart before it is used.
+   *
+   * <p>This method may return {@code null}, in which case charts are
+   * trusted as resolved.</p>
+   *
+   * <p>Overrides of this method are permitted to return {@code
+   * null}.</p>
+   *
+   * @return the {@link ChartVerifier} in use, or {@code null}
+   *
+   * @see #setChartVerifier(ChartVerifier)
+   */
+  public ChartVerifier getChartVerifier() {
+    return this.chartVerifier;
+  }
+
+  /**
+   * Sets the {@link ChartVerifier} that verifies the archive of every
+   * chart before it is used.
+   *
+   * <p>When a {@link ChartVerifier} is in use, the {@linkplain
+   * ChartVerifier#getCompanions(Artifact) companions} it names, such
+   * as a {@linkplain ProvenanceChartVerifier provenance file}, are
+   * resolved along with each chart, and the chart's archive is
+   * verified in the same pass that loads it, so its bytes are read
+   * only once.  Such charts are loaded by the {@link
+   * #loadChart(InputStream, String)} method rather than by the {@link
+   * #loadChart(File, String)} method, and ZIP archives are therefore
+   * read in sequence rather than memory-mapped.  Charts that are
+   * {@linkplain #setStreamingEnabled(boolean) streamed} or read from
+   * a {@linkplain #getChartSnapshotStore() snapshot} are verified by
+   * reading their archives separately.  A chart is cached in the
+   * {@linkplain #getChartCache() chart cache} together with the
+   * {@link ChartVerifier} that verified it and the SHA-256 digest of
+   * its archive, and a cached chart is only used if it was verified
+   * by the {@link ChartVerifier} in use and its archive still has
+   * that digest, so later lookups digest the archive but need not
+   * verify it again.  A chart that fails verification is never
+   * returned or cached.  No verification is performed by
+   * default.</p>
+   *
+   * @param chartVerifier the {@link ChartVerifier} to use; may be
+   * {@code null} in which case charts will be trusted as resolved
+   *
+   * @see #getChartVerifier()
+   *
+   * @see ChartCache#getSha256(Artifact)
+   */
+  public void setChartVerifier(final ChartVerifier chartVerifier) {
+    this.chartVerifier = chartVerifier;
+  }
+
+  /**
+   * Returns the {@link ChartLoadLimits} within which charts are
+   * loaded.
+   *
+   * <p>This method may return {@code null}, in which case charts are
+   * loaded without limits.</p>
+   *
+   * <p>Overrides of this method are permitted to return {@code
+   * null}.</p>
+   *
+   * @return the {@link ChartLoadLimits} in use, or {@code null}
+   *
+   * @see #setChartLoadLimits(ChartLoadLimits)
+   */
+  public ChartLoadLimits getChartLoadLimits() {
+    return this.chartLoadLimits;
+  }
+
+  /**
+   * Sets the {@link ChartLoadLimits} within which charts are loaded.
+   *
+   * <p>When {@link ChartLoadLimits} are in use, charts whose
+   * packaging is handled by one of the built-in tape archive or ZIP
+   * {@link ChartArchiveFormat}s are loaded by reading their entries
+   * in sequence within those limits on the thread that loads the
+   * chart, whether or not {@linkplain
+   * #setParallelLoadingEnabled(boolean) parallel loading} is enabled,
+   * so ZIP archives are not memory-mapped; a chart that exceeds a
+   * limit fails to load with a {@link ChartResolverException}, and
+   * large entries are spilled to temporary files.  Each load must
+   * first be admitted by the {@link ChartLoadLimits}' memory budget,
+   * which may block the thread that loads the chart, so {@linkplain
+   * #setStreamingEnabled(boolean) streaming} is not used while
+   * limits are in use.  An admitted load never hands work to the
+   * {@linkplain #getExecutor() executor}: if it did, loads waiting
+   * for admission on every thread of a bounded executor would keep
+   * it from finishing and releasing its share of the budget.  Charts
+   * packaged in other formats, and the metadata read by the {@link
+   * #resolveMetadata(Artifact)} and {@link #resolveLazily(Artifact)}
+   * methods, are not subject to the limits.  Charts are loaded
+   * without limits by default.</p>
+   *
+   * @param chartLoadLimits the {@link ChartLoadLimits} to use; may
+   * be {@code null} in which case charts will be loaded without
+   * limits
+   *
+   * @see #getChartLoadLimits()
+   */
+  public void setChartLoadLimits(final ChartLoadLimits chartLoadLimits) {
+    this.chartLoadLimits = chartLoadLimits;
+  }
+
+  /**
+   * Returns {@code true} if charts being downloaded from a remote
+   * repository are loaded while their bytes arrive.
+   *
+   * @return {@code true} if streaming is enabled; {@code false}
+   * otherwise
+   *
+   * @see #setStreamingEnabled(boolean)
+   */
+  public boolean isStreamingEnabled() {
+    return this.streamingEnabled;
+  }
+
+  /**
+   * Sets whether charts being downloaded from a remote repository
+   * are loaded while their bytes arrive.
+   *
+   * <p>When streaming is enabled, a chart that has to be downloaded
+   * is decompressed and {@linkplain #loadChart(InputStream, String)
+   * loaded} on the {@linkplain #getExecutor() executor} as the
+   * transport delivers it, so the resulting {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} is ready as soon as the
+   * download ends instead of after the archive has been written to
+   * and read back from the local repository.  The archive is still
+   * written to the local repository as usual.  If streaming fails for
+   * any reason the archive is {@linkplain #loadChart(File, String)
+   * loaded from the local repository} instead.  Charts already
+   * present in the local repository are unaffected.  Streaming is
+   * not used by subclasses that override either the {@link
+   * #loadChart(File, String)} or the {@link #loadChart(InputStream,
+   * String)} method, since a streamed chart would bypass the former.
+   * Streaming is disabled by default.</p>
+   *
+   * @param streamingEnabled whether streaming should be enabled
+   *
+   * @see #isStreamingEnabled()
+   */
+  public void setStreamingEnabled(final boolean streamingEnabled) {
+    this.streamingEnabled = streamingEnabled;
+  }
+
+  /**
+   * Returns {@code true} if chart archives are loaded using the
+   * {@linkplain #getExecutor() executor} to work on several of their
+   * entries at once.
+   *
+   * @return {@code true} if parallel loading is enabled; {@code
+   * false} otherwise
+   *
+   * @see #setParallelLoadingEnabled(boolean)
+   */
+  public boolean isParallelLoadingEnabled() {
+    return this.parallelLoadingEnabled;
+  }
+
+  /**
+   * Sets whether chart archives are loaded using the {@linkplain
+   * #getExecutor() executor} to work on several of their entries at
+   * once.
+   *
+   * <p>When parallel loading is enabled, the {@link
+   * #loadChart(InputStream, String)} method still reads an archive's
+   * entries one after another, but decompresses and loads subchart
+   * archives, converts templates and other files, and interprets
+   * {@code Chart.yaml} and {@code values.yaml} as separate tasks.
+   * The resulting {@link hapi.chart.ChartOuterClass.Chart.Builder} is
+   * identical to the one produced when parallel loading is disabled.
+   * This pays off for large charts and charts with many subcharts on
+   * machines with several processors.  Parallel loading is disabled
+   * by default.</p>
+   *
+   * @param parallelLoadingEnabled whether parallel loading should be
+   * enabled
+   *
+   * @see #isParallelLoadingEnabled()
+   */
+  public void setParallelLoadingEnabled(final boolean parallelLoadingEnabled) {
+    this.parallelLoadingEnabled = parallelLoadingEnabled;
+  }
+
+  /**
+   * Returns {@code true} if the charts required by resolved charts
+   * are themselves resolved and attached as subcharts.
+   *
+   * @return {@code true} if dependency resolution is enabled; {@code
+   * false} otherwise
+   *
+   * @see #setDependencyResolutionEnabled(boolean)
+   */
+  public boolean isDependencyResolutionEnabled() {
+    return this.dependencyResolutionEnabled;
+  }
+
+  /**
+   * Sets whether the charts required by resolved charts are
+   * themselves resolved and attached as subcharts.
+   *
+   * <p>When dependency resolution is enabled, the {@code
+   * requirements.yaml} file of each resolved chart is read, each
+   * requirement not already satisfied by a subchart in the chart's
+   * {@code charts} directory is {@linkplain
+   * #toDependencyArtifact(Artifact, String, String, String) mapped to
+   * Maven coordinates}, and the whole graph of requirements is
+   * resolved breadth-first.  All of the charts discovered at one
+   * depth are {@linkplain #resolveAll(Collection) resolved together}
+   * with a single call to the {@link
+   * RepositorySystem#resolveArtifacts(RepositorySystemSession,
+   * Collection)} method, so that the repository connector can
+   * download them in parallel, and are then loaded in parallel using
+   * the {@link Executor} returned by the {@link #getExecutor()}
+   * method.  A chart required
+   * by several others is resolved and loaded only once.  Each
+   * resolved chart is then attached as a subchart of the chart that
+   * requires it, under its alias if it has one.  Dependency
+   * resolution is disabled by default.</p>
+   *
+   * @param dependencyResolutionEnabled whether dependency resolution
+   * should be enabled
+   *
+   * @see #isDependencyResolutionEnabled()
+   */
+  public void setDependencyResolutionEnabled(final boolean dependencyResolutionEnabled) {
+    this.dependencyResolutionEnabled = dependencyResolutionEnabled;
+  }
+
+  /**
+   * Returns {@code true} if charts with release versions are looked
+   * up directly in the local repository before a full resolution is
+   * attempted.
+   *
+   * @return {@code true} if the local fast path is enabled; {@code
+   * false} otherwise
+   *
+   * @see #setLocalFastPathEnabled(boolean)
+   */
+  public boolean isLocalFastPathEnabled() {
+    return this.localFastPathEnabled;
+  }
+
+  /**
+   * Sets whether charts with release versions are looked up directly
+   * in the local repository before a full resolution is attempted.
+   *
+   * <p>When the local fast path is enabled, a chart whose version is
+   * neither a snapshot, {@code LATEST}, {@code RELEASE} nor a version
+   * range is first {@linkplain LocalRepositoryManager#find(RepositorySystemSession,
+   * LocalArtifactRequest) found} using the session's {@link
+   * LocalRepositoryManager}.  If it is present and was obtained from
+   * one of the {@linkplain #getRemoteRepositories() remote
+   * repositories}, or installed locally, its file is loaded at once,
+   * bypassing the {@link RepositorySystem} and with it update policy
+   * checks, repository events and synchronization.  The {@link
+   * RepositorySystem} is used only when the chart is not found.  The
+   * local fast path is disabled by default.</p>
+   *
+   * <p>Because a release version is immutable, the only behavior
+   * lost is the notification of any {@link
+   * org.eclipse.aether.RepositoryListener} installed in the
+   * session.</p>
+   *
+   * @param localFastPathEnabled whether the local fast path should be
+   * enabled
+   *
+   * @see #isLocalFastPathEnabled()
+   */
+  public void setLocalFastPathEnabled(final boolean localFastPathEnabled) {
+    this.localFastPathEnabled = localFastPathEnabled;
+  }
+
+  /**
+   * Returns {@code true} if charts are requested from several remote
+   * repositories at once, the first valid answer being taken.
+   *
+   * @return {@code true} if hedging is enabled; {@code false}
+   * otherwise
+   *
+   * @see #setHedgingEnabled(boolean)
+   */
+  public boolean isHedgingEnabled() {
+    return this.hedgingEnabled;
+  }
+
+  /**
+   * Sets whether charts are requested from several remote
+   * repositories at once, the first valid answer being taken.
+   *
+   * <p>Ordinarily a chart that is not present in the local repository
+   * is requested from each of the {@linkplain #getRemoteRepositories()
+   * remote repositories} in turn, so a slow repository delays every
+   * resolution that must pass it by.  When hedging is enabled and
+   * there is more than one remote repository, the chart is instead
+   * requested from the repository with the lowest {@linkplain
+   * #getRepositoryLatencies() recent latency} first, and then from
+   * each of the others when the {@linkplain
+   * #setHedgeDelayInMilliseconds(long) hedge delay} elapses without
+   * an answer or when every repository asked so far has failed.  The
+   * first download whose published checksums match is kept and transfers
+   * still in progress are cancelled.  The requests are made on
+   * threads dedicated to them rather than on the {@linkplain
+   * #getExecutor() executor}, so hedged resolutions may be run on a
+   * bounded executor, and only the download that is kept is
+   * installed into the local repository.  Hedging is disabled by
+   * default.</p>
+   *
+   * <p>Hedging gives up the precedence that the order of the remote
+   * repositories otherwise expresses, and hedged downloads are not
+   * {@linkplain #setStreamingEnabled(boolean) streamed}.  The {@link
+   * #resolveAll(Collection)} method does not hedge.</p>
+   *
+   * @param hedgingEnabled whether hedging should be enabled
+   *
+   * @see #isHedgingEnabled()
+   *
+   * @see #setHedgeDelayInMilliseconds(long)
+   */
+  public void setHedgingEnabled(final boolean hedgingEnabled) {
+    this.hedgingEnabled = hedgingEnabled;
+  }
+
+  /**
+   * Returns the number of milliseconds a {@linkplain
+   * #setHedgingEnabled(boolean) hedged} resolution waits for an
+   * answer from one remote repository before also asking the next.
+   *
+   * @return the hedge delay in milliseconds; never negative
+   *
+   * @see #setHedgeDelayInMilliseconds(long)
+   */
+  public long getHedgeDelayInMilliseconds() {
+    return this.hedgeDelayInMilliseconds;
+  }
+
+  /**
+   * Sets the number of milliseconds a {@linkplain
+   * #setHedgingEnabled(boolean) hedged} resolution waits for an
+   * answer from one remote repository before also asking the next.
+   *
+   * <p>The default, {@value #DEFAULT_HEDGE_DELAY_IN_MILLISECONDS},
+   * asks all remote repositories at once.  A delay near the usual
+   * latency of the fastest repository asks the others only when it
+   * is being unusually slow.</p>
+   *
+   * @param hedgeDelayInMilliseconds the hedge delay in milliseconds;
+   * negative values are treated as {@code 0}
+   *
+   * @see #getHedgeDelayInMilliseconds()
+   */
+  public void setHedgeDelayInMilliseconds(final long hedgeDelayInMilliseconds) {
+    this.hedgeDelayInMilliseconds = Math.max(0L, hedgeDelayInMilliseconds);
+  }
+
+  /**
+   * Returns the {@link RepositoryLatencies} recording how long each
+   * remote repository has recently taken to answer {@linkplain
+   * #setHedgingEnabled(boolean) hedged} requests.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link RepositoryLatencies}
+   */
+  public final RepositoryLatencies getRepositoryLatencies() {
+    return this.repositoryLatencies;
+  }
+
+  /**
+   * Returns the {@link ChartResolverMetrics} to which measurements of
+   * resolution work are reported.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method are permitted to return {@code null},
+   * in which case nothing will be reported.</p>
+   *
+   * @return the {@link ChartResolverMetrics} in use; never {@code
+   * null}
+   *
+   * @see #setMetrics(ChartResolverMetrics)
+   */
+  public ChartResolverMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * Sets the {@link ChartResolverMetrics} to which measurements of
+   * resolution work are reported.
+   *
+   * <p>Each resolution reports the time spent in the {@linkplain
+   * ChartResolverMetrics.Phase#RESOLVE resolve}, {@linkplain
+   * ChartResolverMetrics.Phase#TRANSFER transfer} and {@linkplain
+   * ChartResolverMetrics.Phase#LOAD load} phases, the number of bytes
+   * transferred, whether the {@linkplain #getChartCache() chart
+   * cache} held the chart, and any failure.  By default nothing is
+   * reported.</p>
+   *
+   * @param metrics the {@link ChartResolverMetrics} to use; may be
+   * {@code null} in which case {@link ChartResolverMetrics#NOOP} will
+   * be used instead
+   *
+   * @see #getMetrics()
+   *
+   * @see MicrometerChartResolverMetrics
+   */
+  public void setMetrics(final ChartResolverMetrics metrics) {
+    if (metrics == null) {
+      this.metrics = ChartResolverMetrics.NOOP;
+    } else {
+      this.metrics = metrics;
+    }
+  }
+
+  /**
+   * Returns the {@link ChartArchiveFormats} whose {@link
+   * ChartArchiveFormat}s are used to {@linkplain #loadChart(InputStream,
+   * String) load} chart archives.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.</p>
+   *
+   * @return the {@link ChartArchiveFormats} in use; never {@code
+   * null}
+   *
+   * @see #setChartArchiveFormats(ChartArchiveFormats)
+   */
+  public ChartArchiveFormats getChartArchiveFormats() {
+    return this.chartArchiveFormats;
+  }
+
+  /**
+   * Sets the {@link ChartArchiveFormats} whose {@link
+   * ChartArchiveFormat}s are used to {@linkplain #loadChart(InputStream,
+   * String) load} chart archives.
+   *
+   * <p>By default a {@linkplain ChartArchiveFormats#ChartArchiveFormats()
+   * new <code>ChartArchiveFormats</code>} holding the built-in {@link
+   * ChartArchiveFormat}s and those found by a {@link
+   * java.util.ServiceLoader} is used.</p>
+   *
+   * @param chartArchiveFormats the {@link ChartArchiveFormats} to use;
+   * may be {@code null} in which case a {@linkplain
+   * ChartArchiveFormats#ChartArchiveFormats() new
+   * <code>ChartArchiveFormats</code>} will be used instead
+   *
+   * @see #getChartArchiveFormats()
+   */
+  public void setChartArchiveFormats(final ChartArchiveFormats chartArchiveFormats) {
+    if (chartArchiveFormats == null) {
+      this.chartArchiveFormats = new ChartArchiveFormats();
+    } else {
+      this.chartArchiveFormats = chartArchiveFormats;
+    }
+  }
+
+  /**
+   * Returns the number of milliseconds for which the versions of a
+   * chart found in repository metadata are reused before the metadata
+   * is consulted again.
+   *
+   * @return the metadata time-to-live in milliseconds; never negative
+   *
+   * @see #setMetadataTimeToLiveInMilliseconds(long)
+   */
+  public long getMetadataTimeToLiveInMilliseconds() {
+    return this.metadataTimeToLiveInMilliseconds;
+  }
+
+  /**
+   * Sets the number of milliseconds for which the versions of a chart
+   * found in repository metadata are reused before the metadata is
+   * consulted again.
+   *
+   * <p>Resolving a chart whose version is {@code LATEST}, {@code
+   * RELEASE} or a version range requires reading, and possibly
+   * downloading, the {@code maven-metadata.xml} file of every remote
+   * repository.  The versions found are kept in memory for this long
+   * so that a caller polling for the latest chart does not repeat
+   * that work on every call.  The default is {@link
+   * #DEFAULT_METADATA_TIME_TO_LIVE_IN_MILLISECONDS}.  Changing the
+   * time-to-live discards all versions already kept.</p>
+   *
+   * @param metadataTimeToLiveInMilliseconds the new time-to-live in
+   * milliseconds; {@code 0L} or less disables the reuse of versions
+   * entirely
+   *
+   * @see #getMetadataTimeToLiveInMilliseconds()
+   *
+   * @see #resolveVersion(Artifact)
+   */
+  public void setMetadataTimeToLiveInMilliseconds(final long metadataTimeToLiveInMilliseconds) {
+    this.metadataTimeToLiveInMilliseconds = Math.max(0L, metadataTimeToLiveInMilliseconds);
+    this.versionRangeCache.clear();
+  }
+
+  /**
+   * Returns the {@link Executor} on which {@linkplain
+   * #resolveAsync(Artifact) asynchronous resolution} and parallel
+   * chart loading take place.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.</p>
+   *
+   * @return the {@link Executor} on which asynchronous work is
+   * performed; never {@code null}
+   *
+   * @see #MavenRepositoryChartResolver(RepositorySystem,
+   * RepositorySystemSession, List, ChartCache, Executor)
+   */
+  public Executor getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Creates and returns a {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} representing a Helm
+   * chart resolvable at the given Maven repository coordinates.
+   *
+   * @param coordinatesWithoutVersion a {@link String} of one of the
+   * following forms: {@code groupId:artifactId}, {@code
+   * groupId:artifactId:packaging}, or {@code
+   * groupId:artifactId:packaging:classifier}; must not be {@code
+   * null}
+   *
+   * @param chartVersion the version of the Helm chart artifact to
+   * resolve, which may also be {@code LATEST}, {@code RELEASE} or a
+   * version range such as {@code [4.0,5.0)}; may be {@code null} in
+   * which case {@code LATEST} will be used instead
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}
+   *
+   * @exception NullPointerException if {@code coordinatesWithoutVersion} is {@code null}
+   *
+   * @exception ChartResolverException if {@code
+   * coordinatesWithoutVersion} is malformed, if either the {@link
+   * #getRepositorySystem()} or {@link #getSession()} method returns
+   * {@code null}, if an {@link ArtifactResolutionException} was
+   * encountered during artifact resolution, or if the {@link
+   * #loadChart(File, String)} method throws a {@link
+   * ChartResolverException}
+   *
+   * @see #resolve(Artifact)
+   *
+   * @see #loadChart(File, String)
+   */
+  @Override
+  public final Chart.Builder resolve(final String coordinatesWithoutVersion, final String chartVersion) throws ChartResolverException {
+    final Artifact chart = toArtifact(coordinatesWithoutVersion, chartVersion);
+    assert chart != null;
+
+    if (logger.isLoggable(Level.FINE)) {
+      logger.logp(Level.FINE, MavenRepositoryChartResolver.class.getName(), "resolve", "Resolving {0}", chart);
+    }
+
+    return this.resolve(chart);
+  }
+
+  /**
+   * Creates and returns a {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} representing a Helm
+   * chart resolvable at the Maven repository coordinates represented
+   * by the supplied {@link Artifact}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.</p>
+   *
+   * <p>If the {@link #getChartCache()} method returns a non-{@code
+   * null} {@link ChartCache} that already holds a {@link Chart}
+   * loaded from the resolved artifact's file, a new {@link
+   * Chart.Builder} initialized from it is returned and the {@link
+   * #loadChart(File, String)} method is not called.</p>
+   *
+   * <p>If a resolution of an {@linkplain Artifact#equals(Object)
+   * equal} {@link Artifact} is already in progress on another thread,
+   * no new resolution is started; instead this method waits for the
+   * resolution already in progress to complete and returns a new
+   * {@link Chart.Builder} initialized from its result, so concurrent
+   * callers share one transfer and one {@linkplain #loadChart(File,
+   * String) load}.</p>
+   *
+   * <p>If the supplied {@link Artifact}'s version is {@code LATEST},
+   * {@code RELEASE} or a version range, it is first {@linkplain
+   * #resolveVersion(Artifact) resolved} to a concrete version.</p>
+   *
+   * <p>If {@linkplain #isDependencyResolutionEnabled() dependency
+   * resolution is enabled}, the charts the chart requires are
+   * resolved and attached to the returned {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} as subcharts.</p>
+   *
+   * @param chart the {@link Artifact} representing the Helm chart to
+   * resolve; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @exception ChartResolverException if either the {@link
+   * #getRepositorySystem()} or {@link #getSession()} method returns
+   * {@code null}, if the chart's version could not be resolved, if
+   * an {@link ArtifactResolutionException} was encountered during
+   * artifact resolution, if the {@link #loadChart(File, String)}
+   * method throws a {@link ChartResolverException}, or if a required
+   * chart could not be resolved
+   *
+   * @see #resolveVersion(Artifact)
+   *
+   * @see #loadChart(File, String)
+   *
+   * @see #getChartCache()
+   */
+  public Chart.Builder resolve(final Artifact chart) throws ChartResolverException {
+    Objects.requireNonNull(chart);
+    this.checkNegativeResults(chart);
+    final Artifact concreteChart;
+    final Chart returnValue;
+    try {
+      concreteChart = this.resolveVersion(chart);
+      returnValue = this.resolutions.execute(concreteChart, () -> this.resolveAndLoadChart(concreteChart).build()).join();
+    } catch (final ChartResolverException chartResolverException) {
+      throw this.rememberIfNotFound(chart, chartResolverException);
+    } catch (final CompletionException completionException) {
+      // Every caller coalesced onto the same resolution sees the same
+      // ChartResolverException, so give this one its own, both to
+      // throw and to remember.
+      final ChartResolverException sharedException = toChartResolverException(completionException);
+      throw this.rememberIfNotFound(chart, new ChartResolverException(sharedException.getMessage(), sharedException));
+    }
+    final Chart.Builder builder = returnValue.toBuilder();
+    if (this.isDependencyResolutionEnabled()) {
+      this.resolveDependencies(Collections.singletonMap(concreteChart, builder));
+    }
+    return builder;
+  }
+
+  /**
+   * Forgets everything this {@link MavenRepositoryChartResolver}
+   * remembers about which versions of the chart identified by the
+   * supplied coordinates exist, so that a chart that has just been
+   * published can be resolved at once.
+   *
+   * @param coordinatesWithoutVersion a {@link String} of one of the
+   * following forms: {@code groupId:artifactId}, {@code
+   * groupId:artifactId:packaging}, or {@code
+   * groupId:artifactId:packaging:classifier}; must not be {@code
+   * null}
+   *
+   * @exception NullPointerException if {@code
+   * coordinatesWithoutVersion} is {@code null}
+   *
+   * @exception ChartResolverException if {@code
+   * coordinatesWithoutVersion} is malformed
+   *
+   * @see #invalidate(Artifact)
+   */
+  public final void invalidate(final String coordinatesWithoutVersion) throws ChartResolverException {
+    this.invalidate(toArtifact(coordinatesWithoutVersion, null));
+  }
+
+  /**
+   * Forgets everything this {@link MavenRepositoryChartResolver}
+   * remembers about which versions of the chart represented by the
+   * supplied {@link Artifact} exist, so that a chart that has just
+   * been published can be resolved at once.
+   *
+   * <p>Entries for every version, packaging and classifier of the
+   * chart are removed from the {@linkplain #getNegativeResultCache()
+   * negative result cache}, and the versions of the chart found in
+   * repository metadata are {@linkplain
+   * #setMetadataTimeToLiveInMilliseconds(long) no longer reused}.
+   * Whether the remote repositories are then consulted again is up
+   * to the {@linkplain #getSession() session}'s update and resolution
+   * error policies.</p>
+   *
+   * @param chart an {@link Artifact} whose {@code groupId} and {@code
+   * artifactId} identify the chart; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   */
+  public void invalidate(final Artifact chart) {
+    Objects.requireNonNull(chart);
+    final NegativeResultCache negativeResultCache = this.getNegativeResultCache();
+    if (negativeResultCache != null) {
+      negativeResultCache.invalidate(chart.getGroupId(), chart.getArtifactId());
+    }
+    this.versionRangeCache.remove(chart.getGroupId(), chart.getArtifactId());
+  }
+
+  /**
+   * Throws a new {@link ChartResolverException} whose {@linkplain
+   * Throwable#getCause() cause} is the {@link ChartResolverException}
+   * that the {@linkplain #getNegativeResultCache() negative result
+   * cache} remembers for the supplied requested {@link Artifact}, if
+   * there is one.
+   *
+   * <p>The remembered {@link ChartResolverException} is shared by
+   * every caller that hits the same entry, and so is never thrown
+   * itself.</p>
+   *
+   * @param chart the requested {@link Artifact}; must not be {@code
+   * null}
+   *
+   * @exception ChartResolverException if the chart is known not to
+   * exist
+   */
+  private final void checkNegativeResults(final Artifact chart) throws ChartResolverException {
+    final NegativeResultCache negativeResultCache = this.getNegativeResultCache();
+    if (negativeResultCache != null) {
+      final ChartResolverException chartResolverException = negativeResultCache.get(chart, this.getRemoteRepositories());
+      if (chartResolverException != null) {
+        throw new ChartResolverException(chartResolverException.getMessage(), chartResolverException);
+      }
+    }
+  }
+
+  /**
+   * Records the supplied {@link ChartResolverException} in the
+   * {@linkplain #getNegativeResultCache() negative result cache} if
+   * it reports that the supplied requested {@link Artifact} could not
+   * be found, and returns it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param chart the requested {@link Artifact}; must not be {@code
+   * null}
+   *
+   * @param chartResolverException the {@link ChartResolverException}
+   * thrown while resolving {@code chart}; must not be {@code null}
+   *
+   * @return {@code chartResolverException}
+   *
+   * @see #isNotFound(ChartResolverException)
+   */
+  private final ChartResolverException rememberIfNotFound(final Artifact chart, final ChartResolverException chartResolverException) {
+    final NegativeResultCache negativeResultCache = this.getNegativeResultCache();
+    if (negativeResultCache != null && isNotFound(chartResolverException)) {
+      negativeResultCache.put(chart, this.getRemoteRepositories(), chartResolverException);
+    }
+    return chartResolverException;
+  }
+
+  /**
+   * Returns an {@link Artifact} equal to the supplied {@link Artifact}
+   * but for its version, which is resolved to a concrete version if
+   * it is {@code LATEST}, {@code RELEASE} or a version range such as
+   * {@code [4.0,5.0)}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>If the supplied {@link Artifact}'s version is already concrete
+   * it is returned unchanged.  Otherwise all versions of the chart
+   * satisfying the range, or all versions of the chart whatsoever in
+   * the case of {@code LATEST} and {@code RELEASE}, are found using
+   * the {@link RepositorySystem#resolveVersionRange(RepositorySystemSession,
+   * VersionRangeRequest)} method, and the highest is selected; {@code
+   * RELEASE} selects the highest version that is not a snapshot.
+   * The versions found are reused for {@linkplain
+   * #getMetadataTimeToLiveInMilliseconds() a while} by subsequent
+   * calls for the same chart and constraint, and {@code LATEST} and
+   * {@code RELEASE} share them.</p>
+   *
+   * @param chart the {@link Artifact} whose version should be
+   * resolved; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Artifact} with a concrete
+   * version
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @exception ChartResolverException if either the {@link
+   * #getRepositorySystem()} or {@link #getSession()} method returns
+   * {@code null}, if a {@link VersionRangeResolutionException} was
+   * encountered, or if no suitable version exists
+   *
+   * @see #setMetadataTimeToLiveInMilliseconds(long)
+   */
+  public Artifact resolveVersion(final Artifact chart) throws ChartResolverException {
+    Objects.requireNonNull(chart);
+    final String version = chart.getVersion();
+    if (!isVersionSpecification(version)) {
+      return chart;
+    }
+
+    final boolean releasesOnly = "RELEASE".equals(version);
+    final String constraint;
+    if (releasesOnly || "LATEST".equals(version)) {
+      constraint = ALL_VERSIONS;
+    } else {
+      constraint = version;
+    }
+
+    VersionRangeResult result = this.versionRangeCache.get(chart.getGroupId(), chart.getArtifactId(), constraint);
+    if (result == null) {
+      final RepositorySystem repositorySystem = this.getRepositorySystem();
+      if (repositorySystem == null) {
+        throw new ChartResolverException(new IllegalStateException("getRepositorySystem() == null"));
+      }
+
+      final RepositorySystemSession session = this.getSession();
+      if (session == null) {
+        throw new ChartResolverException(new IllegalStateException("getSession() == null"));
+      }
+
+      List<RemoteRepository> remoteRepositories = this.getRemoteRepositories();
+      if (remoteRepositories == null) {
+        remoteRepositories = Collections.emptyList();
+      }
+
+      try {
+        result = repositorySystem.resolveVersionRange(session, new VersionRangeRequest(chart.setVersion(constraint), remoteRepositories, null));
+      } catch (final VersionRangeResolutionException versionRangeResolutionException) {
+        throw new ChartResolverException(versionRangeResolutionException);
+      }
+      assert result != null;
+      final List<Version> versions = result.getVersions();
+      if (versions != null && !versions.isEmpty()) {
+        this.versionRangeCache.put(chart.getGroupId(), chart.getArtifactId(), constraint, result, TimeUnit.MILLISECONDS.toNanos(this.getMetadataTimeToLiveInMilliseconds()));
+      }
+    }
+
+    Artifact returnValue = null;
+    final List<Version> versions = result.getVersions();
+    if (versions != null) {
+      // Versions are sorted in ascending order.
+      for (int i = versions.size() - 1; returnValue == null && i >= 0; i--) {
+        final Artifact candidate = chart.setVersion(versions.get(i).toString());
+        if (!releasesOnly || !candidate.isSnapshot()) {
+          returnValue = candidate;
+        }
+      }
+    }
+    if (returnValue == null) {
+      throw new ChartResolverException(new VersionRangeResolutionException(result, "No version of " + chart + " could be found"));
+    }
+    if (logger.isLoggable(Level.FINE)) {
+      logger.logp(Level.FINE, MavenRepositoryChartResolver.class.getName(), "resolveVersion", "Resolved {0}", returnValue);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Resolves the supplied {@link Artifact} and {@linkplain
+   * #loadResolvedChart(ArtifactResult, Chart.Builder) loads} the Helm
+   * chart it represents,
+   * without regard to any other resolution of the same {@link
+   * Artifact} that might be in progress.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param chart the {@link Artifact} representing the Helm chart to
+   * resolve; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @exception ChartResolverException for any of the reasons
+   * documented in the {@link #resolve(Artifact)} method
+   *
+   * @see #resolve(Artifact)
+   */
+  private final Chart.Builder resolveAndLoadChart(final Artifact chart) throws ChartResolverException {
+    Objects.requireNonNull(chart);
+
+    final RepositorySystem repositorySystem = this.getRepositorySystem();
+    if (repositorySystem == null) {
+      throw new ChartResolverException(new IllegalStateException("getRepositorySystem() == null"));
+    }
+
+    final RepositorySystemSession session = this.getSession();
+    if (session == null) {
+      throw new ChartResolverException(new IllegalStateException("getSession() == null"));
+    }
+    
+    List<RemoteRepository> remoteRepositories = this.getRemoteRepositories();
+    if (remoteRepositories == null) {
+      remoteRepositories = Collections.emptyList();
+    }
+    
+    final ArtifactRequest request = new ArtifactRequest(chart, remoteRepositories, null);
+
+    final ChartResolverMetrics metrics = this.getMetrics();
+
+    if (this.isLocalFastPathEnabled()) {
+      final long findStart = System.nanoTime();
+      final ArtifactResult localResult = findInLocalRepository(session, request);
+      if (localResult != null) {
+        final String localRepositoryId = localResult.getRepository().getId();
+        if (metrics != null) {
+          metrics.recordPhase(ChartResolverMetrics.Phase.RESOLVE, localRepositoryId, chart.getExtension(), System.nanoTime() - findStart);
+        }
+        try {
+          return this.loadResolvedChart(localResult, null);
+        } catch (final ChartResolverException | RuntimeException exception) {
+          if (metrics != null) {
+            metrics.recordFailure(localRepositoryId, chart.getExtension(), exception);
+          }
+          throw exception;
+        }
+      }
+    }
+    // Hedged downloads run concurrently, which the metrics and
+    // streaming listeners, each following a single transfer, cannot
+    // follow.
+    final boolean hedged = this.isHedgingEnabled() && remoteRepositories.size() > 1;
+    TransferListener transferListener = session.getTransferListener();
+    final ChartTransferMetricsListener metricsListener;
+    if (hedged || metrics == null || metrics == ChartResolverMetrics.NOOP) {
+      metricsListener = null;
+    } else {
+      metricsListener = new ChartTransferMetricsListener(transferListener, chart);
+      transferListener = metricsListener;
+    }
+
+    final Executor executor = this.getExecutor();
+    final ChartStreamingTransferListener streamingListener;
+    if (!hedged && !this.loadChartOverridden && this.isStreamingEnabled() && executor != null && this.getChartLoadLimits() == null) {
+      streamingListener =
+        new ChartStreamingTransferListener(transferListener,
+                                           chart,
+                                           executor,
+                                           inputStream -> this.loadChart(inputStream, chart.getExtension()));
+      transferListener = streamingListener;
+    } else {
+      streamingListener = null;
+    }
+
+    final RepositorySystemSession resolutionSession;
+    if (transferListener == session.getTransferListener()) {
+      resolutionSession = session;
+    } else {
+      resolutionSession = new DefaultRepositorySystemSession(session).setTransferListener(transferListener);
+    }
+
+    String repositoryId = null;
+    try {
+      ArtifactResult result = null;
+      final long resolutionStart = System.nanoTime();
+      try {
+        result = this.resolveArtifact(repositorySystem, resolutionSession, request);
+      } catch (final ArtifactResolutionException artifactResolutionException) {
+        throw new ChartResolverException(artifactResolutionException);
+      }
+      final long resolutionNanoseconds = System.nanoTime() - resolutionStart;
+
+      final Artifact resolvedChart;
+      if (result.isResolved()) {
+        resolvedChart = result.getArtifact();
+      } else {
+        resolvedChart = null;
+      }
+
+      if (resolvedChart == null) {
+        throw toChartResolverException(result.getExceptions());
+      }
+
+      if (result.getRepository() != null) {
+        repositoryId = result.getRepository().getId();
+      }
+      if (metrics != null) {
+        long transferNanoseconds = 0L;
+        if (metricsListener != null && metricsListener.isTransferred()) {
+          transferNanoseconds = metricsListener.getTransferNanoseconds();
+          metrics.recordPhase(ChartResolverMetrics.Phase.TRANSFER, repositoryId, chart.getExtension(), transferNanoseconds);
+          metrics.recordBytesTransferred(repositoryId, chart.getExtension(), metricsListener.getBytesTransferred());
+        }
+        metrics.recordPhase(ChartResolverMetrics.Phase.RESOLVE, repositoryId, chart.getExtension(), Math.max(0L, resolutionNanoseconds - transferNanoseconds));
+      }
+
+      final Chart.Builder streamedChart;
+      if (streamingListener == null) {
+        streamedChart = null;
+      } else {
+        streamedChart = streamingListener.getChart(resolvedChart);
+      }
+
+      final Chart.Builder returnValue = this.loadResolvedChart(result, streamedChart);
+      return returnValue;
+    } catch (final ChartResolverException | RuntimeException exception) {
+      if (metrics != null) {
+        metrics.recordFailure(repositoryId, chart.getExtension(), exception);
+      }
+      throw exception;
+    } finally {
+      if (streamingListener != null) {
+        streamingListener.close();
+      }
+    }
+  }
+
+  /**
+   * Resolves the Helm chart identified by the supplied coordinates
+   * and version and returns its {@link Metadata}, reading only its
+   * {@code Chart.yaml} and {@code values.yaml} files.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param coordinatesWithoutVersion a {@link String} of one of the
+   * following forms: {@code groupId:artifactId}, {@code
+   * groupId:artifactId:packaging}, or {@code
+   * groupId:artifactId:packaging:classifier}; must not be {@code
+   * null}
+   *
+   * @param chartVersion the version of the Helm chart artifact to
+   * resolve, which may also be {@code LATEST}, {@code RELEASE} or a
+   * version range such as {@code [4.0,5.0)}; may be {@code null} in
+   * which case {@code LATEST} will be used instead
+   *
+   * @return a non-{@code null} {@link Metadata}
+   *
+   * @exception NullPointerException if {@code
+   * coordinatesWithoutVersion} is {@code null}
+   *
+   * @exception ChartResolverException if {@code
+   * coordinatesWithoutVersion} is malformed, or for any of the
+   * reasons documented in the {@link #resolveLazily(Artifact)} method
+   *
+   * @see #resolveMetadata(Artifact)
+   */
+  public final Metadata resolveMetadata(final String coordinatesWithoutVersion, final String chartVersion) throws ChartResolverException {
+    return this.resolveMetadata(toArtifact(coordinatesWithoutVersion, chartVersion));
+  }
+
+  /**
+   * Resolves the Helm chart represented by the supplied {@link
+   * Artifact} and returns its {@link Metadata}, reading only its
+   * {@code Chart.yaml} and {@code values.yaml} files.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>This implementation returns the {@linkplain
+   * LazyChart#getMetadata() metadata} of the {@link LazyChart}
+   * returned by the {@link #resolveLazily(Artifact)} method.</p>
+   *
+   * @param chart the {@link Artifact} representing the Helm chart to
+   * resolve; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Metadata}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @exception ChartResolverException for any of the reasons
+   * documented in the {@link #resolveLazily(Artifact)} method
+   *
+   * @see #resolveLazily(Artifact)
+   */
+  public Metadata resolveMetadata(final Artifact chart) throws ChartResolverException {
+    return this.resolveLazily(chart).getMetadata();
+  }
+
+  /**
+   * Resolves the Helm chart identified by the supplied coordinates
+   * and version in the manner of the {@link #resolveLazily(Artifact)}
+   * method.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param coordinatesWithoutVersion a {@link String} of one of the
+   * following forms: {@code groupId:artifactId}, {@code
+   * groupId:artifactId:packaging}, or {@code
+   * groupId:artifactId:packaging:classifier}; must not be {@code
+   * null}
+   *
+   * @param chartVersion the version of the Helm chart artifact to
+   * resolve, which may also be {@code LATEST}, {@code RELEASE} or a
+   * version range such as {@code [4.0,5.0)}; may be {@code null} in
+   * which case {@code LATEST} will be used instead
+   *
+   * @return a non-{@code null} {@link LazyChart}
+   *
+   * @exception NullPointerException if {@code
+   * coordinatesWithoutVersion} is {@code null}
+   *
+   * @exception ChartResolverException if {@code
+   * coordinatesWithoutVersion} is malformed, or for any of the
+   * reasons documented in the {@link #resolveLazily(Artifact)} method
+   *
+   * @see #resolveLazily(Artifact)
+   */
+  public final LazyChart resolveLazily(final String coordinatesWithoutVersion, final String chartVersion) throws ChartResolverException {
+    return this.resolveLazily(toArtifact(coordinatesWithoutVersion, chartVersion));
+  }
+
+  /**
+   * Resolves the Helm chart represented by the supplied {@link
+   * Artifact} and returns a {@link LazyChart} whose metadata and
+   * values have been loaded but whose templates, files and
+   * dependencies will be loaded from the resolved archive only when
+   * first asked for.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The chart's archive is resolved, using the {@linkplain
+   * #isLocalFastPathEnabled() local fast path} if it is enabled, but
+   * only its metadata and values are {@linkplain
+   * #loadChartMetadata(File, String) loaded}.  If the {@link
+   * ChartCache} returned by the {@link #getChartCache()} method
+   * already holds the chart they are taken from it instead.  If a
+   * {@link ChartVerifier} is {@linkplain #getChartVerifier() in use},
+   * only a cached chart that it verified is used, and otherwise the
+   * whole archive is verified before its metadata is loaded.  When
+   * the rest of the chart is needed it is loaded as the {@link
+   * #resolve(Artifact)} method would load it, consulting the {@link
+   * ChartCache} and {@link ChartSnapshotStore}, and its dependencies
+   * are resolved if {@linkplain #isDependencyResolutionEnabled()
+   * dependency resolution is enabled}.</p>
+   *
+   * @param chart the {@link Artifact} representing the Helm chart to
+   * resolve; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link LazyChart}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @exception ChartResolverException if either the {@link
+   * #getRepositorySystem()} or {@link #getSession()} method returns
+   * {@code null}, if the chart's version could not be resolved, if
+   * an {@link ArtifactResolutionException} was encountered during
+   * artifact resolution, if the chart's archive fails {@linkplain
+   * #setChartVerifier(ChartVerifier) verification}, or if the {@link
+   * #loadChartMetadata(File, String)} method throws a {@link
+   * ChartResolverException}
+   *
+   * @see #resolveMetadata(Artifact)
+   *
+   * @see #loadChartMetadata(File, String)
+   */
+  public LazyChart resolveLazily(final Artifact chart) throws ChartResolverException {
+    Objects.requireNonNull(chart);
+    this.checkNegativeResults(chart);
+    final ArtifactResult result;
+    try {
+      result = this.resolveArtifact(this.resolveVersion(chart));
+    } catch (final ChartResolverException chartResolverException) {
+      throw this.rememberIfNotFound(chart, chartResolverException);
+    }
+    final Artifact resolvedChart = result.getArtifact();
+    assert resolvedChart != null;
+    assert resolvedChart.getFile() != null;
+
+    final ChartCache chartCache = this.getChartCache();
+    final ChartVerifier chartVerifier = this.getChartVerifier();
+    Chart.Builder metadata = null;
+    if (chartCache != null) {
+      metadata = chartVerifier == null ? chartCache.get(resolvedChart) : chartCache.get(resolvedChart, chartVerifier);
+    }
+    if (metadata == null) {
+      if (chartVerifier != null) {
+        this.newChartVerification(chartVerifier, resolvedChart).verify(resolvedChart.getFile());
+      }
+      metadata = this.loadChartMetadata(resolvedChart.getFile(), resolvedChart.getExtension());
+      if (metadata == null) {
+        throw new ChartResolverException("loadChartMetadata() == null");
+      }
+    } else {
+      metadata.clearTemplates().clearFiles().clearDependencies();
+    }
+
+    return new LazyChart(resolvedChart, metadata.build(), () -> {
+        final Chart.Builder returnValue = this.loadResolvedChart(result, null);
+        if (this.isDependencyResolutionEnabled()) {
+          this.resolveDependencies(Collections.singletonMap(resolvedChart, returnValue));
+        }
+        return returnValue;
+      });
+  }
+
+  /**
+   * Resolves the supplied {@link Artifact}, which must have a
+   * concrete version, without loading the Helm chart it represents,
+   * and returns a successful {@link ArtifactResult}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param chart the {@link Artifact} to resolve; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null}, successful {@link ArtifactResult}
+   * whose {@linkplain ArtifactResult#getArtifact() artifact} has a
+   * {@linkplain Artifact#getFile() file}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @exception ChartResolverException if either the {@link
+   * #getRepositorySystem()} or {@link #getSession()} method returns
+   * {@code null}, or if the artifact could not be resolved
+   */
+  private final ArtifactResult resolveArtifact(final Artifact chart) throws ChartResolverException {
+    Objects.requireNonNull(chart);
+
+    final RepositorySystem repositorySystem = this.getRepositorySystem();
+    if (repositorySystem == null) {
+      throw new ChartResolverException(new IllegalStateException("getRepositorySystem() == null"));
+    }
+
+    final RepositorySystemSession session = this.getSession();
+    if (session == null) {
+      throw new ChartResolverException(new IllegalStateException("getSession() == null"));
+    }
+
+    List<RemoteRepository> remoteRepositories = this.getRemoteRepositories();
+    if (remoteRepositories == null) {
+      remoteRepositories = Collections.emptyList();
+    }
+
+    final ArtifactRequest request = new ArtifactRequest(chart, remoteRepositories, null);
+    final ChartResolverMetrics metrics = this.getMetrics();
+    final long resolutionStart = System.nanoTime();
+    ArtifactResult returnValue = null;
+    if (this.isLocalFastPathEnabled()) {
+      returnValue = findInLocalRepository(session, request);
+    }
+    if (returnValue == null) {
+      try {
+        returnValue = this.resolveArtifact(repositorySystem, session, request);
+      } catch (final ArtifactResolutionException artifactResolutionException) {
+        if (metrics != null) {
+          metrics.recordFailure(null, chart.getExtension(), artifactResolutionException);
+        }
+        throw new ChartResolverException(artifactResolutionException);
+      }
+      if (!returnValue.isResolved() || returnValue.getArtifact() == null) {
+        final ChartResolverException exception = toChartResolverException(returnValue.getExceptions());
+        if (metrics != null) {
+          metrics.recordFailure(null, chart.getExtension(), exception);
+        }
+        throw exception;
+      }
+    }
+    if (metrics != null) {
+      metrics.recordPhase(ChartResolverMetrics.Phase.RESOLVE,
+                          returnValue.getRepository() == null ? null : returnValue.getRepository().getId(),
+                          chart.getExtension(),
+                          System.nanoTime() - resolutionStart);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Resolves the supplied {@link ArtifactRequest}, {@linkplain
+   * #setHedgingEnabled(boolean) hedging} across its remote
+   * repositories if hedging is enabled, while holding the download
+   * lock for its artifact.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param repositorySystem the {@link RepositorySystem} that will
+   * resolve the artifact; must not be {@code null}
+   *
+   * @param session the {@link RepositorySystemSession} governing
+   * resolution; must not be {@code null}
+   *
+   * @param request the {@link ArtifactRequest} to resolve; must not
+   * be {@code null}
+   *
+   * @return a non-{@code null} {@link ArtifactResult}
+   *
+   * @exception NullPointerException if any parameter is {@code null}
+   *
+   * @exception ArtifactResolutionException if the artifact could not
+   * be resolved
+   *
+   * @see RepositorySystem#resolveArtifact(RepositorySystemSession,
+   * ArtifactRequest)
+   */
+  private final ArtifactResult resolveArtifact(final RepositorySystem repositorySystem,
+                                               final RepositorySystemSession session,
+                                               final ArtifactRequest request)
+    throws ArtifactResolutionException {
+    Objects.requireNonNull(repositorySystem);
+    Objects.requireNonNull(session);
+    final ArtifactLocks.Hold hold = downloadLocks.lock(request.getArtifact());
+    try {
+      if (this.isHedgingEnabled() && request.getRepositories().size() > 1) {
+        return RepositoryRace.resolve(repositorySystem,
+                                      session,
+                                      request,
+                                      this.getRepositoryLatencies(),
+                                      TimeUnit.MILLISECONDS.toNanos(this.getHedgeDelayInMilliseconds()));
+      }
+      return repositorySystem.resolveArtifact(session, request);
+    } finally {
+      hold.release();
+    }
+  }
+
+  /**
+   * Asynchronously resolves the Helm chart identified by the supplied
+   * coordinates and version in the manner of the {@link
+   * #resolve(String, String)} method, using the {@link Executor}
+   * returned by the {@link #getExecutor()} method, and returns a
+   * {@link CompletableFuture} that will be completed with a {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} representing it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param coordinatesWithoutVersion a {@link String} of one of the
+   * following forms: {@code groupId:artifactId}, {@code
+   * groupId:artifactId:packaging}, or {@code
+   * groupId:artifactId:packaging:classifier}; must not be {@code
+   * null}
+   *
+   * @param chartVersion the version of the Helm chart artifact to
+   * resolve, which may also be {@code LATEST}, {@code RELEASE} or a
+   * version range such as {@code [4.0,5.0)}; may be {@code null} in
+   * which case {@code LATEST} will be used instead
+   *
+   * @return a non-{@code null} {@link CompletableFuture} that will be
+   * completed with a new {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}, or completed
+   * exceptionally with a {@link ChartResolverException}
+   *
+   * @exception NullPointerException if {@code
+   * coordinatesWithoutVersion} is {@code null}
+   *
+   * @see #resolveAsync(Artifact)
+   *
+   * @see #resolve(String, String)
+   */
+  public final CompletableFuture<Chart.Builder> resolveAsync(final String coordinatesWithoutVersion, final String chartVersion) {
+    final Artifact chart;
+    try {
+      chart = toArtifact(coordinatesWithoutVersion, chartVersion);
+    } catch (final ChartResolverException chartResolverException) {
+      final CompletableFuture<Chart.Builder> returnValue = new CompletableFuture<>();
+      returnValue.completeExceptionally(chartResolverException);
+      return returnValue;
+    }
+    return this.resolveAsync(chart);
+  }
+
+  /**
+   * Asynchronously resolves the Helm chart represented by the
+   * supplied {@link Artifact} in the manner of the {@link
+   * #resolve(Artifact)} method, using the {@link Executor} returned
+   * by the {@link #getExecutor()} method, and returns a {@link
+   * CompletableFuture} that will be completed with a {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} representing it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>If a resolution of an {@linkplain Artifact#equals(Object)
+   * equal} {@link Artifact}, synchronous or asynchronous, is already
+   * in progress, no new resolution is started; instead the returned
+   * {@link CompletableFuture} will be completed when the resolution
+   * already in progress completes.  Each caller receives its own
+   * {@link hapi.chart.ChartOuterClass.Chart.Builder}.</p>
+   *
+   * <p>This implementation calls the {@link #resolve(Artifact)}
+   * method on the {@link Executor}, so overrides of that method
+   * apply to asynchronous resolutions and {@linkplain
+   * #prefetch(Collection) prefetches} as well.</p>
+   *
+   * @param chart the {@link Artifact} representing the Helm chart to
+   * resolve; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link CompletableFuture} that will be
+   * completed with a new {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}, or completed
+   * exceptionally with a {@link ChartResolverException}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @see #resolve(Artifact)
+   *
+   * @see #getExecutor()
+   */
+  public CompletableFuture<Chart.Builder> resolveAsync(final Artifact chart) {
+    Objects.requireNonNull(chart);
+    final Executor executor = this.getExecutor();
+    CompletableFuture<Chart.Builder> returnValue = null;
+    if (executor == null) {
+      returnValue = new CompletableFuture<>();
+      returnValue.completeExceptionally(new ChartResolverException(new IllegalStateException("getExecutor() == null")));
+    } else {
+      try {
+        // Go through resolve(Artifact), which already shares
+        // resolutions in progress, so that overrides of it apply.
+        returnValue = CompletableFuture.supplyAsync(() -> {
+            try {
+              return this.resolve(chart);
+            } catch (final ChartResolverException chartResolverException) {
+              throw new CompletionException(chartResolverException);
+            }
+          }, executor);
+      } catch (final RejectedExecutionException rejectedExecutionException) {
+        returnValue = new CompletableFuture<>();
+        returnValue.completeExceptionally(new ChartResolverException(rejectedExecutionException.getMessage(), rejectedExecutionException));
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Resolves all of the supplied {@link Artifact}s representing Helm
+   * charts with a single call to the {@link
+   * RepositorySystem#resolveArtifacts(RepositorySystemSession,
+   * Collection)} method, {@linkplain #loadChart(File, String) loads}
+   * the resulting charts in parallel using the {@link Executor}
+   * returned by the {@link #getExecutor()} method, and returns a
+   * {@link Map} of {@link hapi.chart.ChartOuterClass.Chart.Builder}
+   * instances indexed by the {@link Artifact}s that were supplied.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The iteration order of the returned {@link Map} is the
+   * iteration order of the supplied {@link Collection}.  {@link
+   * Artifact}s in the supplied {@link Collection} that are {@linkplain
+   * Artifact#equals(Object) equal} to one another share a single
+   * entry in the returned {@link Map}.</p>
+   *
+   * <p>Charts are resolved in that one call and loaded by the {@link
+   * #loadChart(File, String)} method rather than one by one through
+   * the {@link #resolve(Artifact)} method, so overrides of the latter
+   * do not apply to them.</p>
+   *
+   * <p>Only charts that are not already in the local repository are
+   * included in that call, so that the repository connector may
+   * download them in parallel, and it is made while holding locks
+   * that keep other resolvers in this Java virtual machine from
+   * downloading any of them at the same time.</p>
+   *
+   * <p>Any chart whose version is {@code LATEST}, {@code RELEASE} or
+   * a version range is first {@linkplain #resolveVersion(Artifact)
+   * resolved} to a concrete version.  If {@linkplain
+   * #isDependencyResolutionEnabled() dependency resolution is
+   * enabled}, the charts required by all of the supplied charts are
+   * resolved in one such call per depth of the requirement graph,
+   * and a chart required by several of them is resolved only
+   * once.</p>
+   *
+   * <p>If any chart's version could not be resolved, or any chart
+   * could not be resolved or loaded, a single {@link
+   * ChartResolverException} is thrown whose cause is the first
+   * problem encountered, in the iteration order of the supplied
+   * {@link Collection}, and to which all other problems have been
+   * {@linkplain Throwable#addSuppressed(Throwable) added as
+   * suppressed exceptions}.  Charts are not loaded if any of them
+   * could not be resolved.</p>
+   *
+   * @param charts a {@link Collection} of {@link Artifact}s
+   * representing the Helm charts to resolve; must not be {@code null}
+   * and must not contain {@code null} elements
+   *
+   * @return a non-{@code null} {@link Map} of {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} instances indexed by
+   * the {@link Artifact}s that were supplied
+   *
+   * @exception NullPointerException if {@code charts} is {@code null}
+   * or contains {@code null} elements
+   *
+   * @exception ChartResolverException if any of the {@link
+   * #getRepositorySystem()}, {@link #getSession()} or {@link
+   * #getExecutor()} methods returns {@code null}, if any chart could
+   * not be resolved, or if the
+   * {@link #loadChart(File, String)} method throws a {@link
+   * ChartResolverException} for any chart
+   *
+   * @see #resolve(Artifact)
+   *
+   * @see #resolveAllCoordinates(Collection)
+   */
+  public Map<Artifact, Chart.Builder> resolveAll(final Collection<? extends Artifact> charts) throws ChartResolverException {
+    final Map<Artifact, Chart.Builder> returnValue = this.resolveAllCharts(charts);
+    if (!returnValue.isEmpty() && this.isDependencyResolutionEnabled()) {
+      this.resolveDependencies(returnValue);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Resolves and loads all of the supplied {@link Artifact}s
+   * representing Helm charts in the manner of the {@link
+   * #resolveAll(Collection)} method, but without {@linkplain
+   * #isDependencyResolutionEnabled() resolving their requirements}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param charts a {@link Collection} of {@link Artifact}s
+   * representing the Helm charts to resolve; must not be {@code null}
+   * and must not contain {@code null} elements
+   *
+   * @return a non-{@code null} {@link Map} of {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} instances indexed by
+   * the {@link Artifact}s that were supplied
+   *
+   * @exception NullPointerException if {@code charts} is {@code null}
+   * or contains {@code null} elements
+   *
+   * @exception ChartResolverException for any of the reasons
+   * documented in the {@link #resolveAll(Collection)} method
+   *
+   * @see #resolveAll(Collection)
+   */
+  private final Map<Artifact, Chart.Builder> resolveAllCharts(final Collection<? extends Artifact> charts) throws ChartResolverException {
+    Objects.requireNonNull(charts);
+    final Map<Artifact, Chart.Builder> returnValue = new LinkedHashMap<>();
+    if (!charts.isEmpty()) {
+
+      final RepositorySystem repositorySystem = this.getRepositorySystem();
+      if (repositorySystem == null) {
+        throw new ChartResolverException(new IllegalStateException("getRepositorySystem() == null"));
+      }
+
+      final RepositorySystemSession session = this.getSession();
+      if (session == null) {
+        throw new ChartResolverException(new IllegalStateException("getSession() == null"));
+      }
+
+      List<RemoteRepository> remoteRepositories = this.getRemoteRepositories();
+      if (remoteRepositories == null) {
+        remoteRepositories = Collections.emptyList();
+      }
+
+      // A chart whose version cannot be resolved has no request; its
+      // failure is reported together with those of the other charts.
+      final List<Artifact> requestedCharts = new ArrayList<>(charts);
+      final List<ArtifactRequest> requests = new ArrayList<>(requestedCharts.size());
+      final Map<Integer, ChartResolverException> versionFailures = new HashMap<>();
+      for (final Artifact chart : requestedCharts) {
+        Objects.requireNonNull(chart);
+        ArtifactRequest request = null;
+        try {
+          request = new ArtifactRequest(this.resolveVersion(chart), remoteRepositories, null);
+        } catch (final ChartResolverException chartResolverException) {
+          versionFailures.put(Integer.valueOf(requests.size()), chartResolverException);
+        }
+        requests.add(request);
+      }
+
+      final boolean localFastPathEnabled = this.isLocalFastPathEnabled();
+      final List<ArtifactResult> results = new ArrayList<>(requests.size());
+      final List<ArtifactRequest> unresolvedRequests = new ArrayList<>(requests.size());
+      for (final ArtifactRequest request : requests) {
+        if (request == null) {
+          results.add(null);
+          continue;
+        }
+        final ArtifactResult localResult = localFastPathEnabled ? findInLocalRepository(session, request) : null;
+        results.add(localResult);
+        if (localResult == null) {
+          unresolvedRequests.add(request);
+        }
+      }
+
+      if (!unresolvedRequests.isEmpty()) {
+        // Resolve the whole batch with one call, so that the
+        // repository connector can download its charts in parallel,
+        // holding the download lock of every chart in it.  The locks
+        // are acquired in the order of their coordinates, so batches
+        // that overlap cannot deadlock.
+        final List<Artifact> unresolvedCharts = new ArrayList<>(unresolvedRequests.size());
+        for (final ArtifactRequest request : unresolvedRequests) {
+          unresolvedCharts.add(request.getArtifact());
+        }
+        List<ArtifactResult> resolvedResults = null;
+        final List<ArtifactLocks.Hold> holds = downloadLocks.lock(unresolvedCharts);
+        try {
+          resolvedResults = repositorySystem.resolveArtifacts(session, unresolvedRequests);
+        } catch (final ArtifactResolutionException artifactResolutionException) {
+          resolvedResults = artifactResolutionException.getResults();
+          if (resolvedResults == null || resolvedResults.size() != unresolvedRequests.size()) {
+            throw new ChartResolverException(artifactResolutionException);
+          }
+        } finally {
+          ArtifactLocks.release(holds);
+        }
+        assert resolvedResults != null;
+        assert resolvedResults.size() == unresolvedRequests.size();
+        final Iterator<ArtifactResult> iterator = resolvedResults.iterator();
+        final int requestsSize = requests.size();
+        for (int i = 0; i < requestsSize; i++) {
+          if (results.get(i) == null && requests.get(i) != null) {
+            results.set(i, iterator.next());
+          }
+        }
+      }
+      assert results.size() == requests.size();
+
+      final ChartResolverMetrics metrics = this.getMetrics();
+      final List<Exception> exceptions = new ArrayList<>();
+      final int resultsSize = results.size();
+      for (int i = 0; i < resultsSize; i++) {
+        final ArtifactResult result = results.get(i);
+        if (result == null || !result.isResolved() || result.getArtifact() == null) {
+          final List<? extends Exception> resultExceptions = result == null ? null : result.getExceptions();
+          final ChartResolverException versionFailure = versionFailures.get(Integer.valueOf(i));
+          final Collection<? extends Exception> failures;
+          if (versionFailure != null) {
+            failures = Collections.singleton(versionFailure);
+          } else if (resultExceptions == null || resultExceptions.isEmpty()) {
+            failures = Collections.singleton(new IllegalStateException("Unresolved chart: " + requestedCharts.get(i)));
+          } else {
+            failures = resultExceptions;
+          }
+          exceptions.addAll(failures);
+          if (metrics != null) {
+            for (final Exception failure : failures) {
+              metrics.recordFailure(null, requestedCharts.get(i).getExtension(), failure);
+            }
+          }
+        }
+      }
+      if (!exceptions.isEmpty()) {
+        throw toChartResolverException(exceptions);
+      }
+
+      final Executor executor = this.getExecutor();
+      if (executor == null) {
+        throw new ChartResolverException(new IllegalStateException("getExecutor() == null"));
+      }
+
+      final List<CompletableFuture<Chart.Builder>> futures = new ArrayList<>(results.size());
+      for (final ArtifactResult result : results) {
+        assert result.getArtifact() != null;
+        futures.add(CompletableFuture.supplyAsync(() -> {
+              try {
+                return this.loadResolvedChart(result, null);
+              } catch (final ChartResolverException chartResolverException) {
+                throw new CompletionException(chartResolverException);
+              }
+            }, executor));
+      }
+
+      final int size = futures.size();
+      for (int i = 0; i < size; i++) {
+        try {
+          returnValue.put(requestedCharts.get(i), futures.get(i).join());
+        } catch (final CompletionException completionException) {
+          final Throwable cause = completionException.getCause();
+          if (cause instanceof Exception) {
+            exceptions.add((Exception)cause);
+            if (metrics != null) {
+              final ArtifactResult result = results.get(i);
+              metrics.recordFailure(result.getRepository() == null ? null : result.getRepository().getId(), requestedCharts.get(i).getExtension(), cause);
+            }
+          } else {
+            throw completionException;
+          }
+        }
+      }
+      if (!exceptions.isEmpty()) {
+        throw toChartResolverException(exceptions);
+      }
+
+    }
+    return returnValue;
+  }
+
+  /**
+   * Resolves the graph of charts required by the supplied charts and
+   * attaches each resolved chart as a subchart of the chart that
+   * requires it.
+   *
+   * @param charts a {@link Map} of {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} instances, indexed by
+   * the {@link Artifact}s they were resolved from, to which subcharts
+   * will be added; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code charts} is {@code null}
+   *
+   * @exception ChartResolverException if a {@code requirements.yaml}
+   * file is malformed, if a required chart could not be resolved, or
+   * if charts require each other
+   *
+   * @see #setDependencyResolutionEnabled(boolean)
+   */
+  private final void resolveDependencies(final Map<? extends Artifact, ? extends Chart.Builder> charts) throws ChartResolverException {
+    Objects.requireNonNull(charts);
+
+    // Discover the graph breadth-first, resolving each level in one
+    // batch.
+    final Map<Artifact, List<Entry<Artifact, String>>> requirements = new HashMap<>();
+    final Map<Artifact, Chart> subcharts = new HashMap<>();
+    Set<Artifact> frontier = new LinkedHashSet<>();
+    for (final Entry<? extends Artifact, ? extends Chart.Builder> entry : charts.entrySet()) {
+      final List<Entry<Artifact, String>> chartRequirements = this.getRequirements(entry.getKey(), entry.getValue());
+      requirements.put(entry.getKey(), chartRequirements);
+      for (final Entry<Artifact, String> requirement : chartRequirements) {
+        frontier.add(requirement.getKey());
+      }
+    }
+    while (!frontier.isEmpty()) {
+      final Map<Artifact, Chart.Builder> level = this.resolveAllCharts(frontier);
+      assert level != null;
+      final Set<Artifact> nextFrontier = new LinkedHashSet<>();
+      for (final Entry<Artifact, Chart.Builder> entry : level.entrySet()) {
+        final Artifact subchartArtifact = entry.getKey();
+        final Chart subchart = entry.getValue().build();
+        subcharts.put(subchartArtifact, subchart);
+        final List<Entry<Artifact, String>> subchartRequirements = this.getRequirements(subchartArtifact, subchart);
+        requirements.put(subchartArtifact, subchartRequirements);
+        for (final Entry<Artifact, String> requirement : subchartRequirements) {
+          if (!subcharts.containsKey(requirement.getKey())) {
+            nextFrontier.add(requirement.getKey());
+          }
+        }
+      }
+      frontier = nextFrontier;
+    }
+
+    // Assemble the graph depth-first so that each chart is complete
+    // before it is added to the charts that require it.
+    final Map<Artifact, Chart> assembledSubcharts = new HashMap<>();
+    for (final Entry<? extends Artifact, ? extends Chart.Builder> entry : charts.entrySet()) {
+      final Set<Artifact> path = new LinkedHashSet<>();
+      path.add(entry.getKey());
+      for (final Entry<Artifact, String> requirement : requirements.get(entry.getKey())) {
+        entry.getValue().addDependencies(withAlias(assembleSubchart(requirement.getKey(), subcharts, requirements, assembledSubcharts, path), requirement.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Returns a {@link List} of {@link Entry} instances, each of which
+   * pairs an {@link Artifact} with a concrete version representing a
+   * chart required by the supplied chart with the alias under which
+   * it is required, or {@code null} if it has none.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param chart the {@link Artifact} representing the chart whose
+   * requirements are sought; must not be {@code null}
+   *
+   * @param loadedChart the chart loaded from the supplied {@link
+   * Artifact}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link List}
+   *
+   * @exception ChartResolverException if the chart's {@code
+   * requirements.yaml} file is malformed or a requirement's version
+   * could not be resolved
+   */
+  private final List<Entry<Artifact, String>> getRequirements(final Artifact chart, final ChartOrBuilder loadedChart) throws ChartResolverException {
+    final List<ChartRequirements.Requirement> requirements = ChartRequirements.read(loadedChart);
+    assert requirements != null;
+    final List<Entry<Artifact, String>> returnValue;
+    if (requirements.isEmpty()) {
+      returnValue = Collections.emptyList();
+    } else {
+      returnValue = new ArrayList<>(requirements.size());
+      for (final ChartRequirements.Requirement requirement : requirements) {
+        final Artifact requiredChart = this.toDependencyArtifact(chart, requirement.getName(), requirement.getVersion(), requirement.getRepository());
+        if (requiredChart != null) {
+          returnValue.add(new SimpleImmutableEntry<>(this.resolveVersion(requiredChart), requirement.getAlias()));
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns an {@link Artifact} identifying the Maven repository
+   * coordinates of a chart required by the supplied chart, or {@code
+   * null} if the requirement should be ignored.
+   *
+   * <p>This method is called only when {@linkplain
+   * #isDependencyResolutionEnabled() dependency resolution is
+   * enabled}, once for each entry in a chart's {@code
+   * requirements.yaml} file.</p>
+   *
+   * <p>This implementation returns an {@link Artifact} with the
+   * supplied chart's {@code groupId} and extension, an {@code
+   * artifactId} equal to the supplied {@code name}, and a version
+   * translated from the supplied Helm version constraint: exact
+   * versions are used as they are, {@code ~}, {@code ^}, wildcard,
+   * comparison and hyphenated constraints become version ranges, and
+   * a missing constraint becomes {@code LATEST}.  The supplied {@code
+   * repository} is ignored; charts are always resolved from the
+   * {@linkplain #getRemoteRepositories() remote repositories} of this
+   * {@link MavenRepositoryChartResolver}.  Overrides may map
+   * requirements to coordinates differently.</p>
+   *
+   * @param chart the {@link Artifact} representing the chart
+   * declaring the requirement; must not be {@code null}
+   *
+   * @param name the name of the required chart; must not be {@code
+   * null}
+   *
+   * @param version the version constraint of the required chart; may
+   * be {@code null}
+   *
+   * @param repository the repository of the required chart as
+   * declared in the {@code requirements.yaml} file; may be {@code
+   * null}
+   *
+   * @return an {@link Artifact} representing the required chart, or
+   * {@code null}
+   *
+   * @exception NullPointerException if {@code chart} or {@code name}
+   * is {@code null}
+   *
+   * @see #setDependencyResolutionEnabled(boolean)
+   */
+  protected Artifact toDependencyArtifact(final Artifact chart, final String name, final String version, final String repository) {
+    Objects.requireNonNull(chart);
+    Objects.requireNonNull(name);
+    return new DefaultArtifact(chart.getGroupId(), name, chart.getExtension(), HelmVersionConstraints.toMavenVersion(version));
+  }
+
+  /**
+   * Resolves all of the Helm charts identified by the supplied
+   * coordinates in the manner of the {@link #resolveAll(Collection)}
+   * method, and returns a {@link Map} of {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} instances indexed by
+   * the coordinates that were supplied.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The iteration order of the returned {@link Map} is the
+   * iteration order of the supplied {@link Collection}.  Every
+   * distinct coordinate {@link String} has its own entry, even when
+   * several of them identify the same chart, as {@code
+   * org.example:chart:1.0.0} and {@code org.example:chart:tgz:1.0.0}
+   * do; such a chart is resolved only once, and each such entry holds
+   * its own {@link hapi.chart.ChartOuterClass.Chart.Builder}.</p>
+   *
+   * @param coordinates a {@link Collection} of {@link String}s, each
+   * of one of the following forms: {@code groupId:artifactId:version},
+   * {@code groupId:artifactId:packaging:version}, or {@code
+   * groupId:artifactId:packaging:classifier:version}; must not be
+   * {@code null} and must not contain {@code null} elements
+   *
+   * @return a non-{@code null} {@link Map} of {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} instances indexed by
+   * the coordinates that were supplied
+   *
+   * @exception NullPointerException if {@code coordinates} is {@code
+   * null} or contains {@code null} elements
+   *
+   * @exception ChartResolverException if any of the supplied
+   * coordinates is malformed, or for any of the reasons documented
+   * in the {@link #resolveAll(Collection)} method
+   *
+   * @see #resolveAll(Collection)
+   */
+  public Map<String, Chart.Builder> resolveAllCoordinates(final Collection<? extends String> coordinates) throws ChartResolverException {
+    Objects.requireNonNull(coordinates);
+    final Map<String, Artifact> chartsByCoordinates = new LinkedHashMap<>();
+    for (final String coordinate : coordinates) {
+      chartsByCoordinates.put(coordinate, toArtifact(coordinate));
+    }
+    final Map<Artifact, Chart.Builder> charts = this.resolveAll(new LinkedHashSet<>(chartsByCoordinates.values()));
+    assert charts != null;
+    // Coordinates that identify the same chart each get their own
+    // copy of it, since a Chart.Builder is mutable.
+    final Set<Artifact> seen = new HashSet<>();
+    final Map<String, Chart.Builder> returnValue = new LinkedHashMap<>();
+    for (final Entry<String, Artifact> entry : chartsByCoordinates.entrySet()) {
+      final Artifact chart = entry.getValue();
+      final Chart.Builder builder = charts.get(chart);
+      assert builder != null;
+      returnValue.put(entry.getKey(), seen.add(chart) ? builder : builder.clone());
+    }
+    return returnValue;
+  }
+
+  /**
+   * Resolves and loads the charts identified by the supplied
+   * coordinates in the background, no more than {@link
+   * #DEFAULT_PREFETCH_CONCURRENCY} at a time, so that later calls to
+   * the various {@code resolve} methods find them in the local
+   * repository.
+   *
+   * <p>This method never returns {@code null} and never blocks.</p>
+   *
+   * @param coordinates a {@link Collection} of coordinates, each of
+   * a form accepted by the {@link
+   * #resolveAllCoordinates(Collection)} method; must not be {@code
+   * null} and must not contain {@code null} elements
+   *
+   * @return a non-{@code null} {@link CompletableFuture} completed
+   * when every chart has been prefetched
+   *
+   * @exception NullPointerException if {@code coordinates} is {@code
+   * null} or contains {@code null} elements
+   *
+   * @see #prefetch(Collection, int, PrefetchListener)
+   */
+  public final CompletableFuture<Void> prefetch(final Collection<? extends String> coordinates) {
+    return this.prefetch(coordinates, DEFAULT_PREFETCH_CONCURRENCY, null);
+  }
+
+  /**
+   * Resolves and loads the charts identified by the supplied
+   * coordinates in the background, no more than {@code
+   * maximumConcurrency} at a time, so that later calls to the various
+   * {@code resolve} methods find them in the local repository.
+   *
+   * <p>This method never returns {@code null} and never blocks.  The
+   * charts are {@linkplain #resolveAsync(Artifact) resolved
+   * asynchronously} on the {@linkplain #getExecutor() executor};
+   * loaded charts are placed in the {@linkplain #getChartCache()
+   * chart cache} and {@linkplain #getChartSnapshotStore() snapshot
+   * store}, if there are such things.  Note that the {@linkplain
+   * ChartCache#ChartCache() default chart cache} holds a bounded
+   * number of charts, so prefetching more charts than it can hold
+   * will evict some of them again; their archives will still be
+   * found in the local repository.</p>
+   *
+   * <p>The failure of any one chart does not stop the others from
+   * being prefetched.  The returned {@link CompletableFuture} is
+   * completed normally if every chart was prefetched, and
+   * exceptionally with a {@link ChartResolverException} whose
+   * {@linkplain Throwable#getCause() cause} and {@linkplain
+   * Throwable#getSuppressed() suppressed exceptions} describe every
+   * failure otherwise.</p>
+   *
+   * @param coordinates a {@link Collection} of coordinates, each of
+   * a form accepted by the {@link
+   * #resolveAllCoordinates(Collection)} method; must not be {@code
+   * null} and must not contain {@code null} elements
+   *
+   * @param maximumConcurrency the maximum number of charts to
+   * resolve at once; must be greater than zero
+   *
+   * @param listener a {@link PrefetchListener} notified as each
+   * chart is prefetched; may be {@code null}
+   *
+   * @return a non-{@code null} {@link CompletableFuture} completed
+   * when every chart has been prefetched
+   *
+   * @exception NullPointerException if {@code coordinates} is {@code
+   * null} or contains {@code null} elements
+   *
+   * @exception IllegalArgumentException if {@code
+   * maximumConcurrency} is less than {@code 1}
+   *
+   * @see #resolveAsync(Artifact)
+   */
+  public CompletableFuture<Void> prefetch(final Collection<? extends String> coordinates, final int maximumConcurrency, final PrefetchListener listener) {
+    Objects.requireNonNull(coordinates);
+    return new ChartPrefetch(this, coordinates, maximumConcurrency, listener).start();
+  }
+
+  /**
+   * Reads coordinates from the supplied manifest file and {@linkplain
+   * #prefetch(Collection) prefetches} the charts they identify, no
+   * more than {@link #DEFAULT_PREFETCH_CONCURRENCY} at a time.
+   *
+   * <p>This method never returns {@code null} and never blocks.</p>
+   *
+   * @param manifest the {@link Path} of a manifest file of the form
+   * described in the {@link #prefetch(Path, int, PrefetchListener)}
+   * method; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link CompletableFuture} completed
+   * when every chart has been prefetched
+   *
+   * @exception NullPointerException if {@code manifest} is {@code
+   * null}
+   *
+   * @see #prefetch(Path, int, PrefetchListener)
+   */
+  public final CompletableFuture<Void> prefetch(final Path manifest) {
+    return this.prefetch(manifest, DEFAULT_PREFETCH_CONCURRENCY, null);
+  }
+
+  /**
+   * Reads coordinates from the supplied manifest file and {@linkplain
+   * #prefetch(Collection, int, PrefetchListener) prefetches} the
+   * charts they identify.
+   *
+   * <p>This method never returns {@code null} and never blocks: the
+   * manifest itself is read on the {@linkplain #getExecutor()
+   * executor}.</p>
+   *
+   * <p>A manifest is a UTF-8 text file containing one set of
+   * coordinates, of a form accepted by the {@link
+   * #resolveAllCoordinates(Collection)} method, per line.  Blank
+   * lines, and lines whose first non-whitespace character is {@code
+   * #}, are ignored.</p>
+   *
+   * @param manifest the {@link Path} of a manifest file; must not be
+   * {@code null}
+   *
+   * @param maximumConcurrency the maximum number of charts to
+   * resolve at once; must be greater than zero
+   *
+   * @param listener a {@link PrefetchListener} notified as each
+   * chart is prefetched; may be {@code null}
+   *
+   * @return a non-{@code null} {@link CompletableFuture} completed
+   * when every chart has been prefetched, or completed exceptionally
+   * with a {@link ChartResolverException} if the manifest could not
+   * be read
+   *
+   * @exception NullPointerException if {@code manifest} is {@code
+   * null}
+   *
+   * @exception IllegalArgumentException if {@code
+   * maximumConcurrency} is less than {@code 1}
+   *
+   * @see #prefetch(Collection, int, PrefetchListener)
+   */
+  public CompletableFuture<Void> prefetch(final Path manifest, final int maximumConcurrency, final PrefetchListener listener) {
+    Objects.requireNonNull(manifest);
+    if (maximumConcurrency < 1) {
+      throw new IllegalArgumentException("maximumConcurrency < 1: " + maximumConcurrency);
+    }
+    final Executor executor = this.getExecutor();
+    if (executor == null) {
+      final CompletableFuture<Void> returnValue = new CompletableFuture<>();
+      returnValue.completeExceptionally(new ChartResolverException(new IllegalStateException("getExecutor() == null")));
+      return returnValue;
+    }
+    return CompletableFuture.supplyAsync(() -> {
+        try {
+          return readManifest(manifest);
+        } catch (final IOException ioException) {
+          throw new CompletionException(new ChartResolverException(ioException.getMessage(), ioException));
+        }
+      }, executor).thenCompose(coordinates -> this.prefetch(coordinates, maximumConcurrency, listener));
+  }
+
+  /**
+   * Returns a {@link hapi.chart.ChartOuterClass.Chart.Builder}
+   * representing the Helm chart contained by the {@linkplain
+   * Artifact#getFile() file} of the {@linkplain
+   * ArtifactResult#getArtifact() artifact} of the supplied {@link
+   * ArtifactResult}, consulting the {@link ChartCache} returned by
+   * the {@link #getChartCache()} method and then the {@link
+   * ChartSnapshotStore} returned by the {@link
+   * #getChartSnapshotStore()} method first if there are such
+   * things, and verifying the chart with the {@link ChartVerifier}
+   * returned by the {@link #getChartVerifier()} method if there is
+   * one.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param result a successful {@link ArtifactResult}; must not be
+   * {@code null}
+   *
+   * @param streamedChart a {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} already loaded from the
+   * bytes of the resolved {@link Artifact} as they were downloaded;
+   * may be {@code null}; if non-{@code null} it is used instead of
+   * reading a snapshot or {@linkplain #loadChart(File, String)
+   * loading} the archive
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}
+   *
+   * @exception NullPointerException if {@code result} is {@code
+   * null}
+   *
+   * @exception ChartResolverException if the {@link #loadChart(File,
+   * String)} method throws a {@link ChartResolverException}, or if
+   * the chart could not be verified
+   *
+   * @see #loadChart(File, String)
+   *
+   * @see #setChartVerifier(ChartVerifier)
+   */
+  private final Chart.Builder loadResolvedChart(final ArtifactResult result, final Chart.Builder streamedChart) throws ChartResolverException {
+    Objects.requireNonNull(result);
+    final Artifact resolvedChart = result.getArtifact();
+    assert resolvedChart != null;
+    final File chartFile = resolvedChart.getFile();
+    assert chartFile != null;
+    final String repositoryId = result.getRepository() == null ? null : result.getRepository().getId();
+    final ChartResolverMetrics metrics = this.getMetrics();
+    final long loadStart = System.nanoTime();
+
+    final ChartCache chartCache = this.getChartCache();
+    final ChartVerifier chartVerifier = this.getChartVerifier();
+    Chart.Builder returnValue = null;
+    if (chartCache != null) {
+      returnValue = chartVerifier == null ? chartCache.get(resolvedChart) : chartCache.get(resolvedChart, chartVerifier);
+      if (metrics != null) {
+        if (returnValue == null) {
+          metrics.recordCacheMiss(repositoryId, resolvedChart.getExtension());
+        } else {
+          metrics.recordCacheHit(repositoryId, resolvedChart.getExtension());
+        }
+      }
+    }
+    if (returnValue == null) {
+      final ChartVerification verification = chartVerifier == null ? null : this.newChartVerification(chartVerifier, resolvedChart);
+      byte[] sha256 = null;
+      final ChartSnapshotStore chartSnapshotStore = this.getChartSnapshotStore();
+      final ChartContentInterner chartContentInterner = this.getChartContentInterner();
+      Chart chart = null;
+      if (streamedChart == null && chartSnapshotStore != null) {
+        try {
+          chart = chartSnapshotStore.read(chartFile.toPath());
+        } catch (final IOException ioException) {
+          // Snapshots are purely an optimization; fall back to
+          // loading the archive.
+          chart = null;
+        }
+      }
+      if (chart == null) {
+        if (streamedChart != null) {
+          if (verification != null) {
+            sha256 = verification.verify(chartFile);
+          }
+          returnValue = streamedChart;
+        } else if (verification == null) {
+          returnValue = this.loadChartIncrementally(resolvedChart);
+          if (returnValue == null) {
+            returnValue = this.loadChart(chartFile, resolvedChart.getExtension());
+          }
+        } else {
+          try (final InputStream inputStream = ChartArchiveFormats.newInputStream(FileChannel.open(chartFile.toPath(), StandardOpenOption.READ))) {
+            final InputStream verifiedInputStream = verification.wrap(inputStream);
+            returnValue = this.loadChartIncrementally(resolvedChart, verifiedInputStream);
+            if (returnValue == null) {
+              returnValue = this.loadChart(verifiedInputStream, resolvedChart.getExtension());
+            }
+            sha256 = verification.finish(verifiedInputStream);
+          } catch (final IOException exception) {
+            throw new ChartResolverException(exception.getMessage(), exception);
+          }
+        }
+        if (returnValue != null && chartContentInterner != null) {
+          chartContentInterner.intern(returnValue);
+        }
+        if (returnValue != null && (chartCache != null || chartSnapshotStore != null)) {
+          chart = returnValue.build();
+          if (chartSnapshotStore != null) {
+            try {
+              chartSnapshotStore.write(chartFile.toPath(), chart);
+            } catch (final IOException ioException) {
+              // Snapshots are purely an optimization; a read-only
+              // local repository, for example, is not an error.
+            }
+          }
+        }
+      } else {
+        if (verification != null) {
+          sha256 = verification.verify(chartFile);
+        }
+        returnValue = chart.toBuilder();
+        if (chartContentInterner != null) {
+          chartContentInterner.intern(returnValue);
+          if (chartCache != null) {
+            chart = returnValue.build();
+          }
+        }
+      }
+      if (chartCache != null && chart != null) {
+        if (sha256 == null) {
+          chartCache.put(resolvedChart, chart);
+        } else {
+          chartCache.put(resolvedChart, chart, chartVerifier, sha256);
+        }
+      }
+    }
+    if (metrics != null) {
+      metrics.recordPhase(ChartResolverMetrics.Phase.LOAD, repositoryId, resolvedChart.getExtension(), System.nanoTime() - loadStart);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Loads the supplied resolved chart through the {@linkplain
+   * #getChartLineage() chart lineage}, if there is one and the
+   * chart's packaging is a tape archive, and returns the result, or
+   * returns {@code null} if the chart must be {@linkplain
+   * #loadChart(File, String) loaded} in full, as it must be whenever
+   * a subclass overrides either {@code loadChart} method.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param resolvedChart a resolved {@link Artifact}; must not be
+   * {@code null}
+   *
+   * @return a {@link hapi.chart.ChartOuterClass.Chart.Builder}, or
+   * {@code null}
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded
+   *
+   * @see #setChartLineage(ChartLineage)
+   */
+  private final Chart.Builder loadChartIncrementally(final Artifact resolvedChart) throws ChartResolverException {
+    assert resolvedChart != null;
+    if (this.loadChartOverridden || this.getChartLineage() == null) {
+      return null;
+    }
+    Chart.Builder returnValue = null;
+    try (final InputStream inputStream = ChartArchiveFormats.newInputStream(FileChannel.open(resolvedChart.getFile().toPath(), StandardOpenOption.READ))) {
+      returnValue = this.loadChartIncrementally(resolvedChart, inputStream);
+    } catch (final IOException exception) {
+      throw new ChartResolverException(exception.getMessage(), exception);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Loads the supplied resolved chart, whose archive is supplied by
+   * the supplied {@link InputStream}, through the {@linkplain
+   * #getChartLineage() chart lineage}, if there is one and the
+   * chart's packaging is a tape archive, and returns the result, or
+   * returns {@code null} without reading from the supplied {@link
+   * InputStream} if the chart must be {@linkplain
+   * #loadChart(InputStream, String) loaded} in full, as it must be
+   * whenever a subclass overrides either {@code loadChart} method.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param resolvedChart a resolved {@link Artifact}; must not be
+   * {@code null}
+   *
+   * @param inputStream the {@link InputStream} supplying the chart's
+   * archive; must not be {@code null}; will not be closed
+   *
+   * @return a {@link hapi.chart.ChartOuterClass.Chart.Builder}, or
+   * {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded
+   *
+   * @see #setChartLineage(ChartLineage)
+   */
+  private final Chart.Builder loadChartIncrementally(final Artifact resolvedChart, final InputStream inputStream) throws IOException, ChartResolverException {
+    assert resolvedChart != null;
+    assert inputStream != null;
+    if (this.loadChartOverridden) {
+      return null;
+    }
+    final ChartLineage chartLineage = this.getChartLineage();
+    if (chartLineage == null) {
+      return null;
+    }
+    final ChartArchiveFormats chartArchiveFormats = this.getChartArchiveFormats();
+    final ChartArchiveFormat format = chartArchiveFormats == null ? null : chartArchiveFormats.get(resolvedChart.getExtension());
+    if (format == null) {
+      return null;
+    }
+    final TarInputStream tarInputStream = ChartArchiveFormats.newTarInputStream(format, inputStream);
+    if (tarInputStream == null) {
+      return null;
+    }
+    final ChartLoadLimits chartLoadLimits = this.getChartLoadLimits();
+    if (chartLoadLimits == null) {
+      return chartLineage.load(resolvedChart, tarInputStream, this.isParallelLoadingEnabled() ? this.getExecutor() : null, null);
+    }
+    try (final ChartLoadLimits.Load load = chartLoadLimits.begin()) {
+      // An admitted load must not wait for the executor; see
+      // setChartLoadLimits(ChartLoadLimits).
+      return chartLineage.load(resolvedChart, tarInputStream, null, load);
+    }
+  }
+
+  /**
+   * Resolves the {@linkplain ChartVerifier#getCompanions(Artifact)
+   * companions} of the supplied resolved chart and returns a new
+   * {@link ChartVerification} of it.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param chartVerifier the {@link ChartVerifier} to use; must not
+   * be {@code null}
+   *
+   * @param resolvedChart a resolved {@link Artifact}; must not be
+   * {@code null}
+   *
+   * @return a new, non-{@code null} {@link ChartVerification}
+   *
+   * @exception ChartResolverException if a companion could not be
+   * resolved or the {@link ChartVerifier} could not begin a
+   * verification
+   *
+   * @see #setChartVerifier(ChartVerifier)
+   */
+  private final ChartVerification newChartVerification(final ChartVerifier chartVerifier, final Artifact resolvedChart) throws ChartResolverException {
+    assert chartVerifier != null;
+    assert resolvedChart != null;
+    final List<Artifact> companions = chartVerifier.getCompanions(resolvedChart);
+    if (companions == null) {
+      throw new ChartResolverException("chartVerifier.getCompanions() == null; chartVerifier: " + chartVerifier);
+    }
+    final List<Artifact> resolvedCompanions = new ArrayList<>(companions.size());
+    for (final Artifact companion : companions) {
+      resolvedCompanions.add(this.resolveArtifact(companion).getArtifact());
+    }
+    final ChartVerifier.Verification verification = chartVerifier.newVerification(resolvedChart, Collections.unmodifiableList(resolvedCompanions));
+    if (verification == null) {
+      throw new ChartResolverException("chartVerifier.newVerification() == null; chartVerifier: " + chartVerifier);
+    }
+    return new ChartVerification(verification);
+  }
+
+  /**
+   * Returns a {@link hapi.chart.ChartOuterClass.Chart.Builder}
+   * representing the Helm chart contained by the supplied {@linkplain
+   * File#isFile() regular} {@link File}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.</p>
+   *
+   * <p>This implementation passes an {@link InputStream} reading
+   * the supplied {@link File} to the {@link #loadChart(InputStream,
+   * String)} method.  If that method passes it on to a {@link
+   * ChartArchiveFormat} without reading from it, the {@link
+   * ChartArchiveFormat} is given the {@link FileChannel} of the
+   * supplied {@link File}, which, in the case of ZIP archives, it
+   * memory-maps.</p>
+   *
+   * @param chartFile the {@link File} containing a Helm chart; must
+   * not be {@code null}
+   *
+   * @param packaging the kind of archive or other packaging mechanism
+   * that the supplied {@code chartFile} value is; must not be {@code
+   * null}; examples include {@code tgz}, {@code tar.gz}, {@code zip}
+   * and the like; overrides of this method may use this parameter to
+   * help in determining how to read the supplied {@code chartFile}
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}, usually but not
+   * necessarily as produced by an {@link AbstractChartLoader}
+   * implementation
+   *
+   * @exception NullPointerException if {@code chartFile} or {@code
+   * packaging} is {@code null}
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded for any reason
+   *
+   * @see #resolve(String, String)
+   */
+  protected Chart.Builder loadChart(final File chartFile, final String packaging) throws ChartResolverException {
+    Objects.requireNonNull(chartFile);
+    Objects.requireNonNull(packaging);
+    Chart.Builder returnValue = null;
+    try (final InputStream inputStream = ChartArchiveFormats.newInputStream(FileChannel.open(chartFile.toPath(), StandardOpenOption.READ))) {
+      returnValue = this.loadChart(inputStream, packaging);
+    } catch (final IOException exception) {
+      throw new ChartResolverException(exception.getMessage(), exception);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a {@link hapi.chart.ChartOuterClass.Chart.Builder}
+   * representing the Helm chart whose archive is supplied by the
+   * supplied {@link InputStream}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.</p>
+   *
+   * <p>This method is called by the {@link #loadChart(File, String)}
+   * method, and also, when {@linkplain #isStreamingEnabled() streaming
+   * is enabled}, on a thread supplied by the {@linkplain
+   * #getExecutor() executor} with an {@link InputStream} fed by an
+   * archive download in progress; overriding either this method or
+   * the {@link #loadChart(File, String)} method disables streaming.
+   * Implementations must not close the supplied {@link
+   * InputStream}.</p>
+   *
+   * <p>This implementation {@linkplain
+   * ChartArchiveFormat#load(java.nio.channels.ReadableByteChannel,
+   * Executor) loads} the chart using the {@link ChartArchiveFormat}
+   * registered under the supplied packaging with the {@linkplain
+   * #getChartArchiveFormats() chart archive formats}.  By default
+   * these can load GZIP-compressed, Zstandard-compressed and
+   * uncompressed tape archives and ZIP archives; see {@link
+   * ChartArchiveFormats} for details.  If {@linkplain
+   * #getChartLoadLimits() chart load limits} are in use and the
+   * format is one of these, the chart's entries are instead read in
+   * sequence within those limits.</p>
+   *
+   * @param inputStream the {@link InputStream} supplying a Helm chart
+   * archive; must not be {@code null}
+   *
+   * @param packaging the kind of archive or other packaging mechanism
+   * that the supplied {@code inputStream} supplies; must not be {@code
+   * null}; examples include {@code tgz}, {@code tar.gz}, {@code zip}
+   * and the like
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder}
+   *
+   * @exception NullPointerException if {@code inputStream} or {@code
+   * packaging} is {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if no {@link
+   * ChartArchiveFormat} is registered under the supplied packaging,
+   * if a {@linkplain #getChartLoadLimits() chart load limit} is
+   * exceeded, or if the chart could not be loaded for any other
+   * reason
+   *
+   * @see #loadChart(File, String)
+   *
+   * @see #setChartArchiveFormats(ChartArchiveFormats)
+   *
+   * @see #setChartLoadLimits(ChartLoadLimits)
+   */
+  protected Chart.Builder loadChart(final InputStream inputStream, final String packaging) throws IOException, ChartResolverException {
+    Objects.requireNonNull(inputStream);
+    Objects.requireNonNull(packaging);
+    final ChartArchiveFormats chartArchiveFormats = this.getChartArchiveFormats();
+    final ChartArchiveFormat format = chartArchiveFormats == null ? null : chartArchiveFormats.get(packaging);
+    if (format == null) {
+      throw new ChartResolverException("Cannot load chart; unhandled packaging: " + packaging);
+    }
+    final Executor executor;
+    if (this.isParallelLoadingEnabled()) {
+      executor = this.getExecutor();
+    } else {
+      executor = null;
+    }
+    final ChartLoadLimits chartLoadLimits = this.getChartLoadLimits();
+    Chart.Builder returnValue = null;
+    if (chartLoadLimits != null) {
+      returnValue = ChartArchiveFormats.load(format, inputStream, chartLoadLimits);
+    }
+    if (returnValue == null) {
+      returnValue = format.load(ChartArchiveFormats.newChannel(inputStream), executor);
+    }
+    if (returnValue == null) {
+      throw new ChartResolverException("format.load() == null; format: " + format);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a {@link hapi.chart.ChartOuterClass.Chart.Builder}
+   * bearing only the metadata and values of the Helm chart contained
+   * by the supplied {@linkplain File#isFile() regular} {@link File}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Overrides of this method must not return {@code null}.</p>
+   *
+   * <p>This implementation passes the {@link FileChannel} of the
+   * supplied {@link File} to the {@link
+   * ChartArchiveFormat#loadMetadata(java.nio.channels.ReadableByteChannel)}
+   * method of the {@link ChartArchiveFormat} registered under the
+   * supplied packaging with the {@linkplain #getChartArchiveFormats()
+   * chart archive formats}.  The built-in formats stop reading tape
+   * archives once the metadata and values have been found, and read
+   * only the relevant entries of ZIP archives.</p>
+   *
+   * @param chartFile the {@link File} containing a Helm chart; must
+   * not be {@code null}
+   *
+   * @param packaging the kind of archive or other packaging mechanism
+   * that the supplied {@code chartFile} value is; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link
+   * hapi.chart.ChartOuterClass.Chart.Builder} without templates,
+   * files or dependencies
+   *
+   * @exception NullPointerException if {@code chartFile} or {@code
+   * packaging} is {@code null}
+   *
+   * @exception ChartResolverException if no {@link
+   * ChartArchiveFormat} is registered under the supplied packaging,
+   * or if the chart's metadata could not be loaded for any other
+   * reason
+   *
+   * @see #resolveLazily(Artifact)
+   */
+  protected Chart.Builder loadChartMetadata(final File chartFile, final String packaging) throws ChartResolverException {
+    Objects.requireNonNull(chartFile);
+    Objects.requireNonNull(packaging);
+    final ChartArchiveFormats chartArchiveFormats = this.getChartArchiveFormats();
+    final ChartArchiveFormat format = chartArchiveFormats == null ? null : chartArchiveFormats.get(packaging);
+    if (format == null) {
+      throw new ChartResolverException("Cannot load chart; unhandled packaging: " + packaging);
+    }
+    final Chart.Builder returnValue;
+    try (final FileChannel channel = FileChannel.open(chartFile.toPath(), StandardOpenOption.READ)) {
+      returnValue = format.loadMetadata(channel);
+    } catch (final IOException exception) {
+      throw new ChartResolverException(exception.getMessage(), exception);
+    }
+    if (returnValue == null) {
+      throw new ChartResolverException("format.loadMetadata() == null; format: " + format);
+    }
+    return returnValue;
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns an {@link Artifact} representing a Helm chart identified
+   * by the supplied coordinates.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param coordinates a {@link String} of one of the following
+   * forms: {@code groupId:artifactId:version}, {@code
+   * groupId:artifactId:packaging:version}, or {@code
+   * groupId:artifactId:packaging:classifier:version}; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link Artifact}
+   *
+   * @exception NullPointerException if {@code coordinates} is {@code
+   * null}
+   *
+   * @exception ChartResolverException if {@code coordinates} is
+   * malformed
+   *
+   * @see #toArtifact(String, String)
+   */
+  static final Artifact toArtifact(final String coordinates) throws ChartResolverException {
+    Objects.requireNonNull(coordinates);
+    final int colonIndex = coordinates.lastIndexOf(':');
+    if (colonIndex <= 0 || colonIndex == coordinates.length() - 1) {
+      throw new ChartResolverException(new IllegalArgumentException("coordinates: " + coordinates));
+    }
+    return toArtifact(coordinates.substring(0, colonIndex), coordinates.substring(colonIndex + 1));
+  }
+
+  /**
+   * Returns an {@link Artifact} representing a Helm chart identified
+   * by the supplied coordinates and version.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param coordinatesWithoutVersion a {@link String} of one of the
+   * following forms: {@code groupId:artifactId}, {@code
+   * groupId:artifactId:packaging}, or {@code
+   * groupId:artifactId:packaging:classifier}; must not be {@code
+   * null}; if no packaging is specified, {@code tgz} is used
+   *
+   * @param chartVersion the version of the Helm chart artifact; may
+   * be {@code null} in which case {@code LATEST} will be used instead
+   *
+   * @return a non-{@code null} {@link Artifact}
+   *
+   * @exception NullPointerException if {@code
+   * coordinatesWithoutVersion} is {@code null}
+   *
+   * @exception ChartResolverException if {@code
+   * coordinatesWithoutVersion} is malformed
+   */
+  static final Artifact toArtifact(final String coordinatesWithoutVersion, String chartVersion) throws ChartResolverException {
+    Objects.requireNonNull(coordinatesWithoutVersion);
+    if (chartVersion == null) {
+      chartVersion = "LATEST";
+    }
+
     final String[] parts = coordinatesWithoutVersion.split(":");
     assert parts != null;
     if (parts.length < 2 || parts.length > 4) {
@@ -265,163 +3428,377 @@ public class MavenRepositoryChartResolver extends AbstractChartResolver {
       packaging = "tgz";
       classifier = null;
     }
-
-    System.out.println("*** groupId: " + groupId);
-    System.out.println("*** artifactId: " + artifactId);
-    System.out.println("*** packaging: " + packaging);
-    System.out.println("*** classifier: " + classifier);
-
-    final Artifact chart = new DefaultArtifact(groupId, artifactId, classifier, packaging, chartVersion);
-    return this.resolve(chart);
+    return new DefaultArtifact(groupId, artifactId, classifier, packaging, chartVersion);
   }
 
   /**
-   * Creates and returns a {@link
-   * hapi.chart.ChartOuterClass.Chart.Builder} representing a Helm
-   * chart resolvable at the Maven repository coordinates represented
-   * by the supplied {@link Artifact}.
+   * Returns the {@link Chart} loaded from the supplied {@link
+   * Artifact} with the charts it requires attached as subcharts,
+   * assembling it if necessary.
    *
    * <p>This method never returns {@code null}.</p>
    *
-   * <p>Overrides of this method must not return {@code null}.</p>
+   * @param chart the {@link Artifact} representing the chart; must
+   * not be {@code null}
    *
-   * @param chart the {@link Artifact} representing the Helm chart to
-   * resolve; must not be {@code null}
+   * @param subcharts the charts loaded so far, without subcharts
+   * attached; must not be {@code null}
    *
-   * @return a non-{@code null} {@link
-   * hapi.chart.ChartOuterClass.Chart.Builder}
+   * @param requirements the requirements of each chart; must not be
+   * {@code null}
    *
-   * @exception NullPointerException if {@code chart} is {@code null}
+   * @param assembledSubcharts the charts assembled so far; must not
+   * be {@code null}
    *
-   * @exception ChartResolverException if either the {@link
-   * #getRepositorySystem()} or {@link #getSession()} method returns
-   * {@code null}, if an {@link ArtifactResolutionException} was
-   * encountered during artifact resolution, or if the {@link
-   * #loadChart(File, String)} method throws a {@link
-   * ChartResolverException}
+   * @param path the charts currently being assembled, in order; must
+   * not be {@code null}
    *
-   * @see #loadChart(File, String)
+   * @return a non-{@code null} {@link Chart}
+   *
+   * @exception ChartResolverException if charts require each other
    */
-  public Chart.Builder resolve(final Artifact chart) throws ChartResolverException {
-    Objects.requireNonNull(chart);
-
-    final RepositorySystem repositorySystem = this.getRepositorySystem();
-    if (repositorySystem == null) {
-      throw new ChartResolverException(new IllegalStateException("getRepositorySystem() == null"));
-    }
-
-    final RepositorySystemSession session = this.getSession();
-    if (session == null) {
-      throw new ChartResolverException(new IllegalStateException("getSession() == null"));
+  private static final Chart assembleSubchart(final Artifact chart,
+                                              final Map<? extends Artifact, ? extends Chart> subcharts,
+                                              final Map<? extends Artifact, ? extends List<Entry<Artifact, String>>> requirements,
+                                              final Map<Artifact, Chart> assembledSubcharts,
+                                              final Set<Artifact> path)
+    throws ChartResolverException {
+    if (!path.add(chart)) {
+      throw new ChartResolverException("Circular chart requirements: " + path + " -> " + chart);
     }
-    
-    List<RemoteRepository> remoteRepositories = this.getRemoteRepositories();
-    if (remoteRepositories == null) {
-      remoteRepositories = Collections.emptyList();
+    try {
+      Chart returnValue = assembledSubcharts.get(chart);
+      if (returnValue == null) {
+        returnValue = subcharts.get(chart);
+        assert returnValue != null;
+        final List<Entry<Artifact, String>> chartRequirements = requirements.get(chart);
+        if (chartRequirements != null && !chartRequirements.isEmpty()) {
+          final Chart.Builder builder = returnValue.toBuilder();
+          for (final Entry<Artifact, String> requirement : chartRequirements) {
+            builder.addDependencies(withAlias(assembleSubchart(requirement.getKey(), subcharts, requirements, assembledSubcharts, path), requirement.getValue()));
+          }
+          returnValue = builder.build();
+        }
+        assembledSubcharts.put(chart, returnValue);
+      }
+      return returnValue;
+    } finally {
+      path.remove(chart);
     }
-    
-    final ArtifactRequest request = new ArtifactRequest(chart, remoteRepositories, null);
+  }
 
-    ArtifactResult result = null;
-    try {
-      result = repositorySystem.resolveArtifact(session, request);
-    } catch (final ArtifactResolutionException artifactResolutionException) {
-      throw new ChartResolverException(artifactResolutionException);
+  private static final Chart withAlias(final Chart chart, final String alias) {
+    final Chart returnValue;
+    if (alias == null || alias.isEmpty()) {
+      returnValue = chart;
+    } else {
+      returnValue = chart.toBuilder().setMetadata(chart.getMetadata().toBuilder().setName(alias)).build();
     }
-    
-    final Artifact resolvedChart;
-    if (result.isResolved()) {
-      resolvedChart = result.getArtifact();
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if the supplied version is not a concrete
+   * version but {@code LATEST}, {@code RELEASE} or a version range.
+   *
+   * @param version the version to test; may be {@code null}
+   *
+   * @return {@code true} if the supplied version must be {@linkplain
+   * #resolveVersion(Artifact) resolved}
+   */
+  private static final boolean isVersionSpecification(final String version) {
+    return version != null && ("LATEST".equals(version) ||
+                               "RELEASE".equals(version) ||
+                               version.startsWith("[") ||
+                               version.startsWith("("));
+  }
+
+  /**
+   * Returns a {@link ChartResolverException} representing the cause of
+   * the supplied {@link CompletionException}, rethrowing that cause
+   * instead if it is a {@link RuntimeException} or an {@link Error}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param completionException the {@link CompletionException} to
+   * unwrap; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link ChartResolverException}
+   *
+   * @exception NullPointerException if {@code completionException}
+   * is {@code null}
+   */
+  private static final ChartResolverException toChartResolverException(final CompletionException completionException) {
+    final Throwable cause = completionException.getCause();
+    final ChartResolverException returnValue;
+    if (cause instanceof ChartResolverException) {
+      returnValue = (ChartResolverException)cause;
+    } else if (cause instanceof RuntimeException) {
+      throw (RuntimeException)cause;
+    } else if (cause instanceof Error) {
+      throw (Error)cause;
+    } else if (cause == null) {
+      returnValue = new ChartResolverException(completionException);
     } else {
-      resolvedChart = null;
+      returnValue = new ChartResolverException(cause);
     }
-    
-    if (resolvedChart == null) {
-      final List<? extends Exception> exceptions = result.getExceptions();
-      if (exceptions == null || exceptions.isEmpty()) {
-        throw new ChartResolverException();
-      } else if (exceptions.size() == 1) {
-        throw new ChartResolverException(exceptions.get(0));
-      } else {
-        final Iterator<? extends Exception> iterator = exceptions.iterator();
-        assert iterator != null;
-        assert iterator.hasNext();
-        final Exception root = iterator.next();
-        assert root != null;
-        final ChartResolverException throwMe = new ChartResolverException(root);
-        assert iterator.hasNext();
-        while (iterator.hasNext()) {
-          throwMe.addSuppressed(iterator.next());
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link
+   * ChartResolverException} reports only that a chart, or any
+   * suitable version of it, could not be found in any remote
+   * repository.
+   *
+   * <p>A {@link ChartResolverException} whose cause is another {@link
+   * ChartResolverException}, such as one thrown for a {@linkplain
+   * #getNegativeResultCache() remembered} negative result, reports
+   * whatever its cause reports.</p>
+   *
+   * @param chartResolverException the {@link ChartResolverException}
+   * to test; may be {@code null} in which case {@code false} will be
+   * returned
+   *
+   * @return {@code true} if {@code chartResolverException} reports
+   * nothing but missing charts
+   */
+  static final boolean isNotFound(final ChartResolverException chartResolverException) {
+    if (chartResolverException == null) {
+      return false;
+    }
+    final Throwable cause = chartResolverException.getCause();
+    final List<Throwable> problems = new ArrayList<>();
+    if (cause instanceof ChartResolverException && chartResolverException.getSuppressed().length == 0) {
+      return isNotFound((ChartResolverException)cause);
+    } else if (cause instanceof VersionRangeResolutionException) {
+      final VersionRangeResult result = ((VersionRangeResolutionException)cause).getResult();
+      if (result == null || (result.getVersions() != null && !result.getVersions().isEmpty())) {
+        return false;
+      }
+      // Repository metadata that does not exist yields no versions
+      // and records why; metadata that could not be fetched does too.
+      for (final Exception exception : result.getExceptions()) {
+        if (!(exception instanceof MetadataNotFoundException)) {
+          return false;
         }
-        throw throwMe;
       }
+      return true;
+    } else if (cause instanceof ArtifactResolutionException) {
+      final List<ArtifactResult> results = ((ArtifactResolutionException)cause).getResults();
+      if (results != null) {
+        for (final ArtifactResult result : results) {
+          if (result != null && !result.isResolved()) {
+            problems.addAll(result.getExceptions());
+          }
+        }
+      }
+    } else if (cause != null) {
+      problems.add(cause);
+      Collections.addAll(problems, chartResolverException.getSuppressed());
     }
-    assert resolvedChart != null;
-    
-    final File chartFile = resolvedChart.getFile();
-    assert chartFile != null;
+    if (problems.isEmpty()) {
+      return false;
+    }
+    for (final Throwable problem : problems) {
+      if (!(problem instanceof ArtifactNotFoundException)) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-    final Chart.Builder returnValue = this.loadChart(chartFile, chart.getExtension());
+  /**
+   * Returns an {@link ArtifactResult} for the chart requested by the
+   * supplied {@link ArtifactRequest} if it has a release version and
+   * its file is already present and available in the supplied
+   * session's local repository, or {@code null} otherwise.
+   *
+   * @param session the {@link RepositorySystemSession} whose {@link
+   * LocalRepositoryManager} should be consulted; must not be {@code
+   * null}
+   *
+   * @param request the {@link ArtifactRequest} to satisfy; must not
+   * be {@code null}
+   *
+   * @return a resolved {@link ArtifactResult}, or {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @see #setLocalFastPathEnabled(boolean)
+   */
+  private static final ArtifactResult findInLocalRepository(final RepositorySystemSession session, final ArtifactRequest request) {
+    Objects.requireNonNull(session);
+    Objects.requireNonNull(request);
+    final Artifact chart = request.getArtifact();
+    if (chart == null || chart.isSnapshot() || isVersionSpecification(chart.getVersion())) {
+      return null;
+    }
+    final LocalRepositoryManager localRepositoryManager = session.getLocalRepositoryManager();
+    if (localRepositoryManager == null) {
+      return null;
+    }
+    final LocalArtifactResult localArtifactResult =
+      localRepositoryManager.find(session, new LocalArtifactRequest(chart, request.getRepositories(), request.getRequestContext()));
+    if (localArtifactResult == null || !localArtifactResult.isAvailable()) {
+      return null;
+    }
+    final File file = localArtifactResult.getFile();
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+    final ArtifactResult returnValue = new ArtifactResult(request);
+    returnValue.setArtifact(chart.setFile(file));
+    returnValue.setRepository(localRepositoryManager.getRepository());
     return returnValue;
   }
 
   /**
-   * Returns a {@link hapi.chart.ChartOuterClass.Chart.Builder}
-   * representing the Helm chart contained by the supplied {@linkplain
-   * File#isFile() regular} {@link File}.
-   *
-   * <p>This method never returns {@code null}.</p>
+   * Returns {@code true} if the supplied {@link Class}, or any of its
+   * superclasses below {@link MavenRepositoryChartResolver}, declares
+   * either the {@link #loadChart(File, String)} or the {@link
+   * #loadChart(InputStream, String)} method.
    *
-   * <p>Overrides of this method must not return {@code null}.</p>
+   * <p>If the declared methods of a class cannot be inspected, this
+   * method returns {@code true}.</p>
    *
-   * <p>This implementation will return a {@link
-   * hapi.chart.ChartOuterClass.Chart.Builder} provided that the
-   * supplied {@link File} is either a GZIP-encoded tape archive or a
-   * ZIP archive.  Overrides should feel free to expand these
-   * capabilities.</p>
+   * @param c the {@link Class} to inspect; may be {@code null} in
+   * which case {@code false} will be returned
    *
-   * @param chartFile the {@link File} containing a Helm chart; must
-   * not be {@code null}
+   * @return {@code true} if either {@code loadChart} method is
+   * overridden; {@code false} otherwise
+   */
+  static final boolean isLoadChartOverridden(final Class<?> c) {
+    for (Class<?> cls = c; cls != null && !MavenRepositoryChartResolver.class.equals(cls); cls = cls.getSuperclass()) {
+      try {
+        for (final Method method : cls.getDeclaredMethods()) {
+          if ("loadChart".equals(method.getName()) && !method.isBridge()) {
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length == 2 &&
+                String.class.equals(parameterTypes[1]) &&
+                (File.class.equals(parameterTypes[0]) || InputStream.class.equals(parameterTypes[0]))) {
+              return true;
+            }
+          }
+        }
+      } catch (final SecurityException securityException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the coordinates listed in the supplied {@linkplain
+   * #prefetch(Path, int, PrefetchListener) manifest file}.
    *
-   * @param packaging the kind of archive or other packaging mechanism
-   * that the supplied {@code chartFile} value is; must not be {@code
-   * null}; examples include {@code tgz}, {@code tar.gz}, {@code zip}
-   * and the like; overrides of this method may use this parameter to
-   * help in determining how to read the supplied {@code chartFile}
+   * <p>This method never returns {@code null}.</p>
    *
-   * @return a non-{@code null} {@link
-   * hapi.chart.ChartOuterClass.Chart.Builder}, usually but not
-   * necessarily as produced by an {@link AbstractChartLoader}
-   * implementation
+   * @param manifest the {@link Path} of the manifest file; must not
+   * be {@code null}
    *
-   * @exception NullPointerException if {@code chartFile} or {@code
-   * packaging} is {@code null}
+   * @return a non-{@code null} {@link List} of coordinates
    *
-   * @exception ChartResolverException if the chart could not be
-   * loaded for any reason
+   * @exception NullPointerException if {@code manifest} is {@code
+   * null}
    *
-   * @see #resolve(String, String)
+   * @exception IOException if the manifest file could not be read
    */
-  protected Chart.Builder loadChart(final File chartFile, final String packaging) throws ChartResolverException {
-    Objects.requireNonNull(chartFile);
-    Objects.requireNonNull(packaging);
-    Chart.Builder returnValue = null;
-    if ("tgz".equalsIgnoreCase(packaging) || "tar.gz".equalsIgnoreCase(packaging) || "helm.tar.gz".equalsIgnoreCase(packaging)) {
-      try (final TapeArchiveChartLoader loader = new TapeArchiveChartLoader()) {
-        returnValue = loader.load(new TarInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(chartFile.toPath())))));
-      } catch (final IOException exception) {
-        throw new ChartResolverException(exception.getMessage(), exception);
-      }
-    } else if ("jar".equalsIgnoreCase(packaging) || "zip".equalsIgnoreCase(packaging)) {
-      try (final ZipInputStreamChartLoader loader = new ZipInputStreamChartLoader()) {
-        returnValue = loader.load(new ZipInputStream(new BufferedInputStream(Files.newInputStream(chartFile.toPath()))));
-      } catch (final IOException exception) {
-        throw new ChartResolverException(exception.getMessage(), exception);
+  static final List<String> readManifest(final Path manifest) throws IOException {
+    Objects.requireNonNull(manifest);
+    final List<String> returnValue = new ArrayList<>();
+    for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        returnValue.add(line);
       }
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a {@link ChartResolverException} whose cause is the first
+   * element of the supplied {@link Collection} of {@link Exception}s
+   * and to which all remaining elements have been {@linkplain
+   * Throwable#addSuppressed(Throwable) added as suppressed
+   * exceptions}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param exceptions a {@link Collection} of {@link Exception}s; may
+   * be {@code null} or {@linkplain Collection#isEmpty() empty}
+   *
+   * @return a non-{@code null} {@link ChartResolverException}
+   */
+  static final ChartResolverException toChartResolverException(final Collection<? extends Exception> exceptions) {
+    final ChartResolverException returnValue;
+    if (exceptions == null || exceptions.isEmpty()) {
+      returnValue = new ChartResolverException();
     } else {
-      throw new ChartResolverException("Cannot load chart: " + chartFile + "; unhandled packaging: " + packaging);
+      final Iterator<? extends Exception> iterator = exceptions.iterator();
+      assert iterator != null;
+      assert iterator.hasNext();
+      final Exception root = iterator.next();
+      assert root != null;
+      returnValue = new ChartResolverException(root);
+      while (iterator.hasNext()) {
+        returnValue.addSuppressed(iterator.next());
+      }
     }
     return returnValue;
   }
-  
+
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A holder of the default {@link Executor} used by {@link
+   * MavenRepositoryChartResolver} instances that were not supplied
+   * with one, initialized lazily on first use.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   *
+   * @see MavenRepositoryChartResolver#getExecutor()
+   */
+  private static final class DefaultExecutorHolder {
+
+    /**
+     * An {@link Executor} that runs each task in a new virtual thread
+     * if the current runtime supports virtual threads, or the
+     * {@linkplain ForkJoinPool#commonPool() common fork-join pool}
+     * otherwise.
+     *
+     * <p>This field is never {@code null}.</p>
+     */
+    private static final Executor INSTANCE = createDefaultExecutor();
+
+    private DefaultExecutorHolder() {
+      super();
+    }
+
+    private static final Executor createDefaultExecutor() {
+      Executor returnValue = null;
+      try {
+        // Java 8 is our compilation target, so virtual threads can
+        // only be reached reflectively.
+        final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        assert method != null;
+        returnValue = (Executor)method.invoke(null);
+      } catch (final ReflectiveOperationException | RuntimeException noVirtualThreads) {
+        returnValue = null;
+      }
+      if (returnValue == null) {
+        returnValue = ForkJoinPool.commonPool();
+      }
+      return returnValue;
+    }
+
+  }
+
 }
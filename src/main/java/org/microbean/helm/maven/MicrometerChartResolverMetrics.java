@@ -0,0 +1,231 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A {@link ChartResolverMetrics} implementation that records
+ * measurements in a Micrometer {@link MeterRegistry}.
+ *
+ * <p>The following meters are registered, each tagged with {@code
+ * repository} and {@code packaging}:</p>
+ *
+ * <ul>
+ *
+ * <li>{@value #RESOLUTION_TIMER}, a {@link Timer} with a percentile
+ * histogram, additionally tagged with {@code phase} (one of {@code
+ * resolve}, {@code transfer} or {@code load})</li>
+ *
+ * <li>{@value #TRANSFER_SUMMARY}, a {@link DistributionSummary} of
+ * bytes transferred</li>
+ *
+ * <li>{@value #CACHE_COUNTER}, a {@link Counter} additionally tagged
+ * with {@code result} (one of {@code hit} or {@code miss})</li>
+ *
+ * <li>{@value #FAILURE_COUNTER}, a {@link Counter} additionally
+ * tagged with {@code exception}, the simple name of the class of the
+ * most specific cause of the failure</li>
+ *
+ * </ul>
+ *
+ * <p>Micrometer is an optional dependency of this project; this
+ * class may only be used if it is present.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setMetrics(ChartResolverMetrics)
+ */
+public class MicrometerChartResolverMetrics implements ChartResolverMetrics {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The name of the {@link Timer} recording resolution phases.
+   */
+  public static final String RESOLUTION_TIMER = "helm.chart.resolution";
+
+  /**
+   * The name of the {@link DistributionSummary} recording bytes
+   * transferred.
+   */
+  public static final String TRANSFER_SUMMARY = "helm.chart.transfer.bytes";
+
+  /**
+   * The name of the {@link Counter} recording chart cache lookups.
+   */
+  public static final String CACHE_COUNTER = "helm.chart.cache";
+
+  /**
+   * The name of the {@link Counter} recording resolution failures.
+   */
+  public static final String FAILURE_COUNTER = "helm.chart.resolution.failures";
+
+  /**
+   * The tag value used when a repository identifier is not known.
+   */
+  private static final String UNKNOWN = "none";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link MeterRegistry} in which measurements are recorded.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final MeterRegistry registry;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link MicrometerChartResolverMetrics}.
+   *
+   * @param registry the {@link MeterRegistry} in which measurements
+   * will be recorded; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code registry} is {@code
+   * null}
+   */
+  public MicrometerChartResolverMetrics(final MeterRegistry registry) {
+    super();
+    this.registry = Objects.requireNonNull(registry);
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link MeterRegistry} in which measurements are
+   * recorded.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return the non-{@code null} {@link MeterRegistry} in use
+   */
+  public final MeterRegistry getRegistry() {
+    return this.registry;
+  }
+
+  @Override
+  public void recordPhase(final Phase phase, final String repositoryId, final String packaging, final long durationInNanoseconds) {
+    Timer.builder(RESOLUTION_TIMER)
+      .description("Time spent resolving Helm charts, by phase")
+      .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+      .tag("repository", tagValue(repositoryId))
+      .tag("packaging", tagValue(packaging))
+      .publishPercentileHistogram()
+      .register(this.registry)
+      .record(durationInNanoseconds, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void recordBytesTransferred(final String repositoryId, final String packaging, final long bytes) {
+    DistributionSummary.builder(TRANSFER_SUMMARY)
+      .description("Bytes of Helm chart archives transferred from remote repositories")
+      .baseUnit("bytes")
+      .tag("repository", tagValue(repositoryId))
+      .tag("packaging", tagValue(packaging))
+      .register(this.registry)
+      .record(bytes);
+  }
+
+  @Override
+  public void recordCacheHit(final String repositoryId, final String packaging) {
+    this.cacheCounter(repositoryId, packaging, "hit").increment();
+  }
+
+  @Override
+  public void recordCacheMiss(final String repositoryId, final String packaging) {
+    this.cacheCounter(repositoryId, packaging, "miss").increment();
+  }
+
+  @Override
+  public void recordFailure(final String repositoryId, final String packaging, final Throwable failure) {
+    Counter.builder(FAILURE_COUNTER)
+      .description("Failed Helm chart resolutions")
+      .tag("repository", tagValue(repositoryId))
+      .tag("packaging", tagValue(packaging))
+      .tag("exception", mostSpecificCause(failure).getClass().getSimpleName())
+      .register(this.registry)
+      .increment();
+  }
+
+  private final Counter cacheCounter(final String repositoryId, final String packaging, final String result) {
+    return Counter.builder(CACHE_COUNTER)
+      .description("Helm chart cache lookups")
+      .tag("repository", tagValue(repositoryId))
+      .tag("packaging", tagValue(packaging))
+      .tag("result", result)
+      .register(this.registry);
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final String tagValue(final String value) {
+    return value == null || value.isEmpty() ? UNKNOWN : value;
+  }
+
+  /**
+   * Returns the supplied {@link Throwable}, or, if it is a {@link
+   * ChartResolverException} with a cause, the most specific such
+   * cause.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param failure a {@link Throwable}; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Throwable}
+   */
+  private static final Throwable mostSpecificCause(final Throwable failure) {
+    Throwable returnValue = Objects.requireNonNull(failure);
+    while (returnValue instanceof ChartResolverException && returnValue.getCause() != null) {
+      returnValue = returnValue.getCause();
+    }
+    return returnValue;
+  }
+
+}
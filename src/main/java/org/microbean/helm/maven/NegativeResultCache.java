@@ -0,0 +1,457 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A bounded, thread-safe, in-memory cache of the {@link
+ * ChartResolverException}s thrown when charts could not be found,
+ * indexed by the coordinates that were requested and the remote
+ * repositories that were searched, that forgets its entries after a
+ * time-to-live has elapsed.
+ *
+ * <p>Entries are keyed by the requested chart's {@code groupId},
+ * {@code artifactId}, {@code extension}, {@code classifier} and
+ * {@code version}, which may be {@code LATEST}, {@code RELEASE} or a
+ * version range, together with the identifiers and URLs of the
+ * remote repositories, in order.  When the cache is full the least
+ * recently used entry is evicted.</p>
+ *
+ * <p>A chart that has just been published should be {@linkplain
+ * #invalidate(String, String) invalidated} so that it can be found
+ * before its entries expire.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setNegativeResultCache(NegativeResultCache)
+ *
+ * @see MavenRepositoryChartResolver#invalidate(Artifact)
+ */
+public class NegativeResultCache {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default maximum number of entries a {@link
+   * NegativeResultCache} will hold.
+   *
+   * @see #NegativeResultCache()
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+  /**
+   * The default number of milliseconds for which a {@link
+   * NegativeResultCache} holds each entry.
+   *
+   * @see #NegativeResultCache()
+   */
+  public static final long DEFAULT_TIME_TO_LIVE_IN_MILLISECONDS = 30000L;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The maximum number of entries this {@link NegativeResultCache}
+   * will hold.
+   *
+   * <p>This field is always greater than zero.</p>
+   *
+   * @see #getMaximumSize()
+   */
+  private final int maximumSize;
+
+  /**
+   * The number of nanoseconds for which each entry is held.
+   *
+   * <p>This field is always greater than zero.</p>
+   *
+   * @see #getTimeToLiveInMilliseconds()
+   */
+  private final long timeToLiveInNanoseconds;
+
+  /**
+   * The access-ordered {@link Map} holding cached {@link
+   * ChartResolverException}s.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * <p>All access to this field must be synchronized on it.</p>
+   */
+  private final Map<Key, Expiring> exceptions;
+
+  /**
+   * The number of lookups that found a cached {@link
+   * ChartResolverException}.
+   *
+   * <p>This field is never {@code null}.</p>
+   *
+   * @see #getHitCount()
+   */
+  private final AtomicLong hitCount;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link NegativeResultCache} that will hold at most
+   * {@link #DEFAULT_MAXIMUM_SIZE} entries for {@link
+   * #DEFAULT_TIME_TO_LIVE_IN_MILLISECONDS} milliseconds each.
+   *
+   * @see #NegativeResultCache(int, long)
+   */
+  public NegativeResultCache() {
+    this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE_IN_MILLISECONDS);
+  }
+
+  /**
+   * Creates a new {@link NegativeResultCache}.
+   *
+   * @param maximumSize the maximum number of entries this {@link
+   * NegativeResultCache} will hold; must be greater than zero
+   *
+   * @param timeToLiveInMilliseconds the number of milliseconds for
+   * which each entry is held; must be greater than zero
+   *
+   * @exception IllegalArgumentException if either parameter is less
+   * than or equal to zero
+   *
+   * @see #getMaximumSize()
+   *
+   * @see #getTimeToLiveInMilliseconds()
+   */
+  public NegativeResultCache(final int maximumSize, final long timeToLiveInMilliseconds) {
+    super();
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize <= 0: " + maximumSize);
+    }
+    if (timeToLiveInMilliseconds <= 0L) {
+      throw new IllegalArgumentException("timeToLiveInMilliseconds <= 0: " + timeToLiveInMilliseconds);
+    }
+    this.maximumSize = maximumSize;
+    this.timeToLiveInNanoseconds = TimeUnit.MILLISECONDS.toNanos(timeToLiveInMilliseconds);
+    this.hitCount = new AtomicLong();
+    this.exceptions = new LinkedHashMap<Key, Expiring>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected final boolean removeEldestEntry(final Map.Entry<Key, Expiring> eldest) {
+          return this.size() > NegativeResultCache.this.maximumSize;
+        }
+      };
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the maximum number of entries this {@link
+   * NegativeResultCache} will hold.
+   *
+   * @return the maximum number of entries; always greater than zero
+   */
+  public final int getMaximumSize() {
+    return this.maximumSize;
+  }
+
+  /**
+   * Returns the number of milliseconds for which this {@link
+   * NegativeResultCache} holds each entry.
+   *
+   * @return the time-to-live in milliseconds; always greater than
+   * zero
+   */
+  public final long getTimeToLiveInMilliseconds() {
+    return TimeUnit.NANOSECONDS.toMillis(this.timeToLiveInNanoseconds);
+  }
+
+  /**
+   * Returns the {@link ChartResolverException} cached for the
+   * supplied requested chart and remote repositories, or {@code
+   * null} if there is no such exception or it has expired.
+   *
+   * <p>This method may return {@code null}.</p>
+   *
+   * @param chart the {@link Artifact} that was requested; must not be
+   * {@code null}
+   *
+   * @param remoteRepositories the {@link RemoteRepository} instances
+   * that were searched; may be {@code null}
+   *
+   * @return the cached {@link ChartResolverException}, or {@code
+   * null}
+   *
+   * @exception NullPointerException if {@code chart} is {@code null}
+   *
+   * @see #put(Artifact, List, ChartResolverException)
+   */
+  public ChartResolverException get(final Artifact chart, final List<? extends RemoteRepository> remoteRepositories) {
+    final Key key = new Key(chart, remoteRepositories);
+    ChartResolverException returnValue = null;
+    synchronized (this.exceptions) {
+      final Expiring expiring = this.exceptions.get(key);
+      if (expiring != null) {
+        if (expiring.isExpired(System.nanoTime())) {
+          this.exceptions.remove(key);
+        } else {
+          returnValue = expiring.exception;
+        }
+      }
+    }
+    if (returnValue != null) {
+      this.hitCount.incrementAndGet();
+    }
+    return returnValue;
+  }
+
+  /**
+   * Caches the supplied {@link ChartResolverException} for the
+   * supplied requested chart and remote repositories, evicting the
+   * least recently used entry if necessary.
+   *
+   * @param chart the {@link Artifact} that was requested; must not be
+   * {@code null}
+   *
+   * @param remoteRepositories the {@link RemoteRepository} instances
+   * that were searched; may be {@code null}
+   *
+   * @param exception the {@link ChartResolverException} reporting
+   * that the chart could not be found; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code chart} or {@code
+   * exception} is {@code null}
+   *
+   * @see #get(Artifact, List)
+   */
+  public void put(final Artifact chart, final List<? extends RemoteRepository> remoteRepositories, final ChartResolverException exception) {
+    Objects.requireNonNull(exception);
+    final Key key = new Key(chart, remoteRepositories);
+    final Expiring expiring = new Expiring(exception, System.nanoTime() + this.timeToLiveInNanoseconds);
+    synchronized (this.exceptions) {
+      this.exceptions.put(key, expiring);
+    }
+  }
+
+  /**
+   * Removes all entries for any version, packaging or classifier of
+   * the chart with the supplied {@code groupId} and {@code
+   * artifactId}, whatever remote repositories were searched.
+   *
+   * @param groupId the chart's {@code groupId}; must not be {@code
+   * null}
+   *
+   * @param artifactId the chart's {@code artifactId}; must not be
+   * {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   */
+  public void invalidate(final String groupId, final String artifactId) {
+    Objects.requireNonNull(groupId);
+    Objects.requireNonNull(artifactId);
+    synchronized (this.exceptions) {
+      final Iterator<Key> iterator = this.exceptions.keySet().iterator();
+      while (iterator.hasNext()) {
+        final Key key = iterator.next();
+        if (groupId.equals(key.groupId) && artifactId.equals(key.artifactId)) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all entries from this {@link NegativeResultCache}.
+   *
+   * <p>The hit count is not reset.</p>
+   */
+  public void clear() {
+    synchronized (this.exceptions) {
+      this.exceptions.clear();
+    }
+  }
+
+  /**
+   * Returns the number of entries currently held by this {@link
+   * NegativeResultCache}, some of which may have expired.
+   *
+   * @return the number of entries; never less than zero
+   */
+  public int size() {
+    synchronized (this.exceptions) {
+      return this.exceptions.size();
+    }
+  }
+
+  /**
+   * Returns the number of {@linkplain #get(Artifact, List) lookups}
+   * that found a cached {@link ChartResolverException}.
+   *
+   * @return the number of cache hits; never less than zero
+   */
+  public final long getHitCount() {
+    return this.hitCount.get();
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * NegativeResultCache}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String} representation of this
+   * {@link NegativeResultCache}
+   */
+  @Override
+  public String toString() {
+    return this.getClass().getSimpleName() +
+      "[size=" + this.size() +
+      ", maximumSize=" + this.getMaximumSize() +
+      ", timeToLiveInMilliseconds=" + this.getTimeToLiveInMilliseconds() +
+      ", hits=" + this.getHitCount() + "]";
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * An immutable key identifying a requested chart and the remote
+   * repositories searched for it.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Key {
+
+    private final String groupId;
+
+    private final String artifactId;
+
+    private final String extension;
+
+    private final String classifier;
+
+    private final String version;
+
+    private final List<String> repositories;
+
+    private final int hashCode;
+
+    private Key(final Artifact chart, final List<? extends RemoteRepository> remoteRepositories) {
+      super();
+      Objects.requireNonNull(chart);
+      this.groupId = chart.getGroupId();
+      this.artifactId = chart.getArtifactId();
+      this.extension = chart.getExtension();
+      this.classifier = chart.getClassifier();
+      this.version = chart.getVersion();
+      if (remoteRepositories == null || remoteRepositories.isEmpty()) {
+        this.repositories = Collections.emptyList();
+      } else {
+        final List<String> repositories = new ArrayList<>(remoteRepositories.size());
+        for (final RemoteRepository remoteRepository : remoteRepositories) {
+          repositories.add(remoteRepository.getId() + " " + remoteRepository.getUrl());
+        }
+        this.repositories = repositories;
+      }
+      this.hashCode = Objects.hash(this.groupId, this.artifactId, this.extension, this.classifier, this.version, this.repositories);
+    }
+
+    @Override
+    public final int hashCode() {
+      return this.hashCode;
+    }
+
+    @Override
+    public final boolean equals(final Object other) {
+      if (other == this) {
+        return true;
+      } else if (other instanceof Key) {
+        final Key her = (Key)other;
+        return
+          Objects.equals(this.groupId, her.groupId) &&
+          Objects.equals(this.artifactId, her.artifactId) &&
+          Objects.equals(this.extension, her.extension) &&
+          Objects.equals(this.classifier, her.classifier) &&
+          Objects.equals(this.version, her.version) &&
+          this.repositories.equals(her.repositories);
+      } else {
+        return false;
+      }
+    }
+
+  }
+
+  /**
+   * A {@link ChartResolverException} paired with the {@link
+   * System#nanoTime()} value after which it is no longer valid.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Expiring {
+
+    private final ChartResolverException exception;
+
+    private final long expiresAt;
+
+    private Expiring(final ChartResolverException exception, final long expiresAt) {
+      super();
+      this.exception = exception;
+      this.expiresAt = expiresAt;
+    }
+
+    private final boolean isExpired(final long now) {
+      return now - this.expiresAt >= 0L;
+    }
+
+  }
+
+}
@@ -0,0 +1,685 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import java.util.function.Function;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import hapi.chart.ChartOuterClass.Chart;
+import hapi.chart.TemplateOuterClass.Template;
+
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarInputStream;
+
+import org.microbean.helm.chart.StreamOrientedChartLoader;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A chart loader that reads the entries of a chart archive
+ * sequentially but spreads the work of turning them into a {@link
+ * Chart.Builder} across an {@link Executor}.
+ *
+ * <p>Each subchart archive found under a chart's {@code charts}
+ * directory is decompressed and loaded as its own task, recursively.
+ * Templates and other files are converted into {@link Template}s and
+ * {@link Any}s in batches, each batch being its own task.  The
+ * chart's {@code Chart.yaml} and {@code values.yaml} files, together
+ * with anything else that governs the structure of the chart, are
+ * handed as their own task to a {@link StreamOrientedChartLoader}, so
+ * they are interpreted exactly as the serial loaders interpret them.
+ * The pieces are then assembled in archive order, so that the
+ * resulting {@link Chart.Builder} is identical to the one the serial
+ * loaders produce.</p>
+ *
+ * <p>No task ever blocks waiting for another, so any {@link
+ * Executor}, including one with very few threads, may be used.</p>
+ *
+ * <p>If a {@link ChartLoadLimits.Load} is supplied, every entry,
+ * including every entry of every packed subchart, is read through
+ * it, so that the {@linkplain ChartLoadLimits limits} it enforces
+ * apply to the whole chart.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setParallelLoadingEnabled(boolean)
+ */
+final class ParallelChartLoader {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The number of templates or files converted by a single task.
+   */
+  private static final int BATCH_SIZE = 32;
+
+  /**
+   * The name of the directory, relative to a chart's root, that
+   * contains its templates.
+   */
+  private static final String TEMPLATES = "templates/";
+
+  /**
+   * The name of the directory, relative to a chart's root, that
+   * contains its subcharts.
+   */
+  private static final String CHARTS = "charts/";
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The {@link Executor} on which work is performed.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final Executor executor;
+
+  /**
+   * The {@link ChartLoadLimits.Load} through which archive entries
+   * are read.
+   *
+   * <p>This field may be {@code null}, in which case entries are read
+   * without limits.</p>
+   */
+  private final ChartLoadLimits.Load load;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ParallelChartLoader}.
+   *
+   * @param executor the {@link Executor} on which work will be
+   * performed; must not be {@code null}
+   *
+   * @exception NullPointerException if {@code executor} is {@code
+   * null}
+   */
+  ParallelChartLoader(final Executor executor) {
+    this(executor, null);
+  }
+
+  /**
+   * Creates a new {@link ParallelChartLoader}.
+   *
+   * @param executor the {@link Executor} on which work will be
+   * performed; must not be {@code null}
+   *
+   * @param load the {@link ChartLoadLimits.Load} through which
+   * archive entries will be read; may be {@code null} in which case
+   * entries will be read without limits
+   *
+   * @exception NullPointerException if {@code executor} is {@code
+   * null}
+   */
+  ParallelChartLoader(final Executor executor, final ChartLoadLimits.Load load) {
+    super();
+    this.executor = Objects.requireNonNull(executor);
+    this.load = load;
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Loads the chart contained by the tape archive readable from the
+   * supplied {@link TarInputStream}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param tarInputStream the {@link TarInputStream} to read; must
+   * not be {@code null}; will not be closed
+   *
+   * @return a non-{@code null} {@link Chart.Builder}
+   *
+   * @exception NullPointerException if {@code tarInputStream} is
+   * {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded for any other reason
+   */
+  final Chart.Builder load(final TarInputStream tarInputStream) throws IOException, ChartResolverException {
+    return join(this.loadAsync(this.readEntries(tarInputStream)));
+  }
+
+  /**
+   * Loads the chart contained by the ZIP archive readable from the
+   * supplied {@link ZipInputStream}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param zipInputStream the {@link ZipInputStream} to read; must
+   * not be {@code null}; will not be closed
+   *
+   * @return a non-{@code null} {@link Chart.Builder}
+   *
+   * @exception NullPointerException if {@code zipInputStream} is
+   * {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if the chart could not be
+   * loaded for any other reason
+   */
+  final Chart.Builder load(final ZipInputStream zipInputStream) throws IOException, ChartResolverException {
+    return join(this.loadAsync(this.readEntries(zipInputStream)));
+  }
+
+  /**
+   * Returns a {@link CompletableFuture} that will be completed with a
+   * {@link Chart.Builder} representing the chart whose archive
+   * entries are supplied.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The supplied {@link ByteString}s are not copied, so they may
+   * be views of memory that must outlive the returned {@link
+   * Chart.Builder}.</p>
+   *
+   * @param entries the entries of a chart archive, in archive order,
+   * each pairing an entry name with the entry's uncompressed
+   * contents; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link CompletableFuture}
+   *
+   * @exception NullPointerException if {@code entries} is {@code
+   * null}
+   *
+   * @see #join(CompletableFuture)
+   */
+  final CompletableFuture<Chart.Builder> loadAsync(final List<? extends Entry<String, ByteString>> entries) {
+    return this.loadAsync(entries, this::loadTapeArchiveAsync);
+  }
+
+  /**
+   * Returns a {@link CompletableFuture} that will be completed with a
+   * {@link Chart.Builder} representing the chart whose archive
+   * entries are supplied, using the supplied {@link Function} to load
+   * the chart's packed subcharts.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>The supplied {@link ByteString}s are not copied, so they may
+   * be views of memory that must outlive the returned {@link
+   * Chart.Builder}.</p>
+   *
+   * @param entries the entries of a chart archive, in archive order,
+   * each pairing an entry name with the entry's uncompressed
+   * contents; must not be {@code null}
+   *
+   * @param subchartLoader a {@link Function} that accepts the bytes
+   * of a GZIP-encoded tape archive found under the chart's {@code
+   * charts} directory and returns a {@link CompletableFuture} that
+   * will be completed with the subchart it contains; must not be
+   * {@code null}; it is not applied to the subcharts of subcharts
+   *
+   * @return a non-{@code null} {@link CompletableFuture}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @see #loadTapeArchiveAsync(ByteString)
+   */
+  final CompletableFuture<Chart.Builder> loadAsync(final List<? extends Entry<String, ByteString>> entries,
+                                                   final Function<? super ByteString, ? extends CompletableFuture<Chart.Builder>> subchartLoader) {
+    Objects.requireNonNull(entries);
+    Objects.requireNonNull(subchartLoader);
+
+    // If the chart has unpacked subcharts, leave everything under
+    // charts/ to the serial loader so that its dependencies stay in
+    // archive order.
+    boolean unpackedSubcharts = false;
+    for (final Entry<String, ByteString> entry : entries) {
+      final String relativeName = relativeName(entry.getKey());
+      if (relativeName != null && relativeName.startsWith(CHARTS) && relativeName.indexOf('/', CHARTS.length()) >= 0) {
+        unpackedSubcharts = true;
+        break;
+      }
+    }
+
+    final List<Entry<String, ByteString>> structuralEntries = new ArrayList<>();
+    final List<Entry<String, ByteString>> templateEntries = new ArrayList<>();
+    final List<Entry<String, ByteString>> fileEntries = new ArrayList<>();
+    final List<CompletableFuture<Chart.Builder>> subcharts = new ArrayList<>();
+    for (final Entry<String, ByteString> entry : entries) {
+      final String relativeName = relativeName(entry.getKey());
+      if (relativeName == null || relativeName.isEmpty() || relativeName.endsWith("/") || isStructural(relativeName)) {
+        structuralEntries.add(entry);
+      } else if (relativeName.startsWith(CHARTS)) {
+        if (unpackedSubcharts || !isTapeArchive(relativeName)) {
+          structuralEntries.add(entry);
+        } else {
+          subcharts.add(subchartLoader.apply(entry.getValue()));
+        }
+      } else if (relativeName.startsWith(TEMPLATES)) {
+        templateEntries.add(new SimpleImmutableEntry<>(relativeName, entry.getValue()));
+      } else {
+        fileEntries.add(new SimpleImmutableEntry<>(relativeName, entry.getValue()));
+      }
+    }
+
+    final CompletableFuture<Chart.Builder> structure = CompletableFuture.supplyAsync(() -> loadSerially(structuralEntries), this.executor);
+
+    final List<CompletableFuture<List<Template>>> templates = new ArrayList<>();
+    for (final List<Entry<String, ByteString>> batch : batches(templateEntries)) {
+      templates.add(CompletableFuture.supplyAsync(() -> toTemplates(batch), this.executor));
+    }
+
+    final List<CompletableFuture<List<Any>>> files = new ArrayList<>();
+    for (final List<Entry<String, ByteString>> batch : batches(fileEntries)) {
+      files.add(CompletableFuture.supplyAsync(() -> toAnys(batch), this.executor));
+    }
+
+    final List<CompletableFuture<?>> all = new ArrayList<>(1 + templates.size() + files.size() + subcharts.size());
+    all.add(structure);
+    all.addAll(templates);
+    all.addAll(files);
+    all.addAll(subcharts);
+    return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[all.size()]))
+      .thenApply(ignored -> {
+          // Every future is complete by now, so join() does not block.
+          final Chart.Builder returnValue = structure.join();
+          for (final CompletableFuture<List<Template>> batch : templates) {
+            returnValue.addAllTemplates(batch.join());
+          }
+          for (final CompletableFuture<List<Any>> batch : files) {
+            returnValue.addAllFiles(batch.join());
+          }
+          for (final CompletableFuture<Chart.Builder> subchart : subcharts) {
+            returnValue.addDependencies(subchart.join());
+          }
+          return returnValue;
+        });
+  }
+
+  /**
+   * Returns a {@link CompletableFuture} that will be completed with a
+   * {@link Chart.Builder} representing the chart contained by the
+   * supplied GZIP-encoded tape archive bytes.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param bytes the bytes of a GZIP-encoded tape archive; must not
+   * be {@code null}
+   *
+   * @return a non-{@code null} {@link CompletableFuture}
+   */
+  final CompletableFuture<Chart.Builder> loadTapeArchiveAsync(final ByteString bytes) {
+    assert bytes != null;
+    return CompletableFuture.supplyAsync(() -> {
+        try (final TarInputStream tarInputStream = new TarInputStream(new GZIPInputStream(bytes.newInput()))) {
+          return this.readEntries(tarInputStream);
+        } catch (final IOException ioException) {
+          throw new UncheckedIOException(ioException);
+        } catch (final ChartResolverException chartResolverException) {
+          throw new CompletionException(chartResolverException);
+        }
+      }, this.executor)
+      .thenCompose(this::loadAsync);
+  }
+
+
+  private final List<Entry<String, ByteString>> readEntries(final TarInputStream tarInputStream) throws IOException, ChartResolverException {
+    Objects.requireNonNull(tarInputStream);
+    final List<Entry<String, ByteString>> returnValue = new ArrayList<>();
+    TarEntry entry;
+    while ((entry = tarInputStream.getNextEntry()) != null) {
+      returnValue.add(new SimpleImmutableEntry<>(entry.getName(), entry.isDirectory() ? ByteString.EMPTY : this.readEntry(entry.getName(), tarInputStream, entry.getSize())));
+    }
+    return returnValue;
+  }
+
+  private final List<Entry<String, ByteString>> readEntries(final ZipInputStream zipInputStream) throws IOException, ChartResolverException {
+    Objects.requireNonNull(zipInputStream);
+    final List<Entry<String, ByteString>> returnValue = new ArrayList<>();
+    ZipEntry entry;
+    while ((entry = zipInputStream.getNextEntry()) != null) {
+      returnValue.add(new SimpleImmutableEntry<>(entry.getName(), entry.isDirectory() ? ByteString.EMPTY : this.readEntry(entry.getName(), zipInputStream, entry.getSize())));
+    }
+    return returnValue;
+  }
+
+  /**
+   * Reads the remainder of the supplied {@link InputStream}, which
+   * supplies the contents of the named archive entry, through this
+   * {@link ParallelChartLoader}'s {@link ChartLoadLimits.Load} if it
+   * has one, and returns its contents.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param name the name of the entry; must not be {@code null}
+   *
+   * @param inputStream the {@link InputStream} supplying the entry's
+   * contents; must not be {@code null}; will not be closed
+   *
+   * @param size the size of the entry recorded by the archive, or a
+   * negative number if it is unknown
+   *
+   * @return a non-{@code null} {@link ByteString}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @exception ChartResolverException if a {@linkplain
+   * ChartLoadLimits limit} is exceeded
+   */
+  final ByteString readEntry(final String name, final InputStream inputStream, final long size) throws IOException, ChartResolverException {
+    return this.load == null ? readFully(inputStream) : this.load.read(name, inputStream, size);
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns {@code true} if the supplied name, relative to a chart's
+   * root, identifies an entry that the {@link
+   * StreamOrientedChartLoader} used by the {@link
+   * #loadSerially(List)} method must see.
+   *
+   * @param relativeName the name of an entry relative to a chart's
+   * root; must not be {@code null}
+   *
+   * @return {@code true} if the entry governs the structure of the
+   * chart
+   */
+  private static final boolean isStructural(final String relativeName) {
+    return "Chart.yaml".equals(relativeName) || "values.yaml".equals(relativeName);
+  }
+
+  /**
+   * Returns {@code true} if the supplied archive entry name
+   * identifies the {@code Chart.yaml} or {@code values.yaml} file of
+   * the chart at the root of the archive, and not of a subchart.
+   *
+   * @param name an archive entry name; must not be {@code null}
+   *
+   * @return {@code true} if the entry bears the root chart's
+   * metadata or values
+   */
+  static final boolean isMetadata(final String name) {
+    final String relativeName = relativeName(name);
+    return relativeName != null && isStructural(relativeName);
+  }
+
+  private static final boolean isTapeArchive(final String name) {
+    return name.endsWith(".tgz") || name.endsWith(".tar.gz");
+  }
+
+  /**
+   * Returns the portion of the supplied archive entry name that
+   * follows the chart's root directory, or {@code null} if there is
+   * no such portion.
+   *
+   * @param name an archive entry name; must not be {@code null}
+   *
+   * @return the name relative to the chart's root, or {@code null}
+   */
+  private static final String relativeName(final String name) {
+    final int slashIndex = name.indexOf('/');
+    return slashIndex < 0 ? null : name.substring(slashIndex + 1);
+  }
+
+  /**
+   * Returns a {@link Chart.Builder} bearing only the metadata and
+   * values of the chart whose archive the supplied {@link
+   * TarInputStream} reads, reading no further into the archive than
+   * it must.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param tarInputStream the {@link TarInputStream} to read; must
+   * not be {@code null}; will not be closed
+   *
+   * @return a non-{@code null} {@link Chart.Builder}
+   *
+   * @exception NullPointerException if {@code tarInputStream} is
+   * {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  static final Chart.Builder loadMetadata(final TarInputStream tarInputStream) throws IOException {
+    Objects.requireNonNull(tarInputStream);
+    final List<Entry<String, ByteString>> entries = new ArrayList<>(2);
+    TarEntry entry;
+    // Helm writes Chart.yaml and values.yaml first, so this usually
+    // stops after decompressing only the head of the archive.
+    while (entries.size() < 2 && (entry = tarInputStream.getNextEntry()) != null) {
+      if (!entry.isDirectory() && isMetadata(entry.getName())) {
+        entries.add(new SimpleImmutableEntry<>(entry.getName(), readFully(tarInputStream)));
+      }
+    }
+    return loadMetadata(entries);
+  }
+
+  /**
+   * Returns a {@link Chart.Builder} bearing only the metadata and
+   * values of the chart whose archive the supplied {@link
+   * ZipInputStream} reads, reading no further into the archive than
+   * it must.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param zipInputStream the {@link ZipInputStream} to read; must
+   * not be {@code null}; will not be closed
+   *
+   * @return a non-{@code null} {@link Chart.Builder}
+   *
+   * @exception NullPointerException if {@code zipInputStream} is
+   * {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  static final Chart.Builder loadMetadata(final ZipInputStream zipInputStream) throws IOException {
+    Objects.requireNonNull(zipInputStream);
+    final List<Entry<String, ByteString>> entries = new ArrayList<>(2);
+    ZipEntry entry;
+    while (entries.size() < 2 && (entry = zipInputStream.getNextEntry()) != null) {
+      if (!entry.isDirectory() && isMetadata(entry.getName())) {
+        entries.add(new SimpleImmutableEntry<>(entry.getName(), readFully(zipInputStream)));
+      }
+    }
+    return loadMetadata(entries);
+  }
+
+  /**
+   * Returns a {@link Chart.Builder} bearing only the metadata and
+   * values found among the supplied archive entries, all of which
+   * must satisfy the {@link #isMetadata(String)} method.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param entries the entries; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link Chart.Builder}
+   *
+   * @exception NullPointerException if {@code entries} is {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  static final Chart.Builder loadMetadata(final List<? extends Entry<String, ByteString>> entries) throws IOException {
+    Objects.requireNonNull(entries);
+    if (entries.isEmpty()) {
+      return Chart.newBuilder();
+    }
+    try {
+      return loadSerially(entries);
+    } catch (final UncheckedIOException uncheckedIOException) {
+      throw uncheckedIOException.getCause();
+    }
+  }
+
+  private static final Chart.Builder loadSerially(final List<? extends Entry<String, ByteString>> entries) {
+    final List<Entry<String, InputStream>> namedInputStreams = new ArrayList<>(entries.size());
+    for (final Entry<String, ByteString> entry : entries) {
+      namedInputStreams.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().newInput()));
+    }
+    try (final EntryChartLoader loader = new EntryChartLoader()) {
+      return loader.load(namedInputStreams);
+    } catch (final IOException ioException) {
+      throw new UncheckedIOException(ioException);
+    }
+  }
+
+  private static final List<Template> toTemplates(final List<? extends Entry<String, ByteString>> entries) {
+    final List<Template> returnValue = new ArrayList<>(entries.size());
+    for (final Entry<String, ByteString> entry : entries) {
+      returnValue.add(Template.newBuilder().setName(entry.getKey()).setData(entry.getValue()).build());
+    }
+    return returnValue;
+  }
+
+  private static final List<Any> toAnys(final List<? extends Entry<String, ByteString>> entries) {
+    final List<Any> returnValue = new ArrayList<>(entries.size());
+    for (final Entry<String, ByteString> entry : entries) {
+      returnValue.add(Any.newBuilder().setTypeUrl(entry.getKey()).setValue(entry.getValue()).build());
+    }
+    return returnValue;
+  }
+
+  private static final <T> List<List<T>> batches(final List<T> list) {
+    final int size = list.size();
+    final List<List<T>> returnValue;
+    if (size == 0) {
+      returnValue = Collections.emptyList();
+    } else {
+      returnValue = new ArrayList<>((size + BATCH_SIZE - 1) / BATCH_SIZE);
+      for (int i = 0; i < size; i += BATCH_SIZE) {
+        returnValue.add(list.subList(i, Math.min(size, i + BATCH_SIZE)));
+      }
+    }
+    return returnValue;
+  }
+
+  static final ByteString readFully(final InputStream inputStream) throws IOException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int bytesRead;
+    while ((bytesRead = inputStream.read(buffer, 0, buffer.length)) >= 0) {
+      outputStream.write(buffer, 0, bytesRead);
+    }
+    // The array is never shared, so it is safe to wrap it without
+    // copying it again.
+    return UnsafeByteOperations.unsafeWrap(outputStream.toByteArray());
+  }
+
+  /**
+   * Returns the {@link Chart.Builder} with which the supplied {@link
+   * CompletableFuture} is completed, waiting for it if necessary, and
+   * unwrapping any exception with which it is completed exceptionally.
+   *
+   * @param future the {@link CompletableFuture} to join; must not be
+   * {@code null}
+   *
+   * @return the {@link Chart.Builder} with which the supplied {@link
+   * CompletableFuture} was completed
+   *
+   * @exception IOException if the supplied {@link CompletableFuture}
+   * was completed with an {@link UncheckedIOException}
+   *
+   * @exception ChartResolverException if the supplied {@link
+   * CompletableFuture} was completed with a {@link
+   * ChartResolverException} or another checked exception
+   */
+  static final Chart.Builder join(final CompletableFuture<Chart.Builder> future) throws IOException, ChartResolverException {
+    try {
+      return future.join();
+    } catch (final CompletionException completionException) {
+      final Throwable cause = completionException.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException)cause).getCause();
+      } else if (cause instanceof ChartResolverException) {
+        throw (ChartResolverException)cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      } else if (cause instanceof Error) {
+        throw (Error)cause;
+      } else {
+        throw new ChartResolverException(cause == null ? completionException : cause);
+      }
+    }
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A {@link StreamOrientedChartLoader} that loads a chart from
+   * archive entries that have already been read.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class EntryChartLoader extends StreamOrientedChartLoader<Iterable<? extends Entry<? extends String, ? extends InputStream>>> {
+
+    private EntryChartLoader() {
+      super();
+    }
+
+    @Override
+    protected final Iterable<? extends Entry<? extends String, ? extends InputStream>> toNamedInputStreamEntries(final Iterable<? extends Entry<? extends String, ? extends InputStream>> entries) {
+      return entries;
+    }
+
+  }
+
+}
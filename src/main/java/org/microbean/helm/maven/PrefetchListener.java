@@ -0,0 +1,76 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+/**
+ * A listener notified of the progress of a {@linkplain
+ * MavenRepositoryChartResolver#prefetch(java.util.Collection, int,
+ * PrefetchListener) prefetch}.
+ *
+ * <p>Methods of this interface are invoked on threads supplied by
+ * the {@linkplain MavenRepositoryChartResolver#getExecutor()
+ * resolver's executor}, possibly concurrently, and should return
+ * quickly.  Any {@link RuntimeException} they throw is logged and
+ * otherwise ignored.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#prefetch(java.util.Collection,
+ * int, PrefetchListener)
+ */
+public interface PrefetchListener {
+
+  /**
+   * Called when the chart identified by the supplied coordinates has
+   * been resolved and loaded.
+   *
+   * <p>The default implementation does nothing.</p>
+   *
+   * @param coordinates the coordinates of the chart; never {@code
+   * null}
+   *
+   * @param completed the number of charts, including this one, whose
+   * prefetch has finished, successfully or not
+   *
+   * @param total the total number of charts being prefetched
+   */
+  default void chartPrefetched(final String coordinates, final int completed, final int total) {
+
+  }
+
+  /**
+   * Called when the chart identified by the supplied coordinates
+   * could not be resolved or loaded.
+   *
+   * <p>The default implementation does nothing.</p>
+   *
+   * @param coordinates the coordinates of the chart; never {@code
+   * null}
+   *
+   * @param failure the reason for the failure; never {@code null}
+   *
+   * @param completed the number of charts, including this one, whose
+   * prefetch has finished, successfully or not
+   *
+   * @param total the total number of charts being prefetched
+   */
+  default void chartPrefetchFailed(final String coordinates, final Throwable failure, final int completed, final int total) {
+
+  }
+
+}
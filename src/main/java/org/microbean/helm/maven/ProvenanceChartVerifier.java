@@ -0,0 +1,330 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+
+import java.security.MessageDigest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * A {@link ChartVerifier} that checks each chart archive against the
+ * Helm provenance file published alongside it.
+ *
+ * <p>A Helm provenance file is an OpenPGP clear-signed document
+ * whose {@code files} section lists the SHA-256 digest of the chart
+ * archive it vouches for.  This {@link ChartVerifier} resolves the
+ * provenance file of a chart as an artifact with the same
+ * coordinates as the chart and an extension formed by appending
+ * {@code .prov} to the chart's (so {@code mychart-1.0.0.tgz.prov}
+ * accompanies {@code mychart-1.0.0.tgz}), and fails verification if
+ * the provenance file is missing, if it lists no digest under the
+ * chart archive's file name, or if the digest it lists there is not
+ * that of the chart archive.</p>
+ *
+ * <p>This class does not itself check the OpenPGP signature of the
+ * provenance file, as that requires an OpenPGP implementation and a
+ * keyring of trusted keys, but it fails closed: unless a subclass
+ * overrides the {@link #verifySignature(Artifact, Artifact, byte[])}
+ * method to perform that check, every verification fails.  A
+ * subclass that deliberately trusts provenance files without
+ * checking their signatures may override it to do nothing, bearing
+ * in mind that such a provenance file protects against the
+ * corruption of a chart archive, and against tampering with a chart
+ * archive alone, but not against the replacement of both.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setChartVerifier(ChartVerifier)
+ */
+public class ProvenanceChartVerifier implements ChartVerifier {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The suffix appended to the extension of a chart to form the
+   * extension of its provenance file.
+   */
+  public static final String EXTENSION_SUFFIX = ".prov";
+
+  /**
+   * The prefix of each digest listed in the {@code files} section of
+   * a provenance file.
+   */
+  private static final String SHA256_PREFIX = "sha256:";
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link ProvenanceChartVerifier}.
+   */
+  public ProvenanceChartVerifier() {
+    super();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns a {@link List} containing the sole provenance file of the
+   * supplied resolved chart.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resolvedChart the resolved {@link Artifact} representing
+   * the chart to be verified; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link List} with a single element
+   *
+   * @exception NullPointerException if {@code resolvedChart} is
+   * {@code null}
+   */
+  @Override
+  public List<Artifact> getCompanions(final Artifact resolvedChart) {
+    Objects.requireNonNull(resolvedChart);
+    return Collections.singletonList(new DefaultArtifact(resolvedChart.getGroupId(),
+                                                         resolvedChart.getArtifactId(),
+                                                         resolvedChart.getClassifier(),
+                                                         resolvedChart.getExtension() + EXTENSION_SUFFIX,
+                                                         resolvedChart.getVersion()));
+  }
+
+  /**
+   * Reads the provenance file of the supplied resolved chart,
+   * {@linkplain #verifySignature(Artifact, Artifact, byte[]) checks
+   * its signature} and returns a {@link ChartVerifier.Verification}
+   * that will compare the SHA-256 digest of the chart archive with
+   * the digests it lists.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resolvedChart the resolved {@link Artifact} representing
+   * the chart to be verified; must not be {@code null}
+   *
+   * @param resolvedCompanions a {@link List} whose first element is
+   * the resolved provenance file; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link ChartVerifier.Verification}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   *
+   * @exception ChartResolverException if the provenance file could
+   * not be read, is malformed or lists no digest for the chart
+   * archive, or if its signature could not be verified
+   */
+  @Override
+  public ChartVerifier.Verification newVerification(final Artifact resolvedChart, final List<? extends Artifact> resolvedCompanions) throws ChartResolverException {
+    Objects.requireNonNull(resolvedChart);
+    Objects.requireNonNull(resolvedCompanions);
+    final Artifact provenance = resolvedCompanions.isEmpty() ? null : resolvedCompanions.get(0);
+    final File provenanceFile = provenance == null ? null : provenance.getFile();
+    if (provenanceFile == null) {
+      throw new ChartResolverException("No provenance file for " + resolvedChart);
+    }
+    final byte[] provenanceBytes;
+    try {
+      provenanceBytes = Files.readAllBytes(provenanceFile.toPath());
+    } catch (final IOException exception) {
+      throw new ChartResolverException(exception.getMessage(), exception);
+    }
+    this.verifySignature(resolvedChart, provenance, provenanceBytes);
+    final Map<String, byte[]> digests = parseDigests(new String(provenanceBytes, StandardCharsets.UTF_8));
+    byte[] digest = null;
+    final Set<String> fileNames = getFileNames(resolvedChart);
+    for (final String fileName : fileNames) {
+      digest = digests.get(fileName);
+      if (digest != null) {
+        break;
+      }
+    }
+    if (digest == null) {
+      throw new ChartResolverException("Provenance file " + provenanceFile + " lists no SHA-256 digest for " + fileNames);
+    }
+    final byte[] listedDigest = digest;
+    return sha256 -> {
+      if (!MessageDigest.isEqual(listedDigest, sha256)) {
+        throw new ChartResolverException("The SHA-256 digest of " + resolvedChart.getFile() + " (" + toHex(sha256) + ") is not listed in provenance file " + provenanceFile);
+      }
+    };
+  }
+
+  /**
+   * Verifies the OpenPGP signature of the supplied provenance file of
+   * the supplied resolved chart, throwing a {@link
+   * ChartResolverException} if it is not valid or not trusted.
+   *
+   * <p>This method is called before the digests listed in the
+   * provenance file are trusted.</p>
+   *
+   * <p>This implementation always throws a {@link
+   * ChartResolverException}, so that a {@link
+   * ProvenanceChartVerifier} whose subclass does not supply signature
+   * verification rejects every chart.</p>
+   *
+   * @param resolvedChart the resolved {@link Artifact} representing
+   * the chart to be verified; never {@code null}
+   *
+   * @param provenance the resolved {@link Artifact} representing its
+   * provenance file; never {@code null}
+   *
+   * @param provenanceBytes the contents of the provenance file; never
+   * {@code null}; must not be modified
+   *
+   * @exception ChartResolverException if the signature is not valid
+   * or not trusted
+   */
+  protected void verifySignature(final Artifact resolvedChart, final Artifact provenance, final byte[] provenanceBytes) throws ChartResolverException {
+    throw new ChartResolverException("No signature verification is available for provenance file " + provenance.getFile());
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Returns the file names under which the supplied resolved chart
+   * may be listed in its provenance file: the name of its file and
+   * the name it has in a Maven repository.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param resolvedChart the resolved {@link Artifact} representing
+   * the chart to be verified; must not be {@code null}
+   *
+   * @return a non-{@code null}, non-empty {@link Set} of file names
+   */
+  private static final Set<String> getFileNames(final Artifact resolvedChart) {
+    assert resolvedChart != null;
+    final Set<String> returnValue = new LinkedHashSet<>();
+    final File file = resolvedChart.getFile();
+    if (file != null) {
+      returnValue.add(file.getName());
+    }
+    final String classifier = resolvedChart.getClassifier();
+    returnValue.add(resolvedChart.getArtifactId() + "-" + resolvedChart.getVersion() +
+                    (classifier == null || classifier.isEmpty() ? "" : "-" + classifier) +
+                    "." + resolvedChart.getExtension());
+    return returnValue;
+  }
+
+  /**
+   * Returns the SHA-256 digests listed in the {@code files} section
+   * of the signed message of the supplied provenance file, indexed by
+   * file name.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param provenance the contents of a provenance file; must not be
+   * {@code null}
+   *
+   * @return a non-{@code null} {@link Map} of digests indexed by file
+   * name
+   *
+   * @exception ChartResolverException if a listed digest is not a
+   * valid hexadecimal SHA-256 digest
+   */
+  private static final Map<String, byte[]> parseDigests(final String provenance) throws ChartResolverException {
+    assert provenance != null;
+    final Map<String, byte[]> returnValue = new HashMap<>();
+    boolean inFiles = false;
+    for (String line : provenance.split("\r?\n")) {
+      if (line.startsWith("-----BEGIN PGP SIGNATURE-----")) {
+        break;
+      }
+      if (line.startsWith("- ")) {
+        // A dash-escaped line of a clear-signed message.
+        line = line.substring(2);
+      }
+      if (line.equals("files:")) {
+        inFiles = true;
+      } else if (inFiles) {
+        if (line.isEmpty() || !Character.isWhitespace(line.charAt(0))) {
+          inFiles = false;
+        } else {
+          final int index = line.indexOf(": " + SHA256_PREFIX);
+          if (index > 0) {
+            String fileName = line.substring(0, index).trim();
+            if (fileName.length() > 1 && (fileName.charAt(0) == '"' || fileName.charAt(0) == '\'') && fileName.charAt(fileName.length() - 1) == fileName.charAt(0)) {
+              fileName = fileName.substring(1, fileName.length() - 1);
+            }
+            returnValue.put(fileName, fromHex(line.substring(index + 2 + SHA256_PREFIX.length()).trim()));
+          }
+        }
+      }
+    }
+    return returnValue;
+  }
+
+  private static final byte[] fromHex(final String hex) throws ChartResolverException {
+    assert hex != null;
+    if (hex.length() != 64) {
+      throw new ChartResolverException("Not a SHA-256 digest: " + hex);
+    }
+    final byte[] returnValue = new byte[32];
+    for (int i = 0; i < returnValue.length; i++) {
+      final int high = Character.digit(hex.charAt(2 * i), 16);
+      final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new ChartResolverException("Not a SHA-256 digest: " + hex);
+      }
+      returnValue[i] = (byte)((high << 4) | low);
+    }
+    return returnValue;
+  }
+
+  static final String toHex(final byte[] bytes) {
+    assert bytes != null;
+    final StringBuilder sb = new StringBuilder(2 * bytes.length);
+    for (final byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+}
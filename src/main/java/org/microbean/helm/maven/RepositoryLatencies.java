@@ -0,0 +1,217 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A thread-safe record of how long each remote repository has
+ * recently taken to answer artifact requests, kept as an
+ * exponentially weighted moving average per repository identifier.
+ *
+ * <p>A {@link MavenRepositoryChartResolver} with {@linkplain
+ * MavenRepositoryChartResolver#setHedgingEnabled(boolean) hedging}
+ * enabled {@linkplain #sort(Collection) orders} its remote
+ * repositories by these averages, so that the fastest repository is
+ * asked first.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#getRepositoryLatencies()
+ */
+public final class RepositoryLatencies {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The default weight given to each new sample.
+   *
+   * @see #RepositoryLatencies(double)
+   */
+  public static final double DEFAULT_WEIGHT = 0.2D;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * The weight, greater than {@code 0} and no greater than {@code 1},
+   * given to each new sample.
+   */
+  private final double weight;
+
+  /**
+   * A {@link ConcurrentMap} of average latencies in nanoseconds
+   * indexed by repository identifier.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<String, Double> averages;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link RepositoryLatencies} that gives each new
+   * sample the {@linkplain #DEFAULT_WEIGHT default weight}.
+   *
+   * @see #RepositoryLatencies(double)
+   */
+  public RepositoryLatencies() {
+    this(DEFAULT_WEIGHT);
+  }
+
+  /**
+   * Creates a new {@link RepositoryLatencies}.
+   *
+   * @param weight the weight given to each new sample; must be
+   * greater than {@code 0} and no greater than {@code 1}; higher
+   * weights forget older samples faster
+   *
+   * @exception IllegalArgumentException if {@code weight} is out of
+   * range
+   */
+  public RepositoryLatencies(final double weight) {
+    super();
+    if (!(weight > 0D && weight <= 1D)) {
+      throw new IllegalArgumentException("weight: " + weight);
+    }
+    this.weight = weight;
+    this.averages = new ConcurrentHashMap<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the average latency, in nanoseconds, of the repository
+   * with the supplied identifier, or {@code -1} if no latency has
+   * been {@linkplain #record(String, long) recorded} for it.
+   *
+   * @param repositoryId the identifier of a repository; may be
+   * {@code null} in which case {@code -1} will be returned
+   *
+   * @return the average latency in nanoseconds, or {@code -1}
+   */
+  public final long getLatencyInNanoseconds(final String repositoryId) {
+    final long returnValue;
+    final Double average = repositoryId == null ? null : this.averages.get(repositoryId);
+    if (average == null) {
+      returnValue = -1L;
+    } else {
+      returnValue = Math.round(average.doubleValue());
+    }
+    return returnValue;
+  }
+
+  /**
+   * Folds the supplied latency into the average latency of the
+   * repository with the supplied identifier.
+   *
+   * @param repositoryId the identifier of a repository; must not be
+   * {@code null}
+   *
+   * @param nanoseconds the number of nanoseconds the repository took
+   * to answer a request; negative values are treated as {@code 0}
+   *
+   * @exception NullPointerException if {@code repositoryId} is
+   * {@code null}
+   */
+  public final void record(final String repositoryId, final long nanoseconds) {
+    Objects.requireNonNull(repositoryId);
+    final double sample = (double)Math.max(0L, nanoseconds);
+    this.averages.merge(repositoryId, sample, (average, ignored) -> average + this.weight * (sample - average));
+  }
+
+  /**
+   * Returns a new {@link List} containing the supplied {@link
+   * RemoteRepository} instances ordered from lowest to highest
+   * average latency.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * <p>Repositories for which no latency has been recorded come
+   * first, so that they are measured, and repositories with equal
+   * latencies keep their relative order.</p>
+   *
+   * @param repositories the {@link RemoteRepository} instances to
+   * order; may be {@code null}
+   *
+   * @return a new, non-{@code null}, mutable {@link List}
+   */
+  public final List<RemoteRepository> sort(final Collection<? extends RemoteRepository> repositories) {
+    final List<RemoteRepository> returnValue;
+    if (repositories == null || repositories.isEmpty()) {
+      returnValue = new ArrayList<>();
+    } else {
+      returnValue = new ArrayList<>(repositories);
+      // Take each latency once, so that samples recorded during the
+      // sort cannot make its comparisons inconsistent.
+      final Map<RemoteRepository, Long> latencies = new IdentityHashMap<>();
+      for (final RemoteRepository repository : returnValue) {
+        latencies.put(repository, this.getLatencyInNanoseconds(repository.getId()));
+      }
+      // List.sort is stable.
+      returnValue.sort((a, b) -> Long.compare(latencies.get(a), latencies.get(b)));
+    }
+    return returnValue;
+  }
+
+  /**
+   * Forgets all recorded latencies.
+   */
+  public final void clear() {
+    this.averages.clear();
+  }
+
+  /**
+   * Returns a {@link String} representation of this {@link
+   * RepositoryLatencies}.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @return a non-{@code null} {@link String}
+   */
+  @Override
+  public final String toString() {
+    return this.averages.toString();
+  }
+
+}
@@ -0,0 +1,570 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+import org.eclipse.aether.transfer.ChecksumFailureException;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+
+/**
+ * A utility class that resolves an {@link ArtifactRequest} by
+ * sending it to each of its remote repositories at once, or nearly
+ * so, and taking the first answer whose checksums, if any, match its
+ * contents.
+ *
+ * <p>Repositories are asked in the order of their {@linkplain
+ * RepositoryLatencies average latencies}, fastest first.  Each
+ * subsequent repository is asked when a hedging delay has elapsed
+ * without an answer, or as soon as every repository asked so far has
+ * failed.  Once an answer is taken, transfers still in progress from
+ * other repositories are cancelled, and repositories not yet asked
+ * are not asked at all.</p>
+ *
+ * <p>Each repository is asked on a thread of its own, never on a
+ * thread belonging to the caller's {@link Executor}, so a race run
+ * from such a thread cannot wait for entrants queued behind it.</p>
+ *
+ * <p>Each repository downloads into a scratch local repository of
+ * its own, and only the answer that is taken is installed into the
+ * session's local repository, so a download that loses the race,
+ * even one that completes after it was decided, never replaces the
+ * winner's file.  Downloads made during a race are not
+ * resumable.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#setHedgingEnabled(boolean)
+ */
+final class RepositoryRace {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The name of the configuration property that tells Maven
+   * Resolver's basic repository connector whether downloads may be
+   * resumed.
+   */
+  private static final String RESUME_DOWNLOADS = "aether.connector.resumeDownloads";
+
+  /**
+   * The {@link Executor} on which repositories are asked.
+   *
+   * <p>Asking a repository mostly means waiting for it, so each
+   * entrant gets a thread, reused once it finishes.</p>
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private static final Executor entrantExecutor = Executors.newCachedThreadPool(runnable -> {
+      final Thread thread = new Thread(runnable, RepositoryRace.class.getName());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+
+  /*
+   * Constructors.
+   */
+
+
+  private RepositoryRace() {
+    super();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  /**
+   * Resolves the supplied {@link ArtifactRequest}, racing its remote
+   * repositories against one another if it names more than one and
+   * its artifact is not already available locally.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param repositorySystem the {@link RepositorySystem} that will
+   * resolve the artifact; must not be {@code null}
+   *
+   * @param session the {@link RepositorySystemSession} governing
+   * resolution; must not be {@code null}
+   *
+   * @param request the {@link ArtifactRequest} to resolve; must not
+   * be {@code null}
+   *
+   * @param latencies the {@link RepositoryLatencies} used to order
+   * the repositories and updated with the time each took; must not
+   * be {@code null}
+   *
+   * @param hedgeDelayInNanoseconds the number of nanoseconds to wait
+   * for an answer before asking the next repository; if not positive
+   * all repositories are asked at once
+   *
+   * @return the {@link ArtifactResult} taken as the answer; never
+   * {@code null}
+   *
+   * @exception NullPointerException if any parameter is {@code null}
+   *
+   * @exception ArtifactResolutionException if no repository could
+   * supply the artifact, if the answer taken could not be installed
+   * into the local repository, or if the calling thread was
+   * interrupted
+   */
+  static final ArtifactResult resolve(final RepositorySystem repositorySystem,
+                                      final RepositorySystemSession session,
+                                      final ArtifactRequest request,
+                                      final RepositoryLatencies latencies,
+                                      final long hedgeDelayInNanoseconds)
+    throws ArtifactResolutionException {
+    Objects.requireNonNull(repositorySystem);
+    Objects.requireNonNull(session);
+    Objects.requireNonNull(request);
+    Objects.requireNonNull(latencies);
+
+    final List<RemoteRepository> repositories = latencies.sort(request.getRepositories());
+    if (repositories.size() < 2 || session.getLocalRepositoryManager() == null || isAvailableLocally(session, request)) {
+      return repositorySystem.resolveArtifact(session, request);
+    }
+
+    final BlockingQueue<Entrant> finished = new LinkedBlockingQueue<>();
+    final List<Entrant> entrants = new ArrayList<>(repositories.size());
+    for (final RemoteRepository repository : repositories) {
+      entrants.add(new Entrant(repositorySystem, session, request, repository, finished));
+    }
+
+    Entrant winner = null;
+    Entrant fallback = null;
+    final List<Exception> exceptions = new ArrayList<>();
+    final List<Entrant> finishedEntrants = new ArrayList<>(entrants.size());
+    int started = 0;
+    int running = 0;
+    long nextStart = System.nanoTime();
+    try {
+      while (winner == null && (started < entrants.size() || running > 0)) {
+        if (started < entrants.size() && (running == 0 || System.nanoTime() - nextStart >= 0L)) {
+          entrantExecutor.execute(entrants.get(started++));
+          running++;
+          nextStart = System.nanoTime() + Math.max(0L, hedgeDelayInNanoseconds);
+        } else {
+          final Entrant entrant;
+          if (started < entrants.size()) {
+            entrant = finished.poll(nextStart - System.nanoTime(), TimeUnit.NANOSECONDS);
+          } else {
+            entrant = finished.take();
+          }
+          if (entrant != null) {
+            running--;
+            latencies.record(entrant.repository.getId(), entrant.elapsedNanoseconds);
+            final ArtifactResult result = entrant.result;
+            if (result != null && result.isResolved()) {
+              if (entrant.listener.corrupted) {
+                if (fallback == null) {
+                  fallback = entrant;
+                }
+              } else {
+                winner = entrant;
+              }
+            } else {
+              if (result != null) {
+                exceptions.addAll(result.getExceptions());
+              }
+              if (entrant.exception != null) {
+                exceptions.add(entrant.exception);
+              }
+            }
+          }
+        }
+      }
+    } catch (final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      exceptions.add(interruptedException);
+    } finally {
+      final long now = System.nanoTime();
+      for (int i = 0; i < started; i++) {
+        final Entrant entrant = entrants.get(i);
+        if (entrant.listener.cancel()) {
+          // The entrant had not finished, so it took at least this
+          // long; it will clean up after itself.
+          latencies.record(entrant.repository.getId(), now - entrant.startNanoseconds);
+        } else {
+          finishedEntrants.add(entrant);
+        }
+      }
+    }
+
+    try {
+      if (winner == null) {
+        winner = fallback;
+      }
+      if (winner == null) {
+        final ArtifactResult result = new ArtifactResult(request);
+        for (final Exception exception : exceptions) {
+          result.addException(exception);
+        }
+        throw new ArtifactResolutionException(Collections.singletonList(result));
+      }
+      return install(session, request, winner);
+    } finally {
+      for (final Entrant entrant : finishedEntrants) {
+        entrant.deleteScratchDirectory();
+      }
+    }
+  }
+
+  /**
+   * Copies the artifact downloaded by the supplied winning {@link
+   * Entrant} from its scratch local repository into the supplied
+   * session's local repository, registers it there, and returns an
+   * {@link ArtifactResult} describing the installed artifact.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param session the {@link RepositorySystemSession} whose {@link
+   * LocalRepositoryManager} should receive the artifact; must not be
+   * {@code null}
+   *
+   * @param request the {@link ArtifactRequest} being resolved; must
+   * not be {@code null}
+   *
+   * @param winner the {@link Entrant} whose answer was taken; must
+   * not be {@code null}
+   *
+   * @return a non-{@code null} {@link ArtifactResult}
+   *
+   * @exception ArtifactResolutionException if the artifact could not
+   * be installed
+   */
+  private static final ArtifactResult install(final RepositorySystemSession session, final ArtifactRequest request, final Entrant winner)
+    throws ArtifactResolutionException {
+    final LocalRepositoryManager localRepositoryManager = session.getLocalRepositoryManager();
+    assert localRepositoryManager != null;
+    final Artifact artifact = winner.result.getArtifact();
+    final String context = request.getRequestContext();
+    final Path target =
+      localRepositoryManager.getRepository().getBasedir().toPath().resolve(localRepositoryManager.getPathForRemoteArtifact(artifact, winner.repository, context));
+    try {
+      final Path directory = target.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      final Path temporaryPath = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+      try {
+        Files.copy(artifact.getFile().toPath(), temporaryPath, StandardCopyOption.REPLACE_EXISTING);
+        try {
+          Files.move(temporaryPath, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException atomicMoveNotSupportedException) {
+          Files.move(temporaryPath, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temporaryPath);
+      }
+    } catch (final IOException ioException) {
+      final ArtifactResult result = new ArtifactResult(request);
+      result.addException(ioException);
+      throw new ArtifactResolutionException(Collections.singletonList(result));
+    }
+    final Artifact installedArtifact = artifact.setFile(target.toFile());
+    localRepositoryManager.add(session, new LocalArtifactRegistration(installedArtifact, winner.repository, Collections.singleton(context)));
+    final ArtifactResult returnValue = new ArtifactResult(request);
+    returnValue.setArtifact(installedArtifact);
+    returnValue.setRepository(winner.repository);
+    for (final Exception exception : winner.result.getExceptions()) {
+      returnValue.addException(exception);
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns {@code true} if the artifact requested by the supplied
+   * {@link ArtifactRequest} is available in the supplied session's
+   * local repository, in which case there is nothing to race for.
+   *
+   * @param session the {@link RepositorySystemSession} whose {@link
+   * LocalRepositoryManager} should be consulted; must not be {@code
+   * null}
+   *
+   * @param request the {@link ArtifactRequest} in question; must not
+   * be {@code null}
+   *
+   * @return {@code true} if the artifact is available locally
+   */
+  private static final boolean isAvailableLocally(final RepositorySystemSession session, final ArtifactRequest request) {
+    final LocalRepositoryManager localRepositoryManager = session.getLocalRepositoryManager();
+    if (localRepositoryManager == null) {
+      return false;
+    }
+    final LocalArtifactResult result =
+      localRepositoryManager.find(session, new LocalArtifactRequest(request.getArtifact(), request.getRepositories(), request.getRequestContext()));
+    return result != null && result.isAvailable();
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A {@link Runnable} that asks a single remote repository for an
+   * artifact, downloading it into a scratch local repository of its
+   * own, and reports back when it has an answer.
+   *
+   * <p>The scratch local repository of an {@link Entrant} that
+   * finishes before its race is decided is deleted by the race;
+   * that of one that is cancelled is deleted by the {@link Entrant}
+   * itself.</p>
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Entrant implements Runnable {
+
+    private final RepositorySystem repositorySystem;
+
+    private final RepositorySystemSession session;
+
+    private final ArtifactRequest request;
+
+    private final RemoteRepository repository;
+
+    private final RaceTransferListener listener;
+
+    private final BlockingQueue<Entrant> finished;
+
+    private volatile Path scratchDirectory;
+
+    private volatile long startNanoseconds;
+
+    private volatile long elapsedNanoseconds;
+
+    private volatile ArtifactResult result;
+
+    private volatile Exception exception;
+
+    private Entrant(final RepositorySystem repositorySystem,
+                    final RepositorySystemSession session,
+                    final ArtifactRequest request,
+                    final RemoteRepository repository,
+                    final BlockingQueue<Entrant> finished) {
+      super();
+      this.repositorySystem = repositorySystem;
+      this.repository = repository;
+      this.listener = new RaceTransferListener(session.getTransferListener(), request.getArtifact());
+      this.session = new DefaultRepositorySystemSession(session)
+        .setTransferListener(this.listener)
+        .setConfigProperty(RESUME_DOWNLOADS, Boolean.FALSE);
+      this.request = new ArtifactRequest(request.getArtifact(), Collections.singletonList(repository), request.getRequestContext());
+      this.request.setTrace(request.getTrace());
+      this.finished = finished;
+      this.startNanoseconds = System.nanoTime();
+    }
+
+    @Override
+    public final void run() {
+      this.startNanoseconds = System.nanoTime();
+      try {
+        this.scratchDirectory = Files.createTempDirectory(RepositoryRace.class.getSimpleName());
+        final DefaultRepositorySystemSession session = new DefaultRepositorySystemSession(this.session);
+        session.setLocalRepositoryManager(this.repositorySystem.newLocalRepositoryManager(session, new LocalRepository(this.scratchDirectory.toFile())));
+        this.result = this.repositorySystem.resolveArtifact(session, this.request);
+      } catch (final IOException ioException) {
+        this.exception = ioException;
+      } catch (final ArtifactResolutionException artifactResolutionException) {
+        this.result = artifactResolutionException.getResult();
+        if (this.result == null) {
+          this.exception = artifactResolutionException;
+        }
+      } catch (final RuntimeException runtimeException) {
+        this.exception = runtimeException;
+      } finally {
+        this.elapsedNanoseconds = System.nanoTime() - this.startNanoseconds;
+        if (this.listener.finish()) {
+          this.finished.add(this);
+        } else {
+          this.deleteScratchDirectory();
+        }
+      }
+    }
+
+    /**
+     * Deletes this {@link Entrant}'s scratch local repository, if it
+     * has one, as thoroughly as possible.
+     */
+    private final void deleteScratchDirectory() {
+      final Path scratchDirectory = this.scratchDirectory;
+      if (scratchDirectory != null) {
+        try {
+          Files.walkFileTree(scratchDirectory, new SimpleFileVisitor<Path>() {
+              @Override
+              public final FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+              }
+
+              @Override
+              public final FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+                Files.deleteIfExists(directory);
+                return FileVisitResult.CONTINUE;
+              }
+            });
+        } catch (final IOException ioException) {
+          // Scratch repositories live in the temporary directory;
+          // whatever is left over is harmless.
+        }
+      }
+    }
+
+  }
+
+  /**
+   * A {@link ChartTransferListener} that cancels its transfers once
+   * the race they belong to has been decided, and that notes whether
+   * the chart archive's checksums did not match.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class RaceTransferListener extends ChartTransferListener {
+
+    private static final int RUNNING = 0;
+
+    private static final int FINISHED = 1;
+
+    private static final int CANCELLED = 2;
+
+    private int state;
+
+    private volatile boolean corrupted;
+
+    private RaceTransferListener(final TransferListener delegate, final Artifact chart) {
+      super(delegate, chart);
+    }
+
+    /**
+     * Marks the entrant using this listener as finished unless its
+     * race has already been decided.
+     *
+     * @return {@code true} if the entrant finished before its race
+     * was decided
+     */
+    private synchronized final boolean finish() {
+      final boolean returnValue = this.state == RUNNING;
+      if (returnValue) {
+        this.state = FINISHED;
+      }
+      return returnValue;
+    }
+
+    /**
+     * Cancels any transfer in progress or yet to start unless the
+     * entrant using this listener has already finished.
+     *
+     * @return {@code true} if the entrant had not finished
+     */
+    private synchronized final boolean cancel() {
+      final boolean returnValue = this.state == RUNNING;
+      if (returnValue) {
+        this.state = CANCELLED;
+      }
+      return returnValue;
+    }
+
+    private synchronized final boolean isCancelled() {
+      return this.state == CANCELLED;
+    }
+
+    @Override
+    public final void transferInitiated(final TransferEvent event) throws TransferCancelledException {
+      if (this.isCancelled()) {
+        throw new TransferCancelledException();
+      }
+      super.transferInitiated(event);
+    }
+
+    @Override
+    public final void transferProgressed(final TransferEvent event) throws TransferCancelledException {
+      if (this.isCancelled()) {
+        throw new TransferCancelledException();
+      }
+      super.transferProgressed(event);
+    }
+
+    @Override
+    public final void transferCorrupted(final TransferEvent event) throws TransferCancelledException {
+      if (this.isChartDownload(event)) {
+        // A repository that publishes no checksums at all is reported
+        // the same way, with no expected checksum; only a mismatch
+        // disqualifies a download.
+        final Exception exception = event.getException();
+        if (!(exception instanceof ChecksumFailureException)) {
+          this.corrupted = true;
+        } else {
+          final String expected = ((ChecksumFailureException)exception).getExpected();
+          if (expected != null && !expected.isEmpty()) {
+            this.corrupted = true;
+          }
+        }
+      }
+      super.transferCorrupted(event);
+    }
+
+  }
+
+}
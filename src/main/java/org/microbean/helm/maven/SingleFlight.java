@@ -0,0 +1,157 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.Objects;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A mechanism that ensures that, for any given key, at most one
+ * unit of work is in progress at any time, and that callers who
+ * request the same work while it is in progress share its result
+ * instead of repeating it.
+ *
+ * <p>Instances of this class are safe for concurrent use by multiple
+ * threads.  No global lock is taken; coordination happens solely
+ * through a {@link ConcurrentHashMap} of {@link
+ * CompletableFuture}s.</p>
+ *
+ * @param <K> the type of key identifying a unit of work
+ *
+ * @param <V> the type of the result of a unit of work
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#resolve(org.eclipse.aether.artifact.Artifact)
+ */
+final class SingleFlight<K, V> {
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * A {@link ConcurrentMap} of {@link CompletableFuture}s
+   * representing units of work currently in progress, indexed by
+   * their keys.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<K, CompletableFuture<V>> calls;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link SingleFlight}.
+   */
+  SingleFlight() {
+    super();
+    this.calls = new ConcurrentHashMap<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * If no unit of work identified by the supplied {@code key} is in
+   * progress, invokes the supplied {@link Callable} on the calling
+   * thread and returns a {@linkplain CompletableFuture#isDone()
+   * completed} {@link CompletableFuture} representing its outcome;
+   * otherwise returns the {@link CompletableFuture} representing the
+   * unit of work already in progress.
+   *
+   * <p>This method never returns {@code null}.</p>
+   *
+   * @param key the key identifying the unit of work; must not be
+   * {@code null}
+   *
+   * @param callable the {@link Callable} performing the unit of
+   * work; must not be {@code null}
+   *
+   * @return a non-{@code null} {@link CompletableFuture}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   */
+  final CompletableFuture<V> execute(final K key, final Callable<? extends V> callable) {
+    Objects.requireNonNull(key);
+    Objects.requireNonNull(callable);
+    final CompletableFuture<V> newCall = new CompletableFuture<>();
+    final CompletableFuture<V> existingCall = this.calls.putIfAbsent(key, newCall);
+    final CompletableFuture<V> returnValue;
+    if (existingCall == null) {
+      this.run(key, newCall, callable);
+      returnValue = newCall;
+    } else {
+      returnValue = existingCall;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns the number of units of work currently in progress.
+   *
+   * @return the number of units of work currently in progress;
+   * never less than zero
+   */
+  final int size() {
+    return this.calls.size();
+  }
+
+  /**
+   * Invokes the supplied {@link Callable}, completes the supplied
+   * {@link CompletableFuture} with its outcome, and removes the
+   * {@link CompletableFuture} from the set of units of work in
+   * progress.
+   *
+   * @param key the key identifying the unit of work; must not be
+   * {@code null}
+   *
+   * @param call the {@link CompletableFuture} representing the unit
+   * of work; must not be {@code null}
+   *
+   * @param callable the {@link Callable} performing the unit of
+   * work; must not be {@code null}
+   */
+  private final void run(final K key, final CompletableFuture<V> call, final Callable<? extends V> callable) {
+    try {
+      call.complete(callable.call());
+    } catch (final Throwable throwable) {
+      call.completeExceptionally(throwable);
+      if (throwable instanceof Error) {
+        throw (Error)throwable;
+      }
+    } finally {
+      this.calls.remove(key, call);
+    }
+  }
+
+}
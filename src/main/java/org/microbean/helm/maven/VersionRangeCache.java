@@ -0,0 +1,228 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.Iterator;
+import java.util.Objects;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.aether.resolution.VersionRangeResult;
+
+/**
+ * A thread-safe, in-memory cache of {@link VersionRangeResult}s,
+ * each of which holds the versions parsed from the {@code
+ * maven-metadata.xml} files of the repositories consulted to produce
+ * it, that forgets its entries after a time-to-live has elapsed.
+ *
+ * <p>Entries are keyed by {@code groupId}, {@code artifactId} and
+ * version constraint only, because repository metadata does not vary
+ * by {@code extension} or {@code classifier}.</p>
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ *
+ * @see MavenRepositoryChartResolver#resolveVersion(org.eclipse.aether.artifact.Artifact)
+ */
+final class VersionRangeCache {
+
+
+  /*
+   * Static fields.
+   */
+
+
+  /**
+   * The number of entries beyond which expired entries are purged
+   * whenever a new entry is added.
+   */
+  private static final int PURGE_THRESHOLD = 256;
+
+
+  /*
+   * Instance fields.
+   */
+
+
+  /**
+   * A {@link ConcurrentMap} of {@link Expiring} {@link
+   * VersionRangeResult}s indexed by {@code
+   * groupId:artifactId:constraint} keys.
+   *
+   * <p>This field is never {@code null}.</p>
+   */
+  private final ConcurrentMap<String, Expiring> results;
+
+
+  /*
+   * Constructors.
+   */
+
+
+  /**
+   * Creates a new {@link VersionRangeCache}.
+   */
+  VersionRangeCache() {
+    super();
+    this.results = new ConcurrentHashMap<>();
+  }
+
+
+  /*
+   * Instance methods.
+   */
+
+
+  /**
+   * Returns the {@link VersionRangeResult} cached under the supplied
+   * coordinates, or {@code null} if there is no such result or it has
+   * expired.
+   *
+   * @param groupId the {@code groupId} of the artifact in question;
+   * must not be {@code null}
+   *
+   * @param artifactId the {@code artifactId} of the artifact in
+   * question; must not be {@code null}
+   *
+   * @param constraint the version constraint that was resolved; must
+   * not be {@code null}
+   *
+   * @return the cached {@link VersionRangeResult}, or {@code null}
+   */
+  final VersionRangeResult get(final String groupId, final String artifactId, final String constraint) {
+    final String key = toKey(groupId, artifactId, constraint);
+    final Expiring expiring = this.results.get(key);
+    final VersionRangeResult returnValue;
+    if (expiring == null) {
+      returnValue = null;
+    } else if (expiring.isExpired(System.nanoTime())) {
+      this.results.remove(key, expiring);
+      returnValue = null;
+    } else {
+      returnValue = expiring.result;
+    }
+    return returnValue;
+  }
+
+  /**
+   * Caches the supplied {@link VersionRangeResult} under the supplied
+   * coordinates for the supplied number of nanoseconds.
+   *
+   * @param groupId the {@code groupId} of the artifact in question;
+   * must not be {@code null}
+   *
+   * @param artifactId the {@code artifactId} of the artifact in
+   * question; must not be {@code null}
+   *
+   * @param constraint the version constraint that was resolved; must
+   * not be {@code null}
+   *
+   * @param result the {@link VersionRangeResult} to cache; must not
+   * be {@code null}
+   *
+   * @param timeToLiveInNanoseconds the number of nanoseconds for
+   * which the supplied {@link VersionRangeResult} may be returned by
+   * the {@link #get(String, String, String)} method; if not positive
+   * nothing is cached
+   *
+   * @exception NullPointerException if {@code result} is {@code null}
+   */
+  final void put(final String groupId, final String artifactId, final String constraint, final VersionRangeResult result, final long timeToLiveInNanoseconds) {
+    Objects.requireNonNull(result);
+    if (timeToLiveInNanoseconds > 0L) {
+      final long now = System.nanoTime();
+      if (this.results.size() >= PURGE_THRESHOLD) {
+        final Iterator<Expiring> iterator = this.results.values().iterator();
+        while (iterator.hasNext()) {
+          if (iterator.next().isExpired(now)) {
+            iterator.remove();
+          }
+        }
+      }
+      this.results.put(toKey(groupId, artifactId, constraint), new Expiring(result, now + timeToLiveInNanoseconds));
+    }
+  }
+
+  /**
+   * Removes the cached {@link VersionRangeResult}s for every version
+   * constraint of the artifact with the supplied coordinates.
+   *
+   * @param groupId the {@code groupId} of the artifact in question;
+   * must not be {@code null}
+   *
+   * @param artifactId the {@code artifactId} of the artifact in
+   * question; must not be {@code null}
+   *
+   * @exception NullPointerException if either parameter is {@code
+   * null}
+   */
+  final void remove(final String groupId, final String artifactId) {
+    // Neither a groupId nor an artifactId may contain a colon.
+    final String prefix = Objects.requireNonNull(groupId) + ':' + Objects.requireNonNull(artifactId) + ':';
+    this.results.keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  /**
+   * Removes all cached {@link VersionRangeResult}s.
+   */
+  final void clear() {
+    this.results.clear();
+  }
+
+
+  /*
+   * Static methods.
+   */
+
+
+  private static final String toKey(final String groupId, final String artifactId, final String constraint) {
+    return Objects.requireNonNull(groupId) + ':' + Objects.requireNonNull(artifactId) + ':' + Objects.requireNonNull(constraint);
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * A {@link VersionRangeResult} paired with the {@link
+   * System#nanoTime()} value after which it is no longer valid.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  private static final class Expiring {
+
+    private final VersionRangeResult result;
+
+    private final long expiresAt;
+
+    private Expiring(final VersionRangeResult result, final long expiresAt) {
+      super();
+      this.result = result;
+      this.expiresAt = expiresAt;
+    }
+
+    private final boolean isExpired(final long now) {
+      return now - this.expiresAt >= 0L;
+    }
+
+  }
+
+}
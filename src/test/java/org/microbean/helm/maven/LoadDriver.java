@@ -0,0 +1,236 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a fixed number of operations across a fixed number of
+ * threads and reports their throughput and latency percentiles.
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+final class LoadDriver {
+
+  private LoadDriver() {
+    super();
+  }
+
+  /**
+   * Runs the supplied {@link Operation} {@code operations} times
+   * across {@code threads} threads, all of which start together, and
+   * returns a {@link Result} describing the run.
+   *
+   * <p>Each invocation of the {@link Operation} receives a distinct
+   * index between {@code 0} (inclusive) and {@code operations}
+   * (exclusive).</p>
+   *
+   * @param threads the number of threads; must be greater than
+   * {@code 0}
+   *
+   * @param operations the number of operations; must not be negative
+   *
+   * @param operation the {@link Operation} to run; must not be {@code
+   * null}
+   *
+   * @return a non-{@code null} {@link Result}
+   *
+   * @exception InterruptedException if the calling thread is
+   * interrupted while waiting for the run to finish
+   */
+  static final Result run(final int threads, final int operations, final Operation operation) throws InterruptedException {
+    Objects.requireNonNull(operation);
+    if (threads <= 0) {
+      throw new IllegalArgumentException("threads: " + threads);
+    }
+    if (operations < 0) {
+      throw new IllegalArgumentException("operations: " + operations);
+    }
+    final long[] latencies = new long[operations];
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    final List<Throwable> errors = new ArrayList<>();
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    final long elapsed;
+    try {
+      final List<Future<?>> futures = new ArrayList<>(threads);
+      for (int i = 0; i < threads; i++) {
+        futures.add(executorService.submit(() -> {
+              start.await();
+              int index;
+              while ((index = next.getAndIncrement()) < operations) {
+                final long operationStart = System.nanoTime();
+                try {
+                  operation.run(index);
+                } catch (final Exception exception) {
+                  failures.incrementAndGet();
+                  synchronized (errors) {
+                    errors.add(exception);
+                  }
+                }
+                latencies[index] = System.nanoTime() - operationStart;
+              }
+              return null;
+            }));
+      }
+      final long runStart = System.nanoTime();
+      start.countDown();
+      for (final Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (final ExecutionException executionException) {
+          throw new IllegalStateException(executionException.getCause());
+        }
+      }
+      elapsed = System.nanoTime() - runStart;
+    } finally {
+      executorService.shutdownNow();
+    }
+    return new Result(threads, latencies, failures.get(), errors, elapsed);
+  }
+
+
+  /*
+   * Inner and nested classes.
+   */
+
+
+  /**
+   * An operation run by a {@link LoadDriver}.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  @FunctionalInterface
+  static interface Operation {
+
+    /**
+     * Performs the operation with the supplied index.
+     *
+     * @param index the index of the operation
+     *
+     * @exception Exception if the operation failed
+     */
+    void run(final int index) throws Exception;
+
+  }
+
+  /**
+   * The outcome of a {@linkplain LoadDriver#run(int, int, Operation)
+   * run}.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   */
+  static final class Result {
+
+    private final int threads;
+
+    private final long[] sortedLatencies;
+
+    private final int failures;
+
+    private final List<Throwable> errors;
+
+    private final long elapsedInNanoseconds;
+
+    private Result(final int threads, final long[] latencies, final int failures, final List<Throwable> errors, final long elapsedInNanoseconds) {
+      super();
+      this.threads = threads;
+      this.sortedLatencies = latencies.clone();
+      Arrays.sort(this.sortedLatencies);
+      this.failures = failures;
+      this.errors = errors;
+      this.elapsedInNanoseconds = elapsedInNanoseconds;
+    }
+
+    final int getOperations() {
+      return this.sortedLatencies.length;
+    }
+
+    final int getFailures() {
+      return this.failures;
+    }
+
+    final List<Throwable> getErrors() {
+      return this.errors;
+    }
+
+    /**
+     * Returns the number of operations completed per second.
+     *
+     * @return the throughput in operations per second
+     */
+    final double getThroughput() {
+      return this.elapsedInNanoseconds <= 0L ? 0D : this.sortedLatencies.length * (double)TimeUnit.SECONDS.toNanos(1L) / this.elapsedInNanoseconds;
+    }
+
+    /**
+     * Returns the latency, in nanoseconds, below which the supplied
+     * fraction of operations completed, using the nearest-rank
+     * method.
+     *
+     * @param fraction a number greater than {@code 0} and no greater
+     * than {@code 1}, such as {@code 0.99} for the 99th percentile
+     *
+     * @return the latency in nanoseconds, or {@code 0} if there were
+     * no operations
+     */
+    final long getLatencyInNanoseconds(final double fraction) {
+      if (!(fraction > 0D && fraction <= 1D)) {
+        throw new IllegalArgumentException("fraction: " + fraction);
+      }
+      final long returnValue;
+      if (this.sortedLatencies.length == 0) {
+        returnValue = 0L;
+      } else {
+        final int rank = (int)Math.ceil(fraction * this.sortedLatencies.length);
+        returnValue = this.sortedLatencies[Math.max(0, rank - 1)];
+      }
+      return returnValue;
+    }
+
+    @Override
+    public final String toString() {
+      return String.format("threads=%d operations=%d failures=%d throughput=%.1f/s p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                           this.threads,
+                           this.getOperations(),
+                           this.failures,
+                           this.getThroughput(),
+                           this.getLatencyInNanoseconds(0.5D) / 1e6D,
+                           this.getLatencyInNanoseconds(0.9D) / 1e6D,
+                           this.getLatencyInNanoseconds(0.99D) / 1e6D,
+                           this.getLatencyInNanoseconds(1D) / 1e6D);
+    }
+
+  }
+
+}
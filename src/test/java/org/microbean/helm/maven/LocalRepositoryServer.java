@@ -0,0 +1,204 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Objects;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A loopback HTTP server that serves a {@code default}-layout Maven
+ * repository from a directory, adding a fixed latency to every
+ * request and optionally limiting the bandwidth of every response,
+ * so that remote resolution can be exercised and measured without a
+ * network.
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+final class LocalRepositoryServer implements Closeable {
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private final Path root;
+
+  private final long latencyInMilliseconds;
+
+  private final long bytesPerSecond;
+
+  private final ExecutorService executorService;
+
+  private final HttpServer httpServer;
+
+  private final AtomicLong requestCount;
+
+  private final AtomicLong bytesServed;
+
+  /**
+   * Creates and starts a new {@link LocalRepositoryServer} on an
+   * ephemeral loopback port.
+   *
+   * @param root the root of the repository to serve; must not be
+   * {@code null}
+   *
+   * @param latencyInMilliseconds the number of milliseconds to wait
+   * before answering each request; negative values are treated as
+   * {@code 0}
+   *
+   * @param bytesPerSecond the maximum rate at which the body of each
+   * response is written; {@code 0} or less means no limit
+   *
+   * @param threads the number of threads serving requests; must be
+   * greater than {@code 0}
+   *
+   * @exception IOException if the server could not be started
+   */
+  LocalRepositoryServer(final Path root, final long latencyInMilliseconds, final long bytesPerSecond, final int threads) throws IOException {
+    super();
+    this.root = Objects.requireNonNull(root).toAbsolutePath().normalize();
+    this.latencyInMilliseconds = Math.max(0L, latencyInMilliseconds);
+    this.bytesPerSecond = Math.max(0L, bytesPerSecond);
+    this.requestCount = new AtomicLong();
+    this.bytesServed = new AtomicLong();
+    this.executorService = Executors.newFixedThreadPool(threads, runnable -> {
+        final Thread thread = new Thread(runnable, "LocalRepositoryServer");
+        thread.setDaemon(true);
+        return thread;
+      });
+    this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.httpServer.createContext("/", this::handle);
+    this.httpServer.setExecutor(this.executorService);
+    this.httpServer.start();
+  }
+
+  /**
+   * Returns the {@link URI} of the served repository, suitable for
+   * use as the URL of a {@link
+   * org.eclipse.aether.repository.RemoteRepository}.
+   *
+   * @return a non-{@code null} {@link URI}
+   */
+  final URI getUri() {
+    final InetSocketAddress address = this.httpServer.getAddress();
+    return URI.create("http://" + address.getHostString() + ":" + address.getPort() + "/");
+  }
+
+  /**
+   * Returns the number of requests this {@link
+   * LocalRepositoryServer} has received.
+   *
+   * @return the number of requests received
+   */
+  final long getRequestCount() {
+    return this.requestCount.get();
+  }
+
+  /**
+   * Returns the number of response body bytes this {@link
+   * LocalRepositoryServer} has written.
+   *
+   * @return the number of bytes served
+   */
+  final long getBytesServed() {
+    return this.bytesServed.get();
+  }
+
+  @Override
+  public final void close() {
+    this.httpServer.stop(0);
+    this.executorService.shutdownNow();
+  }
+
+  private final void handle(final HttpExchange exchange) throws IOException {
+    assert exchange != null;
+    this.requestCount.incrementAndGet();
+    try {
+      if (this.latencyInMilliseconds > 0L) {
+        Thread.sleep(this.latencyInMilliseconds);
+      }
+      final String method = exchange.getRequestMethod();
+      final boolean head = "HEAD".equals(method);
+      if (!head && !"GET".equals(method)) {
+        exchange.sendResponseHeaders(405, -1L);
+        return;
+      }
+      final Path file = this.root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+      if (!file.startsWith(this.root) || !Files.isRegularFile(file)) {
+        exchange.sendResponseHeaders(404, -1L);
+        return;
+      }
+      final long size = Files.size(file);
+      if (head) {
+        exchange.getResponseHeaders().set("Content-Length", String.valueOf(size));
+        exchange.sendResponseHeaders(200, -1L);
+        return;
+      }
+      exchange.sendResponseHeaders(200, size == 0L ? -1L : size);
+      try (final InputStream inputStream = Files.newInputStream(file);
+           final OutputStream outputStream = exchange.getResponseBody()) {
+        this.copy(inputStream, outputStream);
+      }
+    } catch (final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private final void copy(final InputStream inputStream, final OutputStream outputStream) throws InterruptedException, IOException {
+    final byte[] buffer = new byte[CHUNK_SIZE];
+    final long start = System.nanoTime();
+    long written = 0L;
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      if (this.bytesPerSecond > 0L) {
+        // Sleep until the bytes already written plus this chunk fit
+        // within the allowed rate.
+        final long due = start + TimeUnit.SECONDS.toNanos(written + read) / this.bytesPerSecond;
+        final long wait = due - System.nanoTime();
+        if (wait > 0L) {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        }
+      }
+      outputStream.write(buffer, 0, read);
+      written += read;
+    }
+    this.bytesServed.addAndGet(written);
+  }
+
+}
@@ -0,0 +1,422 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.lang.reflect.Proxy;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Random;
+
+import java.util.concurrent.ExecutorService;
+
+import java.util.zip.GZIPOutputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+
+import org.eclipse.aether.impl.DefaultServiceLocator;
+
+import org.eclipse.aether.repository.LocalRepository;
+
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarHeader;
+import org.kamranzafar.jtar.TarOutputStream;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+/**
+ * Generates synthetic {@code tgz} Helm charts of configurable size
+ * and subchart depth, or of caller-supplied contents, and publishes
+ * them, with {@code maven-metadata.xml} files where asked, into
+ * {@code default}-layout Maven repositories on disk, and sets up the
+ * {@link RepositorySystem}s and sessions through which tests resolve
+ * them.
+ *
+ * @author <a href="https://about.me/lairdnelson"
+ * target="_parent">Laird Nelson</a>
+ */
+final class SyntheticCharts {
+
+  /**
+   * The {@code groupId} under which the {@link #publish(Path, String,
+   * String, Map)} method publishes charts.
+   */
+  static final String GROUP_ID = "org.microbean.test";
+
+  private SyntheticCharts() {
+    super();
+  }
+
+  /**
+   * Returns a new {@link RepositorySystem} that can resolve artifacts
+   * from {@code default}-layout repositories reachable through {@code
+   * file:} URLs.
+   *
+   * @return a new {@link RepositorySystem}; never {@code null}
+   *
+   * @exception IllegalStateException if no {@link RepositorySystem}
+   * could be created
+   */
+  static final RepositorySystem newRepositorySystem() {
+    final DefaultServiceLocator serviceLocator = MavenRepositorySystemUtils.newServiceLocator();
+    serviceLocator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+    serviceLocator.addService(TransporterFactory.class, FileTransporterFactory.class);
+    final RepositorySystem returnValue = serviceLocator.getService(RepositorySystem.class);
+    if (returnValue == null) {
+      throw new IllegalStateException("No RepositorySystem could be created");
+    }
+    return returnValue;
+  }
+
+  /**
+   * Returns a new {@link LoadingChartResolver} that loads charts on
+   * the supplied {@link ExecutorService} and cannot resolve anything.
+   *
+   * @param executorService the {@link ExecutorService} the resolver
+   * will use; may be {@code null}
+   *
+   * @return a new {@link LoadingChartResolver}; never {@code null}
+   */
+  static final LoadingChartResolver newLoadingResolver(final ExecutorService executorService) {
+    return new LoadingChartResolver(executorService);
+  }
+
+  /**
+   * Returns a new {@link DefaultRepositorySystemSession} whose local
+   * repository is rooted at the supplied directory.
+   *
+   * @param repositorySystem the {@link RepositorySystem} that will
+   * manage the local repository; must not be {@code null}
+   *
+   * @param localRepository the root of the local repository; must
+   * not be {@code null}
+   *
+   * @return a new {@link DefaultRepositorySystemSession}; never
+   * {@code null}
+   */
+  static final DefaultRepositorySystemSession newSession(final RepositorySystem repositorySystem, final File localRepository) {
+    Objects.requireNonNull(localRepository);
+    final DefaultRepositorySystemSession returnValue = MavenRepositorySystemUtils.newSession();
+    returnValue.setLocalRepositoryManager(repositorySystem.newLocalRepositoryManager(returnValue, new LocalRepository(localRepository)));
+    return returnValue;
+  }
+
+  /**
+   * Returns a new, modifiable {@link Map} of archive entries holding
+   * only the {@code Chart.yaml} of a chart with the supplied name and
+   * version, to which callers may add further entries before {@linkplain
+   * #publish(Path, String, String, Map) publishing} it.
+   *
+   * @param name the chart's name; must not be {@code null}
+   *
+   * @param version the chart's version; must not be {@code null}
+   *
+   * @return a new {@link Map} of entry names to contents; never
+   * {@code null}
+   */
+  static final Map<String, byte[]> chart(final String name, final String version) {
+    final Map<String, byte[]> returnValue = new LinkedHashMap<>();
+    returnValue.put(name + "/Chart.yaml", ("name: " + name + "\nversion: " + version + "\n").getBytes(StandardCharsets.UTF_8));
+    return returnValue;
+  }
+
+  /**
+   * Publishes a chart consisting of only a {@code Chart.yaml} under
+   * the {@link #GROUP_ID} {@code groupId} into the repository rooted
+   * at the supplied {@link Path}.
+   *
+   * @param repository the root of the repository; must not be {@code
+   * null}
+   *
+   * @param name the chart's name, which is also its {@code
+   * artifactId}; must not be {@code null}
+   *
+   * @param version the chart's version; must not be {@code null}
+   *
+   * @return the {@link Path} of the published archive; never {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @see #publish(Path, String, String, Map)
+   */
+  static final Path publish(final Path repository, final String name, final String version) throws IOException {
+    return publish(repository, name, version, chart(name, version));
+  }
+
+  /**
+   * Publishes a {@code tgz} archive of the supplied entries as the
+   * chart with the supplied {@code artifactId} and version under the
+   * {@link #GROUP_ID} {@code groupId} into the repository rooted at
+   * the supplied {@link Path}.
+   *
+   * <p>No checksums and no {@code maven-metadata.xml} file are
+   * written.</p>
+   *
+   * @param repository the root of the repository; must not be {@code
+   * null}
+   *
+   * @param name the chart's {@code artifactId}; must not be {@code
+   * null}
+   *
+   * @param version the chart's version; must not be {@code null}
+   *
+   * @param entries the archive's entries, in order, indexed by their
+   * names; must not be {@code null}
+   *
+   * @return the {@link Path} of the published archive; never {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @see #publishMetadata(Path, String, String...)
+   */
+  static final Path publish(final Path repository, final String name, final String version, final Map<String, byte[]> entries) throws IOException {
+    final Path directory = repository.resolve(GROUP_ID.replace('.', '/')).resolve(name).resolve(version);
+    Files.createDirectories(directory);
+    final Path returnValue = directory.resolve(name + "-" + version + ".tgz");
+    Files.write(returnValue, tgz(entries));
+    return returnValue;
+  }
+
+  /**
+   * Writes a {@code maven-metadata.xml} file listing the supplied
+   * versions, the last of which is the release, for the chart with
+   * the supplied {@code artifactId} under the {@link #GROUP_ID}
+   * {@code groupId} into the repository rooted at the supplied {@link
+   * Path}.
+   *
+   * @param repository the root of the repository; must not be {@code
+   * null}
+   *
+   * @param name the chart's {@code artifactId}; must not be {@code
+   * null}
+   *
+   * @param versions the versions to list; must not be {@code null}
+   * or empty
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  static final void publishMetadata(final Path repository, final String name, final String... versions) throws IOException {
+    final Path artifactDirectory = repository.resolve(GROUP_ID.replace('.', '/')).resolve(name);
+    final StringBuilder metadata = new StringBuilder("<metadata><groupId>" + GROUP_ID + "</groupId><artifactId>" + name + "</artifactId><versioning>");
+    metadata.append("<release>").append(versions[versions.length - 1]).append("</release><versions>");
+    for (final String version : versions) {
+      metadata.append("<version>").append(version).append("</version>");
+    }
+    metadata.append("</versions></versioning></metadata>");
+    Files.createDirectories(artifactDirectory);
+    Files.write(artifactDirectory.resolve("maven-metadata.xml"), metadata.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns a {@code tgz} archive of the supplied entries, such as a
+   * subchart to be packed into another chart.
+   *
+   * @param entries the archive's entries, in order, indexed by their
+   * names; must not be {@code null}
+   *
+   * @return the archive's bytes; never {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   *
+   * @see #tar(Map, OutputStream)
+   */
+  static final byte[] tgz(final Map<String, byte[]> entries) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    tar(entries, new GZIPOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Writes a tape archive of the supplied entries to the supplied
+   * {@link OutputStream}, which may compress it, and closes it.
+   *
+   * <p>An entry whose name ends with {@code /} is written as a
+   * directory entry.</p>
+   *
+   * @param entries the archive's entries, in order, indexed by their
+   * names; must not be {@code null}
+   *
+   * @param outputStream the {@link OutputStream} to write to; must
+   * not be {@code null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  static final void tar(final Map<String, byte[]> entries, final OutputStream outputStream) throws IOException {
+    Objects.requireNonNull(entries);
+    final TarOutputStream tarOutputStream = new TarOutputStream(Objects.requireNonNull(outputStream));
+    for (final Entry<String, byte[]> entry : entries.entrySet()) {
+      final byte[] bytes = entry.getValue();
+      final boolean directory = entry.getKey().endsWith("/");
+      tarOutputStream.putNextEntry(new TarEntry(TarHeader.createHeader(entry.getKey(), bytes.length, 0L, directory, 0644)));
+      tarOutputStream.write(bytes, 0, bytes.length);
+    }
+    tarOutputStream.close();
+  }
+
+  /**
+   * Publishes a synthetic chart for the supplied {@link Artifact},
+   * whose extension must be {@code tgz}, together with its {@code
+   * .sha1} checksum, into the repository rooted at the supplied
+   * {@link Path}.
+   *
+   * @param repository the root of the repository; must not be {@code
+   * null}
+   *
+   * @param chart the {@link Artifact} to publish; must not be {@code
+   * null}
+   *
+   * @param templates the number of templates in each chart and
+   * subchart
+   *
+   * @param templateSize the size in bytes of each template
+   *
+   * @param depth the depth of the subchart tree; {@code 0} means no
+   * subcharts
+   *
+   * @param fanout the number of subcharts each chart above the
+   * bottom of the tree has
+   *
+   * @return the {@link Path} of the published archive; never {@code
+   * null}
+   *
+   * @exception IOException if an input or output error occurs
+   */
+  static final Path publish(final Path repository, final Artifact chart, final int templates, final int templateSize, final int depth, final int fanout) throws IOException {
+    Objects.requireNonNull(repository);
+    if (!"tgz".equals(chart.getExtension())) {
+      throw new IllegalArgumentException("chart: " + chart);
+    }
+    final Path artifactDirectory = repository.resolve(chart.getGroupId().replace('.', '/')).resolve(chart.getArtifactId());
+    final Path directory = artifactDirectory.resolve(chart.getVersion());
+    Files.createDirectories(directory);
+    final Path returnValue = directory.resolve(chart.getArtifactId() + "-" + chart.getVersion() + ".tgz");
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    tar(entries(chart.getArtifactId(), chart.getVersion(), templates, templateSize, depth, fanout), new GZIPOutputStream(bytes));
+    Files.write(returnValue, bytes.toByteArray());
+    Files.write(directory.resolve(returnValue.getFileName() + ".sha1"), sha1(bytes.toByteArray()).getBytes(StandardCharsets.US_ASCII));
+    final String metadata =
+      "<metadata><groupId>" + chart.getGroupId() + "</groupId><artifactId>" + chart.getArtifactId() + "</artifactId>" +
+      "<versioning><release>" + chart.getVersion() + "</release><versions><version>" + chart.getVersion() + "</version></versions></versioning></metadata>";
+    Files.write(artifactDirectory.resolve("maven-metadata.xml"), metadata.getBytes(StandardCharsets.UTF_8));
+    return returnValue;
+  }
+
+  private static final Map<String, byte[]> entries(final String name, final String version, final int templates, final int templateSize, final int depth, final int fanout) throws IOException {
+    final Map<String, byte[]> returnValue = new LinkedHashMap<>();
+    returnValue.put(name + "/Chart.yaml", ("name: " + name + "\nversion: " + version + "\n").getBytes(StandardCharsets.UTF_8));
+    returnValue.put(name + "/values.yaml", "replicaCount: 1\n".getBytes(StandardCharsets.UTF_8));
+    // Use seeded random filler so that archives are reproducible but
+    // do not compress to nothing.
+    final Random random = new Random(name.hashCode());
+    for (int i = 0; i < templates; i++) {
+      final byte[] template = new byte[Math.max(0, templateSize)];
+      for (int j = 0; j < template.length; j++) {
+        template[j] = j % 80 == 79 ? (byte)'\n' : (byte)('a' + random.nextInt(26));
+      }
+      returnValue.put(name + "/templates/template-" + i + ".yaml", template);
+    }
+    if (depth > 0) {
+      for (int i = 0; i < fanout; i++) {
+        final String subchartName = name + "-sub" + i;
+        returnValue.put(name + "/charts/" + subchartName + "-" + version + ".tgz", tgz(entries(subchartName, version, templates, templateSize, depth - 1, fanout)));
+      }
+    }
+    return returnValue;
+  }
+
+  private static final String sha1(final byte[] bytes) {
+    final MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-1");
+    } catch (final NoSuchAlgorithmException noSuchAlgorithmException) {
+      throw new IllegalStateException(noSuchAlgorithmException.getMessage(), noSuchAlgorithmException);
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (final byte b : messageDigest.digest(bytes)) {
+      sb.append(String.format("%02x", b & 0xFF));
+    }
+    return sb.toString();
+  }
+
+
+  /**
+   * A {@link MavenRepositoryChartResolver} whose {@link
+   * RepositorySystem} refuses every request, used to exercise its
+   * {@code loadChart} methods directly.
+   *
+   * @author <a href="https://about.me/lairdnelson"
+   * target="_parent">Laird Nelson</a>
+   *
+   * @see #newLoadingResolver(ExecutorService)
+   */
+  static final class LoadingChartResolver extends MavenRepositoryChartResolver {
+
+    private LoadingChartResolver(final ExecutorService executorService) {
+      super((RepositorySystem)Proxy.newProxyInstance(RepositorySystem.class.getClassLoader(),
+                                                     new Class<?>[] { RepositorySystem.class },
+                                                     (proxy, method, arguments) -> {
+                                                       throw new UnsupportedOperationException(method.getName());
+                                                     }),
+            new DefaultRepositorySystemSession(),
+            null,
+            null,
+            executorService);
+    }
+
+    final Chart.Builder load(final File chartFile, final String packaging) throws ChartResolverException {
+      return this.loadChart(chartFile, packaging);
+    }
+
+    final Chart.Builder load(final byte[] archive, final String packaging) throws ChartResolverException, IOException {
+      return this.loadChart(new ByteArrayInputStream(archive), packaging);
+    }
+
+  }
+}
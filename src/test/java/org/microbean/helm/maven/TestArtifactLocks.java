@@ -0,0 +1,130 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestArtifactLocks {
+
+  private ExecutorService executorService;
+
+  public TestArtifactLocks() {
+    super();
+  }
+
+  @Before
+  public void setUp() {
+    this.executorService = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testDifferentArtifactsDoNotContend() throws Exception {
+    final ArtifactLocks artifactLocks = new ArtifactLocks();
+    final ArtifactLocks.Hold hold = artifactLocks.lock(new DefaultArtifact("org.microbean.test:a:tgz:1.0.0"));
+    try {
+      // However many artifacts there are, none shares a lock with
+      // the one held.
+      for (int i = 0; i < 256; i++) {
+        final DefaultArtifact artifact = new DefaultArtifact("org.microbean.test:b" + i + ":tgz:1.0.0");
+        this.executorService.submit(() -> artifactLocks.lock(artifact).release()).get(10L, TimeUnit.SECONDS);
+      }
+    } finally {
+      hold.release();
+    }
+    assertEquals(0, artifactLocks.size());
+  }
+
+  @Test
+  public void testSameArtifactIsExclusive() throws Exception {
+    final ArtifactLocks artifactLocks = new ArtifactLocks();
+    final ArtifactLocks.Hold hold = artifactLocks.lock(new DefaultArtifact("org.microbean.test:a:tgz:1.0.0"));
+    final CountDownLatch acquired = new CountDownLatch(1);
+    final Future<?> waiter = this.executorService.submit(() -> {
+        final ArtifactLocks.Hold otherHold = artifactLocks.lock(new DefaultArtifact("org.microbean.test:a:tgz:1.0.0"));
+        acquired.countDown();
+        otherHold.release();
+      });
+    try {
+      waiter.get(200L, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (final TimeoutException expected) {
+
+    }
+    assertEquals(1, artifactLocks.size());
+    hold.release();
+    assertTrue(acquired.await(10L, TimeUnit.SECONDS));
+    waiter.get(10L, TimeUnit.SECONDS);
+    assertEquals(0, artifactLocks.size());
+  }
+
+  @Test
+  public void testOverlappingBatchesDoNotDeadlock() throws Exception {
+    final ArtifactLocks artifactLocks = new ArtifactLocks();
+    final List<Artifact> artifacts = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      artifacts.add(new DefaultArtifact("org.microbean.test:a" + i + ":tgz:1.0.0"));
+    }
+    final List<Artifact> reversed = new ArrayList<>(artifacts);
+    Collections.reverse(reversed);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (final List<Artifact> batch : Arrays.asList(artifacts, reversed, artifacts, reversed)) {
+      futures.add(this.executorService.submit(() -> {
+            for (int i = 0; i < 1000; i++) {
+              final List<ArtifactLocks.Hold> holds = artifactLocks.lock(batch);
+              ArtifactLocks.release(holds);
+            }
+          }));
+    }
+    for (final Future<?> future : futures) {
+      future.get(30L, TimeUnit.SECONDS);
+    }
+    assertEquals(0, artifactLocks.size());
+
+    // Equal coordinates are locked once.
+    final List<ArtifactLocks.Hold> holds = artifactLocks.lock(Arrays.asList(artifacts.get(0), new DefaultArtifact("org.microbean.test:a0:tgz:1.0.0")));
+    assertEquals(1, holds.size());
+    ArtifactLocks.release(holds);
+    assertEquals(0, artifactLocks.size());
+  }
+
+}
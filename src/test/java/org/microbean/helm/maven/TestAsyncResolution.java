@@ -0,0 +1,223 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.lang.reflect.Method;
+
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAsyncResolution {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private RepositorySystem repositorySystem;
+
+  private DefaultRepositorySystemSession session;
+
+  private RemoteRepository remoteRepository;
+
+  private ExecutorService executorService;
+
+  public TestAsyncResolution() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    for (final String name : Arrays.asList("alpha", "beta")) {
+      SyntheticCharts.publish(remote, new DefaultArtifact("org.microbean.test", name, "tgz", "1.0.0"), 1, 64, 0, 0);
+    }
+
+    this.repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.session = SyntheticCharts.newSession(this.repositorySystem, this.temporaryFolder.newFolder("local"));
+    this.remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString()).build();
+    this.executorService = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testAsyncResolutionGoesThroughResolve() throws Exception {
+    final List<String> resolved = new CopyOnWriteArrayList<>();
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, this.executorService) {
+        @Override
+        public final Chart.Builder resolve(final Artifact chart) throws ChartResolverException {
+          resolved.add(chart.getArtifactId());
+          return super.resolve(chart);
+        }
+      };
+    assertEquals("alpha", resolver.resolveAsync("org.microbean.test:alpha", "1.0.0").get(30L, TimeUnit.SECONDS).getMetadata().getName());
+    assertEquals(Collections.singletonList("alpha"), resolved);
+    resolver.prefetch(Collections.singletonList("org.microbean.test:beta:tgz:1.0.0")).get(30L, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("alpha", "beta"), resolved);
+  }
+
+  @Test
+  public void testDefaultExecutor() throws Exception {
+    final List<Thread> threads = new CopyOnWriteArrayList<>();
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, null) {
+        @Override
+        public final Chart.Builder resolve(final Artifact chart) throws ChartResolverException {
+          threads.add(Thread.currentThread());
+          return super.resolve(chart);
+        }
+      };
+    final Executor executor = resolver.getExecutor();
+    assertNotNull(executor);
+    assertSame(executor, new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository)).getExecutor());
+
+    assertEquals("alpha", resolver.resolveAsync("org.microbean.test:alpha", "1.0.0").get(30L, TimeUnit.SECONDS).getMetadata().getName());
+    assertEquals(1, threads.size());
+    final Thread thread = threads.get(0);
+    assertNotSame(Thread.currentThread(), thread);
+    Method isVirtual = null;
+    try {
+      isVirtual = Thread.class.getMethod("isVirtual");
+    } catch (final NoSuchMethodException noVirtualThreads) {
+      isVirtual = null;
+    }
+    if (isVirtual == null) {
+      // CompletableFuture may itself swap the common pool for a
+      // thread per task on a single processor, so check only the
+      // selection.
+      assertSame(ForkJoinPool.commonPool(), executor);
+    } else {
+      assertEquals(Boolean.TRUE, isVirtual.invoke(thread));
+    }
+  }
+
+  @Test
+  public void testNoExecutor() throws Exception {
+    final List<String> resolved = new CopyOnWriteArrayList<>();
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, this.executorService) {
+        @Override
+        public final Executor getExecutor() {
+          return null;
+        }
+
+        @Override
+        public final Chart.Builder resolve(final Artifact chart) throws ChartResolverException {
+          resolved.add(chart.getArtifactId());
+          return super.resolve(chart);
+        }
+      };
+    final CompletableFuture<Chart.Builder> future = resolver.resolveAsync("org.microbean.test:alpha", "1.0.0");
+    assertTrue(future.isCompletedExceptionally());
+    final Throwable cause = assertFailsWithChartResolverException(future);
+    assertTrue(cause.getCause() instanceof IllegalStateException);
+    assertTrue(resolved.isEmpty());
+  }
+
+  @Test
+  public void testRejectedExecution() throws Exception {
+    final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    executorService.shutdown();
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, executorService);
+    final CompletableFuture<Chart.Builder> future = resolver.resolveAsync("org.microbean.test:alpha", "1.0.0");
+    assertTrue(future.isCompletedExceptionally());
+    assertTrue(assertFailsWithChartResolverException(future).getCause() instanceof RejectedExecutionException);
+  }
+
+  @Test
+  public void testFailuresCompleteWithChartResolverExceptions() throws Exception {
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, this.executorService);
+
+    final CompletableFuture<Chart.Builder> malformed = resolver.resolveAsync("org.microbean.test", "1.0.0");
+    assertTrue(malformed.isCompletedExceptionally());
+    assertTrue(assertFailsWithChartResolverException(malformed).getCause() instanceof IllegalArgumentException);
+
+    final CompletableFuture<Chart.Builder> missing = resolver.resolveAsync("org.microbean.test:missing", "1.0.0");
+    final ChartResolverException cause = assertFailsWithChartResolverException(missing);
+    assertTrue(MavenRepositoryChartResolver.isNotFound(cause));
+    try {
+      missing.join();
+      fail();
+    } catch (final CompletionException expected) {
+      assertSame(cause, expected.getCause());
+    }
+  }
+
+  private static final ChartResolverException assertFailsWithChartResolverException(final CompletableFuture<?> future) throws InterruptedException {
+    try {
+      future.get(30L, TimeUnit.SECONDS);
+      fail();
+      return null;
+    } catch (final ExecutionException expected) {
+      final Throwable cause = expected.getCause();
+      assertTrue(String.valueOf(cause), cause instanceof ChartResolverException);
+      return (ChartResolverException)cause;
+    } catch (final TimeoutException timeoutException) {
+      throw new AssertionError(timeoutException.getMessage(), timeoutException);
+    }
+  }
+
+}
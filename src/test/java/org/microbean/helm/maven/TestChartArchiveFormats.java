@@ -0,0 +1,188 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestChartArchiveFormats {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ExecutorService executorService;
+
+  private ChartArchiveFormats formats;
+
+  private Map<String, byte[]> entries;
+
+  public TestChartArchiveFormats() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.executorService = Executors.newFixedThreadPool(2);
+    this.formats = new ChartArchiveFormats();
+    this.entries = new LinkedHashMap<>();
+    this.entries.put("formatted/Chart.yaml", "name: formatted\nversion: 1.0.0\n".getBytes(StandardCharsets.UTF_8));
+    this.entries.put("formatted/values.yaml", "replicaCount: 3\n".getBytes(StandardCharsets.UTF_8));
+    for (int i = 0; i < 20; i++) {
+      this.entries.put("formatted/templates/t" + i + ".yaml", ("kind: ConfigMap\nname: t" + i + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testBuiltInPackagings() {
+    for (final String packaging : new String[] { "tgz", "tar.gz", "helm.tar.gz", "tar", "tar.zst", "tzst", "zip", "jar" }) {
+      assertNotNull(packaging, this.formats.get(packaging));
+    }
+    assertSame(this.formats.get("tgz"), this.formats.get("TGZ"));
+    assertNull(this.formats.get("rar"));
+    assertTrue(ChartArchiveFormats.empty().getPackagings().isEmpty());
+  }
+
+  @Test
+  public void testEveryFormatLoadsTheSameChart() throws ChartResolverException, IOException {
+    final Chart expected = this.load("tgz", writeArchive(this.entries, "tgz"), null);
+    assertEquals("formatted", expected.getMetadata().getName());
+    assertEquals(20, expected.getTemplatesCount());
+    for (final String packaging : new String[] { "tgz", "tar", "tar.zst", "zip" }) {
+      final byte[] archive = writeArchive(this.entries, packaging);
+      assertEquals(packaging, expected, this.load(packaging, archive, null));
+      assertEquals(packaging, expected, this.load(packaging, archive, this.executorService));
+    }
+  }
+
+  @Test
+  public void testFileChannel() throws ChartResolverException, IOException {
+    final Path archive = this.temporaryFolder.newFile("formatted.tar.zst").toPath();
+    Files.write(archive, writeArchive(this.entries, "tar.zst"));
+    try (final FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+      assertEquals("formatted", this.formats.get("tar.zst").load(channel, null).getMetadata().getName());
+      assertTrue(channel.isOpen());
+    }
+  }
+
+  @Test
+  public void testRegisteredFormatIsUsedByResolver() throws ChartResolverException, IOException {
+    final Chart.Builder marker = Chart.newBuilder();
+    final ChartArchiveFormats registry = ChartArchiveFormats.empty();
+    registry.register(new ChartArchiveFormat() {
+        @Override
+        public final Set<String> getPackagings() {
+          return Collections.singleton("Custom");
+        }
+
+        @Override
+        public final Chart.Builder load(final ReadableByteChannel channel, final Executor executor) {
+          return marker;
+        }
+      });
+    final SyntheticCharts.LoadingChartResolver resolver = SyntheticCharts.newLoadingResolver(this.executorService);
+    resolver.setChartArchiveFormats(registry);
+    assertSame(marker, resolver.load(new byte[0], "custom"));
+    try {
+      resolver.load(writeArchive(this.entries, "tgz"), "tgz");
+      fail();
+    } catch (final ChartResolverException expected) {
+
+    }
+  }
+
+  private final Chart load(final String packaging, final byte[] archive, final Executor executor) throws ChartResolverException, IOException {
+    final ChartArchiveFormat format = this.formats.get(packaging);
+    assertNotNull(format);
+    return format.load(Channels.newChannel(new ByteArrayInputStream(archive)), executor).build();
+  }
+
+  private static final byte[] writeArchive(final Map<String, byte[]> entries, final String packaging) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    if ("zip".equals(packaging)) {
+      final ZipOutputStream zipOutputStream = new ZipOutputStream(bytes);
+      for (final Entry<String, byte[]> entry : entries.entrySet()) {
+        zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+        zipOutputStream.write(entry.getValue());
+        zipOutputStream.closeEntry();
+      }
+      zipOutputStream.finish();
+      return bytes.toByteArray();
+    }
+    final OutputStream outputStream;
+    if ("tgz".equals(packaging)) {
+      outputStream = new GZIPOutputStream(bytes);
+    } else if ("tar.zst".equals(packaging)) {
+      outputStream = new ZstdOutputStream(bytes);
+    } else {
+      outputStream = bytes;
+    }
+    SyntheticCharts.tar(entries, outputStream);
+    return bytes.toByteArray();
+  }
+
+}
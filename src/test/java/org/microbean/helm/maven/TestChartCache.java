@@ -0,0 +1,114 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class TestChartCache {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  public TestChartCache() {
+    super();
+  }
+
+  @Test
+  public void testHitsMissesAndEvictions() throws IOException {
+    final ChartCache cache = new ChartCache(1);
+    final Artifact a = this.resolved("a", "1.0");
+    final Artifact b = this.resolved("b", "1.0");
+    final Chart chart = Chart.newBuilder().build();
+
+    assertNull(cache.get(a));
+    assertEquals(1L, cache.getMissCount());
+
+    cache.put(a, chart);
+    final Chart.Builder first = cache.get(a);
+    assertNotNull(first);
+    final Chart.Builder second = cache.get(a);
+    assertNotNull(second);
+    assertNotSame(first, second);
+    assertEquals(2L, cache.getHitCount());
+
+    cache.put(b, chart);
+    assertEquals(1, cache.size());
+    assertEquals(1L, cache.getEvictionCount());
+    assertNull(cache.get(a));
+    assertNotNull(cache.get(b));
+  }
+
+  @Test
+  public void testChangedFileIsAMiss() throws IOException {
+    final ChartCache cache = new ChartCache();
+    final Artifact a = this.resolved("a", "1.0");
+    cache.put(a, Chart.newBuilder().build());
+    assertNotNull(cache.get(a));
+    final File file = a.getFile();
+    assertEquals(true, file.setLastModified(file.lastModified() - 10000L));
+    assertNull(cache.get(a));
+  }
+
+  @Test
+  public void testVerifiedEntryWhoseContentsChangedIsAMiss() throws IOException, NoSuchAlgorithmException {
+    final ChartCache cache = new ChartCache();
+    final ChartVerifier chartVerifier = (resolvedChart, resolvedCompanions) -> sha256 -> {};
+    final Artifact a = this.resolved("a", "1.0");
+    final File file = a.getFile();
+    Files.write(file.toPath(), "original".getBytes(StandardCharsets.UTF_8));
+    cache.put(a, Chart.newBuilder().build(), chartVerifier, MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath())));
+    assertNotNull(cache.get(a, chartVerifier));
+    assertEquals(1L, cache.getHitCount());
+
+    // Same length and last modification time, different contents.
+    final long lastModified = file.lastModified();
+    Files.write(file.toPath(), "tampered".getBytes(StandardCharsets.UTF_8));
+    assertEquals(true, file.setLastModified(lastModified));
+    assertNull(cache.get(a, chartVerifier));
+    assertEquals(1L, cache.getMissCount());
+    assertEquals(0, cache.size());
+  }
+
+  private final Artifact resolved(final String artifactId, final String version) throws IOException {
+    final File file = this.temporaryFolder.newFile(artifactId + "-" + version + ".tgz");
+    return new DefaultArtifact("com.example", artifactId, "tgz", version).setFile(file);
+  }
+
+}
@@ -0,0 +1,181 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import hapi.chart.TemplateOuterClass.Template;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestChartContentInterner {
+
+  private static final byte[] COMMON = repeat("common: {{ .Values.common }}\n", 64);
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private RepositorySystem repositorySystem;
+
+  private DefaultRepositorySystemSession session;
+
+  private RemoteRepository remoteRepository;
+
+  public TestChartContentInterner() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    publish(remote, "1.0.0");
+    publish(remote, "2.0.0");
+
+    this.repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.session = SyntheticCharts.newSession(this.repositorySystem, this.temporaryFolder.newFolder("local"));
+    this.remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString()).build();
+  }
+
+  @Test
+  public void testIdenticalContentIsSharedAcrossVersionsAndSubcharts() throws ChartResolverException {
+    final ChartContentInterner interner = new ChartContentInterner();
+    final MavenRepositoryChartResolver resolver = this.newResolver(null);
+    resolver.setChartContentInterner(interner);
+
+    final Chart.Builder one = resolver.resolve("org.microbean.test:interned", "1.0.0");
+    final Chart.Builder two = resolver.resolve("org.microbean.test:interned", "2.0.0");
+
+    final ByteString common = template(one, "templates/common.yaml");
+    assertSame(common, template(two, "templates/common.yaml"));
+    assertSame(common, template(one.getDependenciesBuilder(0), "templates/common.yaml"));
+    assertSame(common, template(two.getDependenciesBuilder(0), "templates/common.yaml"));
+    assertSame(file(one, "README.md"), file(two, "README.md"));
+    assertNotSame(template(one, "templates/version.yaml"), template(two, "templates/version.yaml"));
+
+    // The first version's subchart shares its parent's common
+    // template; the second version shares both common templates and
+    // the README with the first.
+    assertEquals(4L, interner.getHitCount());
+    assertEquals(3L * COMMON.length + readme().length, interner.getBytesShared());
+  }
+
+  @Test
+  public void testCachedChartsAreInterned() throws ChartResolverException {
+    final ChartContentInterner interner = new ChartContentInterner();
+    final ChartCache chartCache = new ChartCache();
+    final MavenRepositoryChartResolver resolver = this.newResolver(chartCache);
+    resolver.setChartContentInterner(interner);
+
+    final ByteString common = template(resolver.resolve("org.microbean.test:interned", "1.0.0"), "templates/common.yaml");
+    assertSame(common, template(resolver.resolve("org.microbean.test:interned", "1.0.0"), "templates/common.yaml"));
+    assertEquals(1L, chartCache.getHitCount());
+    assertSame(common, template(resolver.resolve("org.microbean.test:interned", "2.0.0"), "templates/common.yaml"));
+  }
+
+  @Test
+  public void testSmallContentIsNotInterned() {
+    final ChartContentInterner interner = new ChartContentInterner(8);
+    assertNull(interner.intern((ByteString)null));
+    final ByteString small = ByteString.copyFromUtf8("tiny");
+    assertSame(small, interner.intern(small));
+    assertNotSame(small, interner.intern(ByteString.copyFromUtf8("tiny")));
+    final ByteString large = ByteString.copyFromUtf8("large enough");
+    assertSame(large, interner.intern(large));
+    assertSame(large, interner.intern(large));
+    assertEquals(1, interner.size());
+    assertEquals(0L, interner.getHitCount());
+    assertSame(large, interner.intern(ByteString.copyFromUtf8("large enough")));
+    assertEquals(1L, interner.getHitCount());
+    interner.clear();
+    assertEquals(0, interner.size());
+  }
+
+  private final MavenRepositoryChartResolver newResolver(final ChartCache chartCache) {
+    return new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), chartCache);
+  }
+
+  private static final ByteString template(final Chart.Builder chart, final String name) {
+    for (final Template template : chart.getTemplatesList()) {
+      if (name.equals(template.getName())) {
+        return template.getData();
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private static final ByteString file(final Chart.Builder chart, final String name) {
+    for (final Any file : chart.getFilesList()) {
+      if (name.equals(file.getTypeUrl())) {
+        return file.getValue();
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private static final byte[] readme() {
+    return repeat("An interned chart.\n", 16);
+  }
+
+  private static final byte[] repeat(final String line, final int count) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(line);
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static final void publish(final Path remote, final String version) throws IOException {
+    final Map<String, byte[]> entries = SyntheticCharts.chart("interned", version);
+    entries.put("interned/README.md", readme());
+    entries.put("interned/templates/common.yaml", COMMON);
+    entries.put("interned/templates/version.yaml", repeat("version: " + version + "\n", 16));
+    entries.put("interned/charts/sub/Chart.yaml", ("name: sub\nversion: " + version + "\n").getBytes(StandardCharsets.UTF_8));
+    entries.put("interned/charts/sub/templates/common.yaml", Arrays.copyOf(COMMON, COMMON.length));
+    SyntheticCharts.publish(remote, "interned", version, entries);
+  }
+
+}
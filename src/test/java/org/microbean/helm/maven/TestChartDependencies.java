@@ -0,0 +1,172 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class TestChartDependencies {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path remote;
+
+  private List<String> loadedFiles;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestChartDependencies() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.remote = this.temporaryFolder.newFolder("remote").toPath();
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder("remote", "default", this.remote.toUri().toString()).build();
+
+    this.loadedFiles = new CopyOnWriteArrayList<>();
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Collections.singletonList(remoteRepository)) {
+        @Override
+        protected final Chart.Builder loadChart(final File chartFile, final String packaging) throws ChartResolverException {
+          loadedFiles.add(chartFile.getName());
+          return super.loadChart(chartFile, packaging);
+        }
+      };
+    this.resolver.setDependencyResolutionEnabled(true);
+  }
+
+  @Test
+  public void testTransitiveRequirementsAreResolvedOnceAndAttached() throws ChartResolverException, IOException {
+    this.publish("common", "1.0.0", null, null);
+    this.publish("database", "1.0.0", "- name: common\n  version: 1.0.0\n", null);
+    this.publish("database", "1.2.0", "- name: common\n  version: 1.0.0\n", null);
+    this.publish("database", "2.0.0", null, null);
+    SyntheticCharts.publishMetadata(this.remote, "database", "1.0.0", "1.2.0", "2.0.0");
+    this.publish("cache", "2.0.0", "- name: common\n  version: \"1.0.0\"\n", null);
+    this.publish("app", "1.0.0",
+                 "- name: database\n  version: ^1.0.0\n" +
+                 "- name: cache\n  version: 2.0.0\n  alias: redis\n" +
+                 "- name: logging\n  version: 3.0.0\n",
+                 "logging");
+
+    final Chart app = this.resolver.resolve("org.microbean.test:app", "1.0.0").build();
+    assertEquals(3, app.getDependenciesCount());
+
+    final Map<String, Chart> subcharts = new LinkedHashMap<>();
+    for (final Chart subchart : app.getDependenciesList()) {
+      subcharts.put(subchart.getMetadata().getName(), subchart);
+    }
+    assertNotNull(subcharts.get("logging"));
+    assertEquals("1.2.0", subcharts.get("database").getMetadata().getVersion());
+    assertEquals("common", subcharts.get("database").getDependencies(0).getMetadata().getName());
+    assertEquals("2.0.0", subcharts.get("redis").getMetadata().getVersion());
+    assertEquals("common", subcharts.get("redis").getDependencies(0).getMetadata().getName());
+
+    final List<String> commonLoads = new ArrayList<>();
+    for (final String loadedFile : this.loadedFiles) {
+      if (loadedFile.startsWith("common-")) {
+        commonLoads.add(loadedFile);
+      }
+    }
+    assertEquals(Collections.singletonList("common-1.0.0.tgz"), commonLoads);
+  }
+
+  @Test
+  public void testAliasedVendoredRequirementIsNotResolved() throws ChartResolverException, IOException {
+    // metrics is not published, so it must not be looked for.
+    this.publish("dashboard", "1.0.0", "- name: metrics\n  version: 3.0.0\n  alias: monitoring\n", "metrics");
+    final Chart dashboard = this.resolver.resolve("org.microbean.test:dashboard", "1.0.0").build();
+    assertEquals(1, dashboard.getDependenciesCount());
+    assertEquals("metrics", dashboard.getDependencies(0).getMetadata().getName());
+  }
+
+  @Test
+  public void testCircularRequirementsAreRejected() throws IOException {
+    this.publish("chicken", "1.0.0", "- name: egg\n  version: 1.0.0\n", null);
+    this.publish("egg", "1.0.0", "- name: chicken\n  version: 1.0.0\n", null);
+    try {
+      this.resolver.resolve("org.microbean.test:chicken", "1.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+
+    }
+  }
+
+  @Test
+  public void testVersionConstraintTranslation() {
+    assertEquals("LATEST", HelmVersionConstraints.toMavenVersion(null));
+    assertEquals("LATEST", HelmVersionConstraints.toMavenVersion("*"));
+    assertEquals("1.2.3", HelmVersionConstraints.toMavenVersion("1.2.3"));
+    assertEquals("[1.2,1.3)", HelmVersionConstraints.toMavenVersion("1.2.x"));
+    assertEquals("[1.2.3,1.3)", HelmVersionConstraints.toMavenVersion("~1.2.3"));
+    assertEquals("[1.2.3,2)", HelmVersionConstraints.toMavenVersion("^1.2.3"));
+    assertEquals("[0.2.3,0.3)", HelmVersionConstraints.toMavenVersion("^0.2.3"));
+    assertEquals("[1.0,2.0)", HelmVersionConstraints.toMavenVersion(">=1.0 <2.0"));
+    assertEquals("(1.0,)", HelmVersionConstraints.toMavenVersion(">1.0"));
+    assertEquals("[1.0,2.0]", HelmVersionConstraints.toMavenVersion("1.0 - 2.0"));
+    assertEquals("[1.0],[2,3)", HelmVersionConstraints.toMavenVersion("1.0 || 2.x"));
+    assertEquals("[1.0,2.0)", HelmVersionConstraints.toMavenVersion("[1.0,2.0)"));
+  }
+
+  private final void publish(final String name, final String version, final String dependencies, final String vendoredSubchart) throws IOException {
+    final Map<String, byte[]> entries = SyntheticCharts.chart(name, version);
+    if (dependencies != null) {
+      entries.put(name + "/requirements.yaml", ("dependencies:\n" + dependencies).getBytes(StandardCharsets.UTF_8));
+    }
+    if (vendoredSubchart != null) {
+      entries.put(name + "/charts/" + vendoredSubchart + "/Chart.yaml", ("name: " + vendoredSubchart + "\nversion: 3.0.0\n").getBytes(StandardCharsets.UTF_8));
+    }
+    SyntheticCharts.publish(this.remote, name, version, entries);
+  }
+
+}
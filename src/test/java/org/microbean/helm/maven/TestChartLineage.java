@@ -0,0 +1,228 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Path;
+
+import java.util.Collections;
+import java.util.Map;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.protobuf.ByteString;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import hapi.chart.TemplateOuterClass.Template;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestChartLineage {
+
+  private static final String COORDINATES = "org.microbean.test:lineage";
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private RepositorySystem repositorySystem;
+
+  private DefaultRepositorySystemSession session;
+
+  private RemoteRepository remoteRepository;
+
+  private ExecutorService executorService;
+
+  public TestChartLineage() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    publish(remote, "4.0.208", "aaaa");
+    publish(remote, "4.0.209", "bbbb");
+
+    this.repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.session = SyntheticCharts.newSession(this.repositorySystem, this.temporaryFolder.newFolder("local"));
+    this.remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString()).build();
+    this.executorService = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testUnchangedEntriesAreReused() throws ChartResolverException {
+    final ChartLineage chartLineage = new ChartLineage();
+    final MavenRepositoryChartResolver resolver = this.newResolver();
+    resolver.setChartLineage(chartLineage);
+
+    final Chart.Builder previous = resolver.resolve(COORDINATES, "4.0.208");
+    assertEquals(0L, chartLineage.getReusedEntryCount());
+    assertEquals(0L, chartLineage.getReusedSubchartCount());
+    assertEquals("4.0.208", chartLineage.getVersion(new DefaultArtifact(COORDINATES + ":tgz:4.0.209")));
+
+    final Chart.Builder next = resolver.resolve(COORDINATES, "4.0.209");
+    assertEquals("4.0.209", chartLineage.getVersion(new DefaultArtifact(COORDINATES + ":tgz:1.0.0")));
+
+    // The common template, the README and the packed subchart are
+    // unchanged; Chart.yaml and the edited template are not.
+    assertEquals(3L, chartLineage.getReusedEntryCount());
+    assertEquals(1L, chartLineage.getReusedSubchartCount());
+    assertSame(template(previous, "templates/common.yaml"), template(next, "templates/common.yaml"));
+    assertSame(template(previous.getDependenciesBuilder(0), "templates/sub.yaml"), template(next.getDependenciesBuilder(0), "templates/sub.yaml"));
+    assertNotSame(template(previous, "templates/edited.yaml"), template(next, "templates/edited.yaml"));
+    assertEquals("edited: bbbb\n", template(next, "templates/edited.yaml").toStringUtf8());
+
+    // The result is the same as a full load.
+    assertEquals(this.newResolver().resolve(COORDINATES, "4.0.209").build(), next.build());
+    assertEquals("4.0.209", next.getMetadata().getVersion());
+
+    chartLineage.invalidate("org.microbean.test", "lineage");
+    assertEquals(0, chartLineage.size());
+    assertNull(chartLineage.getVersion(new DefaultArtifact(COORDINATES + ":tgz:4.0.209")));
+  }
+
+  @Test
+  public void testParallelLoadingThroughLineage() throws ChartResolverException {
+    final ChartLineage chartLineage = new ChartLineage(1);
+    final MavenRepositoryChartResolver resolver = this.newResolver();
+    resolver.setParallelLoadingEnabled(true);
+    resolver.setChartLineage(chartLineage);
+
+    resolver.resolve(COORDINATES, "4.0.208");
+    final Chart.Builder next = resolver.resolve(COORDINATES, "4.0.209");
+    assertEquals(1L, chartLineage.getReusedSubchartCount());
+    assertEquals(this.newResolver().resolve(COORDINATES, "4.0.209").build(), next.build());
+    assertEquals(1, chartLineage.size());
+  }
+
+  @Test
+  public void testOverriddenLoadChartBypassesLineage() throws ChartResolverException {
+    final ChartLineage chartLineage = new ChartLineage();
+    final AtomicInteger loads = new AtomicInteger();
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, this.executorService) {
+        @Override
+        protected final Chart.Builder loadChart(final File chartFile, final String extension) throws ChartResolverException {
+          loads.incrementAndGet();
+          return super.loadChart(chartFile, extension);
+        }
+      };
+    resolver.setChartLineage(chartLineage);
+
+    resolver.resolve(COORDINATES, "4.0.208");
+    final Chart.Builder next = resolver.resolve(COORDINATES, "4.0.209");
+    assertEquals(2, loads.get());
+    assertEquals(0, chartLineage.size());
+    assertEquals(0L, chartLineage.getReusedEntryCount());
+    assertEquals(this.newResolver().resolve(COORDINATES, "4.0.209").build(), next.build());
+  }
+
+  @Test
+  public void testIsLoadChartOverridden() {
+    assertFalse(MavenRepositoryChartResolver.isLoadChartOverridden(MavenRepositoryChartResolver.class));
+    assertFalse(MavenRepositoryChartResolver.isLoadChartOverridden(this.newResolver().getClass()));
+    assertTrue(MavenRepositoryChartResolver.isLoadChartOverridden(StreamLoadingResolver.class));
+    assertTrue(MavenRepositoryChartResolver.isLoadChartOverridden(SubStreamLoadingResolver.class));
+  }
+
+  private final MavenRepositoryChartResolver newResolver() {
+    return new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, this.executorService);
+  }
+
+  private static final ByteString template(final Chart.Builder chart, final String name) {
+    for (final Template template : chart.getTemplatesList()) {
+      if (name.equals(template.getName())) {
+        return template.getData();
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private static final void publish(final Path remote, final String version, final String edit) throws IOException {
+    final Map<String, byte[]> subchart = SyntheticCharts.chart("sub", "1.0.0");
+    subchart.put("sub/templates/sub.yaml", utf8("sub: {{ .Values.sub }}\n"));
+
+    final Map<String, byte[]> entries = SyntheticCharts.chart("lineage", version);
+    entries.put("lineage/README.md", utf8("A chart with a lineage.\n"));
+    entries.put("lineage/templates/common.yaml", utf8("common: {{ .Values.common }}\n"));
+    entries.put("lineage/templates/edited.yaml", utf8("edited: " + edit + "\n"));
+    entries.put("lineage/charts/sub-1.0.0.tgz", SyntheticCharts.tgz(subchart));
+    SyntheticCharts.publish(remote, "lineage", version, entries);
+  }
+
+  private static final byte[] utf8(final String contents) {
+    return contents.getBytes(StandardCharsets.UTF_8);
+  }
+
+
+  private static class StreamLoadingResolver extends MavenRepositoryChartResolver {
+
+    private StreamLoadingResolver(final RepositorySystem repositorySystem, final DefaultRepositorySystemSession session) {
+      super(repositorySystem, session, null);
+    }
+
+    @Override
+    protected Chart.Builder loadChart(final InputStream inputStream, final String extension) throws IOException, ChartResolverException {
+      return super.loadChart(inputStream, extension);
+    }
+
+  }
+
+  private static final class SubStreamLoadingResolver extends StreamLoadingResolver {
+
+    private SubStreamLoadingResolver(final RepositorySystem repositorySystem, final DefaultRepositorySystemSession session) {
+      super(repositorySystem, session);
+    }
+
+  }
+
+}
@@ -0,0 +1,240 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.stream.Stream;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestChartLoadLimits {
+
+  private static final String COORDINATES = "org.microbean.test:large";
+
+  private static final int BLOB_SIZE = 200 * 1024;
+
+  private static final int SUBCHART_TEMPLATE_SIZE = 50 * 1024;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private RepositorySystem repositorySystem;
+
+  private DefaultRepositorySystemSession session;
+
+  private RemoteRepository remoteRepository;
+
+  private ExecutorService executorService;
+
+  public TestChartLoadLimits() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    publish(remote);
+
+    this.repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.session = SyntheticCharts.newSession(this.repositorySystem, this.temporaryFolder.newFolder("local"));
+    this.remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString()).build();
+    this.executorService = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testLargeEntriesAreSpilled() throws ChartResolverException, IOException {
+    final Path spillDirectory = this.temporaryFolder.newFolder("spill").toPath();
+    for (final String packaging : new String[] { "tgz", "zip" }) {
+      for (final boolean parallel : new boolean[] { false, true }) {
+        final ChartLoadLimits chartLoadLimits = new ChartLoadLimits(1024L * 1024L, 10L * 1024L * 1024L, 10L * 1024L * 1024L, 16L * 1024L, spillDirectory);
+        final MavenRepositoryChartResolver resolver = this.newResolver();
+        resolver.setParallelLoadingEnabled(parallel);
+        resolver.setChartLoadLimits(chartLoadLimits);
+        final Chart.Builder chart = resolver.resolve(COORDINATES + ":" + packaging, "1.0.0");
+        assertEquals(this.newResolver().resolve(COORDINATES + ":" + packaging, "1.0.0").build(), chart.build());
+        // The blob, the packed subchart and the subchart's template
+        // are all larger than the spill threshold.
+        assertEquals(3L, chartLoadLimits.getSpillCount());
+        assertEquals(0L, chartLoadLimits.getMemoryInUse());
+        try (final Stream<Path> spilled = Files.list(spillDirectory)) {
+          assertFalse(spilled.findAny().isPresent());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEntrySizeLimit() {
+    final MavenRepositoryChartResolver resolver = this.newResolver();
+    resolver.setChartLoadLimits(new ChartLoadLimits(BLOB_SIZE - 1L, 10L * 1024L * 1024L, 10L * 1024L * 1024L, Long.MAX_VALUE));
+    try {
+      resolver.resolve(COORDINATES, "1.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("large/files/blob.bin exceeds the maximum entry size"));
+    }
+  }
+
+  @Test
+  public void testChartSizeLimit() {
+    final ChartLoadLimits chartLoadLimits = new ChartLoadLimits(1024L * 1024L, BLOB_SIZE + 1024L, 10L * 1024L * 1024L, 16L * 1024L);
+    final MavenRepositoryChartResolver resolver = this.newResolver();
+    resolver.setParallelLoadingEnabled(true);
+    resolver.setChartLoadLimits(chartLoadLimits);
+    try {
+      resolver.resolve(COORDINATES, "1.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("exceeds the maximum decompressed size"));
+    }
+    assertEquals(0L, chartLoadLimits.getMemoryInUse());
+  }
+
+  @Test
+  public void testExhaustedBudgetAppliesBackpressure() throws Exception {
+    final ChartLoadLimits chartLoadLimits = new ChartLoadLimits(1024L * 1024L, 10L * 1024L * 1024L, 1024L, 16L * 1024L);
+    final MavenRepositoryChartResolver resolver = this.newResolver();
+    resolver.setChartLoadLimits(chartLoadLimits);
+    final CompletableFuture<Chart.Builder> future;
+    try (final ChartLoadLimits.Load held = chartLoadLimits.begin()) {
+      held.charge("held", 1024L);
+      assertEquals(1024L, chartLoadLimits.getMemoryInUse());
+      future = CompletableFuture.supplyAsync(() -> {
+          try {
+            return resolver.resolve(COORDINATES, "1.0.0");
+          } catch (final ChartResolverException chartResolverException) {
+            throw new IllegalStateException(chartResolverException);
+          }
+        }, this.executorService);
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+      while (chartLoadLimits.getWaitCount() == 0L && System.nanoTime() < deadline) {
+        Thread.sleep(10L);
+      }
+      assertEquals(1L, chartLoadLimits.getWaitCount());
+      assertFalse(future.isDone());
+    }
+    assertEquals("large", future.get(10L, TimeUnit.SECONDS).getMetadata().getName());
+    assertEquals(0L, chartLoadLimits.getMemoryInUse());
+  }
+
+  @Test
+  public void testParallelLoadsOnABoundedExecutorWithAnExhaustedBudget() throws Exception {
+    final ChartLoadLimits chartLoadLimits = new ChartLoadLimits(1024L * 1024L, 10L * 1024L * 1024L, 1024L, 16L * 1024L);
+    final MavenRepositoryChartResolver resolver = this.newResolver();
+    resolver.setParallelLoadingEnabled(true);
+    resolver.setChartLoadLimits(chartLoadLimits);
+    final CompletableFuture<Chart.Builder> tgz;
+    final CompletableFuture<Chart.Builder> zip;
+    try (final ChartLoadLimits.Load held = chartLoadLimits.begin()) {
+      held.charge("held", 1024L);
+      // Both of the executor's threads wait for the budget, and are
+      // then admitted together.
+      tgz = resolver.resolveAsync(COORDINATES + ":tgz", "1.0.0");
+      zip = resolver.resolveAsync(COORDINATES + ":zip", "1.0.0");
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+      while (chartLoadLimits.getWaitCount() < 2L && System.nanoTime() < deadline) {
+        Thread.sleep(10L);
+      }
+      assertEquals(2L, chartLoadLimits.getWaitCount());
+    }
+    assertEquals("large", tgz.get(10L, TimeUnit.SECONDS).getMetadata().getName());
+    assertEquals("large", zip.get(10L, TimeUnit.SECONDS).getMetadata().getName());
+    assertEquals(0L, chartLoadLimits.getMemoryInUse());
+  }
+
+  private final MavenRepositoryChartResolver newResolver() {
+    return new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, this.executorService);
+  }
+
+  private static final void publish(final Path remote) throws IOException {
+    final Random random = new Random(25L);
+    final byte[] blob = new byte[BLOB_SIZE];
+    random.nextBytes(blob);
+    final byte[] subchartTemplate = new byte[SUBCHART_TEMPLATE_SIZE];
+    random.nextBytes(subchartTemplate);
+
+    final Map<String, byte[]> subchart = SyntheticCharts.chart("sub", "1.0.0");
+    subchart.put("sub/templates/sub.yaml", subchartTemplate);
+
+    final Map<String, byte[]> entries = SyntheticCharts.chart("large", "1.0.0");
+    entries.put("large/templates/small.yaml", "small: {{ .Values.small }}\n".getBytes(StandardCharsets.UTF_8));
+    entries.put("large/files/blob.bin", blob);
+    entries.put("large/charts/sub-1.0.0.tgz", SyntheticCharts.tgz(subchart));
+    final Path tgz = SyntheticCharts.publish(remote, "large", "1.0.0", entries);
+
+    // The same chart, packaged as a zip archive.
+    final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+    try (final ZipOutputStream zipOutputStream = new ZipOutputStream(zip)) {
+      for (final Entry<String, byte[]> entry : entries.entrySet()) {
+        put(zipOutputStream, entry.getKey(), entry.getValue());
+      }
+    }
+    Files.write(tgz.resolveSibling("large-1.0.0.zip"), zip.toByteArray());
+  }
+
+  private static final void put(final ZipOutputStream zipOutputStream, final String name, final byte[] bytes) throws IOException {
+    zipOutputStream.putNextEntry(new ZipEntry(name));
+    zipOutputStream.write(bytes, 0, bytes.length);
+    zipOutputStream.closeEntry();
+  }
+
+}
@@ -0,0 +1,120 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Collections;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class TestChartResolverMetrics {
+
+  private static final int SIZE = 64 * 1024;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private MeterRegistry registry;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestChartResolverMetrics() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    final Path directory = remote.resolve("org/microbean/test/measured/1.0.0");
+    Files.createDirectories(directory);
+    Files.write(directory.resolve("measured-1.0.0.tgz"), new byte[SIZE]);
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString()).build();
+
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Collections.singletonList(remoteRepository)) {
+        @Override
+        protected final Chart.Builder loadChart(final File chartFile, final String packaging) {
+          return Chart.newBuilder();
+        }
+      };
+    this.registry = new SimpleMeterRegistry();
+    this.resolver.setMetrics(new MicrometerChartResolverMetrics(this.registry));
+  }
+
+  @Test
+  public void testPhasesBytesAndCacheLookupsAreRecorded() throws ChartResolverException {
+    assertNotNull(this.resolver.resolve(new DefaultArtifact("org.microbean.test", "measured", "", "tgz", "1.0.0")));
+    assertEquals(1L, this.timerCount("transfer", "remote"));
+    assertEquals(1L, this.timerCount("resolve", "remote"));
+    assertEquals(1L, this.timerCount("load", "remote"));
+    assertEquals((double)SIZE, this.registry.get(MicrometerChartResolverMetrics.TRANSFER_SUMMARY).tag("repository", "remote").tag("packaging", "tgz").summary().totalAmount(), 0.0);
+    assertEquals(1.0, this.registry.get(MicrometerChartResolverMetrics.CACHE_COUNTER).tag("result", "miss").counter().count(), 0.0);
+
+    // The second resolution finds the chart in the local repository
+    // and then in the cache.
+    assertNotNull(this.resolver.resolve(new DefaultArtifact("org.microbean.test", "measured", "", "tgz", "1.0.0")));
+    assertEquals(1L, this.timerCount("transfer", "remote"));
+    assertEquals(1.0, this.registry.get(MicrometerChartResolverMetrics.CACHE_COUNTER).tag("result", "hit").counter().count(), 0.0);
+  }
+
+  @Test
+  public void testFailuresAreRecordedByExceptionType() {
+    try {
+      this.resolver.resolve(new DefaultArtifact("org.microbean.test", "missing", "", "tgz", "1.0.0"));
+      fail();
+    } catch (final ChartResolverException expected) {
+
+    }
+    assertEquals(1.0, this.registry.get(MicrometerChartResolverMetrics.FAILURE_COUNTER).tag("exception", "ArtifactResolutionException").tag("packaging", "tgz").counter().count(), 0.0);
+  }
+
+  private final long timerCount(final String phase, final String repositoryId) {
+    return this.registry.get(MicrometerChartResolverMetrics.RESOLUTION_TIMER).tag("phase", phase).tag("repository", repositoryId).timer().count();
+  }
+
+}
@@ -0,0 +1,157 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestChartResolverPool {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ExecutorService executorService;
+
+  private DefaultRepositorySystemSession template;
+
+  private RemoteRepository shared;
+
+  private RemoteRepository tenantOnly;
+
+  private ChartResolverPool pool;
+
+  public TestChartResolverPool() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.executorService = Executors.newFixedThreadPool(4);
+
+    final Path sharedRemote = this.temporaryFolder.newFolder("shared").toPath();
+    for (int i = 0; i < 8; i++) {
+      SyntheticCharts.publish(sharedRemote, "chart" + i, "1.0.0");
+    }
+    final Path tenantRemote = this.temporaryFolder.newFolder("tenant").toPath();
+    SyntheticCharts.publish(tenantRemote, "private", "1.0.0");
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.template = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    this.template.setCache(null);
+    this.shared = new RemoteRepository.Builder("shared", "default", sharedRemote.toUri().toString()).build();
+    this.tenantOnly = new RemoteRepository.Builder("tenant", "default", tenantRemote.toUri().toString()).build();
+    this.pool = new ChartResolverPool(repositorySystem, this.template, Collections.singletonList(this.shared), new ChartCache(), this.executorService);
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testSessionIsSharedAndReadOnly() {
+    final MavenRepositoryChartResolver a = this.pool.getResolver("a");
+    final MavenRepositoryChartResolver b = this.pool.getResolver("b");
+    assertSame(a, this.pool.getResolver("a"));
+    assertNotSame(a, b);
+    assertEquals(2, this.pool.size());
+    assertSame(a.getSession(), b.getSession());
+    assertSame(this.pool.getSession(), a.getSession());
+    assertNotNull(a.getSession().getCache());
+    assertSame(a.getChartCache(), b.getChartCache());
+    assertNull(this.template.getCache());
+    try {
+      ((DefaultRepositorySystemSession)a.getSession()).setOffline(true);
+      fail();
+    } catch (final IllegalStateException expected) {
+
+    }
+    this.pool.release("a");
+    assertEquals(1, this.pool.size());
+    assertNotSame(a, this.pool.getResolver("a"));
+  }
+
+  @Test
+  public void testTenantRepositories() throws ChartResolverException {
+    final List<RemoteRepository> repositories = new ArrayList<>();
+    repositories.add(this.tenantOnly);
+    repositories.add(this.shared);
+    final MavenRepositoryChartResolver tenant = this.pool.getResolver("t", repositories);
+    assertSame(tenant, this.pool.getResolver("t", new ArrayList<>(repositories)));
+    assertNotSame(tenant, this.pool.getResolver("t"));
+    assertEquals("private", tenant.resolve("org.microbean.test:private", "1.0.0").getMetadata().getName());
+    assertEquals("chart0", tenant.resolve("org.microbean.test:chart0", "1.0.0").getMetadata().getName());
+    try {
+      this.pool.getResolver("u").resolve("org.microbean.test:private", "1.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+
+    }
+  }
+
+  @Test
+  public void testConcurrentTenants() {
+    final List<CompletableFuture<String>> names = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      final String tenant = "tenant" + (i % 5);
+      final String chart = "chart" + (i % 8);
+      names.add(CompletableFuture.supplyAsync(() -> {
+            try {
+              return this.pool.getResolver(tenant).resolve("org.microbean.test:" + chart, "1.0.0").getMetadata().getName();
+            } catch (final ChartResolverException chartResolverException) {
+              throw new IllegalStateException(chartResolverException);
+            }
+          }, this.executorService));
+    }
+    for (int i = 0; i < names.size(); i++) {
+      assertEquals("chart" + (i % 8), names.get(i).join());
+    }
+    assertEquals(5, this.pool.size());
+  }
+
+}
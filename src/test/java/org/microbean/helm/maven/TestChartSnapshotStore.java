@@ -0,0 +1,155 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.nio.file.attribute.FileTime;
+
+import java.util.Arrays;
+
+import com.google.protobuf.ByteString;
+
+import hapi.chart.ChartOuterClass.Chart;
+import hapi.chart.MetadataOuterClass.Metadata;
+import hapi.chart.TemplateOuterClass.Template;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestChartSnapshotStore {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ChartSnapshotStore chartSnapshotStore = new ChartSnapshotStore();
+
+  private Path chartPath;
+
+  private Chart chart;
+
+  public TestChartSnapshotStore() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.chartPath = this.temporaryFolder.getRoot().toPath().resolve("snapshot-1.0.0.tgz");
+    Files.write(this.chartPath, "not really an archive".getBytes(StandardCharsets.UTF_8));
+    this.chart = Chart.newBuilder()
+      .setMetadata(Metadata.newBuilder().setName("snapshot").setVersion("1.0.0"))
+      .addTemplates(Template.newBuilder().setName("templates/snapshot.yaml").setData(ByteString.copyFromUtf8("snapshot: {{ .Values.snapshot }}\n")).build())
+      .build();
+    this.chartSnapshotStore.write(this.chartPath, this.chart);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    assertEquals(this.chart, this.chartSnapshotStore.read(this.chartPath));
+    assertTrue(this.chartSnapshotStore.delete(this.chartPath));
+    assertNull(this.chartSnapshotStore.read(this.chartPath));
+  }
+
+  @Test
+  public void testTouchedButUnchangedArchiveIsAccepted() throws IOException {
+    this.touch();
+    assertEquals(this.chart, this.chartSnapshotStore.read(this.chartPath));
+  }
+
+  @Test
+  public void testArchiveOfDifferentLengthIsRejected() throws IOException {
+    final FileTime lastModifiedTime = Files.getLastModifiedTime(this.chartPath);
+    Files.write(this.chartPath, "not really an archive, and longer".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(this.chartPath, lastModifiedTime);
+    assertNull(this.chartSnapshotStore.read(this.chartPath));
+  }
+
+  @Test
+  public void testArchiveWithDifferentDigestIsRejected() throws IOException {
+    Files.write(this.chartPath, "NOT REALLY AN ARCHIVE".getBytes(StandardCharsets.UTF_8));
+    this.touch();
+    assertNull(this.chartSnapshotStore.read(this.chartPath));
+  }
+
+  @Test
+  public void testTruncatedSnapshotIsRejected() throws IOException {
+    final Path snapshotPath = this.chartSnapshotStore.getSnapshotPath(this.chartPath);
+    final long size = Files.size(snapshotPath);
+    // Truncated within the chart, within the digest and within the
+    // header.
+    for (final long truncatedSize : new long[] { size - 1L, 40L, 10L, 0L }) {
+      try (final FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.WRITE)) {
+        channel.truncate(truncatedSize);
+      }
+      assertNull(this.chartSnapshotStore.read(this.chartPath));
+    }
+  }
+
+  @Test
+  public void testCorruptSnapshotIsRejected() throws IOException {
+    final Path snapshotPath = this.chartSnapshotStore.getSnapshotPath(this.chartPath);
+    final byte[] bytes = Files.readAllBytes(snapshotPath);
+    final int chartSize = this.chart.getSerializedSize();
+    Arrays.fill(bytes, bytes.length - chartSize, bytes.length, (byte)0xFF);
+    Files.write(snapshotPath, bytes);
+    assertNull(this.chartSnapshotStore.read(this.chartPath));
+  }
+
+  @Test
+  public void testBadMagicNumberIsRejected() throws IOException {
+    this.overwriteInt(0, 0xCAFEBABE);
+    assertNull(this.chartSnapshotStore.read(this.chartPath));
+  }
+
+  @Test
+  public void testUnknownFormatVersionIsRejected() throws IOException {
+    this.overwriteInt(4, 1);
+    assertNull(this.chartSnapshotStore.read(this.chartPath));
+  }
+
+  private final void touch() throws IOException {
+    final FileTime lastModifiedTime = Files.getLastModifiedTime(this.chartPath);
+    Files.setLastModifiedTime(this.chartPath, FileTime.fromMillis(lastModifiedTime.toMillis() + 10000L));
+  }
+
+  private final void overwriteInt(final long position, final int value) throws IOException {
+    try (final FileChannel channel = FileChannel.open(this.chartSnapshotStore.getSnapshotPath(this.chartPath), StandardOpenOption.WRITE)) {
+      final ByteBuffer buffer = ByteBuffer.allocate(4);
+      buffer.putInt(value);
+      buffer.flip();
+      channel.write(buffer, position);
+    }
+  }
+
+}
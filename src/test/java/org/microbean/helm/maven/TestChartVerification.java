@@ -0,0 +1,276 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Collections;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestChartVerification {
+
+  private static final String COORDINATES = "org.microbean.test:verified";
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private RepositorySystem repositorySystem;
+
+  private DefaultRepositorySystemSession session;
+
+  private RemoteRepository remoteRepository;
+
+  private Path local;
+
+  private byte[] sha256;
+
+  public TestChartVerification() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException, NoSuchAlgorithmException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    this.sha256 = publish(remote, "1.0.0", null, null);
+    publish(remote, "2.0.0", new byte[32], null);
+    publish(remote, "3.0.0", null, null);
+    Files.delete(remote.resolve("org/microbean/test/verified/3.0.0/verified-3.0.0.tgz.prov"));
+    publish(remote, "4.0.0", null, "other-4.0.0.tgz");
+
+    this.repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.local = this.temporaryFolder.newFolder("local").toPath();
+    this.session = SyntheticCharts.newSession(this.repositorySystem, this.local.toFile());
+    this.remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString()).build();
+  }
+
+  @Test
+  public void testVerifiedChartIsCachedWithItsDigest() throws ChartResolverException {
+    final CountingProvenanceChartVerifier chartVerifier = new CountingProvenanceChartVerifier();
+    final ChartCache chartCache = new ChartCache();
+    final MavenRepositoryChartResolver resolver = this.newResolver(chartCache);
+    resolver.setChartVerifier(chartVerifier);
+
+    final Chart.Builder chart = resolver.resolve(COORDINATES, "1.0.0");
+    assertEquals("verified", chart.getMetadata().getName());
+    assertEquals(1, chartVerifier.verifications.get());
+
+    // A warm hit is not verified again.
+    assertEquals(chart.build(), resolver.resolve(COORDINATES, "1.0.0").build());
+    assertEquals(1, chartVerifier.verifications.get());
+    assertEquals(1L, chartCache.getHitCount());
+
+    assertArrayEquals(this.sha256, chartCache.getSha256(this.resolvedChart("1.0.0")));
+  }
+
+  @Test
+  public void testUnverifiedCachedChartIsVerified() throws ChartResolverException {
+    final ChartCache chartCache = new ChartCache();
+    final MavenRepositoryChartResolver resolver = this.newResolver(chartCache);
+    resolver.resolve(COORDINATES, "1.0.0");
+    assertNull(chartCache.getSha256(this.resolvedChart("1.0.0")));
+
+    final CountingProvenanceChartVerifier chartVerifier = new CountingProvenanceChartVerifier();
+    resolver.setChartVerifier(chartVerifier);
+    resolver.resolve(COORDINATES, "1.0.0");
+    assertEquals(1, chartVerifier.verifications.get());
+    assertEquals(0L, chartCache.getHitCount());
+    assertArrayEquals(this.sha256, chartCache.getSha256(this.resolvedChart("1.0.0")));
+  }
+
+  @Test
+  public void testMismatchedDigestIsRejected() throws ChartResolverException {
+    final ChartCache chartCache = new ChartCache();
+    final MavenRepositoryChartResolver resolver = this.newResolver(chartCache);
+    resolver.setChartVerifier(new CountingProvenanceChartVerifier());
+    try {
+      resolver.resolve(COORDINATES, "2.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertEquals(true, expected.getMessage().contains("is not listed in provenance file"));
+    }
+    assertEquals(0, chartCache.size());
+  }
+
+  @Test
+  public void testMetadataIsVerified() throws ChartResolverException {
+    final ChartCache chartCache = new ChartCache();
+    final MavenRepositoryChartResolver resolver = this.newResolver(chartCache);
+    resolver.resolve(COORDINATES, "2.0.0");
+    assertEquals(1, chartCache.size());
+
+    // The cached chart was not verified, so it is not used, and the
+    // archive's digest is not the one listed.
+    resolver.setChartVerifier(new CountingProvenanceChartVerifier());
+    try {
+      resolver.resolveMetadata(COORDINATES, "2.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertEquals(true, expected.getMessage().contains("is not listed in provenance file"));
+    }
+    assertEquals("verified", resolver.resolveMetadata(COORDINATES, "1.0.0").getName());
+  }
+
+  @Test
+  public void testDigestListedForAnotherFileIsRejected() throws ChartResolverException {
+    final MavenRepositoryChartResolver resolver = this.newResolver(null);
+    resolver.setChartVerifier(new CountingProvenanceChartVerifier());
+    try {
+      resolver.resolve(COORDINATES, "4.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertEquals(true, expected.getMessage().contains("lists no SHA-256 digest for"));
+    }
+  }
+
+  @Test
+  public void testUnsignedVerificationFailsClosed() throws ChartResolverException {
+    final ChartCache chartCache = new ChartCache();
+    final MavenRepositoryChartResolver resolver = this.newResolver(chartCache);
+    resolver.setChartVerifier(new ProvenanceChartVerifier());
+    try {
+      resolver.resolve(COORDINATES, "1.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertEquals(true, expected.getMessage().contains("No signature verification"));
+    }
+    assertEquals(0, chartCache.size());
+  }
+
+  @Test(expected = ChartResolverException.class)
+  public void testMissingProvenanceFileIsRejected() throws ChartResolverException {
+    final MavenRepositoryChartResolver resolver = this.newResolver(null);
+    resolver.setChartVerifier(new CountingProvenanceChartVerifier());
+    resolver.resolve(COORDINATES, "3.0.0");
+  }
+
+  @Test
+  public void testVerificationReadsEachByteOnceWhileLoading() throws ChartResolverException {
+    final AtomicLong updated = new AtomicLong();
+    final AtomicInteger verified = new AtomicInteger();
+    final ChartVerifier chartVerifier = (resolvedChart, resolvedCompanions) -> new ChartVerifier.Verification() {
+        @Override
+        public final void update(final byte[] bytes, final int offset, final int length) {
+          updated.addAndGet(length);
+        }
+
+        @Override
+        public final void verify(final byte[] sha256) {
+          assertArrayEquals(TestChartVerification.this.sha256, sha256);
+          verified.incrementAndGet();
+        }
+      };
+    for (final boolean lineage : new boolean[] { false, true }) {
+      updated.set(0L);
+      final MavenRepositoryChartResolver resolver = this.newResolver(null);
+      resolver.setChartVerifier(chartVerifier);
+      if (lineage) {
+        resolver.setChartLineage(new ChartLineage());
+      }
+      assertEquals("verified", resolver.resolve(COORDINATES, "1.0.0").getMetadata().getName());
+      assertEquals(this.resolvedChart("1.0.0").getFile().length(), updated.get());
+    }
+    assertEquals(2, verified.get());
+  }
+
+  private final MavenRepositoryChartResolver newResolver(final ChartCache chartCache) {
+    return new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), chartCache);
+  }
+
+  private final Artifact resolvedChart(final String version) {
+    final Artifact returnValue = new DefaultArtifact(COORDINATES + ":tgz:" + version);
+    return returnValue.setFile(this.local.resolve("org/microbean/test/verified/" + version + "/verified-" + version + ".tgz").toFile());
+  }
+
+  private static final byte[] publish(final Path remote, final String version, final byte[] listedDigest, final String listedFileName) throws IOException, NoSuchAlgorithmException {
+    final Map<String, byte[]> entries = SyntheticCharts.chart("verified", version);
+    entries.put("verified/templates/verified.yaml", "verified: {{ .Values.verified }}\n".getBytes(StandardCharsets.UTF_8));
+    final Path chart = SyntheticCharts.publish(remote, "verified", version, entries);
+    final byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(chart));
+
+    final String provenance =
+      "-----BEGIN PGP SIGNED MESSAGE-----\n" +
+      "Hash: SHA512\n" +
+      "\n" +
+      "apiVersion: v1\n" +
+      "name: verified\n" +
+      "version: " + version + "\n" +
+      "\n" +
+      "...\n" +
+      "files:\n" +
+      "  " + (listedFileName == null ? "verified-" + version + ".tgz" : listedFileName) + ": sha256:" + ProvenanceChartVerifier.toHex(listedDigest == null ? sha256 : listedDigest) + "\n" +
+      "-----BEGIN PGP SIGNATURE-----\n" +
+      "\n" +
+      "wsBcBAEBCgAQBQJZ\n" +
+      "-----END PGP SIGNATURE-----\n";
+
+    Files.write(chart.resolveSibling(chart.getFileName() + ".prov"), provenance.getBytes(StandardCharsets.UTF_8));
+    return sha256;
+  }
+
+  private static final class CountingProvenanceChartVerifier extends ProvenanceChartVerifier {
+
+    private final AtomicInteger verifications;
+
+    private CountingProvenanceChartVerifier() {
+      super();
+      this.verifications = new AtomicInteger();
+    }
+
+    @Override
+    protected final void verifySignature(final Artifact resolvedChart, final Artifact provenance, final byte[] provenanceBytes) {
+      assertEquals("tgz.prov", provenance.getExtension());
+      this.verifications.incrementAndGet();
+    }
+
+  }
+
+}
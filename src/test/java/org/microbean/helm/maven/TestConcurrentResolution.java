@@ -0,0 +1,182 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+
+import java.lang.reflect.Proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestConcurrentResolution {
+
+  private static final int CALLERS = 16;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  public TestConcurrentResolution() {
+    super();
+  }
+
+  @Test
+  public void testConcurrentCallersShareOneTransferAndOneParse() throws Exception {
+    final File chartFile = this.temporaryFolder.newFile("ingress-4.0.208-helm.tar.gz");
+    final CountDownLatch allCallersStarted = new CountDownLatch(CALLERS);
+    final AtomicInteger transfers = new AtomicInteger();
+    final AtomicInteger parses = new AtomicInteger();
+
+    final RepositorySystem repositorySystem =
+      (RepositorySystem)Proxy.newProxyInstance(RepositorySystem.class.getClassLoader(),
+                                               new Class<?>[] { RepositorySystem.class },
+                                               (proxy, method, arguments) -> {
+                                                 if (!"resolveArtifact".equals(method.getName())) {
+                                                   throw new UnsupportedOperationException(method.getName());
+                                                 }
+                                                 transfers.incrementAndGet();
+                                                 // Hold the transfer open until every caller
+                                                 // has arrived, and then a little longer so
+                                                 // that they are all waiting on it.
+                                                 assertTrue(allCallersStarted.await(10L, TimeUnit.SECONDS));
+                                                 Thread.sleep(200L);
+                                                 final ArtifactRequest request = (ArtifactRequest)arguments[1];
+                                                 return new ArtifactResult(request).setArtifact(request.getArtifact().setFile(chartFile));
+                                               });
+
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(repositorySystem, new DefaultRepositorySystemSession(), null, null) {
+        @Override
+        protected final Chart.Builder loadChart(final File chartFile, final String packaging) throws ChartResolverException {
+          parses.incrementAndGet();
+          return Chart.newBuilder();
+        }
+      };
+
+    final Artifact chart = new DefaultArtifact("io.fabric8.platform.packages", "ingress", "helm", "tar.gz", "4.0.208");
+    final ExecutorService executorService = Executors.newFixedThreadPool(CALLERS);
+    try {
+      final List<Future<Chart.Builder>> futures = new ArrayList<>();
+      for (int i = 0; i < CALLERS; i++) {
+        futures.add(executorService.submit(() -> {
+              allCallersStarted.countDown();
+              return resolver.resolve(chart);
+            }));
+      }
+      for (final Future<Chart.Builder> future : futures) {
+        assertNotNull(future.get(30L, TimeUnit.SECONDS));
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertEquals(1, transfers.get());
+    assertEquals(1, parses.get());
+  }
+
+  @Test
+  public void testConcurrentCallersEachGetTheirOwnException() throws Exception {
+    final CountDownLatch allCallersStarted = new CountDownLatch(CALLERS);
+    final AtomicInteger transfers = new AtomicInteger();
+
+    final RepositorySystem repositorySystem =
+      (RepositorySystem)Proxy.newProxyInstance(RepositorySystem.class.getClassLoader(),
+                                               new Class<?>[] { RepositorySystem.class },
+                                               (proxy, method, arguments) -> {
+                                                 if (!"resolveArtifact".equals(method.getName())) {
+                                                   throw new UnsupportedOperationException(method.getName());
+                                                 }
+                                                 transfers.incrementAndGet();
+                                                 assertTrue(allCallersStarted.await(10L, TimeUnit.SECONDS));
+                                                 Thread.sleep(200L);
+                                                 final ArtifactRequest request = (ArtifactRequest)arguments[1];
+                                                 throw new ArtifactResolutionException(Collections.singletonList(new ArtifactResult(request)), "Simulated failure");
+                                               });
+
+    final MavenRepositoryChartResolver resolver = new MavenRepositoryChartResolver(repositorySystem, new DefaultRepositorySystemSession(), null, null);
+
+    final Artifact chart = new DefaultArtifact("io.fabric8.platform.packages", "ingress", "helm", "tar.gz", "4.0.208");
+    final Set<Throwable> exceptions = Collections.newSetFromMap(new IdentityHashMap<>());
+    final Set<Throwable> causes = Collections.newSetFromMap(new IdentityHashMap<>());
+    final ExecutorService executorService = Executors.newFixedThreadPool(CALLERS);
+    try {
+      final List<Future<Chart.Builder>> futures = new ArrayList<>();
+      for (int i = 0; i < CALLERS; i++) {
+        futures.add(executorService.submit(() -> {
+              allCallersStarted.countDown();
+              return resolver.resolve(chart);
+            }));
+      }
+      for (final Future<Chart.Builder> future : futures) {
+        try {
+          future.get(30L, TimeUnit.SECONDS);
+          fail();
+        } catch (final ExecutionException expected) {
+          final Throwable exception = expected.getCause();
+          assertTrue(exception instanceof ChartResolverException);
+          exceptions.add(exception);
+          causes.add(exception.getCause());
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertEquals(1, transfers.get());
+    // Every caller got a distinct exception wrapping the one failure.
+    assertEquals(CALLERS, exceptions.size());
+    assertEquals(1, causes.size());
+    assertTrue(causes.iterator().next() instanceof ChartResolverException);
+  }
+
+}
@@ -0,0 +1,280 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.List;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+
+import org.eclipse.aether.impl.DefaultServiceLocator;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+
+import org.eclipse.aether.transfer.NoTransporterException;
+
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestHedgedResolution {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final CountDownLatch slowRepositoryGate = new CountDownLatch(1);
+
+  private final CountDownLatch slowRepositoryFinished = new CountDownLatch(1);
+
+  private Path fastRemote;
+
+  private Path local;
+
+  private ExecutorService executorService;
+
+  private RepositorySystem repositorySystem;
+
+  private DefaultRepositorySystemSession session;
+
+  private RemoteRepository slow;
+
+  private RemoteRepository fast;
+
+  private RemoteRepository empty;
+
+  public TestHedgedResolution() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.executorService = Executors.newCachedThreadPool();
+
+    // The slow repository serves a different archive under the same
+    // coordinates, so a losing download can be told apart.
+    final Path slowRemote = this.temporaryFolder.newFolder("slow").toPath();
+    SyntheticCharts.publish(slowRemote, "hedged", "1.0.0", SyntheticCharts.chart("loser", "1.0.0"));
+    final Path fastRemote = this.temporaryFolder.newFolder("fast").toPath();
+    SyntheticCharts.publish(fastRemote, "hedged", "1.0.0");
+    this.fastRemote = fastRemote;
+    final Path emptyRemote = this.temporaryFolder.newFolder("empty").toPath();
+
+    final DefaultServiceLocator serviceLocator = MavenRepositorySystemUtils.newServiceLocator();
+    serviceLocator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+    serviceLocator.setServices(TransporterFactory.class,
+                               new GatedTransporterFactory("slow", this.slowRepositoryGate, this.slowRepositoryFinished),
+                               new FileTransporterFactory());
+    this.repositorySystem = serviceLocator.getService(RepositorySystem.class);
+
+    this.local = this.temporaryFolder.newFolder("local").toPath();
+    this.session = SyntheticCharts.newSession(this.repositorySystem, this.local.toFile());
+    this.slow = new RemoteRepository.Builder("slow", "default", slowRemote.toUri().toString()).build();
+    this.fast = new RemoteRepository.Builder("fast", "default", fastRemote.toUri().toString()).build();
+    this.empty = new RemoteRepository.Builder("empty", "default", emptyRemote.toUri().toString()).build();
+  }
+
+  @After
+  public void tearDown() {
+    this.slowRepositoryGate.countDown();
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testFirstAnswerIsTaken() throws ChartResolverException {
+    final MavenRepositoryChartResolver resolver = this.newResolver(this.slow, this.fast);
+    resolver.setHedgingEnabled(true);
+    final long start = System.nanoTime();
+    assertEquals("hedged", resolver.resolve("org.microbean.test:hedged", "1.0.0").getMetadata().getName());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10L));
+    final RepositoryLatencies latencies = resolver.getRepositoryLatencies();
+    assertTrue(latencies.getLatencyInNanoseconds("fast") >= 0L);
+    assertTrue(latencies.getLatencyInNanoseconds("slow") >= 0L);
+  }
+
+  @Test
+  public void testLosingDownloadIsNotInstalled() throws ChartResolverException, InterruptedException, IOException {
+    final MavenRepositoryChartResolver resolver = this.newResolver(this.slow, this.fast);
+    resolver.setHedgingEnabled(true);
+    assertEquals("hedged", resolver.resolve("org.microbean.test:hedged", "1.0.0").getMetadata().getName());
+
+    // Let the slow repository's download, which has already been
+    // transferred in full, complete after the race was decided.
+    this.slowRepositoryGate.countDown();
+    assertTrue(this.slowRepositoryFinished.await(30L, TimeUnit.SECONDS));
+    Thread.sleep(500L);
+    final String path = "org/microbean/test/hedged/1.0.0/hedged-1.0.0.tgz";
+    assertTrue(Arrays.equals(Files.readAllBytes(this.fastRemote.resolve(path)), Files.readAllBytes(this.local.resolve(path))));
+  }
+
+  @Test
+  public void testHedgingFromABoundedExecutor() throws Exception {
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    try {
+      final MavenRepositoryChartResolver resolver =
+        new MavenRepositoryChartResolver(this.repositorySystem, this.session, Arrays.asList(this.slow, this.fast), null, executorService);
+      resolver.setHedgingEnabled(true);
+      assertEquals("hedged", resolver.resolveAsync("org.microbean.test:hedged", "1.0.0").get(30L, TimeUnit.SECONDS).getMetadata().getName());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailuresAskTheNextRepositoryAtOnce() throws ChartResolverException {
+    final MavenRepositoryChartResolver resolver = this.newResolver(this.empty, this.fast);
+    resolver.setHedgingEnabled(true);
+    resolver.setHedgeDelayInMilliseconds(TimeUnit.MINUTES.toMillis(1L));
+    final long start = System.nanoTime();
+    assertEquals("hedged", resolver.resolve("org.microbean.test:hedged", "1.0.0").getMetadata().getName());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30L));
+    assertTrue(resolver.getRepositoryLatencies().getLatencyInNanoseconds("empty") >= 0L);
+  }
+
+  @Test
+  public void testNoRepositoryHasTheChart() {
+    final MavenRepositoryChartResolver resolver = this.newResolver(this.empty, this.fast);
+    resolver.setHedgingEnabled(true);
+    try {
+      resolver.resolve("org.microbean.test:missing", "1.0.0");
+      fail();
+    } catch (final ChartResolverException expected) {
+
+    }
+    assertTrue(resolver.getRepositoryLatencies().getLatencyInNanoseconds("fast") >= 0L);
+  }
+
+  @Test
+  public void testRepositoriesAreSortedByLatency() {
+    final RepositoryLatencies latencies = new RepositoryLatencies(0.5D);
+    latencies.record("slow", 1000L);
+    latencies.record("slow", 3000L);
+    assertEquals(2000L, latencies.getLatencyInNanoseconds("slow"));
+    latencies.record("fast", 10L);
+    assertEquals(-1L, latencies.getLatencyInNanoseconds("empty"));
+    final List<RemoteRepository> sorted = latencies.sort(Arrays.asList(this.slow, this.fast, this.empty));
+    assertSame(this.empty, sorted.get(0));
+    assertSame(this.fast, sorted.get(1));
+    assertSame(this.slow, sorted.get(2));
+  }
+
+  private final MavenRepositoryChartResolver newResolver(final RemoteRepository... remoteRepositories) {
+    return new MavenRepositoryChartResolver(this.repositorySystem, this.session, Arrays.asList(remoteRepositories), null, this.executorService);
+  }
+
+  private static final class GatedTransporterFactory implements TransporterFactory {
+
+    private final String repositoryId;
+
+    private final CountDownLatch gate;
+
+    private final CountDownLatch finished;
+
+    private final FileTransporterFactory delegate;
+
+    private GatedTransporterFactory(final String repositoryId, final CountDownLatch gate, final CountDownLatch finished) {
+      super();
+      this.repositoryId = repositoryId;
+      this.gate = gate;
+      this.finished = finished;
+      this.delegate = new FileTransporterFactory();
+    }
+
+    @Override
+    public final float getPriority() {
+      return 10.0F;
+    }
+
+    @Override
+    public final Transporter newInstance(final RepositorySystemSession session, final RemoteRepository repository) throws NoTransporterException {
+      if (!this.repositoryId.equals(repository.getId())) {
+        throw new NoTransporterException(repository);
+      }
+      final Transporter transporter = this.delegate.newInstance(session, repository);
+      return new Transporter() {
+        @Override
+        public final int classify(final Throwable error) {
+          return transporter.classify(error);
+        }
+
+        @Override
+        public final void peek(final PeekTask task) throws Exception {
+          transporter.peek(task);
+        }
+
+        @Override
+        public final void get(final GetTask task) throws Exception {
+          // Transfer everything, then hold on to the download, so the
+          // race is decided while it is about to be completed.
+          try {
+            transporter.get(task);
+            gate.await(60L, TimeUnit.SECONDS);
+          } finally {
+            finished.countDown();
+          }
+        }
+
+        @Override
+        public final void put(final PutTask task) throws Exception {
+          transporter.put(task);
+        }
+
+        @Override
+        public final void close() {
+          transporter.close();
+        }
+      };
+    }
+
+  }
+
+}
@@ -0,0 +1,167 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestLazyResolution {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path remote;
+
+  private Map<String, byte[]> entries;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestLazyResolution() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.entries = SyntheticCharts.chart("lazy", "1.0.0");
+    this.entries.put("lazy/values.yaml", "replicaCount: 3\n".getBytes(StandardCharsets.UTF_8));
+    final Random random = new Random(17L);
+    for (int i = 0; i < 100; i++) {
+      // Incompressible, so that a truncated archive really is missing
+      // most of its templates.
+      final byte[] template = new byte[2048];
+      random.nextBytes(template);
+      this.entries.put("lazy/templates/t" + i + ".yaml", template);
+    }
+    this.entries.put("lazy/README.md", "# Lazy\n".getBytes(StandardCharsets.UTF_8));
+
+    this.remote = this.temporaryFolder.newFolder("remote").toPath();
+    SyntheticCharts.publish(this.remote, "lazy", "1.0.0", this.entries);
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder("remote", "default", this.remote.toUri().toString()).build();
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Collections.singletonList(remoteRepository), null);
+  }
+
+  @Test
+  public void testLazyChartLoadsOnFirstAccess() throws ChartResolverException {
+    final LazyChart lazyChart = this.resolver.resolveLazily("org.microbean.test:lazy", "1.0.0");
+    assertNotNull(lazyChart);
+    assertEquals("lazy", lazyChart.getMetadata().getName());
+    assertEquals("replicaCount: 3\n", lazyChart.getValues().getRaw());
+    assertFalse(lazyChart.isLoaded());
+    assertEquals(100, lazyChart.getTemplates().size());
+    assertTrue(lazyChart.isLoaded());
+    assertEquals(1, lazyChart.getFiles().size());
+    assertEquals(this.resolver.resolve("org.microbean.test:lazy", "1.0.0").build(), lazyChart.getChart());
+  }
+
+  @Test
+  public void testResolveMetadata() throws ChartResolverException {
+    assertEquals("1.0.0", this.resolver.resolveMetadata("org.microbean.test:lazy", "1.0.0").getVersion());
+    assertEquals("lazy", this.resolver.resolveMetadata(new DefaultArtifact("org.microbean.test", "lazy", "tgz", "1.0.0")).getName());
+  }
+
+  @Test
+  public void testMetadataIsReadFromTheHeadOfATapeArchive() throws ChartResolverException, IOException {
+    final byte[] archive = SyntheticCharts.tgz(this.entries);
+    final byte[] truncated = Arrays.copyOf(archive, archive.length / 2);
+    final ChartArchiveFormat format = new ChartArchiveFormats().get("tgz");
+    final Chart.Builder metadata = format.loadMetadata(Channels.newChannel(new ByteArrayInputStream(truncated)));
+    assertEquals("lazy", metadata.getMetadata().getName());
+    assertEquals("replicaCount: 3\n", metadata.getValues().getRaw());
+    assertEquals(0, metadata.getTemplatesCount());
+    try {
+      format.load(Channels.newChannel(new ByteArrayInputStream(truncated)), null);
+      fail();
+    } catch (final IOException expected) {
+
+    }
+  }
+
+  @Test
+  public void testMetadataIsReadFromMappedZipArchives() throws ChartResolverException, IOException {
+    final Path file = this.temporaryFolder.newFile("lazy.zip").toPath();
+    Files.write(file, writeZip(this.entries));
+    final ChartArchiveFormat format = new ChartArchiveFormats().get("zip");
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final Chart.Builder metadata = format.loadMetadata(channel);
+      assertEquals("lazy", metadata.getMetadata().getName());
+      assertEquals("replicaCount: 3\n", metadata.getValues().getRaw());
+      assertEquals(0, metadata.getTemplatesCount());
+      assertEquals(0, metadata.getFilesCount());
+    }
+    final Chart.Builder metadata = format.loadMetadata(Channels.newChannel(new ByteArrayInputStream(Files.readAllBytes(file))));
+    assertEquals("lazy", metadata.getMetadata().getName());
+  }
+
+  private static final byte[] writeZip(final Map<String, byte[]> entries) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ZipOutputStream zipOutputStream = new ZipOutputStream(bytes);
+    for (final Entry<String, byte[]> entry : entries.entrySet()) {
+      zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+      zipOutputStream.write(entry.getValue());
+      zipOutputStream.closeEntry();
+    }
+    zipOutputStream.finish();
+    return bytes.toByteArray();
+  }
+
+}
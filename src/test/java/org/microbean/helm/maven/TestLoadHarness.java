@@ -0,0 +1,225 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+import java.util.logging.Logger;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+
+import org.eclipse.aether.impl.DefaultServiceLocator;
+
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exercises {@link MavenRepositoryChartResolver} under concurrent
+ * load against synthetic charts served from a temporary repository,
+ * either over loopback HTTP by a {@link LocalRepositoryServer} or
+ * directly from disk, without touching the network or the user's
+ * Maven settings.
+ *
+ * <p>The defaults keep the run short enough for every build.  To
+ * use this class as a load test, override them with system
+ * properties whose names begin with {@code
+ * org.microbean.helm.maven.load.}: {@code threads} (a
+ * comma-separated list of thread counts), {@code charts}, {@code
+ * templates}, {@code templateSize}, {@code depth}, {@code fanout},
+ * {@code latency} (milliseconds per request) and {@code bandwidth}
+ * (bytes per second per response; {@code 0} means unlimited).
+ * Results are logged at {@code INFO} level.</p>
+ */
+public class TestLoadHarness {
+
+  private static final String PREFIX = "org.microbean.helm.maven.load.";
+
+  private static final String GROUP_ID = "org.microbean.test.load";
+
+  private static final String VERSION = "1.0.0";
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Logger logger;
+
+  private final int charts;
+
+  private Path remote;
+
+  private RepositorySystem repositorySystem;
+
+  private LocalRepositoryServer server;
+
+  public TestLoadHarness() {
+    super();
+    this.logger = Logger.getLogger(this.getClass().getName());
+    this.charts = Integer.getInteger(PREFIX + "charts", 24);
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.remote = this.temporaryFolder.newFolder("remote").toPath();
+    final int templates = Integer.getInteger(PREFIX + "templates", 8);
+    final int templateSize = Integer.getInteger(PREFIX + "templateSize", 2048);
+    final int depth = Integer.getInteger(PREFIX + "depth", 1);
+    final int fanout = Integer.getInteger(PREFIX + "fanout", 2);
+    for (int i = 0; i < this.charts; i++) {
+      SyntheticCharts.publish(this.remote, chart(i), templates, templateSize, depth, fanout);
+    }
+
+    final DefaultServiceLocator serviceLocator = MavenRepositorySystemUtils.newServiceLocator();
+    serviceLocator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+    serviceLocator.addService(TransporterFactory.class, FileTransporterFactory.class);
+    serviceLocator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+    this.repositorySystem = serviceLocator.getService(RepositorySystem.class);
+    assertNotNull(this.repositorySystem);
+
+    this.server = new LocalRepositoryServer(this.remote,
+                                            Long.getLong(PREFIX + "latency", 2L),
+                                            Long.getLong(PREFIX + "bandwidth", 0L),
+                                            16);
+  }
+
+  @After
+  public void tearDown() {
+    if (this.server != null) {
+      this.server.close();
+    }
+  }
+
+  @Test
+  public void testLocalRepositoryServerHonorsLatencyAndBandwidth() throws IOException {
+    final Path chartFile = SyntheticCharts.publish(this.remote, new DefaultArtifact(GROUP_ID, "throttled", "tgz", VERSION), 16, 4096, 0, 0);
+    final long size = Files.size(chartFile);
+    final long latency = 50L;
+    final long bandwidth = 4L * size;
+    try (final LocalRepositoryServer throttled = new LocalRepositoryServer(this.remote, latency, bandwidth, 1)) {
+      final String path = this.remote.relativize(chartFile).toString().replace('\\', '/');
+      final long start = System.nanoTime();
+      assertEquals(200, this.get(throttled, path, size));
+      final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      // The whole body should take about a quarter of a second, so
+      // allow for coarse sleeps.
+      assertTrue(String.valueOf(elapsed), elapsed >= latency + 200L);
+      assertEquals(404, this.get(throttled, "no/such/chart.tgz", -1L));
+      assertEquals(404, this.get(throttled, "../" + this.temporaryFolder.newFile("outside").getName(), -1L));
+      assertEquals(3L, throttled.getRequestCount());
+      assertEquals(size, throttled.getBytesServed());
+    }
+  }
+
+  @Test
+  public void testResolveOverHttpAcrossThreadCounts() throws Exception {
+    final List<LoadDriver.Result> results = this.runAcrossThreadCounts("http", this.server.getUri().toString());
+    // Every round starts with an empty local repository, so every
+    // chart crosses the wire in every round.
+    assertTrue(this.server.getRequestCount() >= (long)this.charts * results.size());
+  }
+
+  @Test
+  public void testResolveFromFileRepositoryAcrossThreadCounts() throws Exception {
+    this.runAcrossThreadCounts("file", this.remote.toUri().toString());
+  }
+
+  private final List<LoadDriver.Result> runAcrossThreadCounts(final String name, final String url) throws Exception {
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder(name, "default", url).build();
+    final List<LoadDriver.Result> returnValue = new ArrayList<>();
+    for (final String threadCount : System.getProperty(PREFIX + "threads", "1,4").split(",")) {
+      final int threads = Integer.parseInt(threadCount.trim());
+      final DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+      session.setLocalRepositoryManager(this.repositorySystem.newLocalRepositoryManager(session, new LocalRepository(this.temporaryFolder.newFolder("local-" + name + "-" + threads))));
+      final MavenRepositoryChartResolver resolver = new MavenRepositoryChartResolver(this.repositorySystem, session, Collections.singletonList(remoteRepository), null);
+      final LoadDriver.Result result = LoadDriver.run(threads, this.charts, index -> {
+          final Chart.Builder chart = resolver.resolve(chart(index));
+          assertEquals("load-" + index, chart.getMetadata().getName());
+        });
+      this.logger.info(name + ": " + result);
+      assertEquals(String.valueOf(result.getErrors()), 0, result.getFailures());
+      assertEquals(this.charts, result.getOperations());
+      returnValue.add(result);
+    }
+    return returnValue;
+  }
+
+  private final int get(final LocalRepositoryServer server, final String path, final long expectedLength) throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection)new URL(server.getUri().toString() + path).openConnection();
+    try {
+      final int returnValue = connection.getResponseCode();
+      if (returnValue == 200) {
+        long length = 0L;
+        try (final InputStream inputStream = connection.getInputStream()) {
+          final byte[] buffer = new byte[8192];
+          int read;
+          while ((read = inputStream.read(buffer)) != -1) {
+            length += read;
+          }
+        }
+        assertEquals(expectedLength, length);
+      }
+      return returnValue;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static final Artifact chart(final int index) {
+    return new DefaultArtifact(GROUP_ID, "load-" + index, "tgz", VERSION);
+  }
+
+}
@@ -0,0 +1,127 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLocalFastPath {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path remote;
+
+  private AtomicInteger resolutions;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestLocalFastPath() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.remote = this.temporaryFolder.newFolder("remote").toPath();
+    SyntheticCharts.publish(this.remote, "release", "1.0.0");
+    SyntheticCharts.publish(this.remote, "snapshot", "1.0.0-SNAPSHOT");
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.resolutions = new AtomicInteger();
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    session.setRepositoryListener(new AbstractRepositoryListener() {
+        @Override
+        public final void artifactResolving(final RepositoryEvent event) {
+          resolutions.incrementAndGet();
+        }
+      });
+    final RemoteRepository remoteRepository =
+      new RemoteRepository.Builder("remote", "default", this.remote.toUri().toString())
+      .setSnapshotPolicy(new RepositoryPolicy(true, RepositoryPolicy.UPDATE_POLICY_ALWAYS, null))
+      .build();
+
+    // No ChartCache, so that every resolution has to find the chart's
+    // file.
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Collections.singletonList(remoteRepository), null);
+    this.resolver.setLocalFastPathEnabled(true);
+  }
+
+  @Test
+  public void testReleaseIsFoundLocallyAfterFirstResolution() throws ChartResolverException {
+    final Artifact chart = new DefaultArtifact("org.microbean.test", "release", "tgz", "1.0.0");
+    assertEquals("release", this.resolver.resolve(chart).getMetadata().getName());
+    assertEquals(1, this.resolutions.get());
+    assertEquals("release", this.resolver.resolve(chart).getMetadata().getName());
+    assertEquals("release", this.resolver.resolveAsync(chart).join().getMetadata().getName());
+    final Map<Artifact, Chart.Builder> charts = this.resolver.resolveAll(Collections.singleton(chart));
+    assertEquals(1, charts.size());
+    assertEquals(1, this.resolutions.get());
+  }
+
+  @Test
+  public void testSnapshotsAlwaysUseTheRepositorySystem() throws ChartResolverException {
+    final Artifact chart = new DefaultArtifact("org.microbean.test", "snapshot", "tgz", "1.0.0-SNAPSHOT");
+    this.resolver.resolve(chart);
+    this.resolver.resolve(chart);
+    assertEquals(2, this.resolutions.get());
+  }
+
+  @Test
+  public void testLocalMissesAndHitsAreResolvedTogether() throws ChartResolverException {
+    final Artifact release = new DefaultArtifact("org.microbean.test", "release", "tgz", "1.0.0");
+    final Artifact snapshot = new DefaultArtifact("org.microbean.test", "snapshot", "tgz", "1.0.0-SNAPSHOT");
+    this.resolver.resolve(release);
+    this.resolutions.set(0);
+    final Map<Artifact, Chart.Builder> charts = this.resolver.resolveAll(Arrays.asList(snapshot, release));
+    assertEquals(Arrays.asList(snapshot, release), Arrays.asList(charts.keySet().toArray()));
+    assertEquals("snapshot", charts.get(snapshot).getMetadata().getName());
+    assertEquals("release", charts.get(release).getMetadata().getName());
+    assertEquals(1, this.resolutions.get());
+  }
+
+}
@@ -0,0 +1,117 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLoggingTransferListener {
+
+  private Logger logger;
+
+  private List<LogRecord> records;
+
+  private Handler handler;
+
+  public TestLoggingTransferListener() {
+    super();
+  }
+
+  @Before
+  public void setUp() {
+    this.logger = Logger.getLogger(TestLoggingTransferListener.class.getName());
+    this.logger.setUseParentHandlers(false);
+    this.records = new ArrayList<>();
+    this.handler = new Handler() {
+        @Override
+        public final void publish(final LogRecord record) {
+          records.add(record);
+        }
+
+        @Override
+        public final void flush() {
+
+        }
+
+        @Override
+        public final void close() {
+
+        }
+      };
+    this.handler.setLevel(Level.ALL);
+    this.logger.addHandler(this.handler);
+  }
+
+  @After
+  public void tearDown() {
+    this.logger.removeHandler(this.handler);
+    this.logger.setLevel(null);
+  }
+
+  @Test
+  public void testProgressIsRateLimited() {
+    this.logger.setLevel(Level.FINER);
+    final LoggingTransferListener listener = new LoggingTransferListener(this.logger, 60000L);
+    final TransferEvent.Builder builder = newBuilder("org/microbean/test/chart/1.0.0/chart-1.0.0.tgz");
+    listener.transferStarted(builder.resetType(TransferEvent.EventType.STARTED).build());
+    for (int i = 0; i < 100; i++) {
+      listener.transferProgressed(builder.resetType(TransferEvent.EventType.PROGRESSED).addTransferredBytes(1024L).build());
+    }
+    listener.transferSucceeded(builder.resetType(TransferEvent.EventType.SUCCEEDED).build());
+    assertEquals(3, this.records.size());
+    assertEquals(Level.FINE, this.records.get(0).getLevel());
+    assertEquals(Level.FINER, this.records.get(1).getLevel());
+    assertEquals(Level.FINE, this.records.get(2).getLevel());
+  }
+
+  @Test
+  public void testNothingIsLoggedOrTrackedWhenDisabled() {
+    this.logger.setLevel(Level.INFO);
+    final LoggingTransferListener listener = new LoggingTransferListener(this.logger, 0L);
+    final TransferEvent.Builder builder = newBuilder("org/microbean/test/chart/1.0.0/chart-1.0.0.tgz");
+    listener.transferStarted(builder.resetType(TransferEvent.EventType.STARTED).build());
+    listener.transferProgressed(builder.resetType(TransferEvent.EventType.PROGRESSED).addTransferredBytes(1024L).build());
+    listener.transferSucceeded(builder.resetType(TransferEvent.EventType.SUCCEEDED).build());
+    assertTrue(this.records.isEmpty());
+    listener.transferFailed(builder.resetType(TransferEvent.EventType.FAILED).setException(new Exception()).build());
+    assertEquals(1, this.records.size());
+    assertEquals(Level.WARNING, this.records.get(0).getLevel());
+  }
+
+  private static final TransferEvent.Builder newBuilder(final String resourceName) {
+    final TransferResource resource = new TransferResource("test", "file:/tmp/", resourceName, null, null);
+    return new TransferEvent.Builder(new DefaultRepositorySystemSession(), resource).setRequestType(TransferEvent.RequestType.GET);
+  }
+
+}
@@ -0,0 +1,193 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.microbean.helm.chart.ZipInputStreamChartLoader;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestMappedZipChartLoading {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ExecutorService executorService;
+
+  private Map<String, byte[]> entries;
+
+  public TestMappedZipChartLoading() {
+    super();
+  }
+
+  @Before
+  public void setUp() {
+    this.executorService = Executors.newFixedThreadPool(2);
+    this.entries = new LinkedHashMap<>();
+    this.entries.put("mapped/", new byte[0]);
+    this.entries.put("mapped/Chart.yaml", "name: mapped\nversion: 1.0.0\n".getBytes(StandardCharsets.UTF_8));
+    this.entries.put("mapped/values.yaml", "replicaCount: 3\n".getBytes(StandardCharsets.UTF_8));
+    this.entries.put("mapped/files/empty.txt", new byte[0]);
+    for (int i = 0; i < 50; i++) {
+      this.entries.put("mapped/templates/t" + i + ".yaml", ("kind: ConfigMap\nname: t" + i + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testMappedLoadMatchesSequentialLoad() throws ChartResolverException, IOException {
+    for (final int method : new int[] { ZipEntry.STORED, ZipEntry.DEFLATED }) {
+      final byte[] archive = writeZip(this.entries, method);
+      final Chart expected;
+      try (final ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+        expected = new ZipInputStreamChartLoader().load(zipInputStream).build();
+      }
+      assertEquals(50, expected.getTemplatesCount());
+      final Path file = this.temporaryFolder.newFile("mapped-" + method + ".zip").toPath();
+      Files.write(file, archive);
+      try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        final Chart.Builder chart = MappedZipChartLoader.load(channel, this.executorService);
+        assertNotNull(chart);
+        assertEquals(expected, chart.build());
+      }
+    }
+  }
+
+  @Test
+  public void testResolverLoadsJarFiles() throws ChartResolverException, IOException {
+    final File file = this.temporaryFolder.newFile("mapped.jar");
+    Files.write(file.toPath(), writeZip(this.entries, ZipEntry.DEFLATED));
+    final SyntheticCharts.LoadingChartResolver resolver = SyntheticCharts.newLoadingResolver(this.executorService);
+    assertEquals("mapped", resolver.load(file, "jar").getMetadata().getName());
+    resolver.setParallelLoadingEnabled(true);
+    assertEquals(50, resolver.load(file, "jar").getTemplatesCount());
+  }
+
+  @Test
+  public void testUnsupportedArchivesAreDeclined() throws ChartResolverException, IOException {
+    final byte[] archive = writeZip(this.entries, ZipEntry.STORED);
+    final Path file = this.temporaryFolder.newFile("declined.zip").toPath();
+    Files.write(file, archive);
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      channel.position(1L);
+      assertNull(MappedZipChartLoader.load(channel, this.executorService));
+    }
+
+    // Claim that the first entry is compressed with BZIP2.
+    final ByteBuffer buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+    final int centralDirectoryOffset = buffer.getInt(archive.length - 22 + 16);
+    buffer.putShort(centralDirectoryOffset + 10, (short)12);
+    Files.write(file, archive);
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      assertNull(MappedZipChartLoader.load(channel, this.executorService));
+    }
+  }
+
+  @Test
+  public void testCorruptEntriesAreRejected() throws ChartResolverException, IOException {
+    final byte[] archive = writeZip(this.entries, ZipEntry.STORED);
+    final byte[] needle = "replicaCount".getBytes(StandardCharsets.UTF_8);
+    boolean corrupted = false;
+    for (int i = 0; i < archive.length - needle.length && !corrupted; i++) {
+      int j = 0;
+      while (j < needle.length && archive[i + j] == needle[j]) {
+        j++;
+      }
+      if (j == needle.length) {
+        archive[i] = (byte)'R';
+        corrupted = true;
+      }
+    }
+    final Path file = this.temporaryFolder.newFile("corrupt.zip").toPath();
+    Files.write(file, archive);
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedZipChartLoader.load(channel, this.executorService);
+      fail();
+    } catch (final ZipException expected) {
+
+    }
+  }
+
+  private static final byte[] writeZip(final Map<String, byte[]> entries, final int method) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ZipOutputStream zipOutputStream = new ZipOutputStream(bytes);
+    for (final Entry<String, byte[]> entry : entries.entrySet()) {
+      final byte[] entryBytes = entry.getValue();
+      final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+      zipEntry.setMethod(method);
+      if (method == ZipEntry.STORED) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(entryBytes);
+        zipEntry.setCrc(crc32.getValue());
+        zipEntry.setSize(entryBytes.length);
+        zipEntry.setCompressedSize(entryBytes.length);
+      }
+      zipOutputStream.putNextEntry(zipEntry);
+      zipOutputStream.write(entryBytes);
+      zipOutputStream.closeEntry();
+    }
+    zipOutputStream.finish();
+    return bytes.toByteArray();
+  }
+
+}
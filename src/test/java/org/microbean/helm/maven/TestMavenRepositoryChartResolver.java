@@ -57,9 +57,6 @@ import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
 
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
 
-import org.eclipse.aether.transfer.AbstractTransferListener;
-import org.eclipse.aether.transfer.TransferEvent;
-
 import org.eclipse.aether.transport.file.FileTransporterFactory;
 
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
@@ -124,7 +121,7 @@ public class TestMavenRepositoryChartResolver {
     final DefaultRepositorySystemSession repositorySystemSession = MavenRepositorySystemUtils.newSession();
     assertNotNull(repositorySystemSession);
     // repositorySystemSession.setUpdatePolicy("always");
-    repositorySystemSession.setTransferListener(new TransferListener());
+    repositorySystemSession.setTransferListener(new LoggingTransferListener());
     repositorySystemSession.setOffline(settings.isOffline());
     repositorySystemSession.setCache(new DefaultRepositoryCache());
 
@@ -224,43 +221,4 @@ public class TestMavenRepositoryChartResolver {
     return settingsBuildingResult.getEffectiveSettings();
   }
   
-  private static final class TransferListener extends AbstractTransferListener {
-
-    private TransferListener() {
-      super();
-    }
-
-    @Override
-    public void transferInitiated(final TransferEvent event) {
-      System.out.println("*** transfer initiated: " + event);
-    }
-
-    @Override
-    public void transferStarted(final TransferEvent event) {
-      System.out.println("*** transfer started: " + event);
-    }
-
-    @Override
-    public void transferProgressed(final TransferEvent event) {
-      System.out.println("*** transfer progressed: " + event);
-    }
-
-    @Override
-    public void transferSucceeded(final TransferEvent event) {
-      System.out.println("*** transfer succeeded: " + event);
-    }
-
-    @Override
-    public void transferCorrupted(final TransferEvent event) {
-      System.out.println("*** transfer corrupted: " + event);
-    }
-
-    @Override
-    public void transferFailed(final TransferEvent event) {
-      System.out.println("*** transfer failed: " + event);
-    }
-    
-  }
-  
 }
-
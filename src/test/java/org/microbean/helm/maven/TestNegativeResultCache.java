@@ -0,0 +1,171 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.CompletionException;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+
+import org.eclipse.aether.util.repository.SimpleResolutionErrorPolicy;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestNegativeResultCache {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path remote;
+
+  private RemoteRepository remoteRepository;
+
+  private NegativeResultCache negativeResultCache;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestNegativeResultCache() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.remote = this.temporaryFolder.newFolder("remote").toPath();
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    // Make Maven Resolver itself look again every time, so that only
+    // the NegativeResultCache remembers anything.
+    session.setResolutionErrorPolicy(new SimpleResolutionErrorPolicy(false, false));
+    session.setUpdatePolicy(RepositoryPolicy.UPDATE_POLICY_ALWAYS);
+    this.remoteRepository = new RemoteRepository.Builder("remote", "default", this.remote.toUri().toString()).build();
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Collections.singletonList(this.remoteRepository), null);
+    this.negativeResultCache = new NegativeResultCache(16, 60000L);
+    this.resolver.setNegativeResultCache(this.negativeResultCache);
+  }
+
+  @Test
+  public void testMissingChartIsRemembered() throws ChartResolverException, IOException {
+    final ChartResolverException first = this.assertNotFound("1.0.0");
+    assertEquals(1, this.negativeResultCache.size());
+    final ChartResolverException second = this.assertNotFound("1.0.0");
+    assertNotSame(first, second);
+    assertSame(first, second.getCause());
+    assertEquals(0, first.getSuppressed().length);
+    assertTrue(MavenRepositoryChartResolver.isNotFound(second));
+    assertEquals(1L, this.negativeResultCache.getHitCount());
+
+    SyntheticCharts.publish(this.remote, "late", "1.0.0");
+    SyntheticCharts.publishMetadata(this.remote, "late", "1.0.0");
+    final ChartResolverException third = this.assertNotFound("1.0.0");
+    assertNotSame(second, third);
+    assertSame(first, third.getCause());
+    this.resolver.invalidate("org.microbean.test:late");
+    assertEquals(0, this.negativeResultCache.size());
+    assertEquals("late", this.resolver.resolve("org.microbean.test:late", "1.0.0").getMetadata().getName());
+  }
+
+  @Test
+  public void testMissingVersionsAreRemembered() {
+    final ChartResolverException first = this.assertNotFound("[1.0.0,2.0.0)");
+    assertSame(first, this.assertNotFound("[1.0.0,2.0.0)").getCause());
+    try {
+      this.resolver.resolveAsync("org.microbean.test:late", "[1.0.0,2.0.0)").join();
+      fail();
+    } catch (final CompletionException expected) {
+      assertTrue(expected.getCause() instanceof ChartResolverException);
+      assertSame(first, expected.getCause().getCause());
+    }
+    assertEquals(1, this.negativeResultCache.size());
+    this.resolver.invalidate(new DefaultArtifact("org.microbean.test", "late", "tgz", "1.0.0"));
+    assertEquals(0, this.negativeResultCache.size());
+  }
+
+  @Test
+  public void testEntriesExpireAndAreKeyedByRepositories() {
+    final NegativeResultCache cache = new NegativeResultCache(1, 1L);
+    final Artifact chart = new DefaultArtifact("org.microbean.test", "late", "tgz", "1.0.0");
+    final List<RemoteRepository> repositories = Collections.singletonList(this.remoteRepository);
+    final ChartResolverException exception = new ChartResolverException();
+    cache.put(chart, repositories, exception);
+    assertNull(cache.get(chart, null));
+    try {
+      Thread.sleep(5L);
+    } catch (final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+    }
+    assertNull(cache.get(chart, repositories));
+    cache.put(chart, repositories, exception);
+    cache.put(chart.setVersion("2.0.0"), repositories, exception);
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testOnlyMissingChartsCount() {
+    final Artifact chart = new DefaultArtifact("org.microbean.test", "late", "tgz", "1.0.0");
+    assertTrue(MavenRepositoryChartResolver.isNotFound(new ChartResolverException(new ArtifactNotFoundException(chart, this.remoteRepository))));
+    assertFalse(MavenRepositoryChartResolver.isNotFound(new ChartResolverException(new ArtifactTransferException(chart, this.remoteRepository, "unreachable"))));
+    final ChartResolverException mixed = new ChartResolverException(new ArtifactNotFoundException(chart, this.remoteRepository));
+    mixed.addSuppressed(new ArtifactTransferException(chart, this.remoteRepository, "unreachable"));
+    assertFalse(MavenRepositoryChartResolver.isNotFound(mixed));
+    assertFalse(MavenRepositoryChartResolver.isNotFound(new ChartResolverException("boom")));
+    assertTrue(MavenRepositoryChartResolver.isNotFound(new ChartResolverException(new ChartResolverException(new ArtifactNotFoundException(chart, this.remoteRepository)))));
+    assertFalse(MavenRepositoryChartResolver.isNotFound(new ChartResolverException(mixed)));
+  }
+
+  private final ChartResolverException assertNotFound(final String version) {
+    try {
+      this.resolver.resolve("org.microbean.test:late", version);
+      fail();
+      return null;
+    } catch (final ChartResolverException expected) {
+      return expected;
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class TestParallelChartLoading {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ExecutorService executorService;
+
+  private SyntheticCharts.LoadingChartResolver serial;
+
+  private SyntheticCharts.LoadingChartResolver parallel;
+
+  public TestParallelChartLoading() {
+    super();
+  }
+
+  @Before
+  public void setUp() {
+    // Two threads are enough to interleave work while still
+    // exercising the loader's promise never to block a worker.
+    this.executorService = Executors.newFixedThreadPool(2);
+    this.serial = SyntheticCharts.newLoadingResolver(this.executorService);
+    this.parallel = SyntheticCharts.newLoadingResolver(this.executorService);
+    this.parallel.setParallelLoadingEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    this.executorService.shutdownNow();
+  }
+
+  @Test
+  public void testTapeArchiveWithNestedSubchartArchives() throws ChartResolverException, IOException {
+    final File chartFile = this.temporaryFolder.newFile("deep.tgz");
+    try (final OutputStream outputStream = Files.newOutputStream(chartFile.toPath())) {
+      SyntheticCharts.tar(entries("deep", 100, 2, 3), new GZIPOutputStream(outputStream));
+    }
+    this.assertIdentical(chartFile, "tgz");
+  }
+
+  @Test
+  public void testZipArchiveWithNestedSubchartArchives() throws ChartResolverException, IOException {
+    final File chartFile = this.temporaryFolder.newFile("deep.zip");
+    try (final OutputStream outputStream = Files.newOutputStream(chartFile.toPath())) {
+      writeZip(entries("deep", 40, 1, 2), outputStream);
+    }
+    this.assertIdentical(chartFile, "zip");
+  }
+
+  @Test
+  public void testTapeArchiveWithUnpackedSubcharts() throws ChartResolverException, IOException {
+    final Map<String, byte[]> entries = entries("mixed", 10, 1, 1);
+    for (final Entry<String, byte[]> entry : entries("unpacked", 5, 0, 0).entrySet()) {
+      entries.put("mixed/charts/" + entry.getKey(), entry.getValue());
+    }
+    final File chartFile = this.temporaryFolder.newFile("mixed.tgz");
+    try (final OutputStream outputStream = Files.newOutputStream(chartFile.toPath())) {
+      SyntheticCharts.tar(entries, new GZIPOutputStream(outputStream));
+    }
+    this.assertIdentical(chartFile, "tgz");
+  }
+
+  private final void assertIdentical(final File chartFile, final String packaging) throws ChartResolverException {
+    final Chart.Builder expected = this.serial.load(chartFile, packaging);
+    assertNotNull(expected);
+    final Chart.Builder actual = this.parallel.load(chartFile, packaging);
+    assertNotNull(actual);
+    assertEquals(expected.build(), actual.build());
+  }
+
+  private static final Map<String, byte[]> entries(final String name, final int templates, final int depth, final int fanout) throws IOException {
+    final Map<String, byte[]> returnValue = new LinkedHashMap<>();
+    returnValue.put(name + "/", new byte[0]);
+    returnValue.put(name + "/Chart.yaml", ("name: " + name + "\nversion: 1.0.0\n").getBytes(StandardCharsets.UTF_8));
+    returnValue.put(name + "/values.yaml", ("replicaCount: " + templates + "\n").getBytes(StandardCharsets.UTF_8));
+    returnValue.put(name + "/README.md", ("# " + name + "\n").getBytes(StandardCharsets.UTF_8));
+    for (int i = 0; i < templates; i++) {
+      returnValue.put(name + "/templates/t" + i + ".yaml", ("kind: ConfigMap\nname: " + name + "-" + i + "\n").getBytes(StandardCharsets.UTF_8));
+      if (i % 10 == 0) {
+        returnValue.put(name + "/files/f" + i + ".txt", ("file " + i + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    for (int i = 0; depth > 0 && i < fanout; i++) {
+      returnValue.put(name + "/charts/" + name + "-sub" + i + "-1.0.0.tgz", SyntheticCharts.tgz(entries(name + "-sub" + i, templates / 2, depth - 1, fanout)));
+    }
+    return returnValue;
+  }
+
+  private static final void writeZip(final Map<String, byte[]> entries, final OutputStream outputStream) throws IOException {
+    final ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+    for (final Entry<String, byte[]> entry : entries.entrySet()) {
+      zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+      zipOutputStream.write(entry.getValue());
+      zipOutputStream.closeEntry();
+    }
+    zipOutputStream.finish();
+  }
+
+}
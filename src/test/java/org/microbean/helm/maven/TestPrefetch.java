@@ -0,0 +1,241 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestPrefetch {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path remote;
+
+  private AtomicInteger downloads;
+
+  private List<String> loadedFiles;
+
+  private ExecutorService executor;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestPrefetch() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.remote = this.temporaryFolder.newFolder("remote").toPath();
+    for (final String name : Arrays.asList("alpha", "beta", "gamma")) {
+      SyntheticCharts.publish(this.remote, name, "1.0.0");
+    }
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.downloads = new AtomicInteger();
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    session.setTransferListener(new AbstractTransferListener() {
+        @Override
+        public final void transferSucceeded(final TransferEvent event) {
+          downloads.incrementAndGet();
+        }
+      });
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder("remote", "default", this.remote.toUri().toString()).build();
+
+    this.loadedFiles = new CopyOnWriteArrayList<>();
+    this.executor = Executors.newFixedThreadPool(2);
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Arrays.asList(remoteRepository), new ChartCache(), this.executor) {
+        @Override
+        protected final Chart.Builder loadChart(final File chartFile, final String packaging) throws ChartResolverException {
+          loadedFiles.add(chartFile.getName());
+          return super.loadChart(chartFile, packaging);
+        }
+      };
+  }
+
+  @After
+  public void tearDown() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPrefetchWarmsLaterResolutions() throws Exception {
+    final List<String> prefetched = new CopyOnWriteArrayList<>();
+    final List<String> failed = new CopyOnWriteArrayList<>();
+    final AtomicInteger lastCompleted = new AtomicInteger();
+    final CompletableFuture<Void> prefetch =
+      this.resolver.prefetch(Arrays.asList("org.microbean.test:alpha:tgz:1.0.0",
+                                           "org.microbean.test:beta:tgz:1.0.0",
+                                           "org.microbean.test:missing:tgz:1.0.0",
+                                           "org.microbean.test:gamma:tgz:1.0.0"),
+                             2,
+                             new PrefetchListener() {
+                               @Override
+                               public final void chartPrefetched(final String coordinates, final int completed, final int total) {
+                                 assertEquals(4, total);
+                                 prefetched.add(coordinates);
+                                 lastCompleted.accumulateAndGet(completed, Math::max);
+                               }
+
+                               @Override
+                               public final void chartPrefetchFailed(final String coordinates, final Throwable failure, final int completed, final int total) {
+                                 assertNotNull(failure);
+                                 failed.add(coordinates);
+                                 lastCompleted.accumulateAndGet(completed, Math::max);
+                               }
+                             });
+    try {
+      prefetch.get(30L, TimeUnit.SECONDS);
+      fail();
+    } catch (final ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof ChartResolverException);
+      assertEquals(0, expected.getCause().getSuppressed().length);
+    }
+    assertEquals(3, prefetched.size());
+    assertEquals(Arrays.asList("org.microbean.test:missing:tgz:1.0.0"), failed);
+    assertEquals(4, lastCompleted.get());
+    assertEquals(3, this.loadedFiles.size());
+
+    final int downloadsAfterPrefetch = this.downloads.get();
+    assertNotNull(this.resolver.resolve("org.microbean.test:beta:tgz", "1.0.0"));
+    assertNotNull(this.resolver.resolve("org.microbean.test:gamma:tgz", "1.0.0"));
+    assertEquals(downloadsAfterPrefetch, this.downloads.get());
+    assertEquals(3, this.loadedFiles.size());
+  }
+
+  @Test
+  public void testPrefetchManifest() throws Exception {
+    final Path manifest = this.temporaryFolder.newFile("charts.txt").toPath();
+    Files.write(manifest,
+                Arrays.asList("# Charts to warm",
+                              "org.microbean.test:alpha:tgz:1.0.0",
+                              "",
+                              "  org.microbean.test:gamma:tgz:1.0.0  "),
+                StandardCharsets.UTF_8);
+    this.resolver.prefetch(manifest).get(30L, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("alpha-1.0.0.tgz", "gamma-1.0.0.tgz"), this.sorted(this.loadedFiles));
+  }
+
+  @Test
+  public void testPrefetchDoesNotBlock() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final CountDownLatch blocked = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      this.executor.execute(() -> {
+          blocked.countDown();
+          try {
+            latch.await();
+          } catch (final InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    }
+    assertTrue(blocked.await(30L, TimeUnit.SECONDS));
+    final CompletableFuture<Void> prefetch = this.resolver.prefetch(Arrays.asList("org.microbean.test:alpha:tgz:1.0.0"));
+    assertFalse(prefetch.isDone());
+    latch.countDown();
+    prefetch.get(30L, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("alpha-1.0.0.tgz"), this.loadedFiles);
+  }
+
+  @Test
+  public void testCompletedResolutionsDoNotDeepenTheStack() throws Exception {
+    final List<String> coordinates = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      coordinates.add("org.microbean.test:cached" + i + ":tgz:1.0.0");
+    }
+    final AtomicInteger resolutions = new AtomicInteger();
+    final AtomicInteger prefetched = new AtomicInteger();
+    final MavenRepositoryChartResolver resolver = new MavenRepositoryChartResolver(this.resolver.getRepositorySystem(), this.resolver.getSession(), this.resolver.getRemoteRepositories(), null, this.executor) {
+        @Override
+        public final CompletableFuture<Chart.Builder> resolveAsync(final Artifact chart) {
+          final CompletableFuture<Chart.Builder> returnValue = new CompletableFuture<>();
+          if (resolutions.incrementAndGet() % 2 == 0) {
+            returnValue.complete(Chart.newBuilder());
+          } else {
+            returnValue.completeExceptionally(new ChartResolverException(chart.toString()));
+          }
+          return returnValue;
+        }
+      };
+    final CompletableFuture<Void> prefetch = resolver.prefetch(coordinates, 1, new PrefetchListener() {
+        @Override
+        public final void chartPrefetched(final String coordinates, final int completed, final int total) {
+          prefetched.incrementAndGet();
+        }
+      });
+    assertTrue(prefetch.isCompletedExceptionally());
+    assertEquals(coordinates.size(), resolutions.get());
+    assertEquals(coordinates.size() / 2, prefetched.get());
+  }
+
+  private final List<String> sorted(final List<String> strings) {
+    final String[] array = strings.toArray(new String[strings.size()]);
+    Arrays.sort(array);
+    return Arrays.asList(array);
+  }
+
+}
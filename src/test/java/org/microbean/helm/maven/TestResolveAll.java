@@ -0,0 +1,200 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.IOException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.eclipse.aether.resolution.VersionRangeResolutionException;
+
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestResolveAll {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path remote;
+
+  private ConcurrentMap<String, AtomicInteger> calls;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestResolveAll() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.remote = this.temporaryFolder.newFolder("remote").toPath();
+    for (final String name : Arrays.asList("alpha", "beta", "gamma")) {
+      SyntheticCharts.publish(this.remote, chart(name), 1, 64, 0, 0);
+    }
+
+    this.calls = new ConcurrentHashMap<>();
+    final RepositorySystem repositorySystem = countCalls(SyntheticCharts.newRepositorySystem(), this.calls);
+
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder("remote", "default", this.remote.toUri().toString()).build();
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Collections.singletonList(remoteRepository), null);
+  }
+
+  @Test
+  public void testChartsAreResolvedInOneBatch() throws ChartResolverException {
+    final Map<Artifact, Chart.Builder> charts = this.resolver.resolveAll(Arrays.asList(chart("alpha"), chart("beta"), chart("gamma")));
+    assertEquals(3, charts.size());
+    assertEquals(1, this.calls("resolveArtifacts"));
+    assertEquals(0, this.calls("resolveArtifact"));
+  }
+
+  @Test
+  public void testCoordinatesAreResolvedInOneBatch() throws ChartResolverException {
+    final Map<String, Chart.Builder> charts =
+      this.resolver.resolveAllCoordinates(Arrays.asList("org.microbean.test:alpha:1.0.0", "org.microbean.test:beta:1.0.0", "org.microbean.test:gamma:1.0.0"));
+    assertEquals(3, charts.size());
+    assertEquals(1, this.calls("resolveArtifacts"));
+    assertEquals(0, this.calls("resolveArtifact"));
+  }
+
+  @Test
+  public void testUnresolvableVersionsAreReportedTogether() {
+    try {
+      this.resolver.resolveAllCoordinates(Arrays.asList("org.microbean.test:alpha:[5.0.0,6.0.0)", "org.microbean.test:missing:1.0.0", "org.microbean.test:beta:1.0.0"));
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertTrue(expected.getCause() instanceof ChartResolverException);
+      assertTrue(expected.getCause().getCause() instanceof VersionRangeResolutionException);
+      assertEquals(1, expected.getSuppressed().length);
+      assertTrue(expected.getSuppressed()[0] instanceof ArtifactNotFoundException);
+      assertEquals(chart("missing"), ((ArtifactNotFoundException)expected.getSuppressed()[0]).getArtifact());
+    }
+    // The charts that could be resolved were still resolved in one batch.
+    assertEquals(1, this.calls("resolveArtifacts"));
+  }
+
+  @Test
+  public void testMissingChartsAreReportedTogether() {
+    try {
+      this.resolver.resolveAll(Arrays.asList(chart("alpha"), chart("missing1"), chart("beta"), chart("missing2")));
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertTrue(expected.getCause() instanceof ArtifactNotFoundException);
+      assertEquals(chart("missing1"), ((ArtifactNotFoundException)expected.getCause()).getArtifact());
+      assertEquals(1, expected.getSuppressed().length);
+      assertTrue(expected.getSuppressed()[0] instanceof ArtifactNotFoundException);
+      assertEquals(chart("missing2"), ((ArtifactNotFoundException)expected.getSuppressed()[0]).getArtifact());
+    }
+  }
+
+  @Test
+  public void testUnloadableChartsAreReportedTogether() throws ChartResolverException, IOException {
+    this.corrupt("beta");
+    this.corrupt("gamma");
+    try {
+      this.resolver.resolveAllCoordinates(Arrays.asList("org.microbean.test:alpha:1.0.0", "org.microbean.test:beta:1.0.0", "org.microbean.test:gamma:1.0.0"));
+      fail();
+    } catch (final ChartResolverException expected) {
+      assertNotNull(expected.getCause());
+      assertEquals(1, expected.getSuppressed().length);
+    }
+    // The loadable chart was nevertheless resolved.
+    assertEquals("alpha", this.resolver.resolve(chart("alpha")).getMetadata().getName());
+  }
+
+  @Test
+  public void testEquivalentCoordinatesAreAllKept() throws ChartResolverException {
+    final Map<String, Chart.Builder> charts =
+      this.resolver.resolveAllCoordinates(Arrays.asList("org.microbean.test:alpha:1.0.0", "org.microbean.test:beta:1.0.0", "org.microbean.test:alpha:tgz:1.0.0"));
+    assertEquals(Arrays.asList("org.microbean.test:alpha:1.0.0", "org.microbean.test:beta:1.0.0", "org.microbean.test:alpha:tgz:1.0.0"),
+                 Arrays.asList(charts.keySet().toArray()));
+    final Chart.Builder alpha = charts.get("org.microbean.test:alpha:1.0.0");
+    final Chart.Builder alias = charts.get("org.microbean.test:alpha:tgz:1.0.0");
+    assertNotSame(alpha, alias);
+    assertEquals(alpha.build(), alias.build());
+    assertEquals("beta", charts.get("org.microbean.test:beta:1.0.0").getMetadata().getName());
+
+    final Map<Artifact, Chart.Builder> byArtifact = this.resolver.resolveAll(Arrays.asList(chart("alpha"), chart("alpha")));
+    assertEquals(1, byArtifact.size());
+  }
+
+  private final int calls(final String methodName) {
+    final AtomicInteger count = this.calls.get(methodName);
+    return count == null ? 0 : count.get();
+  }
+
+  private static final RepositorySystem countCalls(final RepositorySystem delegate, final ConcurrentMap<String, AtomicInteger> calls) {
+    return (RepositorySystem)Proxy.newProxyInstance(RepositorySystem.class.getClassLoader(), new Class<?>[] { RepositorySystem.class }, (proxy, method, arguments) -> {
+        calls.computeIfAbsent(method.getName(), k -> new AtomicInteger()).incrementAndGet();
+        try {
+          return method.invoke(delegate, arguments);
+        } catch (final InvocationTargetException invocationTargetException) {
+          throw invocationTargetException.getCause();
+        }
+      });
+  }
+
+  private final void corrupt(final String name) throws IOException {
+    final Path directory = this.remote.resolve("org/microbean/test/" + name + "/1.0.0");
+    Files.write(directory.resolve(name + "-1.0.0.tgz"), "not a chart".getBytes(StandardCharsets.UTF_8));
+    Files.delete(directory.resolve(name + "-1.0.0.tgz.sha1"));
+  }
+
+  private static final Artifact chart(final String name) {
+    return new DefaultArtifact("org.microbean.test", name, "tgz", "1.0.0");
+  }
+
+}
@@ -0,0 +1,370 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.ReadableByteChannel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import java.util.zip.GZIPOutputStream;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarHeader;
+import org.kamranzafar.jtar.TarOutputStream;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestStreamingResolution {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Artifact chart;
+
+  private byte[] contents;
+
+  private RepositorySystem repositorySystem;
+
+  private DefaultRepositorySystemSession session;
+
+  private RemoteRepository remoteRepository;
+
+  public TestStreamingResolution() {
+    super();
+    this.chart = new DefaultArtifact("org.microbean.test", "streamed", "", "tgz", "1.0.0");
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    final Path directory = remote.resolve("org/microbean/test/streamed/1.0.0");
+    Files.createDirectories(directory);
+    this.contents = new byte[1024 * 1024];
+    new Random(17L).nextBytes(this.contents);
+    Files.write(directory.resolve("streamed-1.0.0.tgz"), this.contents);
+
+    this.repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.session = SyntheticCharts.newSession(this.repositorySystem, this.temporaryFolder.newFolder("local"));
+    this.remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString()).build();
+  }
+
+  @Test
+  public void testChartIsLoadedWhileItDownloads() throws ChartResolverException {
+    final RecordingFormat format = new RecordingFormat(null);
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null);
+    resolver.setChartArchiveFormats(format.register());
+    resolver.setStreamingEnabled(true);
+
+    assertNotNull(resolver.resolve(this.chart));
+    assertEquals(1, format.streamedLoads.get());
+    assertEquals(0, format.fileLoads.get());
+    assertTrue(Arrays.equals(this.contents, format.lastRead.get()));
+
+    // The archive was still persisted to the local repository.
+    final File localFile = new File(this.session.getLocalRepository().getBasedir(), this.session.getLocalRepositoryManager().getPathForLocalArtifact(this.chart));
+    assertTrue(localFile.isFile());
+    assertEquals(this.contents.length, localFile.length());
+
+    // A second resolution finds the archive locally and loads it
+    // from disk.
+    assertNotNull(resolver.resolve(this.chart));
+    assertEquals(1, format.streamedLoads.get());
+    assertEquals(1, format.fileLoads.get());
+  }
+
+  @Test
+  public void testRealArchiveIsNotReadAgain() throws ChartResolverException, IOException {
+    // A tape archive loader stops at the archive's end-of-archive
+    // blocks; everything after them (record padding, here made
+    // large, and the GZIP trailer) arrives after the chart has been
+    // parsed.
+    final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    final TarOutputStream tarOutputStream = new TarOutputStream(tar);
+    final byte[] chartYaml = "name: real\nversion: 1.0.0\n".getBytes(StandardCharsets.UTF_8);
+    tarOutputStream.putNextEntry(new TarEntry(TarHeader.createHeader("real/Chart.yaml", chartYaml.length, 0L, false, 0644)));
+    tarOutputStream.write(chartYaml, 0, chartYaml.length);
+    tarOutputStream.close();
+    final byte[] trailing = new byte[512 * 1024];
+    new Random(19L).nextBytes(trailing);
+    final ByteArrayOutputStream tgz = new ByteArrayOutputStream();
+    try (final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(tgz)) {
+      tar.writeTo(gzipOutputStream);
+      gzipOutputStream.write(trailing);
+    }
+    final Path remote = this.temporaryFolder.getRoot().toPath().resolve("remote");
+    final Path directory = remote.resolve("org/microbean/test/real/1.0.0");
+    Files.createDirectories(directory);
+    Files.write(directory.resolve("real-1.0.0.tgz"), tgz.toByteArray());
+
+    // Slow the transfer down so that the loader finishes first.
+    this.session.setTransferListener(new AbstractTransferListener() {
+        @Override
+        public final void transferProgressed(final TransferEvent event) {
+          try {
+            Thread.sleep(2L);
+          } catch (final InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+
+    final RecordingFormat format = new RecordingFormat(new ChartArchiveFormats().get("tgz"));
+    final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      final MavenRepositoryChartResolver resolver =
+        new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null, executorService);
+      resolver.setChartArchiveFormats(format.register());
+      resolver.setStreamingEnabled(true);
+      assertEquals("real", resolver.resolve(new DefaultArtifact("org.microbean.test", "real", "", "tgz", "1.0.0")).getMetadata().getName());
+      assertEquals(1, format.streamedLoads.get());
+      assertEquals(0, format.fileLoads.get());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailedStreamingFallsBackToTheLocalRepository() throws ChartResolverException {
+    final RecordingFormat format = new RecordingFormat(null);
+    format.failStreaming = true;
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null);
+    resolver.setChartArchiveFormats(format.register());
+    resolver.setStreamingEnabled(true);
+
+    assertNotNull(resolver.resolve(this.chart));
+    assertEquals(1, format.streamedLoads.get());
+    assertEquals(1, format.fileLoads.get());
+  }
+
+  @Test
+  public void testOverridingLoadChartDisablesStreaming() throws ChartResolverException {
+    final RecordingFormat format = new RecordingFormat(null);
+    final AtomicInteger overriddenLoads = new AtomicInteger();
+    final MavenRepositoryChartResolver resolver =
+      new MavenRepositoryChartResolver(this.repositorySystem, this.session, Collections.singletonList(this.remoteRepository), null) {
+        @Override
+        protected final Chart.Builder loadChart(final File chartFile, final String packaging) throws ChartResolverException {
+          overriddenLoads.incrementAndGet();
+          return super.loadChart(chartFile, packaging);
+        }
+      };
+    resolver.setChartArchiveFormats(format.register());
+    resolver.setStreamingEnabled(true);
+
+    assertNotNull(resolver.resolve(this.chart));
+    assertEquals(1, overriddenLoads.get());
+    assertEquals(0, format.streamedLoads.get());
+    assertEquals(1, format.fileLoads.get());
+  }
+
+  @Test
+  public void testSlowLoaderHoldsBackTheTransfer() throws IOException, TransferCancelledException {
+    final File file = this.temporaryFolder.newFile("slow-1.0.0.tgz");
+    Files.write(file.toPath(), this.contents);
+    final Artifact slow = new DefaultArtifact("org.microbean.test", "slow", "", "tgz", "1.0.0");
+    final AtomicLong maximumBuffered = new AtomicLong();
+    final AtomicLong offered = new AtomicLong();
+    final AtomicLong read = new AtomicLong();
+    final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try (final ChartStreamingTransferListener listener =
+         new ChartStreamingTransferListener(null, slow, executorService, inputStream -> {
+             final byte[] buffer = new byte[1024];
+             int bytesRead;
+             while ((bytesRead = inputStream.read(buffer)) >= 0) {
+               read.addAndGet(bytesRead);
+               try {
+                 Thread.sleep(1L);
+               } catch (final InterruptedException interruptedException) {
+                 Thread.currentThread().interrupt();
+               }
+             }
+             return Chart.newBuilder();
+           }, 16 * 1024, 10L, TimeUnit.SECONDS)) {
+      this.transfer(listener, "org/microbean/test/slow/1.0.0/slow-1.0.0.tgz", file, 1024, () -> {
+          maximumBuffered.accumulateAndGet(offered.addAndGet(1024) - read.get(), Math::max);
+        });
+      assertNotNull(listener.getChart(slow.setFile(file)));
+    } finally {
+      executorService.shutdownNow();
+    }
+    assertEquals(this.contents.length, read.get());
+    // The loader read what it had been given, plus at most the chunk
+    // being offered, before the transfer could get further ahead.
+    assertTrue(String.valueOf(maximumBuffered.get()), maximumBuffered.get() <= 16 * 1024 + 2 * 1024);
+  }
+
+  @Test
+  public void testStalledLoaderAbandonsStreaming() throws IOException, InterruptedException, TransferCancelledException {
+    final File file = this.temporaryFolder.newFile("stalled-1.0.0.tgz");
+    Files.write(file.toPath(), this.contents);
+    final Artifact stalled = new DefaultArtifact("org.microbean.test", "stalled", "", "tgz", "1.0.0");
+    final CountDownLatch latch = new CountDownLatch(1);
+    final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try (final ChartStreamingTransferListener listener =
+         new ChartStreamingTransferListener(null, stalled, executorService, inputStream -> {
+             try {
+               latch.await();
+             } catch (final InterruptedException interruptedException) {
+               Thread.currentThread().interrupt();
+             }
+             return Chart.newBuilder();
+           }, 16 * 1024, 100L, TimeUnit.MILLISECONDS)) {
+      final long start = System.nanoTime();
+      this.transfer(listener, "org/microbean/test/stalled/1.0.0/stalled-1.0.0.tgz", file, 1024, () -> {});
+      // The transfer waited once, then gave up on the loader.
+      assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5L);
+      assertNull(listener.getChart(stalled.setFile(file)));
+    } finally {
+      latch.countDown();
+      executorService.shutdownNow();
+    }
+  }
+
+  private final void transfer(final ChartStreamingTransferListener listener,
+                              final String resourceName,
+                              final File file,
+                              final int chunkSize,
+                              final Runnable afterChunk)
+    throws TransferCancelledException {
+    final TransferResource resource = new TransferResource("file:///remote", resourceName, file, null);
+    final TransferEvent.Builder builder = new TransferEvent.Builder(this.session, resource).setRequestType(TransferEvent.RequestType.GET);
+    listener.transferStarted(builder.copy().setType(TransferEvent.EventType.STARTED).build());
+    for (int offset = 0; offset < this.contents.length; offset += chunkSize) {
+      final int length = Math.min(chunkSize, this.contents.length - offset);
+      listener.transferProgressed(builder.copy().setType(TransferEvent.EventType.PROGRESSED).setDataBuffer(this.contents, offset, length).build());
+      afterChunk.run();
+    }
+    listener.transferSucceeded(builder.copy().setType(TransferEvent.EventType.SUCCEEDED).build());
+  }
+
+  private static final class RecordingFormat implements ChartArchiveFormat {
+
+    private final Thread resolvingThread;
+
+    private final ChartArchiveFormat delegate;
+
+    private final AtomicInteger streamedLoads;
+
+    private final AtomicInteger fileLoads;
+
+    private final AtomicReference<byte[]> lastRead;
+
+    private volatile boolean failStreaming;
+
+    private RecordingFormat(final ChartArchiveFormat delegate) {
+      super();
+      this.resolvingThread = Thread.currentThread();
+      this.delegate = delegate;
+      this.streamedLoads = new AtomicInteger();
+      this.fileLoads = new AtomicInteger();
+      this.lastRead = new AtomicReference<>();
+    }
+
+    private final ChartArchiveFormats register() {
+      final ChartArchiveFormats returnValue = ChartArchiveFormats.empty();
+      returnValue.register(this);
+      return returnValue;
+    }
+
+    @Override
+    public final Set<String> getPackagings() {
+      return Collections.singleton("tgz");
+    }
+
+    @Override
+    public final Chart.Builder load(final ReadableByteChannel channel, final Executor executor) throws IOException, ChartResolverException {
+      // Streamed charts are loaded on the executor; charts in the
+      // local repository are loaded by the resolving thread.
+      final boolean streamed = Thread.currentThread() != this.resolvingThread;
+      if (streamed) {
+        this.streamedLoads.incrementAndGet();
+        if (this.failStreaming) {
+          throw new IOException("Simulated corrupt stream");
+        }
+      } else {
+        this.fileLoads.incrementAndGet();
+      }
+      if (this.delegate != null) {
+        return this.delegate.load(channel, executor);
+      }
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final ByteBuffer buffer = ByteBuffer.allocate(8192);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        bytes.write(buffer.array(), 0, buffer.limit());
+        buffer.clear();
+      }
+      this.lastRead.set(bytes.toByteArray());
+      return Chart.newBuilder();
+    }
+
+  }
+
+}
@@ -0,0 +1,161 @@
+/* -*- mode: Java; c-basic-offset: 2; indent-tabs-mode: nil; coding: utf-8-unix -*-
+ *
+ * Copyright © 2017 MicroBean.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.microbean.helm.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hapi.chart.ChartOuterClass.Chart;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
+
+import org.microbean.helm.chart.resolver.ChartResolverException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class TestVersionResolution {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path artifactDirectory;
+
+  private AtomicInteger metadataDownloads;
+
+  private List<String> loadedFiles;
+
+  private MavenRepositoryChartResolver resolver;
+
+  public TestVersionResolution() {
+    super();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final Path remote = this.temporaryFolder.newFolder("remote").toPath();
+    this.artifactDirectory = remote.resolve("org/microbean/test/versioned");
+    this.publish("1.0.0", "1.1.0", "2.0.0-SNAPSHOT");
+
+    final RepositorySystem repositorySystem = SyntheticCharts.newRepositorySystem();
+
+    this.metadataDownloads = new AtomicInteger();
+    final DefaultRepositorySystemSession session = SyntheticCharts.newSession(repositorySystem, this.temporaryFolder.newFolder("local"));
+    session.setTransferListener(new AbstractTransferListener() {
+        @Override
+        public final void transferSucceeded(final TransferEvent event) {
+          if (event.getResource().getResourceName().endsWith("maven-metadata.xml")) {
+            metadataDownloads.incrementAndGet();
+          }
+        }
+      });
+
+    // Without the resolver's own metadata cache, this policy, together
+    // with bypassing the session's record of update checks already
+    // made, would cause metadata to be downloaded on every
+    // resolution.
+    session.setConfigProperty("aether.updateCheckManager.sessionState", "bypass");
+    final RepositoryPolicy policy = new RepositoryPolicy(true, RepositoryPolicy.UPDATE_POLICY_ALWAYS, RepositoryPolicy.CHECKSUM_POLICY_IGNORE);
+    final RemoteRepository remoteRepository = new RemoteRepository.Builder("remote", "default", remote.toUri().toString())
+      .setPolicy(policy)
+      .build();
+
+    this.loadedFiles = new CopyOnWriteArrayList<>();
+    this.resolver = new MavenRepositoryChartResolver(repositorySystem, session, Collections.singletonList(remoteRepository), null) {
+        @Override
+        protected final Chart.Builder loadChart(final File chartFile, final String packaging) {
+          loadedFiles.add(chartFile.getName());
+          return Chart.newBuilder();
+        }
+      };
+  }
+
+  @Test
+  public void testLatestReleaseAndRanges() throws ChartResolverException {
+    assertNotNull(this.resolver.resolve("org.microbean.test:versioned", null));
+    assertNotNull(this.resolver.resolve("org.microbean.test:versioned", "RELEASE"));
+    assertNotNull(this.resolver.resolve("org.microbean.test:versioned", "[1.0,1.1)"));
+    assertEquals("versioned-2.0.0-SNAPSHOT.tgz", this.loadedFiles.get(0));
+    assertEquals("versioned-1.1.0.tgz", this.loadedFiles.get(1));
+    assertEquals("versioned-1.0.0.tgz", this.loadedFiles.get(2));
+    assertEquals("1.1.0", this.resolver.resolveVersion(new DefaultArtifact("org.microbean.test", "versioned", "zip", "RELEASE")).getVersion());
+  }
+
+  @Test
+  public void testMetadataIsReusedUntilItExpires() throws ChartResolverException, IOException {
+    assertEquals("2.0.0-SNAPSHOT", this.resolveLatestVersion());
+    final int downloads = this.metadataDownloads.get();
+    assertEquals(1, downloads);
+
+    // LATEST and RELEASE share the same metadata.
+    assertEquals("2.0.0-SNAPSHOT", this.resolveLatestVersion());
+    assertEquals("1.1.0", this.resolver.resolveVersion(new DefaultArtifact("org.microbean.test:versioned:tgz:RELEASE")).getVersion());
+    assertEquals(downloads, this.metadataDownloads.get());
+
+    this.publish("1.0.0", "1.1.0", "2.0.0-SNAPSHOT", "3.0.0");
+    assertEquals("2.0.0-SNAPSHOT", this.resolveLatestVersion());
+
+    this.resolver.setMetadataTimeToLiveInMilliseconds(0L);
+    assertEquals("3.0.0", this.resolveLatestVersion());
+    assertEquals("3.0.0", this.resolveLatestVersion());
+    assertEquals(downloads + 2, this.metadataDownloads.get());
+  }
+
+  private final String resolveLatestVersion() throws ChartResolverException {
+    return this.resolver.resolveVersion(new DefaultArtifact("org.microbean.test:versioned:tgz:LATEST")).getVersion();
+  }
+
+  private final void publish(final String... versions) throws IOException {
+    final StringBuilder metadata = new StringBuilder("<metadata><groupId>org.microbean.test</groupId><artifactId>versioned</artifactId><versioning><versions>");
+    for (final String version : versions) {
+      metadata.append("<version>").append(version).append("</version>");
+      final Path versionDirectory = this.artifactDirectory.resolve(version);
+      Files.createDirectories(versionDirectory);
+      Files.write(versionDirectory.resolve("versioned-" + version + ".tgz"), new byte[] { 0 });
+    }
+    metadata.append("</versions></versioning></metadata>");
+    Files.createDirectories(this.artifactDirectory);
+    Files.write(this.artifactDirectory.resolve("maven-metadata.xml"), metadata.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+}